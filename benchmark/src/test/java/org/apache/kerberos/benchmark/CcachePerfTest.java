@@ -0,0 +1,197 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.kerberos.kerb.ccache.Credential;
+import org.apache.kerberos.kerb.ccache.CredentialCache;
+import org.apache.kerberos.kerb.ccache.FileCredentialCache;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptedData;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.apache.kerberos.kerb.spec.kdc.EncTgsRepPart;
+import org.apache.kerberos.kerb.spec.ticket.ServiceTicket;
+import org.apache.kerberos.kerb.spec.ticket.Ticket;
+import org.apache.kerberos.kerb.spec.ticket.TicketFlags;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Many writers adding service tickets to one FILE ccache, by loading and
+ * storing the whole cache as CredentialCache does, and by appending with
+ * FileCredentialCache, then looking the tickets up.
+ */
+public class CcachePerfTest {
+
+    private static final String REALM = "EXAMPLE.COM";
+    private static final int WRITERS = 8;
+    private static final int CREDENTIALS = 100; // per writer
+    private static final int LOOKUPS = 100000;
+
+    // As FileCredentialCache does, so the writers don't trip on file locks
+    private static final ReentrantLock processLock = new ReentrantLock();
+
+    public static void main(String[] args) throws Exception {
+        PrincipalName client = new PrincipalName("alice@" + REALM);
+
+        for (int round = 0; round < 2; round++) { // warm up in the first round
+            File file = File.createTempFile("perf", ".cc");
+            file.deleteOnExit();
+            new FileCredentialCache(file).initialize(client);
+            perfWriters("rewrite", file, false);
+
+            file = File.createTempFile("perf", ".cc");
+            file.deleteOnExit();
+            new FileCredentialCache(file).initialize(client);
+            perfWriters("append", file, true);
+
+            CredentialCache cc = new CredentialCache();
+            cc.load(file);
+            System.out.println("credentials:" + cc.getCredentials().size() +
+                    ", bytes:" + file.length());
+
+            perfLookups(file);
+        }
+    }
+
+    private static void perfWriters(String name, final File file,
+                                    final boolean append) throws Exception {
+        final CountDownLatch done = new CountDownLatch(WRITERS);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        long start = System.nanoTime();
+        for (int i = 0; i < WRITERS; i++) {
+            final int writer = i;
+            new Thread() {
+                public void run() {
+                    try {
+                        FileCredentialCache fcc = new FileCredentialCache(file);
+                        for (int j = 0; j < CREDENTIALS; j++) {
+                            Credential credential = makeCredential(writer * CREDENTIALS + j);
+                            if (append) {
+                                fcc.addCredential(credential);
+                            } else {
+                                rewrite(file, credential);
+                            }
+                        }
+                    } catch (Exception e) {
+                        failure.set(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        long took = System.nanoTime() - start;
+        System.out.println(name + " writers:" + WRITERS + ", ops/s:" +
+                (long) WRITERS * CREDENTIALS * 1000000000L / took);
+    }
+
+    private static void rewrite(File file, Credential credential) throws IOException {
+        processLock.lock();
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+                    channel.read(content, 0);
+                    CredentialCache cc = new CredentialCache();
+                    cc.load(new ByteArrayInputStream(content.array()));
+                    cc.addCredential(credential);
+
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream(content.capacity() * 2);
+                    cc.store(baos);
+                    channel.truncate(0);
+                    channel.write(ByteBuffer.wrap(baos.toByteArray()), 0);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                raf.close();
+            }
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    private static void perfLookups(File file) throws IOException {
+        PrincipalName[] servers = new PrincipalName[WRITERS * CREDENTIALS];
+        for (int i = 0; i < servers.length; i++) {
+            servers[i] = serverOf(i);
+        }
+
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < LOOKUPS / 100; i++) {
+            CredentialCache cc = new CredentialCache();
+            cc.load(file);
+            PrincipalName server = servers[i % servers.length];
+            for (Credential credential : cc.getCredentials()) {
+                if (credential.getServerName().getKey().equals(server.getKey())) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        long took = System.nanoTime() - start;
+        System.out.println("CredentialCache lookups:" + found + ", ns/op:" +
+                took / (LOOKUPS / 100));
+
+        FileCredentialCache fcc = new FileCredentialCache(file);
+        start = System.nanoTime();
+        found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (fcc.getCredential(servers[i % servers.length]) != null) {
+                found++;
+            }
+        }
+        took = System.nanoTime() - start;
+        System.out.println("FileCredentialCache lookups:" + found + ", ns/op:" +
+                took / LOOKUPS);
+    }
+
+    private static PrincipalName serverOf(int i) {
+        return new PrincipalName("host/node" + i + "." + REALM.toLowerCase() + "@" + REALM);
+    }
+
+    private static Credential makeCredential(int i) {
+        Ticket ticket = new Ticket();
+        ticket.setTktKvno(5);
+        ticket.setSname(serverOf(i));
+        ticket.setRealm(REALM);
+        EncryptedData encryptedData = new EncryptedData();
+        encryptedData.setEType(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        encryptedData.setKvno(1);
+        encryptedData.setCipher(new byte[200]);
+        ticket.setEncryptedEncPart(encryptedData);
+
+        KerberosTime now = KerberosTime.now();
+        EncTgsRepPart encKdcRepPart = new EncTgsRepPart();
+        encKdcRepPart.setKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                new byte[16]));
+        encKdcRepPart.setFlags(new TicketFlags(0));
+        encKdcRepPart.setAuthTime(now);
+        encKdcRepPart.setStartTime(now);
+        encKdcRepPart.setEndTime(now.extend(8 * 3600 * 1000L));
+        encKdcRepPart.setRenewTill(now.extend(8 * 3600 * 1000L));
+        encKdcRepPart.setSname(serverOf(i));
+        encKdcRepPart.setSrealm(REALM);
+
+        return new Credential(new ServiceTicket(ticket, encKdcRepPart),
+                new PrincipalName("alice@" + REALM));
+    }
+}
@@ -0,0 +1,98 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.codec.KrbCodec;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptedData;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.apache.kerberos.kerb.spec.kdc.*;
+import org.apache.kerberos.kerb.spec.pa.PaDataEntry;
+import org.apache.kerberos.kerb.spec.pa.PaDataType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Measures time and allocation of decoding AS-REQ and TGS-REQ messages,
+ * the ones the KDC decodes for every request.
+ */
+public class DecodingPerfTest {
+
+    private static final String REALM = "EXAMPLE.COM";
+
+    public static void main(String[] args) throws KrbException, IOException {
+        InputStream is = DecodingPerfTest.class.getResourceAsStream("/apreq.token");
+        byte[] apReqBytes = new byte[is.available()];
+        is.read(apReqBytes);
+
+        byte[] asReq = KrbCodec.encode(makeAsReq());
+        byte[] tgsReq = KrbCodec.encode(makeTgsReq(apReqBytes));
+
+        int times = 1000000;
+        for (int i = 0; i < 2; i++) { // warm up in the first round
+            perfDecoding("AsReq", ByteBuffer.wrap(asReq), times);
+            perfDecoding("TgsReq", ByteBuffer.wrap(tgsReq), times);
+        }
+    }
+
+    private static void perfDecoding(String name, ByteBuffer content,
+                                     int times) throws IOException {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long allocated = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < times; ++i) {
+            KdcReq kdcReq = (KdcReq) KrbCodec.decodeMessage(content);
+            if (kdcReq.getReqBody().getNonce() == 0) {
+                throw new RuntimeException("Decoding failed");
+            }
+            content.rewind();
+        }
+        long end = System.currentTimeMillis();
+        allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+
+        System.out.println(name + " takes:" + (end - start) +
+                ", bytes allocated per decoding:" + allocated / times);
+    }
+
+    private static KdcReqBody makeReqBody(String serverName) {
+        KdcReqBody body = new KdcReqBody();
+        KdcOptions kdcOptions = new KdcOptions();
+        kdcOptions.setFlag(KdcOption.FORWARDABLE);
+        kdcOptions.setFlag(KdcOption.RENEWABLE_OK);
+        body.setKdcOptions(kdcOptions);
+        body.setCname(new PrincipalName("user@" + REALM));
+        body.setRealm(REALM);
+        body.setSname(new PrincipalName(serverName));
+        body.setTill(new KerberosTime(System.currentTimeMillis() + KerberosTime.DAY));
+        body.setNonce(12345);
+        body.setEtypes(Arrays.asList(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                EncryptionType.DES3_CBC_SHA1_KD, EncryptionType.ARCFOUR_HMAC));
+        return body;
+    }
+
+    private static AsReq makeAsReq() throws KrbException {
+        AsReq asReq = new AsReq();
+        asReq.setReqBody(makeReqBody("krbtgt/" + REALM + "@" + REALM));
+
+        EncryptedData timestamp = new EncryptedData();
+        timestamp.setEType(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        timestamp.setCipher(new byte[52]);
+        asReq.addPaData(new PaDataEntry(PaDataType.ENC_TIMESTAMP,
+                KrbCodec.encode(timestamp)));
+        return asReq;
+    }
+
+    private static TgsReq makeTgsReq(byte[] apReq) {
+        TgsReq tgsReq = new TgsReq();
+        tgsReq.setReqBody(makeReqBody("host/www." + REALM.toLowerCase() + "@" + REALM));
+        tgsReq.addPaData(new PaDataEntry(PaDataType.TGS_REQ, apReq));
+        return tgsReq;
+    }
+}
@@ -0,0 +1,101 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.haox.asn1.type.Asn1Type;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.*;
+import org.apache.kerberos.kerb.spec.kdc.EncAsRepPart;
+import org.apache.kerberos.kerb.spec.kdc.EncKdcRepPart;
+import org.apache.kerberos.kerb.spec.ticket.EncTicketPart;
+import org.apache.kerberos.kerb.spec.ticket.Ticket;
+import org.apache.kerberos.kerb.spec.ticket.TicketFlag;
+import org.apache.kerberos.kerb.spec.ticket.TicketFlags;
+
+/**
+ * Measures encoding of the parts of AS-REP the KDC builds for every request.
+ */
+public class EncodingPerfTest {
+
+    private static final String REALM = "EXAMPLE.COM";
+
+    public static void main(String[] args) {
+        int times = 1000000;
+
+        EncTicketPart encTicketPart = makeEncTicketPart();
+        Ticket ticket = makeTicket();
+        EncKdcRepPart encKdcRepPart = makeEncKdcRepPart(encTicketPart);
+
+        for (int i = 0; i < 2; i++) { // warm up in the first round
+            perfEncoding("EncTicketPart", encTicketPart, times);
+            perfEncoding("Ticket", ticket, times);
+            perfEncoding("EncKdcRepPart", encKdcRepPart, times);
+        }
+    }
+
+    private static void perfEncoding(String name, Asn1Type value, int times) {
+        long start = System.currentTimeMillis();
+        int len = 0;
+        for (int i = 0; i < times; ++i) {
+            len += value.encode().length;
+        }
+        long end = System.currentTimeMillis();
+
+        System.out.println(name + " of " + len / times + " bytes takes:" + (end - start));
+    }
+
+    private static EncTicketPart makeEncTicketPart() {
+        EncTicketPart encTicketPart = new EncTicketPart();
+        TicketFlags flags = new TicketFlags();
+        flags.setFlag(TicketFlag.INITIAL);
+        flags.setFlag(TicketFlag.FORWARDABLE);
+        encTicketPart.setFlags(flags);
+        encTicketPart.setKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                new byte[16]));
+        encTicketPart.setCname(new PrincipalName("user@" + REALM));
+        encTicketPart.setCrealm(REALM);
+        TransitedEncoding transited = new TransitedEncoding();
+        transited.setTrType(TransitedEncodingType.NULL);
+        transited.setContents(new byte[0]);
+        encTicketPart.setTransited(transited);
+
+        KerberosTime now = KerberosTime.now();
+        encTicketPart.setAuthTime(now);
+        encTicketPart.setStartTime(now);
+        encTicketPart.setEndTime(now.extend(8 * 3600 * 1000L));
+        return encTicketPart;
+    }
+
+    private static Ticket makeTicket() {
+        Ticket ticket = new Ticket();
+        ticket.setTktKvno(5);
+        ticket.setSname(new PrincipalName("krbtgt/" + REALM + "@" + REALM));
+        ticket.setRealm(REALM);
+
+        EncryptedData encryptedData = new EncryptedData();
+        encryptedData.setEType(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        encryptedData.setKvno(1);
+        encryptedData.setCipher(new byte[200]);
+        ticket.setEncryptedEncPart(encryptedData);
+        return ticket;
+    }
+
+    private static EncKdcRepPart makeEncKdcRepPart(EncTicketPart encTicketPart) {
+        EncKdcRepPart encKdcRepPart = new EncAsRepPart();
+        encKdcRepPart.setKey(encTicketPart.getKey());
+
+        LastReq lastReq = new LastReq();
+        LastReqEntry entry = new LastReqEntry();
+        entry.setLrType(LastReqType.THE_LAST_INITIAL);
+        entry.setLrValue(KerberosTime.now());
+        lastReq.add(entry);
+        encKdcRepPart.setLastReq(lastReq);
+
+        encKdcRepPart.setNonce(12345);
+        encKdcRepPart.setFlags(encTicketPart.getFlags());
+        encKdcRepPart.setAuthTime(encTicketPart.getAuthTime());
+        encKdcRepPart.setStartTime(encTicketPart.getStartTime());
+        encKdcRepPart.setEndTime(encTicketPart.getEndTime());
+        encKdcRepPart.setSname(new PrincipalName("krbtgt/" + REALM + "@" + REALM));
+        encKdcRepPart.setSrealm(REALM);
+        return encKdcRepPart;
+    }
+}
@@ -0,0 +1,82 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.crypto.EncryptionHandler;
+import org.apache.kerberos.kerb.spec.common.EncryptedData;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.kerberos.kerb.spec.common.KeyUsage;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures encrypt/decrypt throughput with the same key and usage, as the
+ * KDC does with the krbtgt key for TGTs, by one and more threads.
+ */
+public class EncryptionPerfTest {
+
+    private static final EncryptionType[] ETYPES = new EncryptionType[] {
+            EncryptionType.AES128_CTS_HMAC_SHA1_96,
+            EncryptionType.AES256_CTS_HMAC_SHA1_96,
+            EncryptionType.CAMELLIA128_CTS_CMAC,
+            EncryptionType.DES3_CBC_SHA1
+    };
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        byte[] data = new byte[256]; // about an EncTicketPart
+
+        int times = 100000;
+        for (int i = 0; i < 2; i++) { // warm up in the first round
+            for (EncryptionType eType : ETYPES) {
+                perfEncryption(eType, data, times, 1);
+                perfEncryption(eType, data, times, threads);
+            }
+        }
+    }
+
+    private static void perfEncryption(EncryptionType eType, final byte[] data,
+                                       int times, int threads) throws Exception {
+        final EncryptionKey key = EncryptionHandler.random2Key(eType);
+        final int timesPerThread = times / threads;
+        final AtomicLong allocated = new AtomicLong();
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread() {
+                @Override
+                public void run() {
+                    com.sun.management.ThreadMXBean threadBean =
+                            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                    long threadId = Thread.currentThread().getId();
+                    long before = threadBean.getThreadAllocatedBytes(threadId);
+                    try {
+                        for (int i = 0; i < timesPerThread; ++i) {
+                            EncryptedData encrypted = EncryptionHandler.encrypt(data, key,
+                                    KeyUsage.KDC_REP_TICKET);
+                            EncryptionHandler.decrypt(encrypted, key, KeyUsage.KDC_REP_TICKET);
+                        }
+                    } catch (KrbException e) {
+                        throw new RuntimeException(e);
+                    }
+                    allocated.addAndGet(threadBean.getThreadAllocatedBytes(threadId) - before);
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long took = System.nanoTime() - start;
+
+        int done = timesPerThread * threads;
+        System.out.println(eType.getName() + " encrypt+decrypt by " + threads +
+                " threads ops/sec:" + done * 1000000000L / took +
+                ", bytes allocated per op:" + allocated.get() / done);
+    }
+}
@@ -0,0 +1,96 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.haox.event.AbstractEventHandler;
+import org.apache.haox.event.Event;
+import org.apache.haox.event.EventHub;
+import org.apache.haox.event.EventType;
+import org.apache.haox.event.ExecutionConfig;
+import org.apache.haox.event.ExecutionMode;
+import org.apache.haox.event.RejectionPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures events dispatched per second by the EventHub to inline handlers,
+ * one by one and in batches, so only the dispatching is counted.
+ */
+public class EventDispatchPerfTest {
+
+    private enum PerfEventType implements EventType {
+        A, B, C, D, E, F, G, H
+    }
+
+    private static long handled;
+
+    public static void main(String[] args) {
+        EventHub eventHub = new EventHub();
+        ExecutionConfig inline = new ExecutionConfig(
+                ExecutionMode.IO_THREAD, 1, -1, RejectionPolicy.REJECT);
+        for (final PerfEventType eventType : PerfEventType.values()) {
+            eventHub.register(new AbstractEventHandler() {
+                @Override
+                protected void doHandle(Event event) {
+                    handled++;
+                }
+
+                @Override
+                public EventType[] getInterestedEvents() {
+                    return new EventType[] { eventType };
+                }
+            }, inline);
+        }
+        eventHub.start();
+
+        Event[] events = new Event[1024];
+        for (int i = 0; i < events.length; i++) {
+            // Runs of the same type, as read in a batch from a channel
+            events[i] = new Event(PerfEventType.values()[(i / 4) % 8]);
+        }
+
+        int times = 20000000;
+        for (int i = 0; i < 2; i++) { // warm up in the first round
+            perfDispatch(eventHub, events, times);
+            perfBatchDispatch(eventHub, events, times, 16);
+        }
+        eventHub.stop();
+    }
+
+    private static void perfDispatch(EventHub eventHub, Event[] events, int times) {
+        handled = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < times; i++) {
+            eventHub.dispatch(events[i & (events.length - 1)]);
+        }
+        long end = System.currentTimeMillis();
+        report("dispatch", times, end - start);
+    }
+
+    private static void perfBatchDispatch(EventHub eventHub, Event[] events,
+                                          int times, int batchSize) {
+        List<List<Event>> batches = new ArrayList<List<Event>>();
+        for (int i = 0; i < events.length; i += batchSize) {
+            List<Event> batch = new ArrayList<Event>(batchSize);
+            for (int j = i; j < i + batchSize; j++) {
+                batch.add(events[j]);
+            }
+            batches.add(batch);
+        }
+
+        handled = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < times / batchSize; i++) {
+            eventHub.dispatch(batches.get(i % batches.size()));
+        }
+        long end = System.currentTimeMillis();
+        report("dispatch batch of " + batchSize, times / batchSize * batchSize, end - start);
+    }
+
+    private static void report(String name, long events, long took) {
+        if (handled != events) {
+            throw new RuntimeException("Events lost: " + handled + "/" + events);
+        }
+        System.out.println(name + " takes:" + took +
+                ", events per second:" + events * 1000 / Math.max(took, 1));
+    }
+}
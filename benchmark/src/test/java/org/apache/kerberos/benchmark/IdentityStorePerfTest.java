@@ -0,0 +1,71 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerberos.kerb.identity.backend.SimpleIdentityBackend;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Measures loading of the identity store filled with 2M principals, and
+ * lookups in it, with the index as saved and as rebuilt from the log.
+ */
+public class IdentityStorePerfTest {
+
+    private static final int PRINCIPALS = 2000000;
+    private static final int LOOKUPS = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        File dir = File.createTempFile("identity-perf", "");
+        dir.delete();
+        dir.mkdirs();
+        File identityFile = new File(dir, "identities.dat");
+        File indexFile = new File(identityFile.getPath() + ".idx");
+
+        long start = System.nanoTime();
+        SimpleIdentityBackend backend = new SimpleIdentityBackend(identityFile);
+        byte[] keyData = new byte[16];
+        for (int i = 0; i < PRINCIPALS; i++) {
+            KrbIdentity identity = new KrbIdentity("user" + i + "@EXAMPLE.COM");
+            identity.addKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96, keyData, 1));
+            backend.addIdentity(identity);
+        }
+        backend.close();
+        System.out.println("filled " + PRINCIPALS + " in " +
+                (System.nanoTime() - start) / 1000000 + "ms, " +
+                identityFile.length() / (1024 * 1024) + "MB");
+
+        for (int i = 0; i < 3; i++) {
+            perfLoad("saved index", identityFile);
+        }
+        indexFile.delete();
+        perfLoad("rebuilt index", identityFile);
+
+        identityFile.delete();
+        indexFile.delete();
+        dir.delete();
+    }
+
+    private static void perfLoad(String name, File identityFile) {
+        long start = System.nanoTime();
+        SimpleIdentityBackend backend = new SimpleIdentityBackend(identityFile);
+        backend.load();
+        long loadTook = System.nanoTime() - start;
+
+        Random random = new Random(1);
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            String principal = "user" + random.nextInt(PRINCIPALS) + "@EXAMPLE.COM";
+            if (backend.getIdentity(principal) == null) {
+                throw new RuntimeException("Missing " + principal);
+            }
+        }
+        long lookupTook = System.nanoTime() - start;
+        backend.close();
+
+        System.out.println(name + ", load ms:" + loadTook / 1000000 +
+                ", lookup ns/op:" + lookupTook / LOOKUPS);
+    }
+}
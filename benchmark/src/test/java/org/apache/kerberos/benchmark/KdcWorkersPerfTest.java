@@ -0,0 +1,163 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.haox.event.ExecutionMode;
+import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.codec.KrbCodec;
+import org.apache.kerberos.kerb.common.EncryptionUtil;
+import org.apache.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerberos.kerb.server.KdcConfigKey;
+import org.apache.kerberos.kerb.server.SimpleKdcServer;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.kerberos.kerb.spec.common.KrbMessage;
+import org.apache.kerberos.kerb.spec.common.KrbMessageType;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.apache.kerberos.kerb.spec.kdc.AsReq;
+import org.apache.kerberos.kerb.spec.kdc.KdcOptions;
+import org.apache.kerberos.kerb.spec.kdc.KdcReqBody;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures AS-REQ throughput over loopback UDP with the KDC requests
+ * processed by 1, 4, 16 and 64 workers in each execution mode.
+ */
+public class KdcWorkersPerfTest {
+
+    private static final String HOST = "127.0.0.1";
+    private static final String REALM = "EXAMPLE.COM";
+    private static final String CLIENT = "user@" + REALM;
+    private static final int CLIENT_TIMEOUT = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = 64;
+        int rounds = 100;
+        short port = 8301;
+
+        perfKdc(port++, ExecutionMode.FIXED_POOL, 4, clients, rounds); // warm up
+        for (ExecutionMode mode : new ExecutionMode[] { ExecutionMode.FIXED_POOL,
+                ExecutionMode.WORK_STEALING, ExecutionMode.VIRTUAL_THREADS }) {
+            for (int workers : new int[] { 1, 4, 16, 64 }) {
+                perfKdc(port++, mode, workers, clients, rounds);
+            }
+        }
+        perfKdc(port, ExecutionMode.IO_THREAD, 1, clients, rounds);
+    }
+
+    private static void perfKdc(short port, ExecutionMode mode, int workers,
+                                int clients, final int rounds) throws Exception {
+        File workDir = new File(System.getProperty("java.io.tmpdir"),
+                "kdc-perf-" + port);
+        workDir.mkdirs();
+        Properties conf = new Properties();
+        conf.setProperty(KdcConfigKey.WORK_DIR.getPropertyKey(), workDir.getPath());
+        conf.setProperty(KdcConfigKey.KDC_REALM.getPropertyKey(), REALM);
+        conf.setProperty(KdcConfigKey.PREAUTH_REQUIRED.getPropertyKey(), "false");
+        conf.setProperty(KdcConfigKey.KDC_ALLOW_TCP.getPropertyKey(), "false");
+        conf.setProperty(KdcConfigKey.KDC_EXECUTION_MODE.getPropertyKey(), mode.name());
+        conf.setProperty(KdcConfigKey.KDC_WORKERS.getPropertyKey(), String.valueOf(workers));
+
+        SimpleKdcServer kdcServer = new SimpleKdcServer();
+        kdcServer.getConfig().getConf().addPropertiesConfig(conf);
+        kdcServer.setKdcHost(HOST);
+        kdcServer.setKdcPort(port);
+        kdcServer.init();
+        createPrincipal(kdcServer, "krbtgt@" + REALM);
+        createPrincipal(kdcServer, CLIENT);
+        kdcServer.start();
+        Thread.sleep(100); // binding is done asynchronously
+
+        final byte[] request = KrbCodec.encode(makeAsReq());
+        final InetSocketAddress kdcAddress = new InetSocketAddress(HOST, port);
+        final CountDownLatch done = new CountDownLatch(clients);
+        final AtomicLong replied = new AtomicLong(0);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < clients; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        replied.addAndGet(runClient(kdcAddress, request, rounds));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        long end = System.currentTimeMillis();
+
+        kdcServer.stop();
+
+        long took = end - start;
+        System.out.println(mode + " with " + workers + " workers takes:" + took +
+                ", AS-REPs:" + replied.get() + "/" + (clients * rounds) +
+                ", per second:" + (replied.get() * 1000 / Math.max(took, 1)));
+    }
+
+    private static long runClient(InetSocketAddress kdcAddress, byte[] request,
+                                  int rounds) throws IOException {
+        DatagramSocket socket = new DatagramSocket();
+        socket.setSoTimeout(CLIENT_TIMEOUT);
+        socket.connect(kdcAddress);
+        byte[] replyBytes = new byte[65536];
+        long replied = 0;
+        try {
+            for (int i = 0; i < rounds; i++) {
+                socket.send(new DatagramPacket(request, request.length));
+                DatagramPacket replyPacket = new DatagramPacket(replyBytes, replyBytes.length);
+                try {
+                    socket.receive(replyPacket);
+                } catch (SocketTimeoutException e) {
+                    continue; // lost, go on with the next
+                }
+                KrbMessage reply = KrbCodec.decodeMessage(
+                        ByteBuffer.wrap(replyBytes, 0, replyPacket.getLength()));
+                if (reply.getMsgType() == KrbMessageType.AS_REP) {
+                    replied++;
+                }
+            }
+        } finally {
+            socket.close();
+        }
+        return replied;
+    }
+
+    private static void createPrincipal(SimpleKdcServer kdcServer,
+                                        String principal) throws KrbException {
+        KrbIdentity identity = new KrbIdentity(principal);
+        identity.addKeys(EncryptionUtil.generateKeys(principal, "123456",
+                kdcServer.getConfig().getEncryptionTypes()));
+        kdcServer.getIdentityService().addIdentity(identity);
+    }
+
+    private static AsReq makeAsReq() {
+        KdcReqBody body = new KdcReqBody();
+        long now = System.currentTimeMillis();
+        body.setFrom(new KerberosTime(now));
+        body.setTill(new KerberosTime(now + 8 * 3600 * 1000L));
+        body.setCname(new PrincipalName(CLIENT));
+        body.setRealm(REALM);
+        body.setSname(new PrincipalName("krbtgt@" + REALM));
+        body.setNonce(12345);
+        body.setKdcOptions(new KdcOptions());
+        body.setEtypes(Arrays.asList(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+
+        AsReq asReq = new AsReq();
+        asReq.setReqBody(body);
+        return asReq;
+    }
+}
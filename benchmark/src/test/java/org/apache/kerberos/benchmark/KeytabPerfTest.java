@@ -0,0 +1,123 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.kerberos.kerb.keytab.Keytab;
+import org.apache.kerberos.kerb.keytab.KeytabEntry;
+import org.apache.kerberos.kerb.keytab.KeytabOutputStream;
+import org.apache.kerberos.kerb.keytab.MappedKeytab;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Compares loading, reloading after a key rotation and key lookups of a
+ * keytab with thousands of entries, by Keytab and MappedKeytab.
+ */
+public class KeytabPerfTest {
+
+    private static final int PRINCIPALS = 2000;
+    private static final int KVNOS = 3;
+    private static final int LOOKUPS = 1000000;
+
+    private static final EncryptionType[] KEY_TYPES = new EncryptionType[] {
+            EncryptionType.AES128_CTS_HMAC_SHA1_96,
+            EncryptionType.AES256_CTS_HMAC_SHA1_96
+    };
+
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("perf", ".keytab");
+        file.deleteOnExit();
+
+        Keytab keytab = new Keytab();
+        for (int i = 0; i < PRINCIPALS; i++) {
+            for (int kvno = 1; kvno <= KVNOS; kvno++) {
+                addEntries(keytab, i, kvno);
+            }
+        }
+        keytab.store(file);
+        System.out.println("entries:" + PRINCIPALS * KVNOS * KEY_TYPES.length +
+                ", bytes:" + file.length());
+
+        PrincipalName[] principals = new PrincipalName[PRINCIPALS];
+        for (int i = 0; i < PRINCIPALS; i++) {
+            principals[i] = new PrincipalName(principalOf(i));
+        }
+
+        MappedKeytab mapped = null;
+        for (int round = 0; round < 3; round++) { // warm up in the first rounds
+            long start = System.nanoTime();
+            keytab = new Keytab();
+            keytab.load(file);
+            System.out.println("Keytab load us:" + (System.nanoTime() - start) / 1000);
+
+            start = System.nanoTime();
+            mapped = new MappedKeytab(file);
+            System.out.println("MappedKeytab load us:" + (System.nanoTime() - start) / 1000);
+
+            perfLookups("Keytab", keytab, null, principals);
+            perfLookups("MappedKeytab", null, mapped, principals);
+        }
+
+        // Rotate the keys of 100 principals, adding a new kvno at the end
+        Keytab rotated = new Keytab();
+        for (int i = 0; i < 100; i++) {
+            addEntries(rotated, i, KVNOS + 1);
+        }
+        KeytabOutputStream kos = new KeytabOutputStream(new FileOutputStream(file, true));
+        for (PrincipalName principal : rotated.getPrincipals()) {
+            for (KeytabEntry entry : rotated.getKeytabEntries(principal)) {
+                entry.store(kos);
+            }
+        }
+        kos.close();
+        file.setLastModified(file.lastModified() + 2000);
+
+        long start = System.nanoTime();
+        keytab = new Keytab();
+        keytab.load(file);
+        System.out.println("Keytab reload us:" + (System.nanoTime() - start) / 1000);
+
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            mapped.refresh();
+            System.out.println("MappedKeytab refresh us:" + (System.nanoTime() - start) / 1000 +
+                    ", entries read:" + mapped.getLastReadCount());
+            file.setLastModified(file.lastModified() + 2000); // touched only
+        }
+    }
+
+    private static void perfLookups(String name, Keytab keytab, MappedKeytab mapped,
+                                    PrincipalName[] principals) {
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            PrincipalName principal = principals[i % principals.length];
+            EncryptionType keyType = KEY_TYPES[i & 1];
+            EncryptionKey key = keytab != null ? keytab.getKey(principal, keyType) :
+                    mapped.getKey(principal, keyType);
+            if (key != null) {
+                found++;
+            }
+        }
+        long took = System.nanoTime() - start;
+        System.out.println(name + " lookups:" + found + ", ns/op:" + took / LOOKUPS);
+    }
+
+    private static String principalOf(int i) {
+        return "host/node" + i + ".example.com@EXAMPLE.COM";
+    }
+
+    private static void addEntries(Keytab keytab, int i, int kvno) throws IOException {
+        for (EncryptionType keyType : KEY_TYPES) {
+            byte[] keyData = new byte[keyType == EncryptionType.AES128_CTS_HMAC_SHA1_96 ? 16 : 32];
+            keyData[0] = (byte) kvno;
+            keytab.addEntry(new KeytabEntry(new PrincipalName(principalOf(i)),
+                    new KerberosTime(1400000000000L), kvno,
+                    new EncryptionKey(keyType, keyData, kvno)));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.client.KrbClient;
+import org.apache.kerberos.kerb.client.KrbFuture;
+import org.apache.kerberos.kerb.client.TicketCache;
+import org.apache.kerberos.kerb.common.EncryptionUtil;
+import org.apache.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerberos.kerb.server.KdcConfigKey;
+import org.apache.kerberos.kerb.server.SimpleKdcServer;
+import org.apache.kerberos.kerb.spec.ticket.ServiceTicket;
+import org.apache.kerberos.kerb.spec.ticket.TgtTicket;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures service tickets per second a KrbClient gets over its one TCP
+ * connection, one request at a time and with many in flight, and through a
+ * TicketCache when asked again for the same tickets.
+ */
+public class KrbClientPerfTest {
+
+    private static final String HOST = "127.0.0.1";
+    private static final String REALM = "EXAMPLE.COM";
+    private static final String CLIENT = "user@" + REALM;
+    private static final String PASSWORD = "123456";
+    private static final int SERVERS = 100;
+    private static final int REQUESTS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        short port = 8401;
+        SimpleKdcServer kdcServer = startKdc(port);
+
+        KrbClient client = new KrbClient(HOST, port);
+        client.setKdcRealm(REALM);
+        client.setTimeout(30);
+        client.init();
+        TgtTicket tgt = client.requestTgtTicket(CLIENT, PASSWORD, null);
+
+        for (int round = 0; round < 3; round++) { // warm up in the first round
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < REQUESTS / 10; i++) {
+                client.requestServiceTicket(tgt, serverOf(i), null);
+            }
+            long took = System.currentTimeMillis() - start;
+            System.out.println("blocking tickets:" + REQUESTS / 10 + ", takes:" + took +
+                    ", per second:" + (REQUESTS / 10) * 1000L / Math.max(took, 1));
+
+            for (int inFlight : new int[] { 10, 100, 1000 }) {
+                start = System.currentTimeMillis();
+                perfAsync(client, tgt, inFlight);
+                took = System.currentTimeMillis() - start;
+                System.out.println("async in flight:" + inFlight + ", tickets:" + REQUESTS +
+                        ", takes:" + took + ", per second:" + REQUESTS * 1000L / Math.max(took, 1));
+            }
+
+            TicketCache cache = new TicketCache(client);
+            start = System.currentTimeMillis();
+            for (int i = 0; i < REQUESTS * 100; i++) {
+                cache.getServiceTicket(tgt, serverOf(i));
+            }
+            took = System.currentTimeMillis() - start;
+            System.out.println("cached tickets:" + REQUESTS * 100 + ", takes:" + took +
+                    ", per second:" + REQUESTS * 100 * 1000L / Math.max(took, 1) + ", " + cache);
+            cache.clear();
+        }
+
+        client.stop();
+        kdcServer.stop();
+    }
+
+    private static void perfAsync(KrbClient client, TgtTicket tgt,
+                                  int inFlight) throws KrbException {
+        List<KrbFuture<ServiceTicket>> futures = new ArrayList<KrbFuture<ServiceTicket>>(inFlight);
+        for (int i = 0; i < REQUESTS; i++) {
+            if (futures.size() == inFlight) {
+                futures.remove(0).await();
+            }
+            futures.add(client.requestServiceTicketAsync(tgt, serverOf(i), null));
+        }
+        for (KrbFuture<ServiceTicket> future : futures) {
+            future.await();
+        }
+    }
+
+    private static SimpleKdcServer startKdc(short port) throws Exception {
+        File workDir = new File(System.getProperty("java.io.tmpdir"),
+                "kdc-perf-" + port);
+        workDir.mkdirs();
+        Properties conf = new Properties();
+        conf.setProperty(KdcConfigKey.WORK_DIR.getPropertyKey(), workDir.getPath());
+        conf.setProperty(KdcConfigKey.KDC_REALM.getPropertyKey(), REALM);
+        conf.setProperty(KdcConfigKey.PREAUTH_REQUIRED.getPropertyKey(), "false");
+
+        SimpleKdcServer kdcServer = new SimpleKdcServer();
+        kdcServer.getConfig().getConf().addPropertiesConfig(conf);
+        kdcServer.setKdcHost(HOST);
+        kdcServer.setKdcPort(port);
+        kdcServer.init();
+        createPrincipal(kdcServer, "krbtgt@" + REALM);
+        createPrincipal(kdcServer, CLIENT);
+        for (int i = 0; i < SERVERS; i++) {
+            createPrincipal(kdcServer, serverOf(i));
+        }
+        kdcServer.start();
+        Thread.sleep(100); // binding is done asynchronously
+        return kdcServer;
+    }
+
+    private static String serverOf(int i) {
+        return "service" + i % SERVERS + "/localhost@" + REALM;
+    }
+
+    private static void createPrincipal(SimpleKdcServer kdcServer,
+                                        String principal) throws KrbException {
+        KrbIdentity identity = new KrbIdentity(principal);
+        identity.addKeys(EncryptionUtil.generateKeys(principal, PASSWORD,
+                kdcServer.getConfig().getEncryptionTypes()));
+        kdcServer.getIdentityService().addIdentity(identity);
+    }
+}
@@ -5,6 +5,7 @@ import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.asn1.ber.Asn1Decoder;
 import org.apache.directory.shared.kerberos.codec.apReq.ApReqContainer;
 import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.codec.KrbCodec;
 import org.apache.kerberos.kerb.spec.ap.ApReq;
 
 import java.io.IOException;
@@ -21,6 +22,28 @@ public class KrbCodecPerfTest {
         int times = 1000000;
         perfApacheDS(ByteBuffer.wrap(bytes), times);
         perfHaox(ByteBuffer.wrap(bytes), times);
+        perfHaoxMessage(ByteBuffer.wrap(bytes), times, false);
+        perfHaoxMessage(ByteBuffer.wrap(bytes), times, true);
+    }
+
+    private static void perfHaoxMessage(ByteBuffer apreqToken, int times,
+                                        boolean zeroCopy) throws IOException {
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < times; ++i) {
+            ApReq apReq = (ApReq) KrbCodec.decodeMessage(apreqToken, zeroCopy);
+            String serverName = apReq.getTicket().getSname().toString();
+            byte[] cipher = apReq.getTicket().getEncryptedEncPart().getCipher();
+            if (cipher == null) {
+                throw new RuntimeException("Decoding failed");
+            }
+
+            apreqToken.rewind();
+        }
+
+        long end = System.currentTimeMillis();
+        System.out.println("HaoxCodec " + (zeroCopy ? "zero copy " : "") +
+                "takes:" + (end - start));
     }
 
     private static void perfHaox(ByteBuffer apreqToken, int times) throws KrbException, IOException {
@@ -0,0 +1,185 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schemaextractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schemaloader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schemamanager.impl.DefaultSchemaManager;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.core.DefaultDirectoryService;
+import org.apache.directory.server.core.api.CacheService;
+import org.apache.directory.server.core.api.InstanceLayout;
+import org.apache.directory.server.core.api.LdapCoreSessionConnection;
+import org.apache.directory.server.core.api.schema.SchemaPartition;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.core.partition.ldif.LdifPartition;
+import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
+import org.apache.haox.config.Conf;
+import org.apache.kerberos.kdc.identitybackend.LdapConfigKey;
+import org.apache.kerberos.kdc.identitybackend.LdapConnectionFactory;
+import org.apache.kerberos.kdc.identitybackend.LdapIdentityBackend;
+import org.apache.kerberos.kerb.identity.CachedIdentityService;
+import org.apache.kerberos.kerb.identity.IdentityService;
+import org.apache.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures lookups of the LDAP identity backend, against an in-process
+ * directory service, so without network round trips, and with the
+ * identity cache in front.
+ */
+public class LdapIdentityPerfTest {
+
+    private static final String BASE_DN = "ou=users,dc=example,dc=com";
+    private static final int PRINCIPALS = 10000;
+    private static final int LOOKUPS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        // Not configured, log4j formats all the debug messages
+        Logger.getRootLogger().setLevel(Level.WARN);
+
+        File workDir = File.createTempFile("ldap-perf", "");
+        workDir.delete();
+        final DefaultDirectoryService service = startDirectoryService(workDir);
+
+        Properties properties = new Properties();
+        properties.setProperty(LdapConfigKey.BASE_DN.getPropertyKey(), BASE_DN);
+        Conf conf = new Conf();
+        conf.addPropertiesConfig(properties);
+        LdapIdentityBackend backend = new LdapIdentityBackend(conf, new LdapConnectionFactory() {
+            @Override
+            public LdapConnection newConnection() throws LdapException {
+                return new LdapCoreSessionConnection(service);
+            }
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < PRINCIPALS; i++) {
+            KrbIdentity identity = new KrbIdentity("user" + i + "@EXAMPLE.COM");
+            identity.addKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                    new byte[16], 1));
+            backend.addIdentity(identity);
+        }
+        System.out.println("added " + PRINCIPALS + ", us/op:" +
+                (System.nanoTime() - start) / 1000 / PRINCIPALS);
+
+        start = System.nanoTime();
+        int count = 0;
+        for (KrbIdentity identity : backend.identities()) {
+            count++;
+        }
+        System.out.println("iterated " + count + " in " +
+                (System.nanoTime() - start) / 1000000 + "ms");
+
+        for (int i = 0; i < 3; i++) { // warm up in the first rounds
+            for (int threads : new int[] {1, 4, 16}) {
+                perfLookups("ldap", backend, threads);
+            }
+        }
+        CachedIdentityService cached = new CachedIdentityService(backend, PRINCIPALS * 2, 300, 30);
+        for (int i = 0; i < 2; i++) {
+            for (int threads : new int[] {1, 4, 16}) {
+                perfLookups("cached", cached, threads);
+            }
+        }
+        System.out.println(cached);
+
+        backend.close();
+        service.shutdown();
+    }
+
+    private static void perfLookups(String name, final IdentityService identityService,
+                                    int threads) throws Exception {
+        final int perThread = LOOKUPS / threads;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long[] latencies = new long[threads];
+
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(index);
+                    long took = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        String principal = "user" + random.nextInt(PRINCIPALS) + "@EXAMPLE.COM";
+                        long begin = System.nanoTime();
+                        if (identityService.getIdentity(principal) == null) {
+                            throw new RuntimeException("Missing " + principal);
+                        }
+                        took += System.nanoTime() - begin;
+                    }
+                    latencies[index] = took;
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        long took = System.nanoTime() - start;
+
+        long latency = 0;
+        for (long l : latencies) {
+            latency += l;
+        }
+        int total = perThread * threads;
+        System.out.println(name + " threads:" + threads + ", lookups/s:" +
+                total * 1000000000L / took + ", latency us:" + latency / 1000 / total);
+    }
+
+    private static DefaultDirectoryService startDirectoryService(File workDir) throws Exception {
+        DefaultDirectoryService service = new DefaultDirectoryService();
+        service.setInstanceLayout(new InstanceLayout(workDir));
+        CacheService cacheService = new CacheService();
+        cacheService.initialize(service.getInstanceLayout());
+        service.setCacheService(cacheService);
+
+        File partitionsDir = service.getInstanceLayout().getPartitionsDirectory();
+        new DefaultSchemaLdifExtractor(partitionsDir).extractOrCopy();
+        SchemaManager schemaManager = new DefaultSchemaManager(
+                new LdifSchemaLoader(new File(partitionsDir, "schema")));
+        schemaManager.loadAllEnabled();
+        schemaManager.enable("krb5kdc");
+        service.setSchemaManager(schemaManager);
+
+        LdifPartition schemaLdifPartition = new LdifPartition(schemaManager);
+        schemaLdifPartition.setPartitionPath(new File(partitionsDir, "schema").toURI());
+        SchemaPartition schemaPartition = new SchemaPartition(schemaManager);
+        schemaPartition.setWrappedPartition(schemaLdifPartition);
+        service.setSchemaPartition(schemaPartition);
+
+        AvlPartition systemPartition = new AvlPartition(schemaManager);
+        systemPartition.setId("system");
+        systemPartition.setSuffixDn(new Dn(schemaManager, "ou=system"));
+        service.setSystemPartition(systemPartition);
+
+        AvlPartition partition = new AvlPartition(schemaManager);
+        partition.setId("example");
+        partition.setSuffixDn(new Dn(schemaManager, "dc=example,dc=com"));
+        partition.addIndex(new AvlIndex<String, Entry>("krb5PrincipalName"));
+        service.addPartition(partition);
+
+        service.getChangeLog().setEnabled(false);
+        service.setShutdownHookEnabled(false);
+        service.startup();
+
+        LdapConnection connection = new LdapCoreSessionConnection(service);
+        connection.add(new DefaultEntry(schemaManager, "dc=example,dc=com",
+                "objectClass: top", "objectClass: domain", "dc: example"));
+        connection.add(new DefaultEntry(schemaManager, BASE_DN,
+                "objectClass: top", "objectClass: organizationalUnit", "ou: users"));
+        connection.close();
+        return service;
+    }
+}
@@ -0,0 +1,64 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.kerberos.kerb.server.replay.CacheService;
+import org.apache.kerberos.kerb.server.replay.RequestRecord;
+import org.apache.kerberos.kerb.server.replay.SimpleCacheService;
+import org.apache.kerberos.kerb.server.replay.TimeWindowCacheService;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares checkAndCache of the replay caches when filled with 1M requests.
+ */
+public class ReplayCachePerfTest {
+
+    private static final int ENTRIES = 1000000;
+    private static final long SKEW = 5 * 60 * 1000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < 3; i++) { // warm up in the first rounds
+            perfCacheService("SimpleCacheService", new SimpleCacheService(), 1);
+            perfCacheService("TimeWindowCacheService",
+                    new TimeWindowCacheService(SKEW, ENTRIES * 2), 1);
+            perfCacheService("SimpleCacheService", new SimpleCacheService(), threads);
+            perfCacheService("TimeWindowCacheService",
+                    new TimeWindowCacheService(SKEW, ENTRIES * 2), threads);
+        }
+    }
+
+    private static void perfCacheService(String name, final CacheService cacheService,
+                                         int threads) throws Exception {
+        final String[] clients = new String[1000];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = "user" + i + "@EXAMPLE.COM";
+        }
+        final String server = "krbtgt/EXAMPLE.COM@EXAMPLE.COM";
+        final long now = System.currentTimeMillis();
+        final int perThread = ENTRIES / threads;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int base = t * perThread;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = base; i < base + perThread; i++) {
+                        // Spread over the skew, then check it again as a replay
+                        RequestRecord request = new RequestRecord(clients[i % clients.length],
+                                server, now - (i % SKEW), i);
+                        cacheService.checkAndCache(request);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        long took = System.nanoTime() - start;
+
+        System.out.println(name + " threads:" + threads + ", entries:" + perThread * threads +
+                ", ns/op:" + took / (perThread * threads));
+    }
+}
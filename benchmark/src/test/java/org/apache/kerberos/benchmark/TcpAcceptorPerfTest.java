@@ -0,0 +1,129 @@
+package org.apache.kerberos.benchmark;
+
+import org.apache.haox.event.EventHub;
+import org.apache.haox.transport.MessageHandler;
+import org.apache.haox.transport.event.MessageEvent;
+import org.apache.haox.transport.tcp.DecodingCallback;
+import org.apache.haox.transport.tcp.StreamingDecoder;
+import org.apache.haox.transport.tcp.TcpAcceptor;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares echo throughput of the single selector loop against the
+ * acceptor plus worker selectors mode.
+ */
+public class TcpAcceptorPerfTest {
+
+    private static final String HOST = "127.0.0.1";
+    private static final int MESSAGE_SIZE = 1024;
+    private static final int CLIENT_TIMEOUT = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = 32;
+        int rounds = 2000;
+
+        perfTcpAcceptor((short) 8291, 0, clients, rounds);
+        perfTcpAcceptor((short) 8292, Runtime.getRuntime().availableProcessors(), clients, rounds);
+    }
+
+    private static void perfTcpAcceptor(short port, int workers,
+                                        int clients, final int rounds) throws Exception {
+        EventHub eventHub = new EventHub();
+        eventHub.register(new MessageHandler() {
+            @Override
+            protected void handleMessage(MessageEvent event) {
+                event.getTransport().sendMessage(event.getMessage());
+            }
+        });
+
+        TcpAcceptor acceptor = new TcpAcceptor(createStreamingDecoder(), workers);
+        eventHub.register(acceptor);
+        eventHub.start();
+        acceptor.listen(HOST, port);
+        Thread.sleep(100);
+
+        final InetSocketAddress serverAddress = new InetSocketAddress(HOST, port);
+        final CountDownLatch done = new CountDownLatch(clients);
+        final AtomicLong messages = new AtomicLong(0);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < clients; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        messages.addAndGet(runClient(serverAddress, rounds));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        long end = System.currentTimeMillis();
+
+        eventHub.stop();
+
+        long took = end - start;
+        System.out.println("TcpAcceptor with " + workers + " workers takes:" + took +
+                ", messages:" + messages.get() + "/" + (clients * rounds) +
+                ", messages/s:" + (messages.get() * 1000 / Math.max(took, 1)));
+    }
+
+    private static int runClient(InetSocketAddress serverAddress, int rounds) throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(CLIENT_TIMEOUT);
+        socket.connect(serverAddress);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] message = new byte[MESSAGE_SIZE];
+
+        int done = 0;
+        try {
+            for (int i = 0; i < rounds; ++i) {
+                out.writeInt(MESSAGE_SIZE);
+                out.write(message);
+                out.flush();
+
+                in.readInt();
+                in.readFully(message);
+                done++;
+            }
+        } catch (SocketTimeoutException e) {
+            // Reply lost, count what's done
+        } finally {
+            socket.close();
+        }
+        return done;
+    }
+
+    private static StreamingDecoder createStreamingDecoder() {
+        return new StreamingDecoder() {
+            @Override
+            public void decode(ByteBuffer streamingBuffer, DecodingCallback callback) {
+                if (streamingBuffer.remaining() >= 4) {
+                    int len = streamingBuffer.getInt();
+                    if (streamingBuffer.remaining() >= len) {
+                        callback.onMessageComplete(len + 4);
+                    } else {
+                        callback.onMoreDataNeeded(len + 4);
+                    }
+                } else {
+                    callback.onMoreDataNeeded();
+                }
+            }
+        };
+    }
+}
@@ -1,11 +1,17 @@
 package org.apache.haox.asn1;
 
-import org.apache.haox.asn1.type.Asn1Collection;
-import org.apache.haox.asn1.type.Asn1Simple;
-import org.apache.haox.asn1.type.Asn1Type;
+import org.apache.haox.asn1.type.*;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class Asn1Factory {
 
+    private static final ConcurrentMap<Class<?>, Asn1TypeFactory<?>> factories =
+            new ConcurrentHashMap<Class<?>, Asn1TypeFactory<?>>();
+
     public static Asn1Type create(int tagNo) {
         UniversalTag tagNoEnum = UniversalTag.fromValue(tagNo);
         if (tagNoEnum != UniversalTag.UNKNOWN) {
@@ -22,4 +28,58 @@ public class Asn1Factory {
         }
         throw new IllegalArgumentException("Unexpected tag " + tagNo);
     }
+
+    public static <T extends Asn1Type> T create(Class<T> type) {
+        return factoryFor(type).create();
+    }
+
+    /**
+     * Get the factory of a type, to be kept by the caller and used for
+     * every value of the type, e.g. by Asn1FieldInfo. It's made once per
+     * type, over the no-arg constructor looked up once.
+     */
+    public static <T extends Asn1Type> Asn1TypeFactory<T> factoryFor(Class<T> type) {
+        Asn1TypeFactory<T> factory = (Asn1TypeFactory<T>) factories.get(type);
+        if (factory == null) {
+            factory = new ConstructorFactory<T>(type);
+            Asn1TypeFactory<T> existing =
+                    (Asn1TypeFactory<T>) factories.putIfAbsent(type, factory);
+            if (existing != null) {
+                factory = existing;
+            }
+        }
+        return factory;
+    }
+
+    private static class ConstructorFactory<T extends Asn1Type> implements Asn1TypeFactory<T> {
+        private final Class<T> type;
+        private final Constructor<T> constructor;
+
+        ConstructorFactory(Class<T> type) {
+            this.type = type;
+            Constructor<T> ctor = null;
+            try {
+                ctor = type.getDeclaredConstructor();
+                ctor.setAccessible(true);
+            } catch (Exception e) {
+                ctor = null; // failed when creating, as the type may be unused
+            }
+            this.constructor = ctor;
+        }
+
+        @Override
+        public T create() {
+            if (constructor == null) {
+                throw new IllegalArgumentException("No default constructor in type: "
+                        + type.getName());
+            }
+            try {
+                return constructor.newInstance();
+            } catch (InvocationTargetException e) {
+                throw new RuntimeException("Failed to create " + type.getName(), e.getCause());
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid type: " + type.getName(), e);
+            }
+        }
+    }
 }
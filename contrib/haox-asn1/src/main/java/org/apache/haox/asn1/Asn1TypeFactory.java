@@ -0,0 +1,11 @@
+package org.apache.haox.asn1;
+
+import org.apache.haox.asn1.type.Asn1Type;
+
+/**
+ * Creates empty values of an Asn1Type for decoding, see Asn1Factory.
+ */
+public interface Asn1TypeFactory<T extends Asn1Type> {
+
+    public T create();
+}
@@ -3,15 +3,30 @@ package org.apache.haox.asn1;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+/**
+ * A limited view of a byte buffer for decoding. Nested views share the
+ * same underlying buffer, each with its own position and end, so nesting
+ * allocates no buffer and copies nothing.
+ *
+ * In zero copy mode, octet strings and strings keep views of their values
+ * and only copy them out when asked for. It's only safe when the underlying
+ * buffer isn't reused while the decoded values are in use.
+ */
 public class LimitedByteBuffer {
     private final ByteBuffer byteBuffer;
-    private final int limit;
-    private int startOffset;
+    private final int startOffset;
+    private final int endOffset;
+    private int position;
+    // The buffer given by the user, its position follows reads as before
+    private final ByteBuffer source;
+    private boolean zeroCopy;
 
     public LimitedByteBuffer(byte[] bytes) {
         this.byteBuffer = ByteBuffer.wrap(bytes);
-        this.limit = bytes.length;
         this.startOffset = 0;
+        this.endOffset = bytes.length;
+        this.position = 0;
+        this.source = null;
     }
 
     public LimitedByteBuffer(ByteBuffer byteBuffer) {
@@ -20,36 +35,53 @@ public class LimitedByteBuffer {
 
     public LimitedByteBuffer(ByteBuffer byteBuffer, int limit) {
         this.byteBuffer = byteBuffer;
-        this.limit = limit;
         this.startOffset = byteBuffer.position();
+        this.endOffset = (int) Math.min((long) startOffset + limit, byteBuffer.limit());
+        this.position = startOffset;
+        this.source = byteBuffer;
     }
 
     public LimitedByteBuffer(LimitedByteBuffer other, int limit) {
         if (limit > other.hasLeft()) {
             throw new IllegalArgumentException("limit is too large, out of bound");
         }
-        this.byteBuffer = other.byteBuffer.duplicate();
-        this.limit = limit;
-        this.startOffset = byteBuffer.position();
+        this.byteBuffer = other.byteBuffer;
+        this.startOffset = other.position;
+        this.endOffset = startOffset + limit;
+        this.position = startOffset;
+        this.source = null;
+        this.zeroCopy = other.zeroCopy;
+    }
+
+    public boolean isZeroCopy() {
+        return zeroCopy;
+    }
+
+    /**
+     * Set zero copy mode, inherited by views nested in this one.
+     */
+    public void setZeroCopy(boolean zeroCopy) {
+        this.zeroCopy = zeroCopy;
     }
 
     public boolean available() {
-        return byteBuffer.hasRemaining() &&
-                byteBuffer.position() - startOffset < limit;
+        return position < endOffset;
     }
 
     public long hasRead() {
-        return byteBuffer.position() - startOffset;
+        return position - startOffset;
     }
     public long hasLeft() {
-        return limit - hasRead();
+        return endOffset - position;
     }
 
     public byte readByte() throws IOException {
         if (!available()) {
             throw new IOException("Buffer EOF");
         }
-        return byteBuffer.get();
+        byte b = byteBuffer.get(position);
+        advance(1);
+        return b;
     }
 
     public byte[] readAllLeftBytes() throws IOException {
@@ -58,8 +90,7 @@ public class LimitedByteBuffer {
 
     public void skip(int len) throws IOException {
         checkLen(len);
-        int newPos = byteBuffer.position() + len;
-        byteBuffer.position(newPos);
+        advance(len);
     }
 
     public byte[] readBytes(int len) throws IOException {
@@ -67,11 +98,29 @@ public class LimitedByteBuffer {
 
         byte[] bytes = new byte[len];
         if (len > 0) {
-            byteBuffer.get(bytes);
+            copyTo(bytes, len);
+            advance(len);
         }
         return bytes;
     }
 
+    /**
+     * Put all the left bytes into the buffer, without consuming them.
+     */
+    public void putLeftBytes(ByteBuffer buffer) {
+        int len = (int) hasLeft();
+        if (len <= 0) {
+            return;
+        }
+        if (byteBuffer.hasArray()) {
+            buffer.put(byteBuffer.array(), byteBuffer.arrayOffset() + position, len);
+        } else {
+            ByteBuffer view = byteBuffer.duplicate();
+            view.limit(position + len).position(position);
+            buffer.put(view);
+        }
+    }
+
     private void checkLen(int len) throws IOException {
         if (len < 0) {
             throw new IllegalArgumentException("Bad argument len: " + len);
@@ -97,6 +146,25 @@ public class LimitedByteBuffer {
             throw new IOException("Out of Buffer");
         }
 
-        byteBuffer.get(bytes);
+        copyTo(bytes, bytes.length);
+        advance(bytes.length);
+    }
+
+    private void copyTo(byte[] bytes, int len) {
+        if (byteBuffer.hasArray()) {
+            System.arraycopy(byteBuffer.array(), byteBuffer.arrayOffset() + position,
+                    bytes, 0, len);
+        } else {
+            ByteBuffer view = byteBuffer.duplicate();
+            view.position(position);
+            view.get(bytes, 0, len);
+        }
+    }
+
+    private void advance(int len) {
+        position += len;
+        if (source != null) {
+            source.position(position);
+        }
     }
 }
@@ -14,7 +14,10 @@ public abstract class AbstractAsn1Type<T> implements Asn1Type {
     private int tagNo = -1;
     private int tagFlags = -1;
     protected EncodingOption encodingOption = EncodingOption.UNKNOWN;
-    private int encodingLen = -1;
+    // Body length computed by the last encodingLength(), for encoding in
+    // the same pass without computing lengths of the children again. Reset
+    // to -1 by any setter, see lengthChanged()
+    private int bodyLen = -1;
     private T value;
 
     public AbstractAsn1Type(TagClass tagClass, int tagNo) {
@@ -46,6 +49,24 @@ public abstract class AbstractAsn1Type<T> implements Asn1Type {
 
     public void setValue(T value) {
         this.value = value;
+        lengthChanged();
+    }
+
+    /**
+     * Drop the body length computed, to be called whenever the value is
+     * changed. The lengths of the enclosing values aren't reset, but
+     * isLengthComputed() of them finds it.
+     */
+    protected void lengthChanged() {
+        bodyLen = -1;
+    }
+
+    /**
+     * Tell if the lengths computed by the last encodingLength() still hold
+     * for this value and all its components, none set since.
+     */
+    public boolean isLengthComputed() {
+        return bodyLen != -1;
     }
 
     protected TagClass tagClass() {
@@ -68,15 +89,37 @@ public abstract class AbstractAsn1Type<T> implements Asn1Type {
     @Override
     public byte[] encode() {
         ByteBuffer byteBuffer = ByteBuffer.allocate(encodingLength());
-        encode(byteBuffer);
+        doEncode(byteBuffer);
         byteBuffer.flip();
         return byteBuffer.array();
     }
 
     @Override
     public void encode(ByteBuffer buffer) {
+        encodingLength();
+        doEncode(buffer);
+    }
+
+    /**
+     * Encode with the lengths computed by the encodingLength() call just
+     * before, as when it's called to size the buffer, not computing them
+     * again. They're computed again if any part is set in between, so the
+     * caller should check isLengthComputed() before sizing with them.
+     */
+    public void encodeComputed(ByteBuffer buffer) {
+        if (! isLengthComputed()) {
+            encodingLength();
+        }
+        doEncode(buffer);
+    }
+
+    /**
+     * Encode with the lengths computed by the last encodingLength() call,
+     * which is always done in the same encoding pass by the caller.
+     */
+    protected void doEncode(ByteBuffer buffer) {
         encodeTag(buffer, tagFlags(), tagNo());
-        encodeLength(buffer, encodingBodyLength());
+        encodeLength(buffer, bodyLen);
         encodeBody(buffer);
     }
 
@@ -102,13 +145,27 @@ public abstract class AbstractAsn1Type<T> implements Asn1Type {
         return tagFlags;
     }
 
+    /**
+     * Compute the length bottom up, each child once, and keep the lengths
+     * for encoding next. Always computed again as values may be changed.
+     */
     @Override
     public int encodingLength() {
-        if (encodingLen == -1) {
-            int bodyLen = encodingBodyLength();
-            encodingLen = lengthOfTagLength(tagNo()) + lengthOfBodyLength(bodyLen) + bodyLen;
-        }
-        return encodingLen;
+        computeBodyLength();
+        return cachedEncodingLength();
+    }
+
+    /**
+     * Compute and keep the body length, for a value encoded by its body
+     * only, as an implicitly tagged one.
+     */
+    protected int computeBodyLength() {
+        bodyLen = encodingBodyLength();
+        return bodyLen;
+    }
+
+    private int cachedEncodingLength() {
+        return lengthOfTagLength(tagNo()) + lengthOfBodyLength(bodyLen) + bodyLen;
     }
 
     public boolean isConstructed() {
@@ -164,6 +221,7 @@ public abstract class AbstractAsn1Type<T> implements Asn1Type {
         this.tagClass = TagClass.fromTagFlags(tagFlags);
         this.tagFlags = tagFlags;
         this.tagNo = tagNo;
+        lengthChanged();
 
         decodeBody(content);
     }
@@ -171,29 +229,38 @@ public abstract class AbstractAsn1Type<T> implements Asn1Type {
     protected abstract void decodeBody(LimitedByteBuffer content) throws IOException;
 
     protected int taggedEncodingLength(TaggingOption taggingOption) {
+        int encodingLen = encodingLength();
         int taggingTagNo = taggingOption.getTagNo();
-        int taggingBodyLen = taggingOption.isImplicit() ? encodingBodyLength() : encodingLength();
+        int taggingBodyLen = taggingOption.isImplicit() ? bodyLen : encodingLen;
         int taggingEncodingLen = lengthOfTagLength(taggingTagNo) + lengthOfBodyLength(taggingBodyLen) + taggingBodyLen;
         return taggingEncodingLen;
     }
 
     public byte[] taggedEncode(TaggingOption taggingOption) {
         ByteBuffer byteBuffer = ByteBuffer.allocate(taggedEncodingLength(taggingOption));
-        taggedEncode(byteBuffer, taggingOption);
+        doTaggedEncode(byteBuffer, taggingOption);
         byteBuffer.flip();
         return byteBuffer.array();
     }
 
     @Override
     public void taggedEncode(ByteBuffer buffer, TaggingOption taggingOption) {
+        encodingLength();
+        doTaggedEncode(buffer, taggingOption);
+    }
+
+    /**
+     * Tagged encode with the lengths computed in the same pass, see doEncode.
+     */
+    protected void doTaggedEncode(ByteBuffer buffer, TaggingOption taggingOption) {
         int taggingTagFlags = taggingOption.tagFlags(isConstructed());
         encodeTag(buffer, taggingTagFlags, taggingOption.getTagNo());
-        int taggingBodyLen = taggingOption.isImplicit() ? encodingBodyLength() : encodingLength();
+        int taggingBodyLen = taggingOption.isImplicit() ? bodyLen : cachedEncodingLength();
         encodeLength(buffer, taggingBodyLen);
         if (taggingOption.isImplicit()) {
             encodeBody(buffer);
         } else {
-            encode(buffer);
+            doEncode(buffer);
         }
     }
 
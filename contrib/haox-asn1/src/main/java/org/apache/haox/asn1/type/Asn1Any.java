@@ -13,7 +13,13 @@ public class Asn1Any extends AbstractAsn1Type<Asn1Type> {
 
     @Override
     protected int encodingBodyLength() {
-        return ((AbstractAsn1Type) getValue()).encodingBodyLength();
+        return ((AbstractAsn1Type) getValue()).computeBodyLength();
+    }
+
+    @Override
+    public boolean isLengthComputed() {
+        return super.isLengthComputed() &&
+                ((AbstractAsn1Type) getValue()).isLengthComputed();
     }
 
     @Override
@@ -4,6 +4,7 @@ import org.apache.haox.asn1.*;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class Asn1Choice extends AbstractAsn1Type<Asn1Type> {
 
@@ -41,18 +42,31 @@ public class Asn1Choice extends AbstractAsn1Type<Asn1Type> {
         return 0;
     }
 
+    @Override
+    public boolean isLengthComputed() {
+        if (! super.isLengthComputed()) {
+            return false;
+        }
+        for (Asn1Type field : fields) {
+            if (field != null) {
+                return ((AbstractAsn1Type) field).isLengthComputed();
+            }
+        }
+        return true;
+    }
+
     @Override
     protected void encodeBody(ByteBuffer buffer) {
-        Asn1Type field;
+        AbstractAsn1Type field;
         TaggingOption taggingOption;
         for (int i = 0; i < fields.length; ++i) {
-            field = fields[i];
+            field = (AbstractAsn1Type) fields[i];
             if (field != null) {
                 if (fieldInfos[i].isTagged()) {
                     taggingOption = fieldInfos[i].getTaggingOption();
-                    field.taggedEncode(buffer, taggingOption);
+                    field.doTaggedEncode(buffer, taggingOption);
                 } else {
-                    field.encode(buffer);
+                    field.doEncode(buffer);
                 }
                 break;
             }
@@ -61,6 +75,9 @@ public class Asn1Choice extends AbstractAsn1Type<Asn1Type> {
 
     @Override
     protected void decode(LimitedByteBuffer content) throws IOException {
+        Arrays.fill(fields, null);
+        lengthChanged();
+
         int foundPos = -1;
         Asn1Item item = decodeOne(content);
         for (int i = 0; i < fieldInfos.length; ++i) {
@@ -69,15 +86,9 @@ public class Asn1Choice extends AbstractAsn1Type<Asn1Type> {
                     foundPos = i;
                     break;
                 }
-            } else {
-                initField(i);
-                if (fields[i].tagFlags() == item.tagFlags() &&
-                        fields[i].tagNo() == item.tagNo()) {
-                    foundPos = i;
-                    break;
-                } else {
-                    fields[i] = null;
-                }
+            } else if (fieldInfos[i].isTypeOf(item.tagFlags(), item.tagNo())) {
+                foundPos = i;
+                break;
             }
         }
         if (foundPos == -1) {
@@ -86,7 +97,8 @@ public class Asn1Choice extends AbstractAsn1Type<Asn1Type> {
         }
 
         if (! item.isFullyDecoded()) {
-            AbstractAsn1Type fieldValue = (AbstractAsn1Type) fields[foundPos];
+            AbstractAsn1Type fieldValue =
+                    (AbstractAsn1Type) fieldInfos[foundPos].createValue();
             if (item.isContextSpecific()) {
                 item.decodeValueWith(fieldValue, fieldInfos[foundPos].getTaggingOption());
             } else {
@@ -100,14 +112,6 @@ public class Asn1Choice extends AbstractAsn1Type<Asn1Type> {
         // Not used
     }
 
-    private void initField(int idx) {
-        try {
-            fields[idx] = fieldInfos[idx].getType().newInstance();
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Bad field info specified at index of " + idx, e);
-        }
-    }
-
     protected <T extends Asn1Type> T getFieldAs(int index, Class<T> t) {
         Asn1Type value = fields[index];
         if (value == null) return null;
@@ -116,6 +120,7 @@ public class Asn1Choice extends AbstractAsn1Type<Asn1Type> {
 
     protected void setFieldAs(int index, Asn1Type value) {
         fields[index] = value;
+        lengthChanged();
     }
 
     protected String getFieldAsString(int index) {
@@ -29,10 +29,25 @@ public class Asn1Collection extends AbstractAsn1Type<List<Asn1Item>>
         } else {
             getValue().add(new Asn1Item(value));
         }
+        lengthChanged();
     }
 
     public void clear() {
         getValue().clear();
+        lengthChanged();
+    }
+
+    @Override
+    public boolean isLengthComputed() {
+        if (! super.isLengthComputed()) {
+            return false;
+        }
+        for (Asn1Item item : getValue()) {
+            if (item != null && ! item.isLengthComputed()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -52,7 +67,7 @@ public class Asn1Collection extends AbstractAsn1Type<List<Asn1Item>>
         List<Asn1Item> valueItems = getValue();
         for (Asn1Item item : valueItems) {
             if (item != null) {
-                item.encode(buffer);
+                item.doEncode(buffer);
             }
         }
     }
@@ -7,6 +7,7 @@ import org.apache.haox.asn1.TaggingOption;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * For collection type that may consist of tagged fields
@@ -47,18 +48,31 @@ public abstract class Asn1CollectionType extends AbstractAsn1Type<Asn1Collection
         return allLen;
     }
 
+    @Override
+    public boolean isLengthComputed() {
+        if (! super.isLengthComputed()) {
+            return false;
+        }
+        for (Asn1Type field : fields) {
+            if (field != null && ! ((AbstractAsn1Type) field).isLengthComputed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     protected void encodeBody(ByteBuffer buffer) {
-        Asn1Type field;
+        AbstractAsn1Type field;
         TaggingOption taggingOption;
         for (int i = 0; i < fields.length; ++i) {
-            field = fields[i];
+            field = (AbstractAsn1Type) fields[i];
             if (field != null) {
                 if (fieldInfos[i].isTagged()) {
                     taggingOption = fieldInfos[i].getTaggingOption();
-                    field.taggedEncode(buffer, taggingOption);
+                    field.doTaggedEncode(buffer, taggingOption);
                 } else {
-                    field.encode(buffer);
+                    field.doEncode(buffer);
                 }
             }
         }
@@ -66,7 +80,8 @@ public abstract class Asn1CollectionType extends AbstractAsn1Type<Asn1Collection
 
     @Override
     protected void decodeBody(LimitedByteBuffer content) throws IOException {
-        initFields();
+        // Fields absent from the content are left null, as OPTIONAL ones
+        Arrays.fill(fields, null);
 
         Asn1Collection coll = createCollection();
         coll.decode(tagFlags(), tagNo(), content);
@@ -80,8 +95,7 @@ public abstract class Asn1CollectionType extends AbstractAsn1Type<Asn1Collection
                         foundPos = i;
                         break;
                     }
-                } else if (fields[i].tagFlags() == item.tagFlags() &&
-                        fields[i].tagNo() == item.tagNo()) {
+                } else if (fieldInfos[i].isTypeOf(item.tagFlags(), item.tagNo())) {
                     foundPos = i;
                     break;
                 }
@@ -92,7 +106,8 @@ public abstract class Asn1CollectionType extends AbstractAsn1Type<Asn1Collection
             }
 
             if (! item.isFullyDecoded()) {
-                AbstractAsn1Type fieldValue = (AbstractAsn1Type) fields[foundPos];
+                AbstractAsn1Type fieldValue =
+                        (AbstractAsn1Type) fieldInfos[foundPos].createValue();
                 if (item.isContextSpecific()) {
                     item.decodeValueWith(fieldValue, fieldInfos[foundPos].getTaggingOption());
                 } else {
@@ -104,16 +119,6 @@ public abstract class Asn1CollectionType extends AbstractAsn1Type<Asn1Collection
         }
     }
 
-    private void initFields() {
-        for (int i = 0; i < fieldInfos.length; ++i) {
-            try {
-                fields[i] = fieldInfos[i].getType().newInstance();
-            } catch (Exception e) {
-                throw new IllegalArgumentException("Bad field info specified at index of " + i, e);
-            }
-        }
-    }
-
     protected abstract Asn1Collection createCollection();
 
     protected <T extends Asn1Type> T getFieldAs(int index, Class<T> t) {
@@ -124,6 +129,7 @@ public abstract class Asn1CollectionType extends AbstractAsn1Type<Asn1Collection
 
     protected void setFieldAs(int index, Asn1Type value) {
         fields[index] = value;
+        lengthChanged();
     }
 
     protected String getFieldAsString(int index) {
@@ -1,5 +1,7 @@
 package org.apache.haox.asn1.type;
 
+import org.apache.haox.asn1.Asn1Factory;
+import org.apache.haox.asn1.Asn1TypeFactory;
 import org.apache.haox.asn1.TaggingOption;
 
 public class Asn1FieldInfo {
@@ -7,6 +9,10 @@ public class Asn1FieldInfo {
     private int tagNo;
     private boolean isImplicit;
     private Class<? extends Asn1Type> type;
+    // Resolved on first use, once for all the values of the field. Racing
+    // threads may each resolve one, which are all the same for use
+    private volatile Asn1TypeFactory<? extends Asn1Type> factory;
+    private volatile Asn1Type prototype;
 
     public Asn1FieldInfo(int index, int tagNo, Class<? extends Asn1Type> type) {
         this(index, tagNo, type, false);
@@ -54,4 +60,29 @@ public class Asn1FieldInfo {
     public Class<? extends Asn1Type> getType() {
         return type;
     }
+
+    /**
+     * Create an empty value of the field type for decoding.
+     */
+    public Asn1Type createValue() {
+        Asn1TypeFactory<? extends Asn1Type> resolved = factory;
+        if (resolved == null) {
+            resolved = Asn1Factory.factoryFor(type);
+            factory = resolved;
+        }
+        return resolved.create();
+    }
+
+    /**
+     * Tell if a value of the field type would be encoded with the tag, for
+     * untagged fields, without creating a value each time.
+     */
+    public boolean isTypeOf(int tagFlags, int tagNo) {
+        Asn1Type value = prototype;
+        if (value == null) {
+            value = createValue();
+            prototype = value;
+        }
+        return value.tagFlags() == tagFlags && value.tagNo() == tagNo;
+    }
 }
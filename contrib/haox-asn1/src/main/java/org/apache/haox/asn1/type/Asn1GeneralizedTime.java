@@ -12,22 +12,114 @@ import java.util.TimeZone;
 
 public class Asn1GeneralizedTime extends Asn1Simple<Date>
 {
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    // Fast path only for the years Gregorian calendar goes, the others are
+    // left to SimpleDateFormat
+    private static final int MIN_FAST_YEAR = 1600;
+    private static final long MIN_FAST_TIME = daysFromCivil(MIN_FAST_YEAR, 1, 1) * MILLIS_PER_DAY;
+    private static final long MAX_FAST_TIME = daysFromCivil(10000, 1, 1) * MILLIS_PER_DAY;
+
+    // Time in milliseconds. The Date value is only created when asked for
+    private long time;
+    private boolean hasTime;
+    private Date date;
+
     public Asn1GeneralizedTime() {
-        this(null);
+        super(UniversalTag.GENERALIZED_TIME);
     }
 
     /**
      * time in milliseconds
      */
     public Asn1GeneralizedTime(long time) {
-        super(UniversalTag.GENERALIZED_TIME, new Date(time));
+        super(UniversalTag.GENERALIZED_TIME);
+        setTime(time);
     }
 
     public Asn1GeneralizedTime(Date date) {
-        super(UniversalTag.UTC_TIME, date);
+        super(UniversalTag.GENERALIZED_TIME);
+        setValue(date);
+    }
+
+    @Override
+    public Date getValue() {
+        if (date == null && hasTime) {
+            date = new Date(time);
+        }
+        return date;
+    }
+
+    @Override
+    public void setValue(Date value) {
+        setBytes(null);
+        this.hasTime = value != null;
+        this.time = hasTime ? value.getTime() : 0L;
+        this.date = value;
+    }
+
+    /**
+     * Return time in milliseconds, 0 if not set
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * time in milliseconds
+     */
+    public void setTime(long time) {
+        setBytes(null);
+        setFastTime(time);
+    }
+
+    @Override
+    protected boolean hasValue() {
+        return hasTime;
+    }
+
+    private void setFastTime(long time) {
+        this.hasTime = true;
+        this.time = time;
+        this.date = null;
     }
 
     protected void toValue() throws IOException {
+        if (! parseFixedTime(getBytes())) {
+            setFastTime(parseTime().getTime());
+        }
+    }
+
+    /**
+     * Parse the fixed YYYYMMDDHHMMSSZ form Kerberos uses, or return false to
+     * leave it to SimpleDateFormat, like with fractional seconds or a zone.
+     */
+    private boolean parseFixedTime(byte[] bytes) {
+        if (bytes.length != 15 || bytes[14] != 'Z') {
+            return false;
+        }
+        for (int i = 0; i < 14; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return false;
+            }
+        }
+
+        int year = digits(bytes, 0, 4);
+        int month = digits(bytes, 4, 2);
+        int day = digits(bytes, 6, 2);
+        int hour = digits(bytes, 8, 2);
+        int minute = digits(bytes, 10, 2);
+        int second = digits(bytes, 12, 2);
+        if (year < MIN_FAST_YEAR || month < 1 || month > 12 || day < 1 || day > 31
+                || hour > 23 || minute > 59 || second > 59) {
+            return false;
+        }
+
+        long days = daysFromCivil(year, month, day);
+        setFastTime(days * MILLIS_PER_DAY + ((hour * 60 + minute) * 60 + second) * 1000L);
+        return true;
+    }
+
+    private Date parseTime() throws IOException {
         String dateStr = new String(getBytes(), StandardCharsets.US_ASCII);
         SimpleDateFormat sdf;
         String fixedDateStr = dateStr;
@@ -51,7 +143,7 @@ public class Asn1GeneralizedTime extends Asn1Simple<Date>
         }
 
         try {
-            setValue(sdf.parse(fixedDateStr));
+            return sdf.parse(fixedDateStr);
         } catch (ParseException e) {
             throw new IOException("Failed to parse as generalized time string " + dateStr);
         }
@@ -59,15 +151,81 @@ public class Asn1GeneralizedTime extends Asn1Simple<Date>
 
     @Override
     protected void toBytes() {
-        Date date = getValue();
+        if (time >= MIN_FAST_TIME && time < MAX_FAST_TIME) {
+            setBytes(formatFixedTime(time));
+            return;
+        }
+
         SimpleDateFormat dateF = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
         dateF.setTimeZone(new SimpleTimeZone(0, "Z"));
 
-        String str = dateF.format(date);
+        String str = dateF.format(getValue());
         byte[] bytes = str.getBytes(StandardCharsets.US_ASCII);
         setBytes(bytes);
     }
 
+    /**
+     * Format in YYYYMMDDHHMMSSZ, with fractional seconds dropped
+     */
+    private static byte[] formatFixedTime(long time) {
+        long days = time / MILLIS_PER_DAY;
+        int millisOfDay = (int) (time - days * MILLIS_PER_DAY);
+        if (millisOfDay < 0) {
+            days--;
+            millisOfDay += MILLIS_PER_DAY;
+        }
+
+        // Civil date from days since 1970-01-01, in eras of 400 years
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+                - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+        int secondOfDay = millisOfDay / 1000;
+        byte[] bytes = new byte[15];
+        putDigits(bytes, 0, 4, year);
+        putDigits(bytes, 4, 2, month);
+        putDigits(bytes, 6, 2, day);
+        putDigits(bytes, 8, 2, secondOfDay / 3600);
+        putDigits(bytes, 10, 2, secondOfDay / 60 % 60);
+        putDigits(bytes, 12, 2, secondOfDay % 60);
+        bytes[14] = 'Z';
+        return bytes;
+    }
+
+    /**
+     * Days since 1970-01-01 of the date in proleptic Gregorian calendar
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = (int) (year - era * 400);
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digits(byte[] bytes, int offset, int len) {
+        int value = 0;
+        for (int i = offset; i < offset + len; i++) {
+            value = value * 10 + (bytes[i] - '0');
+        }
+        return value;
+    }
+
+    private static void putDigits(byte[] bytes, int offset, int len, int value) {
+        for (int i = offset + len - 1; i >= offset; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
     /**
      * Extract the fractional part in seconds and convert into integer by (frac * 1000) as milli seconds
      */
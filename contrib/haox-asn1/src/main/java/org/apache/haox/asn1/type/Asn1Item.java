@@ -39,11 +39,17 @@ public class Asn1Item extends AbstractAsn1Type<Asn1Type>
     @Override
     protected int encodingBodyLength() {
         if (getValue() != null) {
-            return ((AbstractAsn1Type) getValue()).encodingBodyLength();
+            return ((AbstractAsn1Type) getValue()).computeBodyLength();
         }
         return (int) bodyContent.hasLeft();
     }
 
+    @Override
+    public boolean isLengthComputed() {
+        return super.isLengthComputed() && (getValue() == null ||
+                ((AbstractAsn1Type) getValue()).isLengthComputed());
+    }
+
     @Override
     protected void encodeBody(ByteBuffer buffer) {
         if (getValue() != null) {
@@ -87,13 +93,7 @@ public class Asn1Item extends AbstractAsn1Type<Asn1Type>
     }
 
     public void decodeValueAs(Class<? extends Asn1Type> type) throws IOException {
-        Asn1Type value;
-        try {
-            value = type.newInstance();
-        } catch (Exception e) {
-            throw new RuntimeException("Invalid type: " + type.getCanonicalName(), e);
-        }
-        decodeValueWith(value);
+        decodeValueWith(Asn1Factory.create(type));
     }
 
     public void decodeValueWith(Asn1Type value) throws IOException {
@@ -4,9 +4,14 @@ import org.apache.haox.asn1.LimitedByteBuffer;
 import org.apache.haox.asn1.UniversalTag;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class Asn1OctetString extends Asn1Simple<byte[]>
 {
+    // View of the value not copied out yet, in zero copy mode. Never read
+    // from, so it may be looked at by more than one thread at a time.
+    private volatile LimitedByteBuffer valueContent;
+
     public Asn1OctetString() {
         this(null);
     }
@@ -15,18 +20,70 @@ public class Asn1OctetString extends Asn1Simple<byte[]>
         super(UniversalTag.OCTET_STRING, value);
     }
 
+    @Override
+    public byte[] getValue() {
+        if (valueContent != null) {
+            copyValue();
+        }
+        return super.getValue();
+    }
+
+    /**
+     * Copy the value out of the view, once, as a decoded object may be
+     * shared by threads
+     */
+    private synchronized void copyValue() {
+        LimitedByteBuffer content = valueContent;
+        if (content == null) {
+            return;
+        }
+        try {
+            setValue(new LimitedByteBuffer(content, (int) content.hasLeft())
+                    .readAllLeftBytes());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read octet string value", e);
+        }
+    }
+
+    @Override
+    public void setValue(byte[] value) {
+        super.setValue(value);
+        valueContent = null; // after the value, so it's seen with it
+    }
+
     @Override
     protected byte[] encodeBody() {
         return getValue();
     }
 
+    @Override
+    protected void encodeBody(ByteBuffer buffer) {
+        LimitedByteBuffer content = valueContent;
+        if (content != null) {
+            content.putLeftBytes(buffer);
+        } else {
+            buffer.put(getValue());
+        }
+    }
+
     @Override
     protected int encodingBodyLength() {
+        LimitedByteBuffer content = valueContent;
+        if (content != null) {
+            return (int) content.hasLeft();
+        }
         return getValue().length;
     }
 
     @Override
     protected void decodeBody(LimitedByteBuffer content) throws IOException {
-        setValue(content.readAllLeftBytes());
+        if (content.isZeroCopy()) {
+            int len = (int) content.hasLeft();
+            setValue(null);
+            valueContent = new LimitedByteBuffer(content, len);
+            content.skip(len);
+        } else {
+            setValue(content.readAllLeftBytes());
+        }
     }
 }
@@ -29,13 +29,9 @@ public abstract class Asn1Simple<T> extends AbstractAsn1Type<T> {
     }
 
     @Override
-    public void encode(ByteBuffer buffer) {
-        encodeTag(buffer, tagFlags(), tagNo());
-        int bodyLen = encodingBodyLength();
-        encodeLength(buffer, bodyLen);
-        if (bodyLen > 0) {
-            buffer.put(encodeBody());
-        }
+    public void setValue(T value) {
+        super.setValue(value);
+        bytes = null; // to be encoded from the new value
     }
 
     protected byte[] encodeBody() {
@@ -45,14 +41,24 @@ public abstract class Asn1Simple<T> extends AbstractAsn1Type<T> {
         return bytes;
     }
 
+    /**
+     * Tell if there is a value to encode, for types keeping the value in
+     * another form than T.
+     */
+    protected boolean hasValue() {
+        return getValue() != null;
+    }
+
     @Override
     protected void encodeBody(ByteBuffer buffer) {
-        buffer.put(encodeBody());
+        if (hasValue()) {
+            buffer.put(encodeBody());
+        }
     }
 
     @Override
     protected int encodingBodyLength() {
-        if (getValue() == null) {
+        if (! hasValue()) {
             return 0;
         }
         if (bytes == null) {
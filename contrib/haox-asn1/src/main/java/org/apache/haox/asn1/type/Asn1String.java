@@ -1,5 +1,6 @@
 package org.apache.haox.asn1.type;
 
+import org.apache.haox.asn1.LimitedByteBuffer;
 import org.apache.haox.asn1.UniversalTag;
 
 import java.io.ByteArrayOutputStream;
@@ -11,6 +12,10 @@ import java.util.List;
 
 public abstract class Asn1String extends Asn1Simple<String>
 {
+    // View of the value not decoded yet, in zero copy mode. Never read
+    // from, so it may be looked at by more than one thread at a time.
+    private volatile LimitedByteBuffer valueContent;
+
     public Asn1String(UniversalTag tagNo) {
         super(tagNo, null);
     }
@@ -19,6 +24,50 @@ public abstract class Asn1String extends Asn1Simple<String>
         super(tagNo, value);
     }
 
+    @Override
+    public String getValue() {
+        if (valueContent != null) {
+            decodeValue();
+        }
+        return super.getValue();
+    }
+
+    /**
+     * Decode the value from the view, once, as a decoded object may be
+     * shared by threads
+     */
+    private synchronized void decodeValue() {
+        LimitedByteBuffer content = valueContent;
+        if (content == null) {
+            return;
+        }
+        try {
+            super.decodeBody(new LimitedByteBuffer(content, (int) content.hasLeft()));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode string value", e);
+        }
+        valueContent = null;
+    }
+
+    @Override
+    public void setValue(String value) {
+        super.setValue(value);
+        valueContent = null; // after the value, so it's seen with it
+    }
+
+    @Override
+    protected void decodeBody(LimitedByteBuffer content) throws IOException {
+        if (content.isZeroCopy()) {
+            int len = (int) content.hasLeft();
+            if (len > 0) {
+                valueContent = new LimitedByteBuffer(content, len);
+                content.skip(len);
+            }
+        } else {
+            super.decodeBody(content);
+        }
+    }
+
     @Override
     protected void toBytes() {
         byte[] bytes = getValue().getBytes(StandardCharsets.US_ASCII);
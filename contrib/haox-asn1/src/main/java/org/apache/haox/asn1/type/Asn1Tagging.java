@@ -1,5 +1,6 @@
 package org.apache.haox.asn1.type;
 
+import org.apache.haox.asn1.Asn1Factory;
 import org.apache.haox.asn1.EncodingOption;
 import org.apache.haox.asn1.LimitedByteBuffer;
 import org.apache.haox.asn1.TagClass;
@@ -31,12 +32,18 @@ public class Asn1Tagging<T extends Asn1Type> extends AbstractAsn1Type<T> {
         if (encodingOption.isExplicit()) {
             return value.encodingLength();
         } else if (encodingOption.isImplicit()) {
-            return value.encodingBodyLength();
+            return value.computeBodyLength();
         } else {
             throw new RuntimeException("Invalid util option, only allowing explicit/implicit");
         }
     }
 
+    @Override
+    public boolean isLengthComputed() {
+        return super.isLengthComputed() &&
+                ((AbstractAsn1Type) getValue()).isLengthComputed();
+    }
+
     @Override
     public boolean isConstructed() {
         if (encodingOption.isExplicit()) {
@@ -52,7 +59,7 @@ public class Asn1Tagging<T extends Asn1Type> extends AbstractAsn1Type<T> {
     protected void encodeBody(ByteBuffer buffer) {
         AbstractAsn1Type value = (AbstractAsn1Type) getValue();
         if (encodingOption.isExplicit()) {
-            value.encode(buffer);
+            value.doEncode(buffer);
         } else if (encodingOption.isImplicit()) {
             value.encodeBody(buffer);
         } else {
@@ -74,12 +81,6 @@ public class Asn1Tagging<T extends Asn1Type> extends AbstractAsn1Type<T> {
 
     private void initValue() {
         Class<? extends Asn1Type> valueType = (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
-        AbstractAsn1Type value = null;
-        try {
-            value = (AbstractAsn1Type) valueType.newInstance();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create tagged value", e);
-        }
-        setValue((T) value);
+        setValue((T) Asn1Factory.create(valueType));
     }
 }
@@ -35,7 +35,12 @@ public abstract class TaggingCollection extends AbstractAsn1Type<Asn1CollectionT
 
     @Override
     protected int encodingBodyLength() {
-        return tagging.encodingBodyLength();
+        return tagging.computeBodyLength();
+    }
+
+    @Override
+    public boolean isLengthComputed() {
+        return super.isLengthComputed() && tagging.isLengthComputed();
     }
 
     @Override
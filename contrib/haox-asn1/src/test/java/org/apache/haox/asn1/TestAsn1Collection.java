@@ -5,6 +5,12 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class TestAsn1Collection {
     static String TEST_STR = "Jones";
@@ -33,4 +39,65 @@ public class TestAsn1Collection {
         field = (AbstractAsn1Type) seq.getValue().get(1).getValue();
         Assert.assertEquals(TEST_BOOL, field.getValue());
     }
+
+    @Test
+    public void testSequenceDecodingZeroCopy() throws IOException {
+        LimitedByteBuffer content = new LimitedByteBuffer(EXPECTED_BYTES);
+        content.setZeroCopy(true);
+        Asn1Sequence seq = (Asn1Sequence) new Asn1InputBuffer(content).read();
+
+        AbstractAsn1Type field = (AbstractAsn1Type) seq.getValue().get(0).getValue();
+        Assert.assertEquals(TEST_STR, field.getValue());
+        field = (AbstractAsn1Type) seq.getValue().get(1).getValue();
+        Assert.assertEquals(TEST_BOOL, field.getValue());
+
+        Assert.assertArrayEquals(EXPECTED_BYTES, seq.encode());
+    }
+
+    @Test
+    public void testOctetStringZeroCopy() throws IOException {
+        byte[] encoded = new Asn1OctetString(new byte[] {1, 2, 3}).encode();
+        LimitedByteBuffer content = new LimitedByteBuffer(encoded);
+        content.setZeroCopy(true);
+        Asn1OctetString octets = (Asn1OctetString) new Asn1InputBuffer(content).read();
+
+        // Still a view of the encoded bytes until it's asked for
+        Assert.assertArrayEquals(encoded, octets.encode());
+        encoded[2] = 9;
+        Assert.assertArrayEquals(new byte[] {9, 2, 3}, octets.getValue());
+        encoded[2] = 1;
+        Assert.assertArrayEquals(new byte[] {9, 2, 3}, octets.getValue());
+    }
+
+    @Test
+    public void testZeroCopySharedByThreads() throws Exception {
+        final int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 200; round++) {
+                LimitedByteBuffer content = new LimitedByteBuffer(EXPECTED_BYTES);
+                content.setZeroCopy(true);
+                Asn1Sequence seq = (Asn1Sequence) new Asn1InputBuffer(content).read();
+                final AbstractAsn1Type field =
+                        (AbstractAsn1Type) seq.getValue().get(0).getValue();
+
+                // All asking for the value not decoded yet at once
+                List<Future<Object>> values = new ArrayList<Future<Object>>();
+                for (int i = 0; i < threads; i++) {
+                    values.add(executor.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            return field.getValue();
+                        }
+                    }));
+                }
+                for (Future<Object> value : values) {
+                    Assert.assertEquals(TEST_STR, value.get());
+                }
+                Assert.assertArrayEquals(EXPECTED_BYTES, seq.encode());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
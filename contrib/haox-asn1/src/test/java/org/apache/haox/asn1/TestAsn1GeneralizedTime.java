@@ -0,0 +1,80 @@
+package org.apache.haox.asn1;
+
+import org.apache.haox.asn1.type.Asn1GeneralizedTime;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.SimpleTimeZone;
+
+public class TestAsn1GeneralizedTime {
+
+    @Test
+    public void testEncoding() throws Exception {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        sdf.setTimeZone(new SimpleTimeZone(0, "Z"));
+        Date date = sdf.parse("2003-07-04 11:33:28");
+        testEncodingWith(date, "0x18 0F 32 30 30 33 30 37 30 34 31 31 33 33 32 38 5A");
+    }
+
+    private void testEncodingWith(Date value, String expectedEncoding) {
+        byte[] expected = Util.hex2bytes(expectedEncoding);
+        Asn1GeneralizedTime aValue = new Asn1GeneralizedTime(value);
+        aValue.setEncodingOption(EncodingOption.DER);
+        Assert.assertArrayEquals(expected, aValue.encode());
+    }
+
+    @Test
+    public void testDecoding() throws Exception {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        sdf.setTimeZone(new SimpleTimeZone(0, "Z"));
+
+        Date date = sdf.parse("2003-07-04 11:33:28.000");
+        testDecodingWith(date, "20030704113328Z");
+        // Fractional seconds and time zones
+        testDecodingWith(sdf.parse("2003-07-04 11:33:28.500"), "20030704113328.5Z");
+        testDecodingWith(sdf.parse("2003-07-04 09:33:28.000"), "20030704113328+0200");
+    }
+
+    private void testDecodingWith(Date expectedValue, String timeStr) throws IOException {
+        byte[] body = timeStr.getBytes(StandardCharsets.US_ASCII);
+        byte[] content = new byte[body.length + 2];
+        content[0] = 0x18;
+        content[1] = (byte) body.length;
+        System.arraycopy(body, 0, content, 2, body.length);
+
+        Asn1GeneralizedTime decoded = new Asn1GeneralizedTime();
+        decoded.decode(content);
+        Assert.assertEquals(expectedValue.getTime(), decoded.getTime());
+        Assert.assertEquals(expectedValue, decoded.getValue());
+    }
+
+    @Test
+    public void testSameAsSimpleDateFormat() throws IOException {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+        sdf.setTimeZone(new SimpleTimeZone(0, "Z"));
+
+        Random random = new Random(1234);
+        long year = 365L * 24 * 3600 * 1000;
+        long min = -360 * year; // going back to 1610s
+        long max = 600 * year; // to 2560s
+        for (int i = 0; i < 10000; i++) {
+            long time = min + (long) (random.nextDouble() * (max - min));
+            Asn1GeneralizedTime value = new Asn1GeneralizedTime(time);
+            byte[] encoded = value.encode();
+
+            String expected = sdf.format(new Date(time));
+            Assert.assertEquals(expected, new String(encoded, 2, encoded.length - 2,
+                    StandardCharsets.US_ASCII));
+
+            Asn1GeneralizedTime decoded = new Asn1GeneralizedTime();
+            decoded.decode(encoded);
+            // Fractional seconds are dropped
+            Assert.assertEquals(time - (time % 1000 + 1000) % 1000, decoded.getTime());
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Ref. X.690-0207(http://www.itu.int/ITU-T/studygroups/com17/languages/X.690-0207.pdf),
@@ -59,6 +60,56 @@ public class TestPersonnelRecord {
         Assert.assertArrayEquals(data, encoded);
     }
 
+    @Test
+    public void testEncodingAfterChange() {
+        PersonnelRecord pr = TestData.createSamplePersonnel();
+        pr.setTitle("Chief Executive Officer");
+        pr.getName().setGivenName("Jonathan");
+        int encodingLength = pr.encodingLength();
+        Assert.assertEquals(encodingLength, pr.encode().length);
+
+        // Lengths are computed again for each encoding, not left over
+        pr.setTitle("Director");
+        pr.getName().setGivenName("John");
+        Assert.assertArrayEquals(TestData.createSammplePersonnelEncodingData(), pr.encode());
+        Assert.assertTrue(pr.encodingLength() < encodingLength);
+    }
+
+    @Test
+    public void testEncodingComputed() {
+        PersonnelRecord pr = TestData.createSamplePersonnel();
+        ByteBuffer buffer = ByteBuffer.allocate(pr.encodingLength());
+        pr.encodeComputed(buffer);
+        Assert.assertFalse(buffer.hasRemaining());
+        Assert.assertArrayEquals(TestData.createSammplePersonnelEncodingData(),
+                buffer.array());
+    }
+
+    @Test
+    public void testEncodingComputedAfterChange() {
+        PersonnelRecord pr = TestData.createSamplePersonnel();
+        pr.getName().setGivenName("Jonathan");
+        pr.encodingLength();
+        Assert.assertTrue(pr.isLengthComputed());
+
+        // Set after sizing, the lengths kept are stale and computed again
+        pr.getName().setGivenName("John");
+        Assert.assertFalse(pr.isLengthComputed());
+        ByteBuffer buffer = ByteBuffer.allocate(
+                TestData.createSammplePersonnelEncodingData().length);
+        pr.encodeComputed(buffer);
+        Assert.assertFalse(buffer.hasRemaining());
+        Assert.assertArrayEquals(TestData.createSammplePersonnelEncodingData(),
+                buffer.array());
+        Assert.assertTrue(pr.isLengthComputed());
+
+        // Found as well for a value deep in a SEQUENCE OF
+        PersonnelRecord.Name childName =
+                pr.getChildren().getElements().get(0).getName();
+        childName.setGivenName(childName.getGivenName());
+        Assert.assertFalse(pr.isLengthComputed());
+    }
+
     @Test
     public void testDecoding() throws IOException {
         PersonnelRecord expected = TestData.createSamplePersonnel();
@@ -63,6 +63,18 @@ public class Conf implements Config {
         return loader;
     }
 
+    /**
+     * A Conf of the same resources, loaded on its own, so that it can be
+     * loaded again and checked without touching this one
+     */
+    public Conf copy() {
+        Conf copied = new Conf();
+        for (ConfigLoader loader : resourceConfigs) {
+            copied.addResource(loader.getResource());
+        }
+        return copied;
+    }
+
     private void checkAndLoad() {
         if (needReload) {
             reload();
@@ -82,6 +94,7 @@ public class Conf implements Config {
                 config.set(loaded.getResource(), loaded);
             }
         }
+        needReload = false;
     }
 
     @Override
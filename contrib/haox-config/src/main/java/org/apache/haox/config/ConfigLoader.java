@@ -8,6 +8,10 @@ public abstract class ConfigLoader {
         this.resource = resource;
     }
 
+    Resource getResource() {
+        return resource;
+    }
+
     protected void setConfig(ConfigImpl config) {
         this.config = config;
     }
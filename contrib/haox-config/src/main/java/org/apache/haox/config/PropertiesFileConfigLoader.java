@@ -8,7 +8,12 @@ public class PropertiesFileConfigLoader extends PropertiesConfigLoader {
     @Override
     protected void loadConfig(ConfigImpl config, Resource resource) throws Exception {
         Properties propConfig = new Properties();
-        propConfig.load((InputStream) resource.getResource());
+        InputStream is = (InputStream) resource.getResource();
+        try {
+            propConfig.load(is);
+        } finally {
+            is.close();
+        }
         loadConfig(config, propConfig);
     }
 }
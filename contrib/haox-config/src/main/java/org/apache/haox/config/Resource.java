@@ -69,11 +69,14 @@ public class Resource {
     }
 
     private Resource(String name, File resourceFile, Format format) throws FileNotFoundException {
-        this(name, new FileInputStream(resourceFile), format);
+        this(name, (Object) resourceFile, format);
+        if (! resourceFile.isFile()) {
+            throw new FileNotFoundException(resourceFile.getPath());
+        }
     }
 
     private Resource(URL resourceUrl, Format format) throws IOException {
-        this(resourceUrl.toString(), resourceUrl.openStream(), format);
+        this(resourceUrl.toString(), (Object) resourceUrl, format);
     }
 
     private Resource(String name, Object resourceStream, Format format) {
@@ -90,7 +93,21 @@ public class Resource {
         return name;
     }
 
+    /**
+     * A new input stream for a file or url resource, to be closed by the
+     * caller, so that the resource can be loaded again when it's changed.
+     */
     public Object getResource() {
+        try {
+            if (resource instanceof File) {
+                return new FileInputStream((File) resource);
+            }
+            if (resource instanceof URL) {
+                return ((URL) resource).openStream();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open resource " + name, e);
+        }
         return resource;
     }
 
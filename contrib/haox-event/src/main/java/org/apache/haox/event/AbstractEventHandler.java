@@ -1,5 +1,7 @@
 package org.apache.haox.event;
 
+import java.util.List;
+
 public abstract class AbstractEventHandler implements EventHandler {
 
     private Dispatcher dispatcher;
@@ -12,6 +14,10 @@ public abstract class AbstractEventHandler implements EventHandler {
         dispatcher.dispatch(event);
     }
 
+    protected void dispatch(List<Event> events) {
+        dispatcher.dispatch(events);
+    }
+
     @Override
     public Dispatcher getDispatcher() {
         return dispatcher;
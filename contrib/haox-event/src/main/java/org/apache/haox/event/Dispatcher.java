@@ -1,9 +1,13 @@
 package org.apache.haox.event;
 
+import java.util.List;
+
 public interface Dispatcher {
 
     public void dispatch(Event event);
 
+    public void dispatch(List<Event> events);
+
     public void register(EventHandler handler);
 
     public void register(InternalEventHandler internalHandler);
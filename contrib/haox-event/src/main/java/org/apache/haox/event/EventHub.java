@@ -1,8 +1,10 @@
 package org.apache.haox.event;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -19,11 +21,61 @@ public class EventHub implements Dispatcher {
     private Map<Integer, InternalEventHandler> handlers =
             new ConcurrentHashMap<Integer, InternalEventHandler>();
 
-    private Map<EventType, Set<Integer>> eventHandlersMap =
-        new ConcurrentHashMap<EventType, Set<Integer>>();
+    // Registrations, guarded by themselves, to build the dispatch table from
+    private final Map<EventType, List<InternalEventHandler>> typeHandlers =
+            new LinkedHashMap<EventType, List<InternalEventHandler>>();
+    private final List<InternalEventHandler> allTypeHandlers =
+            new ArrayList<InternalEventHandler>();
+
+    private volatile DispatchTable dispatchTable = new DispatchTable();
 
     private InternalEventHandler builtInHandler;
 
+    /**
+     * An immutable snapshot of the registrations, replaced as a whole for
+     * each registration so dispatching takes no lock. Event types get dense
+     * ids in the order they're registered, indexing the handler arrays,
+     * which include the handlers of all types after the type's own.
+     */
+    private static class DispatchTable {
+        final Map<EventType, Integer> typeIds;
+        final InternalEventHandler[][] typeHandlers;
+        final InternalEventHandler[] allTypeHandlers;
+
+        DispatchTable() {
+            this.typeIds = new HashMap<EventType, Integer>();
+            this.typeHandlers = new InternalEventHandler[0][];
+            this.allTypeHandlers = new InternalEventHandler[0];
+        }
+
+        DispatchTable(DispatchTable previous,
+                      Map<EventType, List<InternalEventHandler>> handlersByType,
+                      List<InternalEventHandler> allHandlers) {
+            this.typeIds = new HashMap<EventType, Integer>(previous.typeIds);
+            for (EventType eventType : handlersByType.keySet()) {
+                if (! typeIds.containsKey(eventType)) {
+                    typeIds.put(eventType, typeIds.size());
+                }
+            }
+
+            this.allTypeHandlers = allHandlers.toArray(
+                    new InternalEventHandler[allHandlers.size()]);
+            this.typeHandlers = new InternalEventHandler[typeIds.size()][];
+            for (Map.Entry<EventType, Integer> entry : typeIds.entrySet()) {
+                List<InternalEventHandler> own = handlersByType.get(entry.getKey());
+                List<InternalEventHandler> merged = new ArrayList<InternalEventHandler>(own);
+                merged.addAll(allHandlers);
+                typeHandlers[entry.getValue()] = merged.toArray(
+                        new InternalEventHandler[merged.size()]);
+            }
+        }
+
+        InternalEventHandler[] handlersOf(EventType eventType) {
+            Integer typeId = typeIds.get(eventType);
+            return typeId != null ? typeHandlers[typeId] : allTypeHandlers;
+        }
+    }
+
     class BuiltInEventHandler extends AbstractEventHandler {
         public BuiltInEventHandler() {
             super();
@@ -46,19 +98,53 @@ public class EventHub implements Dispatcher {
 
     private void init() {
         EventHandler eh = new BuiltInEventHandler();
-        builtInHandler = new ExecutedEventHandler(eh);
+        // Its handling is a no op, not worth a thread hop for every event
+        builtInHandler = new ExecutedEventHandler(eh, new ExecutionConfig(
+                ExecutionMode.IO_THREAD, 1, -1, RejectionPolicy.REJECT));
         register(builtInHandler);
     }
 
     @Override
     public void dispatch(Event event) {
-        process(event);
+        InternalEventHandler[] eventHandlers =
+                dispatchTable.handlersOf(event.getEventType());
+        for (InternalEventHandler handler : eventHandlers) {
+            handler.handle(event);
+        }
+    }
+
+    /**
+     * Dispatch the events in order, looking up the dispatch table once for
+     * the batch and the handlers once for a run of events of the same type.
+     */
+    @Override
+    public void dispatch(List<Event> events) {
+        DispatchTable table = dispatchTable;
+        EventType lastType = null;
+        InternalEventHandler[] eventHandlers = null;
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            if (event.getEventType() != lastType || eventHandlers == null) {
+                lastType = event.getEventType();
+                eventHandlers = table.handlersOf(lastType);
+            }
+            for (InternalEventHandler handler : eventHandlers) {
+                handler.handle(event);
+            }
+        }
     }
 
     @Override
     public void register(EventHandler handler) {
+        register(handler, new ExecutionConfig());
+    }
+
+    /**
+     * Register the handler to process its events as set by the config
+     */
+    public void register(EventHandler handler, ExecutionConfig config) {
         handler.setDispatcher(this);
-        InternalEventHandler ieh = new ExecutedEventHandler(handler);
+        InternalEventHandler ieh = new ExecutedEventHandler(handler, config);
         register(ieh);
     }
 
@@ -73,15 +159,25 @@ public class EventHub implements Dispatcher {
         }
 
         EventType[] interestedEvents = handler.getInterestedEvents();
-        Set<Integer> tmpHandlers;
-        for (EventType eventType : interestedEvents) {
-            if (eventHandlersMap.containsKey(eventType)) {
-                tmpHandlers = eventHandlersMap.get(eventType);
-            } else {
-                tmpHandlers = new HashSet<Integer>();
-                eventHandlersMap.put(eventType, tmpHandlers);
+        synchronized (typeHandlers) {
+            for (EventType eventType : interestedEvents) {
+                if (eventType == BuiltInEventType.ALL) {
+                    if (! allTypeHandlers.contains(handler)) {
+                        allTypeHandlers.add(handler);
+                    }
+                    continue;
+                }
+                List<InternalEventHandler> tmpHandlers = typeHandlers.get(eventType);
+                if (tmpHandlers == null) {
+                    tmpHandlers = new ArrayList<InternalEventHandler>();
+                    typeHandlers.put(eventType, tmpHandlers);
+                }
+                if (! tmpHandlers.contains(handler)) {
+                    tmpHandlers.add(handler);
+                }
             }
-            tmpHandlers.add(handler.id());
+            dispatchTable = new DispatchTable(dispatchTable,
+                    typeHandlers, allTypeHandlers);
         }
     }
 
@@ -131,28 +227,6 @@ public class EventHub implements Dispatcher {
         return waiter;
     }
 
-    private void process(Event event) {
-        EventType eventType = event.getEventType();
-        InternalEventHandler handler;
-        Set<Integer> handlerIds;
-
-        if (eventHandlersMap.containsKey(eventType)) {
-            handlerIds = eventHandlersMap.get(eventType);
-            for (Integer hid : handlerIds) {
-                handler = handlers.get(hid);
-                handler.handle(event);
-            }
-        }
-
-        if (eventHandlersMap.containsKey(BuiltInEventType.ALL)) {
-            handlerIds = eventHandlersMap.get(BuiltInEventType.ALL);
-            for (Integer hid : handlerIds) {
-                handler = handlers.get(hid);
-                handler.handle(event);
-            }
-        }
-    }
-
     public void start() {
         if (!started) {
             for (InternalEventHandler handler : handlers.values()) {
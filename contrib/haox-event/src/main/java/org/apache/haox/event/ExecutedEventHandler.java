@@ -1,53 +1,167 @@
 package org.apache.haox.event;
 
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 /**
- * An EventHandler wrapper processing events using an ExecutorService
+ * An EventHandler wrapper processing events using an ExecutorService,
+ * as set by its ExecutionConfig
  */
 public class ExecutedEventHandler extends AbstractInternalEventHandler {
 
+    private final ExecutionConfig config;
     private ExecutorService executorService;
+    // Bounds the events in flight, null if unbounded
+    private Semaphore permits;
+    private volatile boolean stopped = true;
 
     public ExecutedEventHandler(EventHandler handler) {
+        this(handler, new ExecutionConfig());
+    }
+
+    public ExecutedEventHandler(EventHandler handler, ExecutionConfig config) {
         super(handler);
+        this.config = config;
+    }
+
+    public ExecutionConfig getConfig() {
+        return config;
     }
 
     @Override
-    protected void doHandle(final Event event) throws Exception {
-        executorService.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    process(event);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+    protected void doHandle(Event event) throws Exception {
+        if (config.getMode() == ExecutionMode.IO_THREAD) {
+            process(event);
+            return;
+        }
+
+        if (stopped) {
+            drop(event);
+            return;
+        }
+        if (permits != null && ! permits.tryAcquire()) {
+            reject(event);
+            return;
+        }
+
+        try {
+            executorService.execute(new EventTask(event));
+        } catch (RejectedExecutionException e) {
+            if (permits != null) {
+                permits.release();
+            }
+            if (! stopped) {
+                reject(event);
+            } else {
+                drop(event);
+            }
+        }
+    }
+
+    private class EventTask implements Runnable {
+        private final Event event;
+
+        EventTask(Event event) {
+            this.event = event;
+        }
+
+        @Override
+        public void run() {
+            try {
+                process(event);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            } finally {
+                if (permits != null) {
+                    permits.release();
                 }
             }
-        });
+        }
+    }
+
+    private void reject(Event event) {
+        if (config.getRejectionPolicy() == RejectionPolicy.CALLER_RUNS) {
+            process(event);
+        } else if (handler instanceof RejectableEventHandler) {
+            ((RejectableEventHandler) handler).rejected(event);
+        }
+    }
+
+    private void drop(Event event) {
+        if (handler instanceof RejectableEventHandler) {
+            ((RejectableEventHandler) handler).dropped(event);
+        }
     }
 
     @Override
     public void start() {
-        executorService = Executors.newFixedThreadPool(2);
+        if (config.isBounded()) {
+            permits = new Semaphore(config.getWorkers() + config.getQueueSize());
+        }
+        executorService = createExecutor();
+        stopped = false;
+    }
+
+    private ExecutorService createExecutor() {
+        switch (config.getMode()) {
+            case WORK_STEALING:
+                // FIFO like the other pools, events aren't forked tasks
+                return new ForkJoinPool(config.getWorkers(),
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+            case VIRTUAL_THREADS:
+                ExecutorService virtualExecutor = newVirtualThreadExecutor();
+                if (virtualExecutor != null) {
+                    return virtualExecutor;
+                }
+                return Executors.newFixedThreadPool(config.getWorkers());
+            case IO_THREAD:
+                return null;
+            default:
+                return Executors.newFixedThreadPool(config.getWorkers());
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() looked up reflectively,
+     * as it's only there since Java 21. Null when it isn't.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     @Override
     public void stop() {
-        if (executorService.isShutdown()) {
+        if (stopped) {
             return;
         }
-        executorService.shutdownNow();
+        stopped = true;
+        if (executorService != null) {
+            // Queued events won't run, let them go
+            List<Runnable> pending = executorService.shutdownNow();
+            for (Runnable task : pending) {
+                if (task instanceof EventTask) {
+                    drop(((EventTask) task).event);
+                }
+            }
+        }
     }
 
     @Override
     public boolean isStopped() {
-        return executorService.isShutdown();
+        return stopped;
     }
 
     @Override
     public void init() {
 
     }
-}
\ No newline at end of file
+}
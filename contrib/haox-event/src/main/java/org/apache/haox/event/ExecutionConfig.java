@@ -0,0 +1,60 @@
+package org.apache.haox.event;
+
+/**
+ * Execution settings of an ExecutedEventHandler.
+ *
+ * Events in flight, running or queued, are bounded by workers + queueSize,
+ * beyond which they're left to the rejection policy. A negative queueSize
+ * leaves the queue unbounded. VIRTUAL_THREADS has no queue in front of
+ * its threads, so all the workers + queueSize events in flight may run at
+ * the same time. IO_THREAD has no worker and no queue.
+ */
+public class ExecutionConfig {
+
+    private final ExecutionMode mode;
+    private final int workers;
+    private final int queueSize;
+    private final RejectionPolicy rejectionPolicy;
+
+    /**
+     * The default, a fixed pool of 2 threads with an unbounded queue
+     */
+    public ExecutionConfig() {
+        this(ExecutionMode.FIXED_POOL, 2, -1, RejectionPolicy.REJECT);
+    }
+
+    /**
+     * @param workers 0 or less for the count of available processors
+     */
+    public ExecutionConfig(ExecutionMode mode, int workers, int queueSize,
+                           RejectionPolicy rejectionPolicy) {
+        if (mode == null || rejectionPolicy == null) {
+            throw new IllegalArgumentException("Null execution mode or rejection policy");
+        }
+        this.mode = mode;
+        this.workers = workers > 0 ? workers :
+                Runtime.getRuntime().availableProcessors();
+        this.queueSize = queueSize;
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public boolean isBounded() {
+        return queueSize >= 0;
+    }
+
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+}
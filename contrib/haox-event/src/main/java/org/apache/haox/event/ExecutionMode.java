@@ -0,0 +1,27 @@
+package org.apache.haox.event;
+
+/**
+ * How an ExecutedEventHandler runs the events given to its handler
+ */
+public enum ExecutionMode {
+    /**
+     * A fixed pool of platform threads
+     */
+    FIXED_POOL,
+
+    /**
+     * A work stealing ForkJoinPool
+     */
+    WORK_STEALING,
+
+    /**
+     * A new virtual thread per event, when the JVM has them, otherwise
+     * the same as FIXED_POOL
+     */
+    VIRTUAL_THREADS,
+
+    /**
+     * Inline in the thread dispatching the event, usually an I/O thread
+     */
+    IO_THREAD
+}
@@ -23,7 +23,7 @@ public abstract class LongRunningEventHandler extends BufferedEventHandler {
         executorService.execute(new Runnable() {
             @Override
             public void run() {
-                while (true) {
+                while (! Thread.currentThread().isInterrupted()) {
 
                     processEvents();
 
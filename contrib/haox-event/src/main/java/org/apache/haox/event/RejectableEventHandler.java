@@ -0,0 +1,19 @@
+package org.apache.haox.event;
+
+/**
+ * An EventHandler told of the events rejected for it, so that it can clean
+ * up or answer them cheaply, e.g. with a busy error.
+ */
+public interface RejectableEventHandler extends EventHandler {
+
+    /**
+     * Called in the dispatching thread, which should be kept short.
+     */
+    public void rejected(Event event);
+
+    /**
+     * Called for an event given up without being handled or rejected, as
+     * when stopped, only to release what it holds.
+     */
+    public void dropped(Event event);
+}
@@ -0,0 +1,18 @@
+package org.apache.haox.event;
+
+/**
+ * What an ExecutedEventHandler does with an event when its workers and
+ * queue are full
+ */
+public enum RejectionPolicy {
+    /**
+     * Leave the event to the handler if it's a RejectableEventHandler,
+     * otherwise drop it
+     */
+    REJECT,
+
+    /**
+     * Run the event in the dispatching thread, slowing down the producer
+     */
+    CALLER_RUNS
+}
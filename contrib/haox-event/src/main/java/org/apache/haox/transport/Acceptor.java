@@ -1,9 +1,17 @@
 package org.apache.haox.transport;
 
+import org.apache.haox.transport.event.AddressEvent;
+
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public abstract class Acceptor extends TransportSelector {
 
+    private final CountDownLatch bindDone = new CountDownLatch(1);
+    private volatile Exception bindFailure;
+
     public Acceptor(TransportHandler transportHandler) {
         super(transportHandler);
     }
@@ -14,4 +22,40 @@ public abstract class Acceptor extends TransportSelector {
     }
 
     protected abstract void doListen(InetSocketAddress socketAddress);
+
+    /**
+     * Bind in the selecting thread, letting those waiting for it know
+     */
+    protected void bind(AddressEvent event) throws IOException {
+        try {
+            doBind(event);
+        } catch (IOException e) {
+            bindFailure = e;
+            throw e;
+        } catch (RuntimeException e) {
+            bindFailure = e;
+            throw e;
+        } finally {
+            bindDone.countDown();
+        }
+    }
+
+    protected abstract void doBind(AddressEvent event) throws IOException;
+
+    /**
+     * Wait for the address listened to be bound, as it's bound in the
+     * selecting thread after listen() returns
+     * @param timeout in milliseconds
+     * @return false if not done in the time
+     * @throws IOException if failed to bind
+     */
+    public boolean awaitBound(long timeout) throws IOException, InterruptedException {
+        if (! bindDone.await(timeout, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        if (bindFailure != null) {
+            throw new IOException("Failed to bind", bindFailure);
+        }
+        return true;
+    }
 }
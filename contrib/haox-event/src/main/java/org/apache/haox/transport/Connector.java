@@ -13,5 +13,9 @@ public abstract class Connector extends TransportSelector {
         doConnect(sa);
     }
 
+    public void connect(InetSocketAddress serverAddress) {
+        doConnect(serverAddress);
+    }
+
     protected abstract void doConnect(InetSocketAddress sa);
 }
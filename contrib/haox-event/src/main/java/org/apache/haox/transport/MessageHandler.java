@@ -3,18 +3,52 @@ package org.apache.haox.transport;
 import org.apache.haox.event.AbstractEventHandler;
 import org.apache.haox.event.Event;
 import org.apache.haox.event.EventType;
+import org.apache.haox.event.RejectableEventHandler;
+import org.apache.haox.transport.buffer.BufferPool;
 import org.apache.haox.transport.event.MessageEvent;
 import org.apache.haox.transport.event.TransportEventType;
 
-public abstract class MessageHandler extends AbstractEventHandler {
+public abstract class MessageHandler extends AbstractEventHandler
+        implements RejectableEventHandler {
 
     @Override
     protected void doHandle(Event event) throws Exception {
-        handleMessage((MessageEvent) event);
+        MessageEvent msgEvent = (MessageEvent) event;
+        try {
+            handleMessage(msgEvent);
+        } finally {
+            // The inbound message is consumed, give its buffer back
+            BufferPool.release(msgEvent.getMessage());
+        }
     }
 
     protected abstract void handleMessage(MessageEvent event) throws Exception;
 
+    @Override
+    public void rejected(Event event) {
+        MessageEvent msgEvent = (MessageEvent) event;
+        try {
+            rejectMessage(msgEvent);
+        } catch (Exception e) {
+            throw new RuntimeException(event.toString(), e);
+        } finally {
+            BufferPool.release(msgEvent.getMessage());
+        }
+    }
+
+    @Override
+    public void dropped(Event event) {
+        BufferPool.release(((MessageEvent) event).getMessage());
+    }
+
+    /**
+     * Called instead of handleMessage when the message can't be taken for
+     * now. It's dropped by default.
+     */
+    protected void rejectMessage(MessageEvent event) throws Exception {
+
+    }
+
     @Override
     public EventType[] getInterestedEvents() {
         return new EventType[] { TransportEventType.INBOUND_MESSAGE };
@@ -28,6 +28,7 @@ public class Network extends LongRunningEventHandler {
     private StreamingDecoder streamingDecoder;
     private UdpTransportHandler udpTransportHandler;
     private TcpTransportHandler tcpTransportHandler;
+    private WorkerSelectorPool workerPool = new WorkerSelectorPool(0);
 
     class MyEventHandler extends AbstractEventHandler {
         @Override
@@ -77,6 +78,38 @@ public class Network extends LongRunningEventHandler {
         this.streamingDecoder = streamingDecoder;
     }
 
+    /**
+     * TCP only. Serve accepted connections with workerCount worker selectors,
+     * or 0 to serve them in this selector. Should be called before started.
+     * @param workerCount
+     */
+    public void setWorkerCount(int workerCount) {
+        this.workerPool = new WorkerSelectorPool(workerCount);
+    }
+
+    @Override
+    public void start() {
+        super.start();
+
+        workerPool.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+
+        workerPool.stop();
+    }
+
+    /**
+     * Queue the event and wake up the selector so it's processed in time
+     */
+    @Override
+    protected void doHandle(Event event) throws Exception {
+        super.doHandle(event);
+        selector.wakeup();
+    }
+
     /**
      * TCP only. Connect on the given server address. Can be called multiple times
      * for multiple servers
@@ -135,7 +168,7 @@ public class Network extends LongRunningEventHandler {
     }
 
     protected void selectOnce() throws IOException {
-        if (selector.isOpen() && selector.select(2) > 0 && selector.isOpen()) {
+        if (selector.isOpen() && selector.select() > 0 && selector.isOpen()) {
             Set<SelectionKey> selectionKeys = selector.selectedKeys();
             Iterator<SelectionKey> iterator = selectionKeys.iterator();
             while (iterator.hasNext()) {
@@ -231,8 +264,8 @@ public class Network extends LongRunningEventHandler {
             channel.finishConnect();
         }
 
-        Transport transport = new TcpTransport(channel, tcpTransportHandler.getStreamingDecoder());
-        channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, transport);
+        TcpTransport transport = new TcpTransport(channel, tcpTransportHandler.getStreamingDecoder());
+        transport.setSelectionKey(channel.register(selector, SelectionKey.OP_READ, transport));
         onNewTransport(transport);
     }
 
@@ -255,10 +288,17 @@ public class Network extends LongRunningEventHandler {
             channel.socket().setTcpNoDelay(true);
             channel.socket().setKeepAlive(true);
 
-            Transport transport = new TcpTransport(channel,
+            TcpTransport transport = new TcpTransport(channel,
                     tcpTransportHandler.getStreamingDecoder());
-            channel.register(selector,
-                    SelectionKey.OP_READ | SelectionKey.OP_WRITE, transport);
+
+            if (! workerPool.isEmpty()) {
+                onNewTransport(transport);
+                workerPool.register(channel, transport);
+                continue;
+            }
+
+            transport.setSelectionKey(
+                    channel.register(selector, SelectionKey.OP_READ, transport));
             onNewTransport(transport);
         }
     }
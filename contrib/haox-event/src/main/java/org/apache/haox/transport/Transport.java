@@ -1,6 +1,7 @@
 package org.apache.haox.transport;
 
 import org.apache.haox.event.Dispatcher;
+import org.apache.haox.transport.buffer.BufferPool;
 import org.apache.haox.transport.buffer.TransBuffer;
 import org.apache.haox.transport.event.TransportEvent;
 
@@ -31,8 +32,13 @@ public abstract class Transport {
         return remoteAddress;
     }
 
+    /**
+     * Queue the message to send. A pooled message is retained until it's
+     * written out, so the caller still releases its own reference.
+     */
     public void sendMessage(ByteBuffer message) {
         if (message != null) {
+            BufferPool.retain(message);
             sendBuffer.write(message);
             dispatcher.dispatch(TransportEvent.createWritableTransportEvent(this));
         }
@@ -44,7 +50,11 @@ public abstract class Transport {
         if (! sendBuffer.isEmpty()) {
             ByteBuffer message = sendBuffer.read();
             if (message != null) {
-                sendOutMessage(message);
+                try {
+                    sendOutMessage(message);
+                } finally {
+                    BufferPool.release(message);
+                }
             }
         }
     }
@@ -53,6 +63,14 @@ public abstract class Transport {
         this.readableCount++;
     }
 
+    /**
+     * Whether messages may still be sent and received, false once the
+     * connection is closed by either side
+     */
+    public boolean isOpen() {
+        return true;
+    }
+
     protected abstract void sendOutMessage(ByteBuffer message) throws IOException;
 
     public void setAttachment(Object attachment) {
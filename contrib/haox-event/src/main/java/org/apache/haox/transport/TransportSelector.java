@@ -1,10 +1,12 @@
 package org.apache.haox.transport;
 
 import org.apache.haox.event.Dispatcher;
+import org.apache.haox.event.Event;
 import org.apache.haox.event.LongRunningEventHandler;
 import org.apache.haox.transport.event.TransportEvent;
 
 import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.Iterator;
@@ -37,6 +39,16 @@ public abstract class TransportSelector extends LongRunningEventHandler {
         }
     }
 
+    /**
+     * Queue the event and wake up the selector blocking in select, so that
+     * it's processed by the selecting thread in time.
+     */
+    @Override
+    protected void doHandle(Event event) throws Exception {
+        super.doHandle(event);
+        selector.wakeup();
+    }
+
     @Override
     protected void loopOnce() {
         try {
@@ -47,13 +59,19 @@ public abstract class TransportSelector extends LongRunningEventHandler {
     }
 
     protected void selectOnce() throws IOException {
-        if (selector.isOpen() && selector.select(10) > 0 && selector.isOpen()) {
+        if (selector.isOpen() && selector.select() > 0 && selector.isOpen()) {
             Set<SelectionKey> selectionKeys = selector.selectedKeys();
             Iterator<SelectionKey> iterator = selectionKeys.iterator();
             while (iterator.hasNext()) {
                 SelectionKey selectionKey = iterator.next();
-                dealKey(selectionKey);
                 iterator.remove();
+                try {
+                    if (selectionKey.isValid()) {
+                        dealKey(selectionKey);
+                    }
+                } catch (CancelledKeyException e) {
+                    // Closed by another thread meanwhile, go on with the rest
+                }
             }
             selectionKeys.clear();
         }
@@ -0,0 +1,161 @@
+package org.apache.haox.transport;
+
+import org.apache.haox.transport.tcp.TcpTransport;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A worker reactor owning its own selector and thread. Accepted channels are
+ * handed over from the acceptor thread and are read on the worker thread,
+ * which also writes out what's left queued when they're writable again.
+ */
+public class WorkerSelector implements Runnable {
+
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    private Queue<Registration> pendingRegistrations =
+            new ConcurrentLinkedQueue<Registration>();
+    private AtomicInteger channelCount = new AtomicInteger(0);
+
+    private static class Registration {
+        SelectableChannel channel;
+        Transport transport;
+
+        Registration(SelectableChannel channel, Transport transport) {
+            this.channel = channel;
+            this.transport = transport;
+        }
+    }
+
+    public WorkerSelector(String name) {
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Hand over a channel to this worker. Can be called from any thread, the
+     * actual registration happens on the worker thread.
+     */
+    public void register(SelectableChannel channel, Transport transport) {
+        pendingRegistrations.add(new Registration(channel, transport));
+        channelCount.incrementAndGet();
+        selector.wakeup();
+    }
+
+    /**
+     * Count of channels currently served by this worker
+     */
+    public int getChannelCount() {
+        return channelCount.get();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                if (! running) {
+                    break;
+                }
+
+                doRegistrations();
+
+                Set<SelectionKey> selectionKeys = selector.selectedKeys();
+                Iterator<SelectionKey> iterator = selectionKeys.iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey selectionKey = iterator.next();
+                    iterator.remove();
+                    dealKey(selectionKey);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void doRegistrations() {
+        Registration registration;
+        while ((registration = pendingRegistrations.poll()) != null) {
+            try {
+                SelectionKey key = registration.channel.register(selector,
+                        SelectionKey.OP_READ, registration.transport);
+                if (registration.transport instanceof TcpTransport) {
+                    ((TcpTransport) registration.transport).setSelectionKey(key);
+                }
+            } catch (IOException e) {
+                channelCount.decrementAndGet();
+                closeQuietly(registration.channel);
+            }
+        }
+    }
+
+    private void dealKey(SelectionKey selectionKey) {
+        Transport transport = (Transport) selectionKey.attachment();
+        try {
+            if (selectionKey.isValid() && selectionKey.isWritable()) {
+                transport.onWriteable();
+            }
+            if (selectionKey.isValid() && selectionKey.isReadable()) {
+                transport.onReadable();
+            }
+        } catch (IOException e) {
+            selectionKey.cancel();
+            closeQuietly(selectionKey.channel());
+        } catch (CancelledKeyException e) {
+            // Closed by another thread meanwhile
+        }
+
+        if (! selectionKey.channel().isOpen()) {
+            channelCount.decrementAndGet();
+        }
+    }
+
+    private void closeQuietly(SelectableChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.apache.haox.transport;
+
+import java.nio.channels.SelectableChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of worker reactors, accepted channels are spread across them in
+ * round robin. A pool of no workers leaves accepted channels to be served
+ * in the accepting selector, see isEmpty().
+ */
+public class WorkerSelectorPool {
+
+    public static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+
+    private WorkerSelector[] workers;
+    private AtomicInteger next = new AtomicInteger(0);
+
+    public WorkerSelectorPool() {
+        this(DEFAULT_WORKERS);
+    }
+
+    public WorkerSelectorPool(int workerCount) {
+        if (workerCount < 0) {
+            throw new IllegalArgumentException("Invalid worker count: " + workerCount);
+        }
+
+        workers = new WorkerSelector[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new WorkerSelector("haox-worker-" + i);
+        }
+    }
+
+    public int size() {
+        return workers.length;
+    }
+
+    public boolean isEmpty() {
+        return workers.length == 0;
+    }
+
+    public void start() {
+        for (WorkerSelector worker : workers) {
+            worker.start();
+        }
+    }
+
+    public void stop() {
+        for (WorkerSelector worker : workers) {
+            worker.stop();
+        }
+    }
+
+    public void register(SelectableChannel channel, Transport transport) {
+        nextWorker().register(channel, transport);
+    }
+
+    private WorkerSelector nextWorker() {
+        int index = (next.getAndIncrement() & Integer.MAX_VALUE) % workers.length;
+        return workers[index];
+    }
+}
@@ -1,14 +1,364 @@
 package org.apache.haox.transport.buffer;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * A size classed buffer pool, with heap and direct variants. Released buffers
+ * are cached per thread first, then in a shared free list per size class.
+ *
+ * Allocated buffers are reference counted: allocate gives one reference,
+ * retain adds one and release drops one, the buffer is recycled when none
+ * is left. Buffers that are not from the pool are ignored by retain and
+ * release. In debug mode allocation sites of buffers that were garbage
+ * collected without being released are logged as leaks.
+ *
+ * Each buffer of the pool has one record for its life, holding its count,
+ * found by identity in a table of the pool. So allocating, retaining and
+ * releasing a recycled buffer allocate nothing; only a new buffer, or one
+ * too large to be pooled, comes with a new record.
+ */
 public class BufferPool {
+    private static final Logger logger = LoggerFactory.getLogger(BufferPool.class);
+
+    private static final int[] SIZE_CLASSES = new int[] {512, 2048, 8192, 65536};
+    private static final int LOCAL_CACHE_SIZE = 8;
+    private static final int SHARED_LIST_BYTES = 4 * 1024 * 1024;
+    private static final int INITIAL_TABLE_SIZE = 256;
+
+    private static final BufferPool HEAP_POOL = new BufferPool(false);
+    private static final BufferPool DIRECT_POOL = new BufferPool(true);
+
+    private static volatile boolean debug = Boolean.getBoolean("haox.buffer.debug");
+
+    private final boolean direct;
+    private final ThreadLocal<ArrayDeque<ByteBuffer>[]> localCaches;
+    private final Queue<ByteBuffer>[] sharedFreeLists;
+
+    // The records of the buffers out of the pool or cached in it, chained
+    // by identity hash. Changed under the pool lock, looked up without it.
+    private volatile AtomicReferenceArray<Node> table =
+            new AtomicReferenceArray<Node>(INITIAL_TABLE_SIZE);
+    private int tableCount;
+    private final ReferenceQueue<ByteBuffer> collectedBuffers =
+            new ReferenceQueue<ByteBuffer>();
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong outstanding = new AtomicLong(0);
+    private final AtomicLong leaks = new AtomicLong(0);
+
+    /**
+     * The record of a buffer of the pool, referring to it weakly so that a
+     * buffer never released, or cached by a thread that's gone, is still
+     * garbage collected. The count is 0 while the buffer is cached.
+     */
+    private static class PooledBuffer extends WeakReference<ByteBuffer> {
+        final int hash;
+        final AtomicInteger refCount = new AtomicInteger(0);
+        volatile Throwable allocationSite;
+
+        PooledBuffer(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            this.hash = hashOf(buffer);
+        }
+    }
+
+    private static class Node {
+        final PooledBuffer record;
+        final Node next;
+
+        Node(PooledBuffer record, Node next) {
+            this.record = record;
+            this.next = next;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private BufferPool(boolean direct) {
+        this.direct = direct;
+
+        this.localCaches = new ThreadLocal<ArrayDeque<ByteBuffer>[]>() {
+            @Override
+            protected ArrayDeque<ByteBuffer>[] initialValue() {
+                ArrayDeque<ByteBuffer>[] caches = new ArrayDeque[SIZE_CLASSES.length];
+                for (int i = 0; i < caches.length; i++) {
+                    caches[i] = new ArrayDeque<ByteBuffer>(LOCAL_CACHE_SIZE);
+                }
+                return caches;
+            }
+        };
+
+        // Bounded array queues, which take buffers without allocating
+        this.sharedFreeLists = new Queue[SIZE_CLASSES.length];
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            sharedFreeLists[i] = new ArrayBlockingQueue<ByteBuffer>(
+                    SHARED_LIST_BYTES / SIZE_CLASSES[i]);
+        }
+    }
 
+    /**
+     * Allocate a heap buffer with len bytes available between position and limit
+     */
     public static ByteBuffer allocate(int len) {
-        return ByteBuffer.allocate(len);
+        return HEAP_POOL.acquire(len);
     }
 
+    /**
+     * Allocate a direct buffer with len bytes available between position and limit
+     */
+    public static ByteBuffer allocateDirect(int len) {
+        return DIRECT_POOL.acquire(len);
+    }
+
+    /**
+     * Add a reference to the buffer so that it's not recycled until released again
+     */
+    public static void retain(ByteBuffer buffer) {
+        if (buffer != null) {
+            getPool(buffer).retainBuffer(buffer);
+        }
+    }
+
+    /**
+     * Drop a reference to the buffer, recycle it if it's the last one
+     */
     public static void release(ByteBuffer buffer) {
+        if (buffer != null) {
+            getPool(buffer).releaseBuffer(buffer);
+        }
+    }
+
+    public static BufferPool getHeapPool() {
+        return HEAP_POOL;
+    }
+
+    public static BufferPool getDirectPool() {
+        return DIRECT_POOL;
+    }
+
+    public static void setDebug(boolean isDebug) {
+        debug = isDebug;
+    }
+
+    public static boolean isDebug() {
+        return debug;
+    }
+
+    private static BufferPool getPool(ByteBuffer buffer) {
+        return buffer.isDirect() ? DIRECT_POOL : HEAP_POOL;
+    }
+
+    /**
+     * Count of allocations served by recycled buffers
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Count of allocations that needed a new buffer
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Count of allocated buffers not released yet
+     */
+    public long getOutstanding() {
+        expungeCollected();
+        return outstanding.get();
+    }
+
+    /**
+     * Count of buffers garbage collected without being released
+     */
+    public long getLeaks() {
+        expungeCollected();
+        return leaks.get();
+    }
+
+    private ByteBuffer acquire(int len) {
+        expungeCollected();
+
+        int sizeClass = sizeClassOf(len);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = localCaches.get()[sizeClass].pollFirst();
+            if (buffer == null) {
+                buffer = sharedFreeLists[sizeClass].poll();
+            }
+        }
+
+        PooledBuffer record;
+        if (buffer != null) {
+            hits.incrementAndGet();
+            record = lookup(buffer);
+        } else { // too large to be pooled, or none to recycle
+            misses.incrementAndGet();
+            buffer = newBuffer(sizeClass < 0 ? len : SIZE_CLASSES[sizeClass]);
+            record = new PooledBuffer(buffer, collectedBuffers);
+            addRecord(record);
+        }
+
+        buffer.clear();
+        buffer.limit(len);
+
+        record.allocationSite = debug ? new Throwable("Buffer allocated here") : null;
+        record.refCount.set(1);
+        outstanding.incrementAndGet();
+
+        return buffer;
+    }
+
+    private void retainBuffer(ByteBuffer buffer) {
+        PooledBuffer record = lookup(buffer);
+        if (record == null) {
+            return;
+        }
+        int count;
+        do {
+            count = record.refCount.get();
+            if (count <= 0) { // recycled already
+                return;
+            }
+        } while (! record.refCount.compareAndSet(count, count + 1));
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        PooledBuffer record = lookup(buffer);
+        if (record == null) { // not from the pool
+            return;
+        }
+        int count;
+        do {
+            count = record.refCount.get();
+            if (count <= 0) { // recycled already
+                return;
+            }
+        } while (! record.refCount.compareAndSet(count, count - 1));
+        if (count > 1) {
+            return;
+        }
+
+        outstanding.decrementAndGet();
+        record.allocationSite = null;
+
+        int sizeClass = sizeClassOf(buffer.capacity());
+        if (sizeClass >= 0 && SIZE_CLASSES[sizeClass] == buffer.capacity()) {
+            ArrayDeque<ByteBuffer> localCache = localCaches.get()[sizeClass];
+            if (localCache.size() < LOCAL_CACHE_SIZE) {
+                localCache.addFirst(buffer);
+                return;
+            }
+            if (sharedFreeLists[sizeClass].offer(buffer)) {
+                return;
+            }
+        }
+        removeRecord(record); // let go
+    }
+
+    private PooledBuffer lookup(ByteBuffer buffer) {
+        AtomicReferenceArray<Node> tab = table;
+        int hash = hashOf(buffer);
+        for (Node node = tab.get(hash & (tab.length() - 1)); node != null; node = node.next) {
+            if (node.record.get() == buffer) {
+                return node.record;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void addRecord(PooledBuffer record) {
+        AtomicReferenceArray<Node> tab = table;
+        if (tableCount >= tab.length() / 4 * 3) {
+            tab = resize(tab);
+        }
+        int index = record.hash & (tab.length() - 1);
+        tab.set(index, new Node(record, tab.get(index)));
+        tableCount++;
+    }
+
+    /**
+     * Take the record out of the table, false if it's not in it. Lookups
+     * don't lock, so the nodes before it are copied and not changed.
+     */
+    private synchronized boolean removeRecord(PooledBuffer record) {
+        AtomicReferenceArray<Node> tab = table;
+        int index = record.hash & (tab.length() - 1);
+        Node first = tab.get(index);
+        Node found = first;
+        while (found != null && found.record != record) {
+            found = found.next;
+        }
+        if (found == null) {
+            return false;
+        }
+        Node chain = found.next;
+        for (Node node = first; node != found; node = node.next) {
+            chain = new Node(node.record, chain);
+        }
+        tab.set(index, chain);
+        tableCount--;
+        return true;
+    }
+
+    private AtomicReferenceArray<Node> resize(AtomicReferenceArray<Node> tab) {
+        AtomicReferenceArray<Node> resized = new AtomicReferenceArray<Node>(tab.length() * 2);
+        for (int i = 0; i < tab.length(); i++) {
+            for (Node node = tab.get(i); node != null; node = node.next) {
+                int index = node.record.hash & (resized.length() - 1);
+                resized.set(index, new Node(node.record, resized.get(index)));
+            }
+        }
+        table = resized;
+        return resized;
+    }
+
+    private void expungeCollected() {
+        Reference<? extends ByteBuffer> ref;
+        while ((ref = collectedBuffers.poll()) != null) {
+            PooledBuffer record = (PooledBuffer) ref;
+            // Not let go after released already, nor cached by a thread gone
+            if (removeRecord(record) && record.refCount.get() > 0) {
+                outstanding.decrementAndGet();
+                leaks.incrementAndGet();
+                Throwable allocationSite = record.allocationSite;
+                if (allocationSite != null) {
+                    logger.warn("LEAK: a pooled buffer was garbage collected " +
+                            "without being released", allocationSite);
+                }
+            }
+        }
+    }
+
+    private static int hashOf(ByteBuffer buffer) {
+        int hash = System.identityHashCode(buffer);
+        return hash ^ (hash >>> 16);
+    }
+
+    private ByteBuffer newBuffer(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
 
+    private static int sizeClassOf(int len) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (len <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
     }
 }
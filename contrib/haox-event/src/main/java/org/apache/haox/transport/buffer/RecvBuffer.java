@@ -2,135 +2,113 @@ package org.apache.haox.transport.buffer;
 
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.util.Iterator;
-import java.util.LinkedList;
-
+import java.util.ArrayDeque;
+
+/**
+ * The bytes received and not decoded yet, kept as the buffers they're read
+ * into, not copied into one as each of them comes. They're merged into one
+ * only when a decoder is to look at them all, or copied out once as a
+ * message of them is taken.
+ */
 public class RecvBuffer {
 
-    private LinkedList<ByteBuffer> bufferQueue;
+    private final ArrayDeque<ByteBuffer> bufferQueue;
+    private int remaining;
 
     public RecvBuffer() {
-        bufferQueue = new LinkedList<ByteBuffer>();
+        bufferQueue = new ArrayDeque<ByteBuffer>();
     }
 
     public synchronized void write(ByteBuffer buffer) {
+        if (! buffer.hasRemaining()) {
+            BufferPool.release(buffer);
+            return;
+        }
         bufferQueue.addLast(buffer);
+        remaining += buffer.remaining();
     }
 
     /**
-     * Put buffer as the first into the buffer queue
-     */
-    public synchronized void writeFirst(ByteBuffer buffer) {
-        bufferQueue.addFirst(buffer);
-    }
-
-    /**
-     * Read and return the first buffer if available
+     * All the bytes available as one buffer, to be looked at in place by a
+     * decoder and not consumed. The buffers are merged into one first if
+     * there's more than one, which is done once for the bytes of a message
+     * if it's only asked for when they're all there.
      */
-    public synchronized ByteBuffer readFirst() {
-        if (! bufferQueue.isEmpty()) {
-            return bufferQueue.removeFirst();
+    public synchronized ByteBuffer peekAll() {
+        if (bufferQueue.isEmpty()) {
+            return null;
         }
-        return null;
+        if (bufferQueue.size() > 1) {
+            ByteBuffer merged = BufferPool.allocate(remaining);
+            ByteBuffer taken;
+            while ((taken = bufferQueue.pollFirst()) != null) {
+                merged.put(taken);
+                BufferPool.release(taken);
+            }
+            merged.flip();
+            bufferQueue.addFirst(merged);
+        }
+        return bufferQueue.peekFirst().duplicate();
     }
 
     /**
      * Read most available bytes into the dst buffer
      */
     public synchronized ByteBuffer readMostBytes() {
-        int len = remaining();
-        return readBytes(len);
+        return readBytes(remaining);
     }
 
     /**
-     * Read len bytes into the dst buffer if available
+     * Read len bytes into the dst buffer if available. The first buffer is
+     * taken as it is when it holds just len bytes, else they're copied out
+     * a buffer at a time.
      */
     public synchronized ByteBuffer readBytes(int len) {
-        if (remaining() < len) { // no enough data that's available
+        if (remaining < len) { // no enough data that's available
             throw new BufferOverflowException();
         }
 
-        ByteBuffer result = null;
-
-        ByteBuffer takenBuffer;
-        if (bufferQueue.size() == 1) {
-            takenBuffer = bufferQueue.removeFirst();
-
-            if (takenBuffer.remaining() == len) {
-                return takenBuffer;
-            }
-
-            result = BufferPool.allocate(len);
-            for (int i = 0; i < len; i++) {
-                result.put(takenBuffer.get());
-            }
-            // Has left bytes so put it back for future reading
-            if (takenBuffer.remaining() > 0) {
-                bufferQueue.addFirst(takenBuffer);
-            }
-        } else {
-            result = BufferPool.allocate(len);
-
-            Iterator<ByteBuffer> iter = bufferQueue.iterator();
-            int alreadyGot = 0, toGet;
-            while (iter.hasNext()) {
-                takenBuffer = iter.next();
-                iter.remove();
-
-                toGet = takenBuffer.remaining() < len - alreadyGot ?
-                    takenBuffer.remaining() : len -alreadyGot;
-                byte[] toGetBytes = new byte[toGet];
-                takenBuffer.get(toGetBytes);
-                result.put(toGetBytes);
-
-                if (takenBuffer.remaining() > 0) {
-                    bufferQueue.addFirst(takenBuffer);
-                }
+        ByteBuffer takenBuffer = bufferQueue.peekFirst();
+        if (takenBuffer != null && takenBuffer.remaining() == len) {
+            remaining -= len;
+            return bufferQueue.pollFirst();
+        }
 
-                alreadyGot += toGet;
-                if (alreadyGot == len) {
-                    break;
-                }
+        ByteBuffer result = BufferPool.allocate(len);
+        while (result.hasRemaining()) {
+            takenBuffer = bufferQueue.peekFirst();
+            if (takenBuffer.remaining() <= result.remaining()) {
+                result.put(takenBuffer);
+                BufferPool.release(bufferQueue.pollFirst());
+            } else {
+                ByteBuffer part = takenBuffer.duplicate();
+                part.limit(part.position() + result.remaining());
+                takenBuffer.position(part.limit());
+                result.put(part);
             }
         }
+        remaining -= len;
         result.flip();
 
         return result;
     }
 
-    public boolean isEmpty() {
-        return bufferQueue.isEmpty();
+    public synchronized boolean isEmpty() {
+        return remaining == 0;
     }
 
     /**
      * Return count of remaining and left bytes that's available
      */
-    public int remaining() {
-        if (bufferQueue.isEmpty()) {
-            return 0;
-        } else if (bufferQueue.size() == 1) {
-            return bufferQueue.getFirst().remaining();
-        }
-
-        int result = 0;
-        Iterator<ByteBuffer> iter = bufferQueue.iterator();
-        while (iter.hasNext()) {
-            result += iter.next().remaining();
-        }
-        return result;
+    public synchronized int remaining() {
+        return remaining;
     }
 
     public synchronized void clear() {
-        if (bufferQueue.isEmpty()) {
-            return;
-        } else if (bufferQueue.size() == 1) {
-            BufferPool.release(bufferQueue.getFirst());
-        }
-
-        Iterator<ByteBuffer> iter = bufferQueue.iterator();
-        while (iter.hasNext()) {
-            BufferPool.release(iter.next());
+        ByteBuffer taken;
+        while ((taken = bufferQueue.pollFirst()) != null) {
+            BufferPool.release(taken);
         }
-        bufferQueue.clear();
+        remaining = 0;
     }
 }
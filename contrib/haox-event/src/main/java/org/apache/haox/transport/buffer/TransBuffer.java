@@ -1,15 +1,16 @@
 package org.apache.haox.transport.buffer;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 public class TransBuffer {
 
     private BlockingQueue<ByteBuffer> bufferQueue;
 
     public TransBuffer() {
-        bufferQueue = new ArrayBlockingQueue<ByteBuffer>(2);
+        // Not bounded, as a client may have many requests in flight
+        bufferQueue = new LinkedBlockingQueue<ByteBuffer>();
     }
 
     public void write(ByteBuffer buffer) {
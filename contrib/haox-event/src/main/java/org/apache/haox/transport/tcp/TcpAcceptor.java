@@ -4,7 +4,7 @@ import org.apache.haox.event.AbstractEventHandler;
 import org.apache.haox.event.Event;
 import org.apache.haox.event.EventType;
 import org.apache.haox.transport.Acceptor;
-import org.apache.haox.transport.Transport;
+import org.apache.haox.transport.WorkerSelectorPool;
 import org.apache.haox.transport.event.AddressEvent;
 
 import java.io.IOException;
@@ -16,10 +16,22 @@ import java.nio.channels.SocketChannel;
 
 public class TcpAcceptor extends Acceptor {
 
+    private WorkerSelectorPool workerPool = new WorkerSelectorPool(0);
+    private ServerSocketChannel serverSocketChannel;
+
     public TcpAcceptor(StreamingDecoder streamingDecoder) {
         this(new TcpTransportHandler(streamingDecoder));
     }
 
+    /**
+     * Accept in this selector and serve accepted connections with workerCount
+     * worker selectors.
+     */
+    public TcpAcceptor(StreamingDecoder streamingDecoder, int workerCount) {
+        this(streamingDecoder);
+        setWorkerCount(workerCount);
+    }
+
     public TcpAcceptor(TcpTransportHandler transportHandler) {
         super(transportHandler);
 
@@ -28,7 +40,7 @@ public class TcpAcceptor extends Acceptor {
             protected void doHandle(Event event) throws Exception {
                 if (event.getEventType() == TcpEventType.ADDRESS_BIND) {
                     try {
-                        doBind((AddressEvent) event);
+                        bind((AddressEvent) event);
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
@@ -44,6 +56,36 @@ public class TcpAcceptor extends Acceptor {
         });
     }
 
+    /**
+     * Use workerCount worker selectors for accepted connections, or 0 to serve
+     * them in the accepting selector. Should be called before started.
+     */
+    public void setWorkerCount(int workerCount) {
+        this.workerPool = new WorkerSelectorPool(workerCount);
+    }
+
+    @Override
+    public void start() {
+        super.start();
+
+        workerPool.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+
+        workerPool.stop();
+
+        if (serverSocketChannel != null) {
+            try {
+                serverSocketChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     @Override
     protected void doListen(InetSocketAddress socketAddress) {
         AddressEvent event = TcpAddressEvent.createAddressBindEvent(socketAddress);
@@ -73,20 +115,27 @@ public class TcpAcceptor extends Acceptor {
             channel.socket().setTcpNoDelay(true);
             channel.socket().setKeepAlive(true);
 
-            Transport transport = new TcpTransport(channel,
+            TcpTransport transport = new TcpTransport(channel,
                     ((TcpTransportHandler) transportHandler).getStreamingDecoder());
 
+            if (! workerPool.isEmpty()) {
+                onNewTransport(transport);
+                workerPool.register(channel, transport);
+                continue;
+            }
+
             if (! selector.isOpen()) {
                 break;
             }
-            channel.register(selector,
-                SelectionKey.OP_READ | SelectionKey.OP_WRITE, transport);
+            transport.setSelectionKey(
+                    channel.register(selector, SelectionKey.OP_READ, transport));
             onNewTransport(transport);
         }
     }
 
+    @Override
     protected void doBind(AddressEvent event) throws IOException {
-        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel = ServerSocketChannel.open();
         serverSocketChannel.configureBlocking(false);
         ServerSocket serverSocket = serverSocketChannel.socket();
         serverSocket.bind(event.getAddress());
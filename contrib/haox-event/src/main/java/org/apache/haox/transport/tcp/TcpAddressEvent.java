@@ -14,4 +14,8 @@ public class TcpAddressEvent {
         return new AddressEvent(address, TcpEventType.ADDRESS_CONNECT);
     }
 
+    public static AddressEvent createConnectFailedEvent(InetSocketAddress address) {
+        return new AddressEvent(address, TcpEventType.CONNECT_FAILED);
+    }
+
 }
@@ -4,7 +4,6 @@ import org.apache.haox.event.AbstractEventHandler;
 import org.apache.haox.event.Event;
 import org.apache.haox.event.EventType;
 import org.apache.haox.transport.Connector;
-import org.apache.haox.transport.Transport;
 import org.apache.haox.transport.event.AddressEvent;
 
 import java.io.IOException;
@@ -47,9 +46,14 @@ public class TcpConnector extends Connector {
     private void doConnect(AddressEvent event) throws IOException {
         SocketChannel channel = SocketChannel.open();
         channel.configureBlocking(false);
-        channel.connect(event.getAddress());
-        channel.register(selector,
-                SelectionKey.OP_CONNECT | SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        try {
+            channel.connect(event.getAddress());
+        } catch (IOException e) {
+            channel.close();
+            dispatch(TcpAddressEvent.createConnectFailedEvent(event.getAddress()));
+            return;
+        }
+        channel.register(selector, SelectionKey.OP_CONNECT, event.getAddress());
     }
 
     @Override
@@ -61,15 +65,27 @@ public class TcpConnector extends Connector {
         }
     }
 
+    /**
+     * Finish connecting, or dispatch CONNECT_FAILED with the address if the
+     * peer isn't there.
+     */
     private void doConnect(SelectionKey key) throws IOException {
         SocketChannel channel = (SocketChannel) key.channel();
-        if (channel.isConnectionPending()) {
-            channel.finishConnect();
+        try {
+            if (channel.isConnectionPending()) {
+                channel.finishConnect();
+            }
+        } catch (IOException e) {
+            key.cancel();
+            channel.close();
+            dispatch(TcpAddressEvent.createConnectFailedEvent(
+                    (InetSocketAddress) key.attachment()));
+            return;
         }
 
-        Transport transport = new TcpTransport(channel,
+        TcpTransport transport = new TcpTransport(channel,
                 ((TcpTransportHandler) transportHandler).getStreamingDecoder());
-        channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, transport);
+        transport.setSelectionKey(channel.register(selector, SelectionKey.OP_READ, transport));
         onNewTransport(transport);
     }
 }
@@ -4,5 +4,6 @@ import org.apache.haox.event.EventType;
 
 public enum TcpEventType implements EventType {
     ADDRESS_BIND,
-    ADDRESS_CONNECT
+    ADDRESS_CONNECT,
+    CONNECT_FAILED
 }
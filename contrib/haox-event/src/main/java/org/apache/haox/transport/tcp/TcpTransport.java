@@ -8,15 +8,52 @@ import org.apache.haox.transport.event.MessageEvent;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
+/**
+ * A TCP connection. Messages sent are queued and written out as much as the
+ * socket takes at a time, with one gathering write of the queued buffers, by
+ * the sending thread when nothing is queued before, else by the selector
+ * when the socket is writable again. OP_WRITE is only set while there's
+ * output queued, as the socket is writable nearly all the time.
+ *
+ * When more than the high water mark is queued, as the peer isn't reading,
+ * it stops reading from the peer until half of that is written out, so a
+ * peer pipelining requests can't make it hold all the replies. When more
+ * than the outbound limit is queued the connection is closed.
+ *
+ * Bytes received are kept as read until the decoder finds a message in
+ * them, and every message complete in a read is taken out of it.
+ */
 public class TcpTransport extends Transport {
 
+    public static final int DEFAULT_HIGH_WATER_MARK = 256 * 1024;
+    public static final int DEFAULT_MAX_OUTBOUND_BYTES = 4 * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_READ_BUFFERS = 8;
+    private static final int MAX_GATHERED_BUFFERS = 64;
+
     private SocketChannel channel;
 
     private StreamingDecoder streamingDecoder;
 
     private RecvBuffer recvBuffer;
+    private final WithReadDataHander decodingCallback = new WithReadDataHander();
+    private int neededLength = 1; // the bytes to receive before decoding again
+
+    // Guarded by itself, as messages may be sent by any thread
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<ByteBuffer>();
+    private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_BUFFERS];
+    private int outboundBytes;
+    private boolean readSuspended;
+    private SelectionKey selectionKey;
+    private int highWaterMark = DEFAULT_HIGH_WATER_MARK;
+    private int maxOutboundBytes = DEFAULT_MAX_OUTBOUND_BYTES;
 
     public TcpTransport(SocketChannel channel,
                         StreamingDecoder streamingDecoder) throws IOException {
@@ -27,65 +64,260 @@ public class TcpTransport extends Transport {
         this.recvBuffer = new RecvBuffer();
     }
 
+    /**
+     * Set the key of the channel registered, so that the interest in writing
+     * and reading can be changed as output is queued and written out
+     */
+    public void setSelectionKey(SelectionKey selectionKey) {
+        synchronized (outbound) {
+            this.selectionKey = selectionKey;
+            updateInterestOps();
+        }
+    }
+
+    /**
+     * Set the queued bytes over which it stops reading from the peer, and
+     * over which the connection is closed
+     */
+    public void setOutboundLimits(int highWaterMark, int maxOutboundBytes) {
+        synchronized (outbound) {
+            this.highWaterMark = highWaterMark;
+            this.maxOutboundBytes = maxOutboundBytes;
+        }
+    }
+
+    /**
+     * The count of bytes queued, not written out yet
+     */
+    public int getOutboundBytes() {
+        synchronized (outbound) {
+            return outboundBytes;
+        }
+    }
+
+    /**
+     * Whether it stopped reading from the peer, for the output queued
+     */
+    public boolean isReadSuspended() {
+        synchronized (outbound) {
+            return readSuspended;
+        }
+    }
+
+    /**
+     * Queue the message and write out what the socket takes right away if
+     * nothing is queued before. A pooled message is retained until it's
+     * written out, so the caller still releases its own reference.
+     */
+    @Override
+    public void sendMessage(ByteBuffer message) {
+        if (message == null) {
+            return;
+        }
+        synchronized (outbound) {
+            if (! channel.isOpen()) {
+                return; // dropped, the peer won't reply anyway
+            }
+            if (outboundBytes + message.remaining() > maxOutboundBytes) {
+                closeChannel(); // the peer doesn't read what's sent
+                return;
+            }
+
+            BufferPool.retain(message);
+            outbound.add(message);
+            outboundBytes += message.remaining();
+            if (outbound.size() == 1) {
+                flush();
+            } else { // to be written once the socket is writable
+                updateInterestOps();
+            }
+        }
+    }
+
+    /**
+     * Write out what the socket takes of the output queued, called when the
+     * socket is writable
+     */
+    @Override
+    public void onWriteable() throws IOException {
+        synchronized (outbound) {
+            flush();
+        }
+    }
+
     @Override
     protected void sendOutMessage(ByteBuffer message) throws IOException {
-        channel.write(message);
+        sendMessage(message);
+    }
+
+    /**
+     * Gather as many queued buffers as possible into each write, until all
+     * are written or the socket takes no more. A buffer partially written
+     * stays at the head of the queue.
+     */
+    private void flush() {
+        try {
+            while (! outbound.isEmpty() && channel.isOpen()) {
+                int count = 0;
+                for (ByteBuffer buffer : outbound) {
+                    gathered[count++] = buffer;
+                    if (count == gathered.length) {
+                        break;
+                    }
+                }
+
+                outboundBytes -= (int) channel.write(gathered, 0, count);
+                Arrays.fill(gathered, 0, count, null);
+
+                int written = 0;
+                while (! outbound.isEmpty() && ! outbound.peek().hasRemaining()) {
+                    BufferPool.release(outbound.poll());
+                    written++;
+                }
+                if (written < count) {
+                    break; // the socket is full
+                }
+            }
+        } catch (IOException e) {
+            closeChannel(); // reset by the peer
+            return;
+        }
+        updateInterestOps();
+    }
+
+    /**
+     * Write when there's output queued, and read unless too much is queued
+     */
+    private void updateInterestOps() {
+        if (selectionKey == null || ! selectionKey.isValid()) {
+            return;
+        }
+
+        if (outboundBytes > highWaterMark) {
+            readSuspended = true;
+        } else if (outboundBytes <= highWaterMark / 2) {
+            readSuspended = false;
+        }
+
+        int ops = (readSuspended ? 0 : SelectionKey.OP_READ) |
+                (outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+        try {
+            int oldOps = selectionKey.interestOps();
+            if (ops != oldOps) {
+                selectionKey.interestOps(ops);
+                if ((ops & ~oldOps) != 0) { // not seen by a select going on
+                    selectionKey.selector().wakeup();
+                }
+            }
+        } catch (CancelledKeyException e) {
+            // closed meanwhile
+        }
     }
 
-    public void onReadable() throws IOException {
-        ByteBuffer writeBuffer = BufferPool.allocate(65536);
-        if (channel.read(writeBuffer) <= 0) {
-            BufferPool.release(writeBuffer);
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // closed anyway
+        }
+        while (! outbound.isEmpty()) {
+            BufferPool.release(outbound.poll());
+        }
+        outboundBytes = 0;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    public void close() throws IOException {
+        synchronized (outbound) {
+            closeChannel();
+        }
+    }
+
+    /**
+     * Synchronized, as readable events of the transport may be handled by
+     * more than one thread, and the bytes must be taken in order.
+     *
+     * Read into small buffers kept as they are, another only when one is
+     * filled, so few bytes don't hold a large buffer and aren't copied out
+     * of one.
+     */
+    public synchronized void onReadable() throws IOException {
+        if (! channel.isOpen()) { // stale readable event for a closed channel
             return;
         }
 
-        writeBuffer.flip();
-        recvBuffer.write(writeBuffer);
+        int readBytes = 0;
+        for (int i = 0; i < MAX_READ_BUFFERS; i++) {
+            ByteBuffer readBuffer = BufferPool.allocate(READ_BUFFER_SIZE);
+            try {
+                readBytes = channel.read(readBuffer);
+            } finally {
+                readBuffer.flip();
+                recvBuffer.write(readBuffer); // released if empty
+            }
+            if (readBytes < READ_BUFFER_SIZE) {
+                break;
+            }
+        }
+
+        decodeMessages();
+        if (readBytes < 0) { // peer closed, stop being selected as readable
+            close();
+            recvBuffer.clear();
+        }
+    }
 
-        WithReadDataHander rdHandler = new WithReadDataHander();
-        rdHandler.handle();
+    /**
+     * Take out all the messages complete in what's received, as more than one
+     * may be read at once when pipelined by the peer. The decoder isn't asked
+     * again until as many bytes as it said it needs are received, so the
+     * bytes of a message dribbled in small pieces are looked at once.
+     */
+    private void decodeMessages() {
+        while (recvBuffer.remaining() >= neededLength && channel.isOpen()) {
+            decodingCallback.reset();
+            streamingDecoder.decode(recvBuffer.peekAll(), decodingCallback);
+
+            int messageLength = decodingCallback.messageLength;
+            if (messageLength <= 0 || messageLength > recvBuffer.remaining()) {
+                // More than the bytes there, or one more byte at least
+                neededLength = Math.max(decodingCallback.neededLength,
+                        recvBuffer.remaining() + 1);
+                return;
+            }
+
+            neededLength = 1;
+            ByteBuffer message = recvBuffer.readBytes(messageLength);
+            dispatcher.dispatch(MessageEvent.createInboundMessageEvent(this, message));
+        }
     }
 
     class WithReadDataHander implements DecodingCallback {
-        private ByteBuffer streamingBuffer;
+        private int messageLength;
+        private int neededLength;
+
+        void reset() {
+            messageLength = 0;
+            neededLength = 0;
+        }
 
         @Override
         public void onMessageComplete(int messageLength) {
-            ByteBuffer message = null;
-
-            int remaining = streamingBuffer.remaining();
-            if (remaining == messageLength) {
-                message = streamingBuffer;
-            } else if (remaining > messageLength) {
-                message = streamingBuffer.duplicate();
-                int newLimit = streamingBuffer.position() + messageLength;
-                message.limit(newLimit);
-
-                streamingBuffer.position(newLimit);
-                recvBuffer.writeFirst(streamingBuffer);
-            }
-
-            if (message != null) {
-                dispatcher.dispatch(MessageEvent.createInboundMessageEvent(TcpTransport.this, message));
-            }
+            this.messageLength = messageLength;
         }
 
         @Override
         public void onMoreDataNeeded() {
-            recvBuffer.writeFirst(streamingBuffer);
+            // asked again once any more is received
         }
 
         @Override
         public void onMoreDataNeeded(int needDataLength) {
-            recvBuffer.writeFirst(streamingBuffer);
-        }
-
-        public void handle() {
-            if (recvBuffer.isEmpty()) return;
-
-            streamingBuffer = recvBuffer.readMostBytes();
-
-            streamingDecoder.decode(streamingBuffer.duplicate(), this);
+            this.neededLength = needDataLength;
         }
     }
 }
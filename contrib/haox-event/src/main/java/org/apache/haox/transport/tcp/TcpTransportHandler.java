@@ -35,6 +35,10 @@ public class TcpTransportHandler extends TransportHandler {
         EventType eventType = event.getEventType();
         TransportEvent te = (TransportEvent) event;
         Transport transport = te.getTransport();
+        if (! (transport instanceof TcpTransport)) { // leave it to its own handler
+            return;
+        }
+
         if (eventType == TransportEventType.TRANSPORT_READABLE) {
             transport.onReadable();
         } else if (eventType == TransportEventType.TRANSPORT_WRITABLE) {
@@ -42,16 +46,19 @@ public class TcpTransportHandler extends TransportHandler {
         }
     }
 
+    /**
+     * Write out the output queued right here, as it doesn't block, and
+     * leave reading to the handlers. The interest ops are kept by the
+     * transport.
+     */
     @Override
     public void helpHandleSelectionKey(SelectionKey selectionKey) throws IOException {
-        if (selectionKey.isReadable()) {
-            selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-            TcpTransport transport = (TcpTransport) selectionKey.attachment();
+        TcpTransport transport = (TcpTransport) selectionKey.attachment();
+        if (selectionKey.isValid() && selectionKey.isWritable()) {
+            transport.onWriteable();
+        }
+        if (selectionKey.isValid() && selectionKey.isReadable()) {
             dispatch(TransportEvent.createReadableTransportEvent(transport));
-        } else if (selectionKey.isWritable()) {
-            selectionKey.interestOps(SelectionKey.OP_READ);
-            TcpTransport transport = (TcpTransport) selectionKey.attachment();
-            dispatch(TransportEvent.createWritableTransportEvent(transport));
         }
     }
 }
@@ -4,15 +4,30 @@ import org.apache.haox.event.AbstractEventHandler;
 import org.apache.haox.event.Event;
 import org.apache.haox.event.EventType;
 import org.apache.haox.transport.Acceptor;
+import org.apache.haox.transport.Transport;
+import org.apache.haox.transport.buffer.BufferPool;
 import org.apache.haox.transport.event.AddressEvent;
+import org.apache.haox.transport.event.MessageEvent;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Datagrams received are read right in the selecting thread, each is
+ * dispatched as an inbound message with its own UdpDatagramTransport,
+ * those read for a select in one batch.
+ */
 public class UdpAcceptor extends Acceptor {
 
+    private static final int MAX_DATAGRAM_SIZE = 65536;
+    // Datagrams to read at most for a readable key, not to starve others
+    private static final int MAX_READS_PER_SELECT = 16;
+
     private DatagramChannel serverChannel;
 
     public UdpAcceptor() {
@@ -26,7 +41,7 @@ public class UdpAcceptor extends Acceptor {
             @Override
             protected void doHandle(Event event) throws Exception {
                 if (event.getEventType() ==  UdpEventType.ADDRESS_BIND) {
-                    doBind((AddressEvent) event);
+                    bind((AddressEvent) event);
                 }
             }
 
@@ -45,21 +60,61 @@ public class UdpAcceptor extends Acceptor {
         dispatch(event);
     }
 
-    private void doBind(AddressEvent event) throws IOException {
+    @Override
+    protected void doBind(AddressEvent event) throws IOException {
         serverChannel = DatagramChannel.open();
         serverChannel.configureBlocking(false);
         serverChannel.bind(event.getAddress());
         serverChannel.register(selector, SelectionKey.OP_READ);
     }
 
+    @Override
+    protected void dealKey(SelectionKey selectionKey) throws IOException {
+        if (selectionKey.isReadable()) {
+            doRead((DatagramChannel) selectionKey.channel());
+        }
+    }
+
+    private void doRead(DatagramChannel channel) throws IOException {
+        ByteBuffer recvBuffer = BufferPool.allocate(MAX_DATAGRAM_SIZE);
+        // Dispatched as a batch once the channel is drained for now
+        List<Event> events = new ArrayList<Event>();
+        try {
+            for (int i = 0; i < MAX_READS_PER_SELECT; i++) {
+                recvBuffer.clear();
+                InetSocketAddress fromAddress =
+                        (InetSocketAddress) channel.receive(recvBuffer);
+                if (fromAddress == null) {
+                    break;
+                }
+
+                recvBuffer.flip();
+                ByteBuffer datagram = BufferPool.allocate(recvBuffer.remaining());
+                datagram.put(recvBuffer);
+                datagram.flip();
+
+                Transport transport = new UdpDatagramTransport(channel, fromAddress);
+                transport.setDispatcher(getDispatcher());
+                events.add(MessageEvent.createInboundMessageEvent(transport, datagram));
+            }
+        } finally {
+            BufferPool.release(recvBuffer);
+            if (! events.isEmpty()) {
+                dispatch(events);
+            }
+        }
+    }
+
     @Override
     public void stop() {
         super.stop();
 
-        try {
-            serverChannel.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 }
@@ -49,7 +49,7 @@ public class UdpConnector extends Connector {
         channel.configureBlocking(false);
         channel.connect(address);
 
-        channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        channel.register(selector, SelectionKey.OP_READ); // always writable
 
         UdpTransport transport = new UdpTransport(channel, address);
         onNewTransport(transport);
@@ -0,0 +1,43 @@
+package org.apache.haox.transport.udp;
+
+import org.apache.haox.transport.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Transport of a single datagram received by UdpAcceptor. It's not cached
+ * per remote address, and replies are sent to the remote right away. A
+ * reply that fails to be sent is dropped, as datagrams may be lost anyway.
+ */
+public class UdpDatagramTransport extends Transport {
+    private static final Logger logger = LoggerFactory.getLogger(UdpDatagramTransport.class);
+
+    private DatagramChannel channel;
+
+    public UdpDatagramTransport(DatagramChannel channel,
+                                InetSocketAddress remoteAddress) {
+        super(remoteAddress);
+        this.channel = channel;
+    }
+
+    @Override
+    public void sendMessage(ByteBuffer message) {
+        if (message != null) {
+            try {
+                sendOutMessage(message);
+            } catch (IOException e) {
+                logger.warn("Failed to send datagram to " + getRemoteAddress(), e);
+            }
+        }
+    }
+
+    @Override
+    protected void sendOutMessage(ByteBuffer message) throws IOException {
+        channel.send(message, getRemoteAddress());
+    }
+}
@@ -7,6 +7,7 @@ import org.apache.haox.transport.event.TransportEvent;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 
@@ -41,6 +42,10 @@ public class UdpTransport extends Transport {
 
     @Override
     protected void sendOutMessage(ByteBuffer message) throws IOException {
-        channel.send(message, getRemoteAddress());
+        try {
+            channel.send(message, getRemoteAddress());
+        } catch (PortUnreachableException e) {
+            // Nobody listens there for now, lost as datagrams may be
+        }
     }
 }
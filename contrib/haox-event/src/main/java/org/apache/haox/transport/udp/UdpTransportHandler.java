@@ -4,21 +4,23 @@ import org.apache.haox.event.Event;
 import org.apache.haox.event.EventType;
 import org.apache.haox.transport.Transport;
 import org.apache.haox.transport.TransportHandler;
+import org.apache.haox.transport.buffer.BufferPool;
 import org.apache.haox.transport.event.TransportEvent;
 import org.apache.haox.transport.event.TransportEventType;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class UdpTransportHandler extends TransportHandler {
 
     protected Map<InetSocketAddress, UdpTransport> transports =
-            new HashMap<InetSocketAddress, UdpTransport>();
+            new ConcurrentHashMap<InetSocketAddress, UdpTransport>();
 
     @Override
     public EventType[] getInterestedEvents() {
@@ -37,31 +39,47 @@ public class UdpTransportHandler extends TransportHandler {
             UdpChannelEvent ce = (UdpChannelEvent) event;
             DatagramChannel channel = ce.getChannel();
             doRead(channel);
-        } else if (eventType == TransportEventType.TRANSPORT_READABLE) {
-            TransportEvent te = (TransportEvent) event;
-            Transport transport = te.getTransport();
+            return;
+        }
+
+        TransportEvent te = (TransportEvent) event;
+        Transport transport = te.getTransport();
+        if (! (transport instanceof UdpTransport)) { // leave it to its own handler
+            return;
+        }
+
+        if (eventType == TransportEventType.TRANSPORT_READABLE) {
             transport.onReadable();
         } else if (eventType == TransportEventType.TRANSPORT_WRITABLE) {
-            TransportEvent te = (TransportEvent) event;
-            Transport transport = te.getTransport();
             transport.onWriteable();
-        }  else if (eventType == TransportEventType.NEW_TRANSPORT) {
-            TransportEvent te = (TransportEvent) event;
-            Transport transport = te.getTransport();
-            if (transport instanceof UdpTransport) {
-                InetSocketAddress remoteAddress = transport.getRemoteAddress();
-                if (! transports.containsKey(remoteAddress)) {
-                    transports.put(remoteAddress, (UdpTransport) transport);
-                }
+        } else if (eventType == TransportEventType.NEW_TRANSPORT) {
+            InetSocketAddress remoteAddress = transport.getRemoteAddress();
+            if (! transports.containsKey(remoteAddress)) {
+                transports.put(remoteAddress, (UdpTransport) transport);
             }
         }
     }
 
     private void doRead(DatagramChannel channel) throws IOException {
-        ByteBuffer recvBuffer = ByteBuffer.allocate(65536); // to optimize
-        InetSocketAddress fromAddress = (InetSocketAddress) channel.receive(recvBuffer);
-        if (fromAddress != null) {
+        ByteBuffer recvBuffer = BufferPool.allocate(65536);
+        InetSocketAddress fromAddress;
+        try {
+            fromAddress = (InetSocketAddress) channel.receive(recvBuffer);
+        } catch (PortUnreachableException e) {
+            // For a datagram sent before to a connected peer not listening
+            fromAddress = null;
+        }
+        if (fromAddress == null) {
+            BufferPool.release(recvBuffer);
+        } else {
             recvBuffer.flip();
+            // Most datagrams are small, keep the large receive buffer for reuse
+            ByteBuffer datagram = BufferPool.allocate(recvBuffer.remaining());
+            datagram.put(recvBuffer);
+            datagram.flip();
+            BufferPool.release(recvBuffer);
+            recvBuffer = datagram;
+
             UdpTransport transport = transports.get(fromAddress);
             if (transport == null) {
                 // should be from acceptor
@@ -28,4 +28,37 @@ public class TestBuffer {
         tmp = testBuffer.readMostBytes();
         Assert.assertEquals(expectedBytes, tmp.limit());
     }
+
+    @Test
+    public void testRecvBufferMessages() {
+        RecvBuffer testBuffer = new RecvBuffer();
+        byte[] bytes = new byte[100];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        // In pieces of 7, messages of 30 across them
+        for (int i = 0; i < bytes.length; i += 7) {
+            testBuffer.write(ByteBuffer.wrap(bytes, i, Math.min(7, bytes.length - i)));
+        }
+        Assert.assertEquals(100, testBuffer.remaining());
+
+        ByteBuffer all = testBuffer.peekAll();
+        Assert.assertEquals(100, all.remaining());
+        Assert.assertEquals(0x00010203, all.getInt());
+        Assert.assertEquals(100, testBuffer.remaining());
+
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer message = testBuffer.readBytes(30);
+            Assert.assertEquals(30, message.remaining());
+            Assert.assertEquals((byte) (i * 30), message.get(message.position()));
+        }
+        Assert.assertEquals(10, testBuffer.remaining());
+
+        // Taken as it is when it's all of the first buffer
+        ByteBuffer last = ByteBuffer.wrap(bytes, 0, 5);
+        testBuffer.clear();
+        testBuffer.write(last);
+        Assert.assertSame(last, testBuffer.readBytes(5));
+        Assert.assertTrue(testBuffer.isEmpty());
+    }
 }
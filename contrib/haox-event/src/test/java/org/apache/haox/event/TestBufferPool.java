@@ -0,0 +1,87 @@
+package org.apache.haox.event;
+
+import org.apache.haox.transport.buffer.BufferPool;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+
+public class TestBufferPool {
+
+    @Test
+    public void testReuse() {
+        ByteBuffer buffer = BufferPool.allocate(100);
+        Assert.assertEquals(0, buffer.position());
+        Assert.assertEquals(100, buffer.limit());
+        buffer.put((byte) 1);
+        BufferPool.release(buffer);
+
+        ByteBuffer reused = BufferPool.allocate(200);
+        Assert.assertSame(buffer, reused);
+        Assert.assertEquals(0, reused.position());
+        Assert.assertEquals(200, reused.limit());
+        BufferPool.release(reused);
+    }
+
+    @Test
+    public void testRetain() {
+        ByteBuffer buffer = BufferPool.allocate(1000);
+        BufferPool.retain(buffer);
+
+        BufferPool.release(buffer);
+        ByteBuffer another = BufferPool.allocate(1000);
+        Assert.assertNotSame(buffer, another);
+
+        BufferPool.release(buffer);
+        BufferPool.release(buffer); // already recycled, ignored
+        BufferPool.release(another);
+    }
+
+    @Test
+    public void testNotPooled() {
+        ByteBuffer large = BufferPool.allocate(100000);
+        Assert.assertEquals(100000, large.capacity());
+        BufferPool.release(large);
+        Assert.assertNotSame(large, BufferPool.allocate(100000));
+
+        ByteBuffer wrapped = ByteBuffer.wrap(new byte[10]);
+        BufferPool.release(wrapped);
+        Assert.assertNotSame(wrapped, BufferPool.allocate(10));
+    }
+
+    @Test
+    public void testRecycledWithoutAllocating() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean =
+                (com.sun.management.ThreadMXBean) threadBean;
+        long threadId = Thread.currentThread().getId();
+
+        cycle(1000); // warm up
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        cycle(10000);
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+        // Some for getting the count itself, none per buffer
+        Assert.assertTrue("Allocated " + allocated, allocated < 10000);
+    }
+
+    private static void cycle(int times) {
+        for (int i = 0; i < times; i++) {
+            ByteBuffer buffer = BufferPool.allocate(1000);
+            BufferPool.retain(buffer);
+            BufferPool.release(buffer);
+            BufferPool.release(buffer);
+        }
+    }
+
+    @Test
+    public void testDirect() {
+        ByteBuffer buffer = BufferPool.allocateDirect(4096);
+        Assert.assertTrue(buffer.isDirect());
+        BufferPool.release(buffer);
+        Assert.assertSame(buffer, BufferPool.allocateDirect(8000));
+    }
+}
@@ -0,0 +1,129 @@
+package org.apache.haox.event;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestEventHub {
+
+    private enum TestEventType implements EventType {
+        ONE,
+        TWO,
+        THREE
+    }
+
+    private static final ExecutionConfig INLINE = new ExecutionConfig(
+            ExecutionMode.IO_THREAD, 1, -1, RejectionPolicy.REJECT);
+
+    private static class RecordingHandler extends AbstractEventHandler {
+        final String name;
+        final List<String> records;
+        final EventType[] interestedEvents;
+
+        RecordingHandler(String name, List<String> records,
+                         EventType... interestedEvents) {
+            this.name = name;
+            this.records = records;
+            this.interestedEvents = interestedEvents;
+        }
+
+        @Override
+        protected void doHandle(Event event) throws Exception {
+            records.add(name + ":" + event.getEventType());
+        }
+
+        @Override
+        public EventType[] getInterestedEvents() {
+            return interestedEvents;
+        }
+    }
+
+    @Test
+    public void testDispatch() {
+        EventHub eventHub = new EventHub();
+        List<String> records = new ArrayList<String>();
+        eventHub.register(new RecordingHandler("a", records,
+                TestEventType.ONE, TestEventType.TWO), INLINE);
+        eventHub.register(new RecordingHandler("b", records,
+                TestEventType.TWO), INLINE);
+        eventHub.start();
+
+        eventHub.dispatch(new Event(TestEventType.ONE));
+        eventHub.dispatch(new Event(TestEventType.TWO));
+        eventHub.dispatch(new Event(TestEventType.THREE)); // no handler
+        Assert.assertEquals(Arrays.asList("a:ONE", "a:TWO", "b:TWO"), records);
+
+        // Registered after start, and for a type seen only now
+        records.clear();
+        eventHub.register(new RecordingHandler("c", records,
+                TestEventType.THREE, TestEventType.ONE), INLINE);
+        eventHub.dispatch(new Event(TestEventType.ONE));
+        eventHub.dispatch(new Event(TestEventType.THREE));
+        Assert.assertEquals(Arrays.asList("a:ONE", "c:ONE", "c:THREE"), records);
+
+        eventHub.stop();
+    }
+
+    @Test
+    public void testBatchDispatch() {
+        EventHub eventHub = new EventHub();
+        List<String> records = new ArrayList<String>();
+        eventHub.register(new RecordingHandler("a", records, TestEventType.ONE), INLINE);
+        eventHub.register(new RecordingHandler("b", records, TestEventType.TWO), INLINE);
+        eventHub.start();
+
+        eventHub.dispatch(Arrays.asList(new Event(TestEventType.ONE),
+                new Event(TestEventType.ONE), new Event(TestEventType.TWO),
+                new Event(TestEventType.THREE), new Event(TestEventType.ONE)));
+        Assert.assertEquals(Arrays.asList("a:ONE", "a:ONE", "b:TWO", "a:ONE"), records);
+
+        eventHub.stop();
+    }
+
+    @Test
+    public void testRegisterWhileDispatching() throws InterruptedException {
+        final EventHub eventHub = new EventHub();
+        final AtomicLong handled = new AtomicLong();
+        final List<String> records = new CopyOnWriteArrayList<String>();
+        eventHub.register(new AbstractEventHandler() {
+            @Override
+            protected void doHandle(Event event) throws Exception {
+                handled.incrementAndGet();
+            }
+
+            @Override
+            public EventType[] getInterestedEvents() {
+                return new EventType[] { TestEventType.ONE };
+            }
+        }, INLINE);
+        eventHub.start();
+
+        final int events = 100000;
+        Thread dispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < events; i++) {
+                    eventHub.dispatch(new Event(TestEventType.ONE));
+                }
+            }
+        });
+        dispatcher.start();
+        for (int i = 0; i < 100; i++) {
+            eventHub.register(new RecordingHandler("r" + i, records,
+                    TestEventType.TWO), INLINE);
+        }
+        dispatcher.join();
+
+        // Registrations never lose the events of the existing handlers
+        Assert.assertEquals(events, handled.get());
+        eventHub.dispatch(new Event(TestEventType.TWO));
+        Assert.assertEquals(100, records.size());
+
+        eventHub.stop();
+    }
+}
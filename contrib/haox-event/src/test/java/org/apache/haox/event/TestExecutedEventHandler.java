@@ -0,0 +1,153 @@
+package org.apache.haox.event;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestExecutedEventHandler {
+
+    private enum TestEventType implements EventType {
+        TEST
+    }
+
+    /**
+     * Records the threads events are handled in, blocking the workers until
+     * released, and the events rejected or dropped.
+     */
+    private static class TestHandler extends AbstractEventHandler
+            implements RejectableEventHandler {
+        final Thread caller = Thread.currentThread();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch handled;
+        final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+        final List<Event> rejected = new CopyOnWriteArrayList<Event>();
+        final List<Event> dropped = new CopyOnWriteArrayList<Event>();
+
+        TestHandler(int expected) {
+            this.handled = new CountDownLatch(expected);
+        }
+
+        @Override
+        protected void doHandle(Event event) throws Exception {
+            threads.add(Thread.currentThread());
+            if (Thread.currentThread() != caller) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return; // stopped
+                }
+            }
+            handled.countDown();
+        }
+
+        @Override
+        public void rejected(Event event) {
+            rejected.add(event);
+        }
+
+        @Override
+        public void dropped(Event event) {
+            dropped.add(event);
+        }
+
+        @Override
+        public EventType[] getInterestedEvents() {
+            return new EventType[] { TestEventType.TEST };
+        }
+    }
+
+    private ExecutedEventHandler start(TestHandler handler, ExecutionMode mode,
+                                       RejectionPolicy rejectionPolicy) {
+        ExecutedEventHandler executed = new ExecutedEventHandler(handler,
+                new ExecutionConfig(mode, 1, 1, rejectionPolicy));
+        executed.start();
+        return executed;
+    }
+
+    private void testBounded(ExecutionMode mode) throws InterruptedException {
+        TestHandler handler = new TestHandler(2);
+        ExecutedEventHandler executed = start(handler, mode, RejectionPolicy.REJECT);
+
+        // One running, one queued, the third is rejected
+        Event third = new Event(TestEventType.TEST);
+        executed.handle(new Event(TestEventType.TEST));
+        executed.handle(new Event(TestEventType.TEST));
+        executed.handle(third);
+        Assert.assertEquals(1, handler.rejected.size());
+        Assert.assertSame(third, handler.rejected.get(0));
+
+        handler.release.countDown();
+        Assert.assertTrue(handler.handled.await(10, TimeUnit.SECONDS));
+        executed.stop();
+        Assert.assertTrue(executed.isStopped());
+    }
+
+    @Test
+    public void testFixedPool() throws InterruptedException {
+        testBounded(ExecutionMode.FIXED_POOL);
+    }
+
+    @Test
+    public void testWorkStealing() throws InterruptedException {
+        testBounded(ExecutionMode.WORK_STEALING);
+    }
+
+    @Test
+    public void testVirtualThreads() throws InterruptedException {
+        testBounded(ExecutionMode.VIRTUAL_THREADS);
+    }
+
+    @Test
+    public void testCallerRuns() throws InterruptedException {
+        TestHandler handler = new TestHandler(3);
+        ExecutedEventHandler executed = start(handler, ExecutionMode.FIXED_POOL,
+                RejectionPolicy.CALLER_RUNS);
+
+        executed.handle(new Event(TestEventType.TEST));
+        executed.handle(new Event(TestEventType.TEST));
+        executed.handle(new Event(TestEventType.TEST));
+        Assert.assertTrue(handler.rejected.isEmpty());
+        Assert.assertTrue(handler.threads.contains(Thread.currentThread()));
+
+        handler.release.countDown();
+        Assert.assertTrue(handler.handled.await(10, TimeUnit.SECONDS));
+        executed.stop();
+    }
+
+    @Test
+    public void testStopped() {
+        TestHandler handler = new TestHandler(1);
+        ExecutedEventHandler executed = start(handler, ExecutionMode.FIXED_POOL,
+                RejectionPolicy.REJECT);
+
+        // One running, the queued one and any after stopped are dropped
+        Event queued = new Event(TestEventType.TEST);
+        Event late = new Event(TestEventType.TEST);
+        executed.handle(new Event(TestEventType.TEST));
+        executed.handle(queued);
+        executed.stop();
+        executed.handle(late);
+
+        Assert.assertTrue(handler.rejected.isEmpty());
+        Assert.assertEquals(2, handler.dropped.size());
+        Assert.assertSame(queued, handler.dropped.get(0));
+        Assert.assertSame(late, handler.dropped.get(1));
+    }
+
+    @Test
+    public void testIoThread() {
+        TestHandler handler = new TestHandler(1);
+        ExecutedEventHandler executed = start(handler, ExecutionMode.IO_THREAD,
+                RejectionPolicy.REJECT);
+
+        executed.handle(new Event(TestEventType.TEST));
+        Assert.assertEquals(0, handler.handled.getCount());
+        Assert.assertSame(Thread.currentThread(), handler.threads.get(0));
+        executed.stop();
+        Assert.assertTrue(executed.isStopped());
+    }
+}
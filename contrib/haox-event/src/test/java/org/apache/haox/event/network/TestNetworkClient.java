@@ -23,11 +23,14 @@ import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class TestNetworkClient extends TestNetworkBase {
 
     private EventHub eventHub;
     private EventWaiter eventWaiter;
+    private CountDownLatch serverStarted = new CountDownLatch(1);
 
     @Before
     public void setUp() throws IOException {
@@ -57,6 +60,12 @@ public class TestNetworkClient extends TestNetworkBase {
                 }
             }
         }).start();
+
+        try {
+            serverStarted.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     private void doRunTcpServer() throws IOException {
@@ -67,6 +76,7 @@ public class TestNetworkClient extends TestNetworkBase {
         ServerSocket serverSocket = serverSocketChannel.socket();
         serverSocket.bind(new InetSocketAddress(tcpPort));
         serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        serverStarted.countDown();
 
         SocketChannel socketChannel;
         while (true) {
@@ -26,11 +26,14 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class TestTcpClient extends TestTcpBase {
 
     private EventHub eventHub;
     private EventWaiter eventWaiter;
+    private CountDownLatch serverStarted = new CountDownLatch(1);
 
     @Before
     public void setUp() throws IOException {
@@ -49,6 +52,12 @@ public class TestTcpClient extends TestTcpBase {
                 }
             }
         }).start();
+
+        try {
+            serverStarted.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     private void doRunServer() throws IOException {
@@ -59,6 +68,7 @@ public class TestTcpClient extends TestTcpBase {
         ServerSocket serverSocket = serverSocketChannel.socket();
         serverSocket.bind(new InetSocketAddress(serverPort));
         serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        serverStarted.countDown();
 
         SocketChannel socketChannel;
         while (true) {
@@ -64,6 +64,41 @@ public class TestTcpServer extends TestTcpBase {
         Assert.assertEquals(TEST_MESSAGE, clientRecvedMessage);
     }
 
+    @Test
+    public void testDribbledAndPipelined() throws IOException, InterruptedException {
+        Thread.sleep(15);
+
+        SocketChannel socketChannel = SocketChannel.open();
+        socketChannel.configureBlocking(true);
+        socketChannel.socket().setTcpNoDelay(true);
+        socketChannel.connect(new InetSocketAddress(serverHost, serverPort));
+
+        // A byte at a time, then three messages at once
+        byte[] message = TEST_MESSAGE.getBytes();
+        for (byte b : message) {
+            socketChannel.write(ByteBuffer.wrap(new byte[] {b}));
+            Thread.sleep(2);
+        }
+        ByteBuffer messages = ByteBuffer.allocate(3 * message.length);
+        for (int i = 0; i < 3; i++) {
+            messages.put(message);
+        }
+        messages.flip();
+        socketChannel.write(messages);
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(4 * message.length);
+        while (byteBuffer.hasRemaining()) {
+            Assert.assertTrue(socketChannel.read(byteBuffer) > 0);
+        }
+        byteBuffer.flip();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            expected.append(TEST_MESSAGE);
+        }
+        Assert.assertEquals(expected.toString(), recvBuffer2String(byteBuffer));
+        socketChannel.close();
+    }
+
     @After
     public void cleanup() {
         eventHub.stop();
@@ -0,0 +1,136 @@
+package org.apache.haox.event.tcp;
+
+import junit.framework.Assert;
+import org.apache.haox.event.EventHandler;
+import org.apache.haox.event.EventHub;
+import org.apache.haox.transport.Acceptor;
+import org.apache.haox.transport.MessageHandler;
+import org.apache.haox.transport.event.MessageEvent;
+import org.apache.haox.transport.tcp.TcpAcceptor;
+import org.apache.haox.transport.tcp.TcpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Replies much larger than the socket takes at once, to a client not
+ * reading them for a while.
+ */
+public class TestTcpWrite extends TestTcpBase {
+
+    private static final int REPLY_SIZE = 1024 * 1024;
+    private static final int REQUESTS = 16;
+
+    private EventHub eventHub;
+    private volatile TcpTransport serverTransport;
+    private volatile int highWaterMark = 256 * 1024;
+    private volatile int maxOutboundBytes = 64 * 1024 * 1024;
+
+    @Before
+    public void setUp() throws IOException {
+        serverPort = 8185;
+        eventHub = new EventHub();
+
+        EventHandler messageHandler = new MessageHandler() {
+            @Override
+            protected void handleMessage(MessageEvent msgEvent) {
+                TcpTransport transport = (TcpTransport) msgEvent.getTransport();
+                transport.setOutboundLimits(highWaterMark, maxOutboundBytes);
+                serverTransport = transport;
+
+                ByteBuffer reply = ByteBuffer.allocate(REPLY_SIZE);
+                for (int i = 0; i < REPLY_SIZE; i++) {
+                    reply.put((byte) (i % 251));
+                }
+                reply.flip();
+                transport.sendMessage(reply);
+            }
+        };
+        eventHub.register(messageHandler);
+
+        Acceptor acceptor = new TcpAcceptor(createStreamingDecoder());
+        eventHub.register(acceptor);
+
+        eventHub.start();
+        acceptor.listen(serverHost, serverPort);
+    }
+
+    @Test
+    public void testSlowReader() throws Exception {
+        Thread.sleep(15);
+        SocketChannel socketChannel = connect();
+        sendRequests(socketChannel);
+
+        // More queued than the high water mark, so not reading any more
+        long deadline = System.currentTimeMillis() + 5000;
+        while (serverTransport == null || ! serverTransport.isReadSuspended()) {
+            Assert.assertTrue("Not suspended", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        // All written out, none cut, once read
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+        long received = 0;
+        while (received < (long) REQUESTS * REPLY_SIZE) {
+            buffer.clear();
+            int read = socketChannel.read(buffer);
+            Assert.assertTrue(read > 0);
+            for (int i = 0; i < read; i++) {
+                Assert.assertEquals((byte) ((received + i) % REPLY_SIZE % 251), buffer.get(i));
+            }
+            received += read;
+        }
+        socketChannel.close();
+
+        Assert.assertEquals(0, serverTransport.getOutboundBytes());
+        Assert.assertFalse(serverTransport.isReadSuspended());
+    }
+
+    @Test
+    public void testOutboundLimit() throws Exception {
+        highWaterMark = 16 * 1024;
+        maxOutboundBytes = 2 * REPLY_SIZE;
+        Thread.sleep(15);
+        SocketChannel socketChannel = connect();
+        sendRequests(socketChannel);
+
+        // Closed by the server for the client doesn't read
+        long deadline = System.currentTimeMillis() + 5000;
+        while (serverTransport == null || serverTransport.isOpen()) {
+            Assert.assertTrue("Not closed", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, serverTransport.getOutboundBytes());
+        socketChannel.close();
+    }
+
+    /**
+     * All at once, so they're read by the server at once
+     */
+    private void sendRequests(SocketChannel socketChannel) throws IOException {
+        ByteBuffer requests = ByteBuffer.allocate(REQUESTS * TEST_MESSAGE.length());
+        for (int i = 0; i < REQUESTS; i++) {
+            requests.put(TEST_MESSAGE.getBytes());
+        }
+        requests.flip();
+        socketChannel.write(requests);
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel socketChannel = SocketChannel.open();
+        socketChannel.configureBlocking(true);
+        socketChannel.socket().setReceiveBufferSize(8192);
+        socketChannel.connect(new InetSocketAddress(serverHost, serverPort));
+        return socketChannel;
+    }
+
+    @After
+    public void cleanup() {
+        eventHub.stop();
+    }
+}
@@ -1,11 +1,12 @@
 package org.apache.kerberos.kdc.server;
 
 import org.apache.kerberos.kdc.identitybackend.LdapIdentityBackend;
-import org.apache.kerberos.kerb.identity.IdentityService;
 import org.apache.kerberos.kerb.server.KdcServer;
 
 public class ApacheKdcServer extends KdcServer {
 
+    private LdapIdentityBackend identityBackend;
+
     public ApacheKdcServer() {
         super();
     }
@@ -16,7 +17,13 @@ public class ApacheKdcServer extends KdcServer {
     }
 
     protected void initIdentityService() {
-        IdentityService identityService = new LdapIdentityBackend();
-        setIdentityService(identityService);
+        identityBackend = new LdapIdentityBackend(kdcConfig.getConf());
+        setIdentityService(identityBackend);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        identityBackend.close();
     }
-}
\ No newline at end of file
+}
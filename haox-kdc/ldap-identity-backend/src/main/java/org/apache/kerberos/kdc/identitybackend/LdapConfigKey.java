@@ -0,0 +1,37 @@
+package org.apache.kerberos.kdc.identitybackend;
+
+import org.apache.haox.config.ConfigKey;
+
+public enum LdapConfigKey implements ConfigKey {
+    HOST("localhost"),
+    PORT(389),
+    USE_SSL(false),
+    BIND_DN,
+    BIND_PASSWORD,
+    BASE_DN("ou=users,dc=example,dc=com"),
+    CONNECTIONS(4),
+    TIMEOUT(5000L),
+    PAGE_SIZE(500),
+    MASTER_PASSWORD,
+    MASTER_KEY_TYPE("aes256-cts-hmac-sha1-96");
+
+    private Object defaultValue;
+
+    private LdapConfigKey() {
+        this.defaultValue = null;
+    }
+
+    private LdapConfigKey(Object defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    @Override
+    public String getPropertyKey() {
+        return "ldap." + name().toLowerCase();
+    }
+
+    @Override
+    public Object getDefaultValue() {
+        return this.defaultValue;
+    }
+}
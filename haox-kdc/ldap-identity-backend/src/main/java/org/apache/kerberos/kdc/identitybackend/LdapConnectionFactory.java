@@ -0,0 +1,12 @@
+package org.apache.kerberos.kdc.identitybackend;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.ldap.client.api.LdapConnection;
+
+/**
+ * Makes connected and bound connections for the LDAP identity backend.
+ */
+public interface LdapConnectionFactory {
+
+    public LdapConnection newConnection() throws LdapException;
+}
@@ -1,58 +1,599 @@
 package org.apache.kerberos.kdc.identitybackend;
 
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.controls.search.pagedSearch.PagedResultsFactory;
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.filter.FilterEncoder;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.util.GeneralizedTime;
+import org.apache.directory.ldap.client.api.LdapAsyncConnection;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.future.SearchFuture;
+import org.apache.haox.config.Conf;
+import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.codec.KrbCodec;
+import org.apache.kerberos.kerb.crypto.EncryptionHandler;
 import org.apache.kerberos.kerb.identity.KrbIdentity;
 import org.apache.kerberos.kerb.identity.backend.AbstractIdentityBackend;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.kerberos.kerb.spec.common.KeyUsage;
 
+import java.io.Closeable;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * An identity backend keeping principals in an LDAP directory, as entries
+ * of the krb5kdc schema under the base dn, named by krb5PrincipalName.
+ *
+ * All the attributes of a principal, keys included, come in one search.
+ * Callers share a few connections, with searches in flight at once on each,
+ * see SharedLdapConnections. getIdentities() is read in pages, and
+ * identities() streams them a page at a time.
+ *
+ * Each key is kept as a krb5Key value of its own, an LdapKey with the kvno
+ * of the key. Keys are kept in the clear, so readable by whoever may read
+ * the attribute, unless ldap.master_password is set. Then they're kept
+ * encrypted by the master key made from it, of ldap.master_key_type, and
+ * the same password is needed to read them back.
+ */
 public class LdapIdentityBackend extends AbstractIdentityBackend {
 
+    static final String PRINCIPAL_NAME = "krb5PrincipalName";
+    static final String KEY_VERSION = "krb5KeyVersionNumber";
+    static final String KDC_FLAGS = "krb5KDCFlags";
+    static final String KEY = "krb5Key";
+    static final String DISABLED = "krb5AccountDisabled";
+    static final String LOCKED = "krb5AccountLockedOut";
+    static final String EXPIRATION_TIME = "krb5AccountExpirationTime";
+    static final String CREATE_TIMESTAMP = "createTimestamp";
+
+    private static final String[] OBJECT_CLASSES = new String[] {
+            "top", "account", "krb5Principal", "krb5KDCEntry" };
+    private static final String[] ATTRIBUTES = new String[] {
+            PRINCIPAL_NAME, KEY_VERSION, KDC_FLAGS, KEY, DISABLED, LOCKED,
+            EXPIRATION_TIME, CREATE_TIMESTAMP };
+    private static final String NO_ATTRIBUTES = "1.1";
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final String MASTER_KEY_SALT = "K/M";
+
+    static {
+        registerPagedResults();
+    }
+
+    private final Dn baseDn;
+    private final long timeout;
+    private final int pageSize;
+    private final SharedLdapConnections connections;
+    private final EncryptionKey masterKey; // null if keys are kept in the clear
 
     public LdapIdentityBackend() {
+        this(new Conf());
+    }
+
+    public LdapIdentityBackend(Conf conf) {
+        this(conf, new NetworkLdapConnectionFactory(conf));
+    }
+
+    public LdapIdentityBackend(Conf conf, LdapConnectionFactory connectionFactory) {
         super();
+        try {
+            this.baseDn = new Dn(conf.getString(LdapConfigKey.BASE_DN));
+        } catch (LdapInvalidDnException e) {
+            throw new IllegalArgumentException("Bad base dn", e);
+        }
+        this.timeout = conf.getLong(LdapConfigKey.TIMEOUT);
+        this.pageSize = conf.getInt(LdapConfigKey.PAGE_SIZE);
+        this.connections = new SharedLdapConnections(connectionFactory,
+                conf.getInt(LdapConfigKey.CONNECTIONS));
+        this.masterKey = makeMasterKey(conf);
     }
 
-    /**
-     * Load identities from file
-     */
-    public void load() {
-        // todo
+    private static EncryptionKey makeMasterKey(Conf conf) {
+        String password = conf.getString(LdapConfigKey.MASTER_PASSWORD);
+        if (password == null) {
+            return null;
+        }
+        String keyTypeName = conf.getString(LdapConfigKey.MASTER_KEY_TYPE);
+        EncryptionType keyType = EncryptionType.fromName(keyTypeName);
+        if (keyType == EncryptionType.NONE) {
+            throw new IllegalArgumentException("Bad master key type: " + keyTypeName);
+        }
+        try {
+            return EncryptionHandler.string2Key(password, MASTER_KEY_SALT, null, keyType);
+        } catch (KrbException e) {
+            throw new IllegalArgumentException("Failed to make master key", e);
+        }
     }
 
     /**
-     * Persist the updated identities back
+     * Close the connections to the directory
      */
-    public void save() {
-        // todo
+    public void close() {
+        connections.close();
     }
 
     @Override
     public List<KrbIdentity> getIdentities() {
-        return null;
+        List<KrbIdentity> results = new ArrayList<KrbIdentity>();
+        for (KrbIdentity identity : identities()) {
+            results.add(identity);
+        }
+        return results;
+    }
+
+    /**
+     * All the identities, searched a page at a time as iterated, so they
+     * aren't all in memory at once.
+     */
+    public Iterable<KrbIdentity> identities() {
+        return new Iterable<KrbIdentity>() {
+            @Override
+            public Iterator<KrbIdentity> iterator() {
+                return identityIterator();
+            }
+        };
+    }
+
+    /**
+     * An iterator of the identities, as of identities(), to be closed if
+     * left before its end
+     */
+    public PagedIdentities identityIterator() {
+        return new PagedIdentities();
     }
 
     @Override
     public boolean checkIdentity(String name) {
-        return false;
+        return findEntry(name, NO_ATTRIBUTES) != null;
     }
 
     @Override
     public KrbIdentity getIdentity(String name) {
-        return null;
+        Entry entry = findEntry(name, ATTRIBUTES);
+        return entry != null ? toIdentity(entry) : null;
     }
 
     @Override
     public void addIdentity(KrbIdentity identity) {
-
+        Entry entry = toEntry(identity);
+        LdapConnection connection = getConnection();
+        try {
+            connection.add(entry);
+        } catch (LdapException e) {
+            throw failed(connection, "Failed to add " + identity.getPrincipalName(), e);
+        }
     }
 
     @Override
     public void updateIdentity(KrbIdentity identity) {
+        Entry existing = findEntry(identity.getPrincipalName(), NO_ATTRIBUTES);
+        if (existing == null) {
+            addIdentity(identity);
+            return;
+        }
+
+        List<Modification> modifications = new ArrayList<Modification>();
+        modifications.add(replace(KEY_VERSION, String.valueOf(identity.getKeyVersion())));
+        modifications.add(replace(KDC_FLAGS, String.valueOf(identity.getKdcFlags())));
+        modifications.add(replace(DISABLED, toBoolean(identity.isDisabled())));
+        modifications.add(replace(LOCKED, toBoolean(identity.isLocked())));
+        if (identity.getExpireTime() != null && identity.getExpireTime() != KerberosTime.NEVER) {
+            modifications.add(replace(EXPIRATION_TIME, toGeneralizedTime(identity.getExpireTime())));
+        } else {
+            modifications.add(replace(EXPIRATION_TIME));
+        }
+        modifications.add(new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE,
+                KEY, encodeKeys(identity)));
 
+        LdapConnection connection = getConnection();
+        try {
+            connection.modify(existing.getDn(),
+                    modifications.toArray(new Modification[modifications.size()]));
+        } catch (LdapException e) {
+            throw failed(connection, "Failed to update " + identity.getPrincipalName(), e);
+        }
     }
 
     @Override
     public void deleteIdentity(KrbIdentity identity) {
+        Entry existing = findEntry(identity.getPrincipalName(), NO_ATTRIBUTES);
+        if (existing == null) {
+            return;
+        }
+        LdapConnection connection = getConnection();
+        try {
+            connection.delete(existing.getDn());
+        } catch (LdapException e) {
+            throw failed(connection, "Failed to delete " + identity.getPrincipalName(), e);
+        }
+    }
+
+    private Entry findEntry(String name, String... attributes) {
+        SearchRequest request = newSearchRequest(
+                "(" + PRINCIPAL_NAME + "=" + FilterEncoder.encodeFilterValue(name) + ")",
+                attributes);
+        request.setSizeLimit(1);
+        LdapConnection connection = getConnection();
+        List<Entry> entries = new ArrayList<Entry>(1);
+        search(connection, request, entries);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    private SearchRequest newSearchRequest(String filter, String... attributes) {
+        SearchRequest request = new SearchRequestImpl();
+        try {
+            request.setFilter(filter);
+        } catch (LdapException e) {
+            throw new IllegalArgumentException("Bad filter: " + filter, e);
+        }
+        request.setBase(baseDn);
+        request.setScope(SearchScope.SUBTREE);
+        request.addAttributes(attributes);
+        request.setTimeLimit((int) Math.max(1, timeout / 1000));
+        return request;
+    }
+
+    /**
+     * Search with the request, adding the entries found.
+     * @return the result of the search, null if the base dn doesn't exist
+     */
+    private SearchResultDone search(LdapConnection connection, SearchRequest request,
+                                    List<Entry> entries) {
+        try {
+            SearchResultDone done;
+            if (connection instanceof LdapAsyncConnection) {
+                done = searchAsync((LdapAsyncConnection) connection, request, entries);
+            } else {
+                done = searchSync(connection, request, entries);
+            }
+
+            ResultCodeEnum resultCode = done.getLdapResult().getResultCode();
+            if (resultCode == ResultCodeEnum.NO_SUCH_OBJECT) {
+                return null;
+            }
+            if (resultCode != ResultCodeEnum.SUCCESS &&
+                    resultCode != ResultCodeEnum.SIZE_LIMIT_EXCEEDED) {
+                throw new RuntimeException("LDAP search failed: " + resultCode + ", " +
+                        done.getLdapResult().getDiagnosticMessage());
+            }
+            return done;
+        } catch (LdapException e) {
+            throw failed(connection, "LDAP search failed", e);
+        }
+    }
+
+    private SearchResultDone searchAsync(LdapAsyncConnection connection, SearchRequest request,
+                                         List<Entry> entries) throws LdapException {
+        SearchFuture future = connection.searchAsync(request);
+        try {
+            while (true) {
+                Response response = future.get(timeout, TimeUnit.MILLISECONDS);
+                if (response == null) {
+                    connections.invalidate(connection);
+                    throw new RuntimeException("LDAP connection closed while searching");
+                }
+                if (response instanceof SearchResultEntry) {
+                    entries.add(((SearchResultEntry) response).getEntry());
+                } else if (response instanceof SearchResultDone) {
+                    return (SearchResultDone) response;
+                }
+            }
+        } catch (TimeoutException e) {
+            connection.abandon(request.getMessageId());
+            throw new RuntimeException("LDAP search timed out after " + timeout + "ms", e);
+        } catch (InterruptedException e) {
+            connection.abandon(request.getMessageId());
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while searching", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("LDAP search failed", e.getCause());
+        }
+    }
+
+    private SearchResultDone searchSync(LdapConnection connection, SearchRequest request,
+                                        List<Entry> entries) throws LdapException {
+        SearchCursor cursor = connection.search(request);
+        try {
+            while (cursor.next()) {
+                if (cursor.isEntry()) {
+                    entries.add(cursor.getEntry());
+                }
+            }
+            return cursor.getSearchResultDone();
+        } catch (LdapException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("LDAP search failed", e);
+        } finally {
+            try {
+                cursor.close();
+            } catch (Exception e) {
+                // nothing left to read
+            }
+        }
+    }
+
+    /**
+     * Iterates the identities a page at a time, all the pages searched on
+     * the same connection, as paging cookies belong to it. Left before its
+     * end, close() ends the paged search on the server, else it's only ended
+     * when collected.
+     */
+    public class PagedIdentities implements Iterator<KrbIdentity>, Closeable {
+        private final LdapConnection connection = getConnection();
+        private final List<Entry> page = new ArrayList<Entry>();
+        private int index;
+        private byte[] cookie;
+        private boolean lastPage;
+
+        @Override
+        public boolean hasNext() {
+            while (index >= page.size() && ! lastPage) {
+                fetchPage();
+            }
+            return index < page.size();
+        }
+
+        @Override
+        public KrbIdentity next() {
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry entry = page.get(index);
+            page.set(index++, null);
+            return toIdentity(entry);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (lastPage) {
+                return;
+            }
+            lastPage = true;
+            page.clear();
+            index = 0;
+            if (cookie != null) {
+                // A page of size 0 abandons the paged search, see RFC 2696
+                search(connection, newPagedRequest(0), new ArrayList<Entry>(0));
+            }
+        }
+
+        @Override
+        protected void finalize() throws Throwable {
+            try {
+                close();
+            } catch (RuntimeException e) {
+                // the connection is gone, and the search with it
+            } finally {
+                super.finalize();
+            }
+        }
+
+        private SearchRequest newPagedRequest(int size) {
+            SearchRequest request = newSearchRequest(
+                    "(objectClass=krb5Principal)", ATTRIBUTES);
+            PagedResults pagedControl = new PagedResultsImpl();
+            pagedControl.setSize(size);
+            pagedControl.setCookie(cookie);
+            request.addControl(pagedControl);
+            return request;
+        }
+
+        private void fetchPage() {
+            page.clear();
+            index = 0;
+
+            SearchResultDone done = search(connection, newPagedRequest(pageSize), page);
+            PagedResults response = done != null ?
+                    (PagedResults) done.getControl(PagedResults.OID) : null;
+            // Servers not paging return all at once, without a control
+            if (response == null || response.getCookie() == null ||
+                    response.getCookie().length == 0) {
+                lastPage = true;
+            } else {
+                cookie = response.getCookie();
+            }
+        }
+    }
+
+    /**
+     * The standalone LDAP codec only knows the controls listed by system
+     * properties, so the paged results control would be sent over the
+     * network without its value unless registered.
+     */
+    private static void registerPagedResults() {
+        LdapApiService codec = LdapApiServiceFactory.getSingleton();
+        synchronized (codec) {
+            if (! codec.isControlRegistered(PagedResults.OID)) {
+                codec.registerControl(new PagedResultsFactory(codec));
+            }
+        }
+    }
+
+    private LdapConnection getConnection() {
+        try {
+            return connections.get();
+        } catch (LdapException e) {
+            throw new RuntimeException("Failed to connect to LDAP", e);
+        }
+    }
+
+    private RuntimeException failed(LdapConnection connection, String message,
+                                    LdapException e) {
+        if (! connection.isConnected()) {
+            connections.invalidate(connection);
+        }
+        return new RuntimeException(message, e);
+    }
+
+    private Dn toDn(String principalName) {
+        try {
+            return new Dn(new Rdn(PRINCIPAL_NAME, principalName), baseDn);
+        } catch (LdapInvalidDnException e) {
+            throw new IllegalArgumentException("Bad principal name: " + principalName, e);
+        }
+    }
+
+    private Entry toEntry(KrbIdentity identity) {
+        Entry entry = new DefaultEntry(toDn(identity.getPrincipalName()));
+        try {
+            entry.add("objectClass", OBJECT_CLASSES);
+            entry.add("uid", identity.getPrincipalName());
+            entry.add(PRINCIPAL_NAME, identity.getPrincipalName());
+            entry.add(KEY_VERSION, String.valueOf(identity.getKeyVersion()));
+            entry.add(KDC_FLAGS, String.valueOf(identity.getKdcFlags()));
+            entry.add(DISABLED, toBoolean(identity.isDisabled()));
+            entry.add(LOCKED, toBoolean(identity.isLocked()));
+            if (identity.getExpireTime() != null &&
+                    identity.getExpireTime() != KerberosTime.NEVER) {
+                entry.add(EXPIRATION_TIME, toGeneralizedTime(identity.getExpireTime()));
+            }
+            if (! identity.getKeys().isEmpty()) {
+                entry.add(KEY, encodeKeys(identity));
+            }
+        } catch (LdapException e) {
+            throw new RuntimeException("Failed to make entry of " +
+                    identity.getPrincipalName(), e);
+        }
+        return entry;
+    }
+
+    private KrbIdentity toIdentity(Entry entry) {
+        try {
+            KrbIdentity identity = new KrbIdentity(entry.get(PRINCIPAL_NAME).getString());
+            Attribute attribute = entry.get(KEY_VERSION);
+            if (attribute != null) {
+                identity.setKeyVersion(Integer.parseInt(attribute.getString()));
+            }
+            attribute = entry.get(KDC_FLAGS);
+            if (attribute != null) {
+                identity.setKdcFlags(Integer.parseInt(attribute.getString()));
+            }
+            attribute = entry.get(DISABLED);
+            identity.setDisabled(attribute != null && "TRUE".equalsIgnoreCase(attribute.getString()));
+            attribute = entry.get(LOCKED);
+            identity.setLocked(attribute != null && "TRUE".equalsIgnoreCase(attribute.getString()));
+            attribute = entry.get(EXPIRATION_TIME);
+            if (attribute != null) {
+                identity.setExpireTime(toKerberosTime(attribute.getString()));
+            }
+            attribute = entry.get(CREATE_TIMESTAMP);
+            if (attribute != null) {
+                identity.setCreatedTime(toKerberosTime(attribute.getString()));
+            }
+            attribute = entry.get(KEY);
+            if (attribute != null) {
+                for (Value<?> value : attribute) {
+                    identity.addKey(decodeKey(value.getBytes()));
+                }
+            }
+            return identity;
+        } catch (LdapException e) {
+            throw new RuntimeException("Bad entry " + entry.getDn(), e);
+        } catch (KrbException e) {
+            throw new RuntimeException("Bad key in entry " + entry.getDn(), e);
+        }
+    }
+
+    private byte[][] encodeKeys(KrbIdentity identity) {
+        Collection<EncryptionKey> keys = identity.getKeys().values();
+        byte[][] values = new byte[keys.size()][];
+        int i = 0;
+        for (EncryptionKey key : keys) {
+            LdapKey ldapKey = new LdapKey();
+            ldapKey.setKvno(key.getKvno() != -1 ? key.getKvno() : identity.getKeyVersion());
+            try {
+                if (masterKey == null) {
+                    ldapKey.setKey(key);
+                } else {
+                    // Usage 0, as MIT encrypts the keys of its database
+                    ldapKey.setEncKey(EncryptionHandler.encrypt(
+                            KrbCodec.encode(key), masterKey, KeyUsage.NONE));
+                }
+                values[i++] = KrbCodec.encode(ldapKey);
+            } catch (KrbException e) {
+                throw new RuntimeException("Failed to encode key", e);
+            }
+        }
+        return values;
+    }
+
+    private EncryptionKey decodeKey(byte[] value) throws KrbException {
+        LdapKey ldapKey = KrbCodec.decode(value, LdapKey.class);
+        EncryptionKey key;
+        if (ldapKey.getEncKey() != null) {
+            if (masterKey == null) {
+                throw new KrbException("Key encrypted, but no master password set");
+            }
+            key = KrbCodec.decode(EncryptionHandler.decrypt(
+                    ldapKey.getEncKey(), masterKey, KeyUsage.NONE), EncryptionKey.class);
+        } else {
+            key = ldapKey.getKey();
+        }
+        if (key == null) {
+            throw new KrbException("No key in the value");
+        }
+        key.setKvno(ldapKey.getKvno());
+        return key;
+    }
+
+    private static Modification replace(String attribute, String... values) {
+        return new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE,
+                attribute, values);
+    }
+
+    private static String toBoolean(boolean value) {
+        return value ? "TRUE" : "FALSE";
+    }
+
+    private static String toGeneralizedTime(KerberosTime time) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTimeInMillis(time.getTime());
+        return new GeneralizedTime(calendar).toGeneralizedTimeWithoutFraction();
+    }
 
+    private static KerberosTime toKerberosTime(String generalizedTime) throws LdapException {
+        try {
+            return new KerberosTime(GeneralizedTime.getDate(generalizedTime).getTime());
+        } catch (ParseException e) {
+            throw new LdapException("Bad generalized time: " + generalizedTime, e);
+        }
     }
 }
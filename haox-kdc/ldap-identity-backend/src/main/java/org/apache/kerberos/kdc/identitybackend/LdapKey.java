@@ -0,0 +1,56 @@
+package org.apache.kerberos.kdc.identitybackend;
+
+import org.apache.haox.asn1.type.Asn1FieldInfo;
+import org.apache.haox.asn1.type.Asn1Integer;
+import org.apache.kerberos.kerb.spec.KrbSequenceType;
+import org.apache.kerberos.kerb.spec.common.EncryptedData;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+
+/**
+ A value of the krb5Key attribute, a key with its own kvno:
+ LdapKey         ::= SEQUENCE {
+ kvno            [0] Int32,
+ key             [1] EncryptionKey OPTIONAL -- in the clear, with no master key,
+ encKey          [2] EncryptedData OPTIONAL -- the key encoded and encrypted
+                                            -- by the master key
+ }
+ */
+public class LdapKey extends KrbSequenceType {
+    private static int KVNO = 0;
+    private static int KEY = 1;
+    private static int ENC_KEY = 2;
+
+    static Asn1FieldInfo[] fieldInfos = new Asn1FieldInfo[] {
+            new Asn1FieldInfo(KVNO, 0, Asn1Integer.class),
+            new Asn1FieldInfo(KEY, 1, EncryptionKey.class),
+            new Asn1FieldInfo(ENC_KEY, 2, EncryptedData.class)
+    };
+
+    public LdapKey() {
+        super(fieldInfos);
+    }
+
+    public int getKvno() {
+        return getFieldAsInt(KVNO);
+    }
+
+    public void setKvno(int kvno) {
+        setFieldAsInt(KVNO, kvno);
+    }
+
+    public EncryptionKey getKey() {
+        return getFieldAs(KEY, EncryptionKey.class);
+    }
+
+    public void setKey(EncryptionKey key) {
+        setFieldAs(KEY, key);
+    }
+
+    public EncryptedData getEncKey() {
+        return getFieldAs(ENC_KEY, EncryptedData.class);
+    }
+
+    public void setEncKey(EncryptedData encKey) {
+        setFieldAs(ENC_KEY, encKey);
+    }
+}
@@ -0,0 +1,50 @@
+package org.apache.kerberos.kdc.identitybackend;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.haox.config.Conf;
+
+import java.io.IOException;
+
+/**
+ * Connects to the LDAP server configured by the ldap.* keys, binding as
+ * ldap.bind_dn if set, anonymously otherwise.
+ */
+public class NetworkLdapConnectionFactory implements LdapConnectionFactory {
+
+    private final LdapConnectionConfig config;
+    private final long timeout;
+
+    public NetworkLdapConnectionFactory(Conf conf) {
+        config = new LdapConnectionConfig();
+        config.setLdapHost(conf.getString(LdapConfigKey.HOST));
+        config.setLdapPort(conf.getInt(LdapConfigKey.PORT));
+        config.setUseSsl(conf.getBoolean(LdapConfigKey.USE_SSL));
+        config.setName(conf.getString(LdapConfigKey.BIND_DN));
+        config.setCredentials(conf.getString(LdapConfigKey.BIND_PASSWORD));
+        this.timeout = conf.getLong(LdapConfigKey.TIMEOUT);
+    }
+
+    @Override
+    public LdapConnection newConnection() throws LdapException {
+        LdapNetworkConnection connection = new LdapNetworkConnection(config);
+        connection.setTimeOut(timeout);
+        try {
+            if (config.getName() != null) {
+                connection.bind(config.getName(), config.getCredentials());
+            } else {
+                connection.anonymousBind();
+            }
+        } catch (LdapException e) {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                // closing what failed anyway
+            }
+            throw e;
+        }
+        return connection;
+    }
+}
@@ -0,0 +1,87 @@
+package org.apache.kerberos.kdc.identitybackend;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.ldap.client.api.LdapConnection;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed count of connections shared by all the callers, picked round
+ * robin. LDAP requests carry their message id, so a connection serves many
+ * outstanding requests at once, and a caller doesn't hold one while waiting.
+ * Connections are made on first use and again after being closed or failed.
+ */
+class SharedLdapConnections {
+
+    private final LdapConnectionFactory factory;
+    private final LdapConnection[] connections;
+    private final Object[] locks;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean closed;
+
+    SharedLdapConnections(LdapConnectionFactory factory, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Bad connection count: " + count);
+        }
+        this.factory = factory;
+        this.connections = new LdapConnection[count];
+        this.locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    int size() {
+        return connections.length;
+    }
+
+    LdapConnection get() throws LdapException {
+        if (closed) {
+            throw new IllegalStateException("LDAP connections are closed");
+        }
+        int i = (next.getAndIncrement() & Integer.MAX_VALUE) % connections.length;
+        synchronized (locks[i]) {
+            LdapConnection connection = connections[i];
+            if (connection == null || ! connection.isConnected()) {
+                connection = factory.newConnection();
+                connections[i] = connection;
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * Drop a connection that failed, made again on next use.
+     */
+    void invalidate(LdapConnection connection) {
+        for (int i = 0; i < connections.length; i++) {
+            synchronized (locks[i]) {
+                if (connections[i] == connection) {
+                    connections[i] = null;
+                    closeQuietly(connection);
+                }
+            }
+        }
+    }
+
+    void close() {
+        closed = true;
+        for (int i = 0; i < connections.length; i++) {
+            synchronized (locks[i]) {
+                if (connections[i] != null) {
+                    closeQuietly(connections[i]);
+                    connections[i] = null;
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(LdapConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // it's dropped anyway
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package org.apache.kerberos.kdc.identitybackend;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schemaextractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schemaloader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schemamanager.impl.DefaultSchemaManager;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.core.DefaultDirectoryService;
+import org.apache.directory.server.core.api.CacheService;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.InstanceLayout;
+import org.apache.directory.server.core.api.LdapCoreSessionConnection;
+import org.apache.directory.server.core.api.schema.SchemaPartition;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.core.partition.ldif.LdifPartition;
+import org.apache.haox.config.Conf;
+import org.apache.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the backend against an in-process directory service, connected
+ * through core sessions instead of the network.
+ */
+public class LdapIdentityBackendTest {
+
+    private static final String BASE_DN = "ou=users,dc=example,dc=com";
+
+    private static File workDir;
+    private static DirectoryService directoryService;
+
+    private LdapIdentityBackend backend;
+    private AtomicInteger connectionsMade;
+
+    static DirectoryService startDirectoryService(File workDir) throws Exception {
+        DefaultDirectoryService service = new DefaultDirectoryService();
+        service.setInstanceLayout(new InstanceLayout(workDir));
+        CacheService cacheService = new CacheService();
+        cacheService.initialize(service.getInstanceLayout());
+        service.setCacheService(cacheService);
+
+        File partitionsDir = service.getInstanceLayout().getPartitionsDirectory();
+        new DefaultSchemaLdifExtractor(partitionsDir).extractOrCopy();
+        SchemaManager schemaManager = new DefaultSchemaManager(
+                new LdifSchemaLoader(new File(partitionsDir, "schema")));
+        schemaManager.loadAllEnabled();
+        schemaManager.enable("krb5kdc");
+        service.setSchemaManager(schemaManager);
+
+        LdifPartition schemaLdifPartition = new LdifPartition(schemaManager);
+        schemaLdifPartition.setPartitionPath(new File(partitionsDir, "schema").toURI());
+        SchemaPartition schemaPartition = new SchemaPartition(schemaManager);
+        schemaPartition.setWrappedPartition(schemaLdifPartition);
+        service.setSchemaPartition(schemaPartition);
+
+        AvlPartition systemPartition = new AvlPartition(schemaManager);
+        systemPartition.setId("system");
+        systemPartition.setSuffixDn(new Dn(schemaManager, "ou=system"));
+        service.setSystemPartition(systemPartition);
+
+        AvlPartition partition = new AvlPartition(schemaManager);
+        partition.setId("example");
+        partition.setSuffixDn(new Dn(schemaManager, "dc=example,dc=com"));
+        service.addPartition(partition);
+
+        service.getChangeLog().setEnabled(false);
+        service.setShutdownHookEnabled(false);
+        service.startup();
+
+        LdapConnection connection = new LdapCoreSessionConnection(service);
+        connection.add(new DefaultEntry(schemaManager, "dc=example,dc=com",
+                "objectClass: top", "objectClass: domain", "dc: example"));
+        connection.add(new DefaultEntry(schemaManager, BASE_DN,
+                "objectClass: top", "objectClass: organizationalUnit", "ou: users"));
+        connection.close();
+        return service;
+    }
+
+    static LdapIdentityBackend createBackend(final DirectoryService service,
+                                             final AtomicInteger connectionsMade) {
+        return createBackend(service, connectionsMade, new Properties());
+    }
+
+    static LdapIdentityBackend createBackend(final DirectoryService service,
+                                             final AtomicInteger connectionsMade,
+                                             Properties properties) {
+        properties.setProperty(LdapConfigKey.BASE_DN.getPropertyKey(), BASE_DN);
+        properties.setProperty(LdapConfigKey.CONNECTIONS.getPropertyKey(), "2");
+        properties.setProperty(LdapConfigKey.PAGE_SIZE.getPropertyKey(), "10");
+        Conf conf = new Conf();
+        conf.addPropertiesConfig(properties);
+
+        return new LdapIdentityBackend(conf, new LdapConnectionFactory() {
+            @Override
+            public LdapConnection newConnection() throws LdapException {
+                connectionsMade.incrementAndGet();
+                return new LdapCoreSessionConnection(service);
+            }
+        });
+    }
+
+    @BeforeClass
+    public static void startDirectory() throws Exception {
+        workDir = File.createTempFile("ldap-backend", "");
+        workDir.delete();
+        directoryService = startDirectoryService(workDir);
+    }
+
+    @AfterClass
+    public static void stopDirectory() throws Exception {
+        directoryService.shutdown();
+        delete(workDir);
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Before
+    public void setUp() {
+        connectionsMade = new AtomicInteger();
+        backend = createBackend(directoryService, connectionsMade);
+    }
+
+    @After
+    public void tearDown() {
+        for (KrbIdentity identity : backend.getIdentities()) {
+            backend.deleteIdentity(identity);
+        }
+        backend.close();
+    }
+
+    private static KrbIdentity createIdentity(String name) {
+        KrbIdentity identity = new KrbIdentity(name);
+        identity.setKeyVersion(2);
+        identity.setKdcFlags(0x40);
+        identity.setLocked(true);
+        identity.setExpireTime(new KerberosTime(2000000000000L));
+        identity.addKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, 2));
+        identity.addKey(new EncryptionKey(EncryptionType.DES3_CBC_SHA1_KD,
+                new byte[24], 2));
+        return identity;
+    }
+
+    @Test
+    public void testAddAndGet() {
+        KrbIdentity expected = createIdentity("krbtgt/EXAMPLE.COM@EXAMPLE.COM");
+        backend.addIdentity(expected);
+
+        Assert.assertTrue(backend.checkIdentity("krbtgt/EXAMPLE.COM@EXAMPLE.COM"));
+        Assert.assertFalse(backend.checkIdentity("nobody@EXAMPLE.COM"));
+        Assert.assertNull(backend.getIdentity("nobody@EXAMPLE.COM"));
+        // No filter injection
+        Assert.assertNull(backend.getIdentity("*"));
+
+        KrbIdentity actual = backend.getIdentity("krbtgt/EXAMPLE.COM@EXAMPLE.COM");
+        Assert.assertEquals(expected.getPrincipalName(), actual.getPrincipalName());
+        Assert.assertEquals(2, actual.getKeyVersion());
+        Assert.assertEquals(0x40, actual.getKdcFlags());
+        Assert.assertTrue(actual.isLocked());
+        Assert.assertFalse(actual.isDisabled());
+        Assert.assertEquals(2000000000000L, actual.getExpireTime().getTime());
+        Assert.assertTrue(actual.getCreatedTime().getTime() > 0);
+        Assert.assertEquals(2, actual.getKeys().size());
+        EncryptionKey key = actual.getKey(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        Assert.assertArrayEquals(expected.getKey(EncryptionType.AES128_CTS_HMAC_SHA1_96)
+                .getKeyData(), key.getKeyData());
+        Assert.assertEquals(2, key.getKvno());
+    }
+
+    @Test
+    public void testUpdateAndDelete() {
+        backend.addIdentity(createIdentity("alice@EXAMPLE.COM"));
+
+        KrbIdentity updated = new KrbIdentity("alice@EXAMPLE.COM");
+        updated.setKeyVersion(3);
+        updated.setDisabled(true);
+        updated.addKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                new byte[16], 3));
+        backend.updateIdentity(updated);
+
+        KrbIdentity actual = backend.getIdentity("alice@EXAMPLE.COM");
+        Assert.assertEquals(3, actual.getKeyVersion());
+        Assert.assertTrue(actual.isDisabled());
+        Assert.assertFalse(actual.isLocked());
+        Assert.assertEquals(KerberosTime.NEVER, actual.getExpireTime());
+        Assert.assertEquals(1, actual.getKeys().size());
+
+        backend.deleteIdentity(updated);
+        Assert.assertFalse(backend.checkIdentity("alice@EXAMPLE.COM"));
+        backend.deleteIdentity(updated);
+    }
+
+    @Test
+    public void testKvnoPerKey() {
+        KrbIdentity expected = createIdentity("alice@EXAMPLE.COM");
+        expected.setKeyVersion(3);
+        expected.addKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                new byte[16], 3));
+        backend.addIdentity(expected);
+
+        // The old kvno of the key not rotated stays
+        KrbIdentity actual = backend.getIdentity("alice@EXAMPLE.COM");
+        Assert.assertEquals(3, actual.getKeyVersion());
+        Assert.assertEquals(2, actual.getKeys().size());
+        for (EncryptionKey key : actual.getKeys().values()) {
+            Assert.assertEquals(key.getKeyType() == EncryptionType.AES128_CTS_HMAC_SHA1_96 ? 3 : 2,
+                    key.getKvno());
+        }
+    }
+
+    @Test
+    public void testMasterKey() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(LdapConfigKey.MASTER_PASSWORD.getPropertyKey(), "master");
+        properties.setProperty(LdapConfigKey.MASTER_KEY_TYPE.getPropertyKey(),
+                "aes128-cts-hmac-sha1-96");
+        LdapIdentityBackend encrypting = createBackend(directoryService,
+                new AtomicInteger(), properties);
+        KrbIdentity expected = createIdentity("alice@EXAMPLE.COM");
+        byte[] keyData = expected.getKey(EncryptionType.AES128_CTS_HMAC_SHA1_96).getKeyData();
+        try {
+            encrypting.addIdentity(expected);
+
+            KrbIdentity actual = encrypting.getIdentity("alice@EXAMPLE.COM");
+            EncryptionKey key = actual.getKey(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+            Assert.assertArrayEquals(keyData, key.getKeyData());
+            Assert.assertEquals(2, key.getKvno());
+
+            // Not in the clear in the directory, nor readable without the password
+            LdapConnection connection = new LdapCoreSessionConnection(directoryService);
+            try {
+                Entry entry = connection.lookup(new Dn("krb5PrincipalName=alice@EXAMPLE.COM," +
+                        BASE_DN), LdapIdentityBackend.KEY);
+                for (Value<?> value : entry.get(LdapIdentityBackend.KEY)) {
+                    Assert.assertFalse(contains(value.getBytes(), keyData));
+                }
+            } finally {
+                connection.close();
+            }
+            try {
+                backend.getIdentity("alice@EXAMPLE.COM");
+                Assert.fail("Should have failed without the master password");
+            } catch (RuntimeException e) {
+                // expected
+            }
+        } finally {
+            encrypting.deleteIdentity(expected);
+            encrypting.close();
+        }
+    }
+
+    private static boolean contains(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + part.length), part)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testIdentities() {
+        for (int i = 0; i < 25; i++) {
+            backend.addIdentity(createIdentity("user" + i + "@EXAMPLE.COM"));
+        }
+        Assert.assertEquals(25, backend.getIdentities().size());
+
+        int count = 0;
+        Iterator<KrbIdentity> iterator = backend.identities().iterator();
+        while (iterator.hasNext()) {
+            Assert.assertTrue(iterator.next().getPrincipalName().startsWith("user"));
+            count++;
+        }
+        Assert.assertEquals(25, count);
+    }
+
+    @Test
+    public void testSharedConnections() throws Exception {
+        backend.addIdentity(createIdentity("alice@EXAMPLE.COM"));
+
+        Thread[] threads = new Thread[8];
+        final AtomicInteger found = new AtomicInteger();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 50; j++) {
+                        if (backend.getIdentity("alice@EXAMPLE.COM") != null) {
+                            found.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(threads.length * 50, found.get());
+        Assert.assertEquals(2, connectionsMade.get());
+    }
+}
@@ -0,0 +1,172 @@
+package org.apache.kerberos.kdc.identitybackend;
+
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.protocol.shared.transport.TcpTransport;
+import org.apache.haox.config.Conf;
+import org.apache.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the backend against the directory service served over LDAP, so it's
+ * connected by NetworkLdapConnectionFactory and searches asynchronously on
+ * the shared connections.
+ */
+public class LdapNetworkIdentityBackendTest {
+
+    private static File workDir;
+    private static DirectoryService directoryService;
+    private static LdapServer ldapServer;
+    private static int port;
+
+    private LdapIdentityBackend backend;
+
+    @BeforeClass
+    public static void startLdapServer() throws Exception {
+        workDir = File.createTempFile("ldap-network-backend", "");
+        workDir.delete();
+        directoryService = LdapIdentityBackendTest.startDirectoryService(workDir);
+
+        ServerSocket socket = new ServerSocket(0);
+        port = socket.getLocalPort();
+        socket.close();
+
+        ldapServer = new LdapServer();
+        ldapServer.setDirectoryService(directoryService);
+        ldapServer.setTransports(new TcpTransport("localhost", port));
+        ldapServer.start();
+    }
+
+    @AfterClass
+    public static void stopLdapServer() throws Exception {
+        ldapServer.stop();
+        directoryService.shutdown();
+        LdapIdentityBackendTest.delete(workDir);
+    }
+
+    @Before
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty(LdapConfigKey.HOST.getPropertyKey(), "localhost");
+        properties.setProperty(LdapConfigKey.PORT.getPropertyKey(), String.valueOf(port));
+        properties.setProperty(LdapConfigKey.BIND_DN.getPropertyKey(), "uid=admin,ou=system");
+        properties.setProperty(LdapConfigKey.BIND_PASSWORD.getPropertyKey(), "secret");
+        properties.setProperty(LdapConfigKey.CONNECTIONS.getPropertyKey(), "2");
+        properties.setProperty(LdapConfigKey.PAGE_SIZE.getPropertyKey(), "10");
+        properties.setProperty(LdapConfigKey.TIMEOUT.getPropertyKey(), "5000");
+        Conf conf = new Conf();
+        conf.addPropertiesConfig(properties);
+
+        backend = new LdapIdentityBackend(conf);
+    }
+
+    @After
+    public void tearDown() {
+        for (KrbIdentity identity : backend.getIdentities()) {
+            backend.deleteIdentity(identity);
+        }
+        backend.close();
+    }
+
+    private static KrbIdentity createIdentity(String name) {
+        KrbIdentity identity = new KrbIdentity(name);
+        identity.setKeyVersion(1);
+        identity.addKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, 1));
+        return identity;
+    }
+
+    @Test
+    public void testAddAndGet() {
+        backend.addIdentity(createIdentity("alice@EXAMPLE.COM"));
+
+        Assert.assertTrue(backend.checkIdentity("alice@EXAMPLE.COM"));
+        Assert.assertNull(backend.getIdentity("nobody@EXAMPLE.COM"));
+        KrbIdentity actual = backend.getIdentity("alice@EXAMPLE.COM");
+        Assert.assertEquals("alice@EXAMPLE.COM", actual.getPrincipalName());
+        Assert.assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16},
+                actual.getKey(EncryptionType.AES128_CTS_HMAC_SHA1_96).getKeyData());
+    }
+
+    @Test
+    public void testIdentitiesPaged() {
+        for (int i = 0; i < 25; i++) {
+            backend.addIdentity(createIdentity("user" + i + "@EXAMPLE.COM"));
+        }
+        Assert.assertEquals(25, backend.getIdentities().size());
+    }
+
+    @Test
+    public void testIdentitiesClosed() {
+        for (int i = 0; i < 25; i++) {
+            backend.addIdentity(createIdentity("user" + i + "@EXAMPLE.COM"));
+        }
+
+        // Left in the first page, the paged search is abandoned
+        LdapIdentityBackend.PagedIdentities iterator = backend.identityIterator();
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotNull(iterator.next());
+        }
+        iterator.close();
+        Assert.assertFalse(iterator.hasNext());
+        iterator.close();
+
+        Assert.assertEquals(25, backend.getIdentities().size());
+    }
+
+    @Test
+    public void testSharedConnections() throws Exception {
+        backend.addIdentity(createIdentity("alice@EXAMPLE.COM"));
+
+        // Many searches outstanding at once on the two connections
+        Thread[] threads = new Thread[8];
+        final AtomicInteger found = new AtomicInteger();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 50; j++) {
+                        if (backend.getIdentity("alice@EXAMPLE.COM") != null) {
+                            found.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(threads.length * 50, found.get());
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        backend.addIdentity(createIdentity("alice@EXAMPLE.COM"));
+
+        ldapServer.stop();
+        try {
+            backend.getIdentity("alice@EXAMPLE.COM");
+            Assert.fail("Should have failed with the server gone");
+        } catch (RuntimeException e) {
+            // expected
+        } finally {
+            ldapServer.start();
+        }
+
+        // Connected again on next use
+        Assert.assertNotNull(backend.getIdentity("alice@EXAMPLE.COM"));
+    }
+}
@@ -0,0 +1,341 @@
+package org.apache.kerberos.kerb.client;
+
+import org.apache.haox.event.AbstractEventHandler;
+import org.apache.haox.event.Event;
+import org.apache.haox.event.EventType;
+import org.apache.haox.transport.Connector;
+import org.apache.haox.transport.Transport;
+import org.apache.haox.transport.event.AddressEvent;
+import org.apache.haox.transport.event.TransportEvent;
+import org.apache.haox.transport.event.TransportEventType;
+import org.apache.haox.transport.tcp.TcpEventType;
+import org.apache.haox.transport.tcp.TcpTransport;
+import org.apache.haox.transport.udp.UdpTransport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The connections to the KDCs of the realm, a TCP and a UDP one to each.
+ *
+ * A request goes to the healthy KDC with the fewest requests in flight,
+ * taking turns among equally loaded ones, over UDP when it's small enough.
+ * A KDC is taken out of rotation when it's let a request time out without
+ * replying anything for that long, or can't be connected, and is connected
+ * again in the background after a while to be given another chance.
+ */
+public class KdcPool extends AbstractEventHandler {
+
+    private final List<Kdc> kdcs;
+    private final int udpPreferenceLimit;
+    private final long reconnectInterval;
+    private final AtomicInteger turn = new AtomicInteger();
+    private final CountDownLatch ready;
+
+    private Connector tcpConnector;
+    private Connector udpConnector;
+
+    static class Kdc {
+        final InetSocketAddress address;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong udpSent = new AtomicLong();
+        final AtomicLong tcpSent = new AtomicLong();
+        final AtomicLong replies = new AtomicLong();
+        volatile Transport tcp;
+        volatile Transport udp;
+        volatile boolean healthy = true;
+        volatile long lastReplyTime;
+        volatile boolean connecting;
+        volatile long nextConnectTime;
+        private boolean tcpSettled;
+        private boolean udpSettled;
+
+        Kdc(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        boolean isReachable(boolean tcpOnly) {
+            Transport tcp = this.tcp;
+            return (tcp != null && tcp.isOpen()) || (! tcpOnly && udp != null);
+        }
+
+        @Override
+        public String toString() {
+            return address + (healthy ? " up" : " down") + ", in flight " +
+                    inFlight.get() + ", sent " + udpSent.get() + "/" + tcpSent.get() +
+                    " (udp/tcp), replies " + replies.get();
+        }
+    }
+
+    public KdcPool(List<InetSocketAddress> addresses, int udpPreferenceLimit,
+                   long reconnectInterval) {
+        List<Kdc> kdcs = new ArrayList<Kdc>(addresses.size());
+        for (InetSocketAddress address : addresses) {
+            kdcs.add(new Kdc(address));
+        }
+        this.kdcs = Collections.unmodifiableList(kdcs);
+        this.udpPreferenceLimit = udpPreferenceLimit;
+        this.reconnectInterval = reconnectInterval;
+        this.ready = new CountDownLatch(kdcs.size() * 2);
+    }
+
+    @Override
+    public EventType[] getInterestedEvents() {
+        return new EventType[] {
+                TransportEventType.NEW_TRANSPORT,
+                TcpEventType.CONNECT_FAILED
+        };
+    }
+
+    @Override
+    protected void doHandle(Event event) throws Exception {
+        if (event.getEventType() == TransportEventType.NEW_TRANSPORT) {
+            Transport transport = ((TransportEvent) event).getTransport();
+            Kdc kdc = kdcOf(transport);
+            if (kdc == null) {
+                return;
+            }
+            if (transport instanceof TcpTransport) {
+                kdc.tcp = transport;
+                kdc.connecting = false;
+                kdc.healthy = true; // on probation until it times out again
+                settle(kdc, true);
+            } else if (transport instanceof UdpTransport) {
+                kdc.udp = transport;
+                settle(kdc, false);
+            }
+        } else if (event.getEventType() == TcpEventType.CONNECT_FAILED) {
+            InetSocketAddress address = ((AddressEvent) event).getAddress();
+            for (Kdc kdc : kdcs) {
+                if (kdc.address.equals(address)) {
+                    kdc.healthy = false; // tried again once it's time to
+                    kdc.connecting = false;
+                    settle(kdc, true);
+                }
+            }
+        }
+    }
+
+    private void settle(Kdc kdc, boolean isTcp) {
+        synchronized (kdc) {
+            if (isTcp ? kdc.tcpSettled : kdc.udpSettled) {
+                return;
+            }
+            if (isTcp) {
+                kdc.tcpSettled = true;
+            } else {
+                kdc.udpSettled = true;
+            }
+        }
+        ready.countDown();
+    }
+
+    /**
+     * Connect to all the KDCs, over UDP unless it's not to be used
+     */
+    public void connect(Connector tcpConnector, Connector udpConnector) {
+        this.tcpConnector = tcpConnector;
+        this.udpConnector = udpConnector;
+        long now = System.currentTimeMillis();
+        for (Kdc kdc : kdcs) {
+            kdc.connecting = true;
+            kdc.nextConnectTime = now + reconnectInterval;
+            tcpConnector.connect(kdc.address);
+            if (udpPreferenceLimit > 0) {
+                udpConnector.connect(kdc.address);
+            } else {
+                settle(kdc, false);
+            }
+        }
+    }
+
+    /**
+     * Wait until every KDC is connected or known not to be there, for at
+     * most the time given
+     * @return false if timed out
+     */
+    public boolean awaitReady(long timeout) throws InterruptedException {
+        return ready.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The KDC to send a request to, preferring healthy ones not tried for
+     * it yet, then healthy ones, then any. Null if none can be reached now.
+     */
+    Kdc choose(Set<Kdc> tried, boolean tcpOnly) {
+        Kdc kdc = pick(tried, true, tcpOnly);
+        if (kdc == null) {
+            kdc = pick(null, true, tcpOnly);
+        }
+        if (kdc == null) {
+            kdc = pick(tried, false, tcpOnly);
+        }
+        if (kdc == null) {
+            kdc = pick(null, false, tcpOnly);
+        }
+        return kdc;
+    }
+
+    /**
+     * Whether there's a healthy KDC not tried yet
+     */
+    boolean hasUntried(Set<Kdc> tried, boolean tcpOnly) {
+        return pick(tried, true, tcpOnly) != null;
+    }
+
+    private Kdc pick(Set<Kdc> excluded, boolean healthyOnly, boolean tcpOnly) {
+        int count = kdcs.size();
+        int start = (turn.getAndIncrement() & Integer.MAX_VALUE) % count;
+        Kdc best = null;
+        for (int i = 0; i < count; i++) {
+            Kdc kdc = kdcs.get((start + i) % count);
+            if ((excluded != null && excluded.contains(kdc)) ||
+                    (healthyOnly && ! kdc.healthy) || ! kdc.isReachable(tcpOnly)) {
+                continue;
+            }
+            if (best == null || kdc.inFlight.get() < best.inFlight.get()) {
+                best = kdc;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The transport to send a request of the size to the KDC over
+     */
+    Transport transportOf(Kdc kdc, int size, boolean tcpOnly) {
+        Transport udp = kdc.udp;
+        Transport tcp = kdc.tcp;
+        if (! tcpOnly && udp != null && size <= udpPreferenceLimit) {
+            kdc.udpSent.incrementAndGet();
+            return udp;
+        }
+        if (tcp != null && tcp.isOpen()) {
+            kdc.tcpSent.incrementAndGet();
+            return tcp;
+        }
+        if (! tcpOnly && udp != null) {
+            kdc.udpSent.incrementAndGet();
+            return udp;
+        }
+        return null;
+    }
+
+    /**
+     * The KDC a message is from
+     */
+    Kdc kdcOf(Transport transport) {
+        InetSocketAddress address = transport.getRemoteAddress();
+        for (Kdc kdc : kdcs) {
+            if (kdc.address.equals(address)) {
+                return kdc;
+            }
+        }
+        return null;
+    }
+
+    void onReply(Kdc kdc) {
+        kdc.lastReplyTime = System.currentTimeMillis();
+        kdc.replies.incrementAndGet();
+        kdc.healthy = true;
+    }
+
+    /**
+     * Take the KDC out of rotation, until it's connected again
+     */
+    void markDown(Kdc kdc, long now) {
+        if (kdc.healthy) {
+            kdc.healthy = false;
+            kdc.nextConnectTime = now + reconnectInterval;
+        }
+    }
+
+    /**
+     * Connect again to the KDCs down or of TCP connections closed, once
+     * it's time to. Called regularly.
+     */
+    void maintain(long now) {
+        if (tcpConnector == null) {
+            return;
+        }
+        for (Kdc kdc : kdcs) {
+            if (kdc.connecting || now < kdc.nextConnectTime) {
+                continue;
+            }
+            Transport tcp = kdc.tcp;
+            if (kdc.healthy && tcp != null && tcp.isOpen()) {
+                continue;
+            }
+            if (tcp != null && tcp.isOpen()) {
+                try {
+                    ((TcpTransport) tcp).close(); // to see if it's back
+                } catch (IOException e) {
+                    // closed anyway
+                }
+            }
+            kdc.connecting = true;
+            kdc.nextConnectTime = now + reconnectInterval;
+            tcpConnector.connect(kdc.address);
+        }
+    }
+
+    /**
+     * The count of KDCs in rotation
+     */
+    public int getHealthyCount() {
+        int count = 0;
+        for (Kdc kdc : kdcs) {
+            if (kdc.healthy) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The count of replies from the KDC, whether matched to requests or not
+     */
+    public long getReplyCount(InetSocketAddress address) {
+        for (Kdc kdc : kdcs) {
+            if (kdc.address.equals(address)) {
+                return kdc.replies.get();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The count of requests sent over UDP to all the KDCs, retries included
+     */
+    public long getUdpSentCount() {
+        long count = 0;
+        for (Kdc kdc : kdcs) {
+            count += kdc.udpSent.get();
+        }
+        return count;
+    }
+
+    /**
+     * The count of requests sent over TCP to all the KDCs, retries included
+     */
+    public long getTcpSentCount() {
+        long count = 0;
+        for (Kdc kdc : kdcs) {
+            count += kdc.tcpSent.get();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "KdcPool" + kdcs;
+    }
+}
@@ -2,10 +2,8 @@ package org.apache.kerberos.kerb.client;
 
 import org.apache.haox.event.Event;
 import org.apache.haox.event.EventHub;
-import org.apache.haox.event.EventWaiter;
 import org.apache.kerberos.kerb.KrbErrorCode;
 import org.apache.kerberos.kerb.client.event.KrbClientEvent;
-import org.apache.kerberos.kerb.client.event.KrbClientEventType;
 import org.apache.kerberos.kerb.client.request.*;
 import org.apache.kerberos.kerb.common.KrbErrorUtil;
 import org.apache.kerberos.kerb.common.KrbStreamingDecoder;
@@ -13,20 +11,21 @@ import org.apache.kerberos.kerb.KrbErrorException;
 import org.apache.kerberos.kerb.KrbException;
 import org.apache.kerberos.kerb.spec.common.KrbError;
 import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.apache.kerberos.kerb.spec.kdc.EncKdcRepPart;
+import org.apache.kerberos.kerb.spec.kdc.KdcOption;
 import org.apache.kerberos.kerb.spec.ticket.ServiceTicket;
 import org.apache.kerberos.kerb.spec.ticket.TgtTicket;
+import org.apache.kerberos.kerb.spec.ticket.TicketFlag;
 import org.haox.token.KerbToken;
 import org.apache.haox.transport.Connector;
-import org.apache.haox.transport.Transport;
-import org.apache.haox.transport.event.TransportEvent;
-import org.apache.haox.transport.event.TransportEventType;
 import org.apache.haox.transport.tcp.TcpConnector;
+import org.apache.haox.transport.udp.UdpConnector;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.List;
 
 /**
  * A krb client API for applications to interact with KDC
@@ -34,10 +33,10 @@ import java.util.concurrent.TimeoutException;
 public class KrbClient {
 
     private EventHub eventHub;
-    private EventWaiter eventWaiter;
-    private Transport transport;
+    private volatile boolean stopped;
 
     private KrbHandler krbHandler;
+    private KdcPool kdcPool;
     private KrbContext context;
     private KrbConfig config;
 
@@ -83,6 +82,23 @@ public class KrbClient {
         context.setKdcPort(kdcPort);
     }
 
+    /**
+     * Set the KDCs to send requests to, instead of the one of the host and
+     * port, or the ones configured
+     * @param kdcAddresses
+     */
+    public void setKdcAddresses(List<InetSocketAddress> kdcAddresses) {
+        context.setKdcAddresses(kdcAddresses);
+    }
+
+    /**
+     * Send requests encoded larger than that over TCP instead of UDP
+     * @param limit in bytes, 0 not to use UDP
+     */
+    public void setUdpPreferenceLimit(int limit) {
+        context.setUdpPreferenceLimit(limit);
+    }
+
     /**
      * Set time out for connection
      * @param timeout in seconds
@@ -91,27 +107,79 @@ public class KrbClient {
         context.setTimeout(timeout);
     }
 
+    /**
+     * Set how long the tickets requested are valid for
+     * @param validTime in seconds
+     */
+    public void setTicketValidTime(long validTime) {
+        context.setTicketValidTime(validTime * 1000);
+    }
+
+    /**
+     * Request renewable TGTs, renewable for that long
+     * @param renewableTime in seconds, 0 not to request renewable ones
+     */
+    public void setRenewableTime(long renewableTime) {
+        context.setRenewableTime(renewableTime * 1000);
+    }
+
+    /**
+     * Connect to the KDCs, waiting for them for at most the time out
+     */
     public void init() {
+        this.kdcPool = new KdcPool(context.getKdcAddresses(),
+                context.getUdpPreferenceLimit(), config.getKdcReconnectInterval());
         this.krbHandler = new KrbHandler();
-        krbHandler.init(context);
+        krbHandler.init(context, kdcPool);
 
         this.eventHub = new EventHub();
         eventHub.register(krbHandler);
+        eventHub.register(kdcPool);
 
-        Connector connector = new TcpConnector(new KrbStreamingDecoder());
-        eventHub.register(connector);
-
-        eventWaiter = eventHub.waitEvent(
-                TransportEventType.NEW_TRANSPORT,
-                KrbClientEventType.TGT_RESULT,
-                KrbClientEventType.TKT_RESULT
-        );
+        Connector tcpConnector = new TcpConnector(new KrbStreamingDecoder());
+        eventHub.register(tcpConnector);
+        Connector udpConnector = new UdpConnector();
+        eventHub.register(udpConnector);
 
         eventHub.start();
 
-        connector.connect(context.getKdcHost(), context.getKdcPort());
-        Event event = eventWaiter.waitEvent(TransportEventType.NEW_TRANSPORT);
-        transport = ((TransportEvent) event).getTransport();
+        kdcPool.connect(tcpConnector, udpConnector);
+        try {
+            kdcPool.awaitReady(context.getTimeout() * 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The connections to the KDCs, to see how they're doing
+     */
+    public KdcPool getKdcPool() {
+        return kdcPool;
+    }
+
+    /**
+     * Fail the requests in flight and stop the client
+     */
+    public void stop() {
+        stopped = true;
+        krbHandler.stop();
+        eventHub.stop();
+    }
+
+    /**
+     * Whether the client is stopped, failing all it's asked for
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * The count of failures checking the timeouts of requests or
+     * reconnecting the KDCs, each of them reported when it happened
+     */
+    public long getCheckFailureCount() {
+        return krbHandler.getCheckFailureCount();
     }
 
     /**
@@ -139,12 +207,25 @@ public class KrbClient {
      */
     public TgtTicket requestTgtTicket(String principal, String password,
                                       KrbOptions options) throws KrbException {
+        return requestTgtTicketAsync(principal, password, options).await();
+    }
+
+    /**
+     * Request a TGT with user plain credential, not waiting for it. Many
+     * requests may be in flight at the same time.
+     * @param principal
+     * @param password
+     * @param options
+     * @return the TGT to come
+     */
+    public KrbFuture<TgtTicket> requestTgtTicketAsync(String principal, String password,
+                                                      KrbOptions options) {
         if (options == null) options = new KrbOptions();
 
         AsRequest asRequest = new AsRequestWithPasswd(context);
         options.add(KrbOption.USER_PASSWD, password);
         asRequest.setKrbOptions(options);
-        return requestTgtTicket(principal, asRequest);
+        return requestTgtTicketAsync(principal, asRequest);
     }
 
     /**
@@ -213,10 +294,52 @@ public class KrbClient {
      */
     public ServiceTicket requestServiceTicket(String clientPrincipal, String password,
                                               String serverPrincipal, KrbOptions options) throws KrbException {
-        if (options == null) options = new KrbOptions();
+        return requestServiceTicketAsync(clientPrincipal, password,
+                serverPrincipal, options).await();
+    }
 
-        TgtTicket tgt = requestTgtTicket(clientPrincipal, password, options);
-        return requestServiceTicket(tgt, serverPrincipal, options);
+    /**
+     * Request a service ticket targeting for a server with user plain
+     * credentials, not waiting for it.
+     * @param clientPrincipal
+     * @param password
+     * @param serverPrincipal
+     * @param options
+     * @return the service ticket to come
+     */
+    public KrbFuture<ServiceTicket> requestServiceTicketAsync(String clientPrincipal, String password,
+                                                              final String serverPrincipal,
+                                                              KrbOptions options) {
+        final KrbOptions krbOptions = options == null ? new KrbOptions() : options;
+
+        final KrbFuture<TgtTicket> tgtFuture =
+                requestTgtTicketAsync(clientPrincipal, password, krbOptions);
+        final KrbFuture<ServiceTicket> result = new KrbFuture<ServiceTicket>();
+        tgtFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                TgtTicket tgt;
+                try {
+                    tgt = tgtFuture.await();
+                } catch (KrbException e) {
+                    result.fail(e);
+                    return;
+                }
+                final KrbFuture<ServiceTicket> tktFuture =
+                        requestServiceTicketAsync(tgt, serverPrincipal, krbOptions);
+                tktFuture.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            result.complete(tktFuture.await());
+                        } catch (KrbException e) {
+                            result.fail(e);
+                        }
+                    }
+                });
+            }
+        });
+        return result;
     }
 
     /**
@@ -237,38 +360,48 @@ public class KrbClient {
     }
 
     private TgtTicket requestTgtTicket(String clientPrincipal, AsRequest tgtTktReq) throws KrbException {
+        return requestTgtTicketAsync(clientPrincipal, tgtTktReq).await();
+    }
+
+    private KrbFuture<TgtTicket> requestTgtTicketAsync(String clientPrincipal, AsRequest tgtTktReq) {
         tgtTktReq.setClientPrincipal(new PrincipalName(clientPrincipal));
-        tgtTktReq.setTransport(transport);
 
-        try {
-            return doRequestTgtTicket(tgtTktReq);
-        } catch(KrbErrorException e) {
-            KrbError krbError = e.getKrbError();
-            if (krbError.getErrorCode() == KrbErrorCode.KDC_ERR_PREAUTH_REQUIRED) {
+        KrbFuture<TgtTicket> result = new KrbFuture<TgtTicket>();
+        doRequestTgtTicket(tgtTktReq, result, true);
+        return result;
+    }
+
+    private void doRequestTgtTicket(final AsRequest tgtTktReq, final KrbFuture<TgtTicket> result,
+                                    final boolean mayRetry) {
+        final KrbFuture<KdcRequest> reply = submit(tgtTktReq,
+                KrbClientEvent.createTgtIntentEvent(tgtTktReq));
+        reply.addListener(new Runnable() {
+            @Override
+            public void run() {
                 try {
-                    tgtTktReq.setEncryptionTypes(KrbErrorUtil.getEtypes(krbError));
-                } catch (IOException ioe) {
-                    throw new KrbException("Failed to decode and get etypes from krbError", ioe);
+                    reply.await();
+                } catch (KrbErrorException e) {
+                    KrbError krbError = e.getKrbError();
+                    if (mayRetry && krbError.getErrorCode() == KrbErrorCode.KDC_ERR_PREAUTH_REQUIRED) {
+                        try {
+                            tgtTktReq.setEncryptionTypes(KrbErrorUtil.getEtypes(krbError));
+                        } catch (IOException ioe) {
+                            result.fail(new KrbException("Failed to decode and get etypes from krbError", ioe));
+                            return;
+                        }
+                        tgtTktReq.getPreauthContext().setPreauthRequired(true);
+                        doRequestTgtTicket(tgtTktReq, result, false);
+                        return;
+                    }
+                    result.fail(e);
+                    return;
+                } catch (KrbException e) {
+                    result.fail(e);
+                    return;
                 }
-                tgtTktReq.getPreauthContext().setPreauthRequired(true);
-                return requestTgtTicket(clientPrincipal, tgtTktReq);
+                result.complete(tgtTktReq.getTicket());
             }
-            throw e;
-        }
-    }
-
-    private TgtTicket doRequestTgtTicket(AsRequest tgtTktReq) throws KrbException {
-        eventHub.dispatch(KrbClientEvent.createTgtIntentEvent(tgtTktReq));
-        Event resultEvent = null;
-        try {
-            resultEvent = eventWaiter.waitEvent(KrbClientEventType.TGT_RESULT,
-                    context.getTimeout(), TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-            throw new KrbException("Network timeout", e);
-        }
-        AsRequest asResponse = (AsRequest) resultEvent.getEventData();
-
-        return asResponse.getTicket();
+        });
     }
 
     /**
@@ -280,23 +413,103 @@ public class KrbClient {
      */
     public ServiceTicket requestServiceTicket(TgtTicket tgt, String serverPrincipal,
                                               KrbOptions options) throws KrbException {
+        return requestServiceTicketAsync(tgt, serverPrincipal, options).await();
+    }
+
+    /**
+     * Request a service ticket with a TGT targeting for a server, not waiting
+     * for it. Many requests may be in flight at the same time, sharing the
+     * connections to the KDCs.
+     * @param tgt
+     * @param serverPrincipal
+     * @return the service ticket to come
+     */
+    public KrbFuture<ServiceTicket> requestServiceTicketAsync(TgtTicket tgt, String serverPrincipal,
+                                                              KrbOptions options) {
         if (options == null) options = new KrbOptions();
 
-        TgsRequest ticketReq = new TgsRequest(context, tgt);
+        final TgsRequest ticketReq = new TgsRequest(context, tgt);
         ticketReq.setServerPrincipal(new PrincipalName(serverPrincipal));
-        ticketReq.setTransport(transport);
 
-        eventHub.dispatch(KrbClientEvent.createTktIntentEvent(ticketReq));
-        Event resultEvent = null;
-        try {
-            resultEvent = eventWaiter.waitEvent(KrbClientEventType.TKT_RESULT,
-                    context.getTimeout(), TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-            throw new KrbException("Network timeout", e);
+        final KrbFuture<KdcRequest> reply = submit(ticketReq,
+                KrbClientEvent.createTktIntentEvent(ticketReq));
+        final KrbFuture<ServiceTicket> result = new KrbFuture<ServiceTicket>();
+        reply.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reply.await();
+                } catch (KrbException e) {
+                    result.fail(e);
+                    return;
+                }
+                result.complete(ticketReq.getServiceTicket());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Renew a renewable TGT before it expires
+     * @param tgt
+     * @return the renewed TGT
+     * @throws KrbException
+     */
+    public TgtTicket renewTgtTicket(TgtTicket tgt) throws KrbException {
+        return renewTgtTicketAsync(tgt).await();
+    }
+
+    /**
+     * Renew a renewable TGT before it expires, not waiting for it.
+     * @param tgt
+     * @return the renewed TGT to come
+     */
+    public KrbFuture<TgtTicket> renewTgtTicketAsync(TgtTicket tgt) {
+        final KrbFuture<TgtTicket> result = new KrbFuture<TgtTicket>();
+        EncKdcRepPart encKdcRepPart = tgt.getEncKdcRepPart();
+        if (! encKdcRepPart.getFlags().isFlagSet(TicketFlag.RENEWABLE)) {
+            result.fail(new KrbException("TGT is not renewable"));
+            return result;
         }
-        TgsRequest tgsResponse = (TgsRequest) resultEvent.getEventData();
 
-        return tgsResponse.getServiceTicket();
+        final TgsRequest renewReq = new TgsRequest(context, tgt);
+        // A copy, the realm isn't set on the sname the TGT holds
+        PrincipalName sname = encKdcRepPart.getSname();
+        PrincipalName tgsPrincipal = new PrincipalName(sname.getNameStrings(),
+                sname.getNameType());
+        tgsPrincipal.setRealm(encKdcRepPart.getSrealm());
+        renewReq.setServerPrincipal(tgsPrincipal);
+        renewReq.getKdcOptions().setFlag(KdcOption.RENEW);
+        renewReq.getKdcOptions().setFlag(KdcOption.RENEWABLE);
+        renewReq.setRenewTill(encKdcRepPart.getRenewTill());
+
+        final KrbFuture<KdcRequest> reply = submit(renewReq,
+                KrbClientEvent.createTktIntentEvent(renewReq));
+        reply.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reply.await();
+                } catch (KrbException e) {
+                    result.fail(e);
+                    return;
+                }
+                result.complete(renewReq.getTgtTicket());
+            }
+        });
+        return result;
     }
 
+    private KrbFuture<KdcRequest> submit(KdcRequest kdcRequest, Event intentEvent) {
+        KrbFuture<KdcRequest> reply = new KrbFuture<KdcRequest>();
+        kdcRequest.setFuture(reply);
+        if (! stopped) {
+            eventHub.dispatch(intentEvent);
+        }
+        // Not taken by the handler when stopped, even just after dispatched
+        if (stopped) {
+            reply.fail(new KrbException("Client is stopped"));
+        }
+        return reply;
+    }
 }
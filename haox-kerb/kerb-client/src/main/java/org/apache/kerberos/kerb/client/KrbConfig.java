@@ -4,6 +4,8 @@ import org.apache.haox.config.Conf;
 import org.apache.kerberos.kerb.common.KrbConfHelper;
 import org.apache.kerberos.kerb.spec.common.EncryptionType;
 
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.List;
 
 public class KrbConfig {
@@ -30,6 +32,55 @@ public class KrbConfig {
         return kdcPort.shortValue();
     }
 
+    /**
+     * The KDCs to send requests to, as "host:port" separated by commas or
+     * spaces, or only the one of KDC_HOST and KDC_PORT if not set
+     */
+    public List<InetSocketAddress> getKdcAddresses() {
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+        String value = conf.getString(KrbConfigKey.KDC_ADDRESSES);
+        if (value != null) {
+            for (String hostPort : value.split("[,\\s]+")) {
+                if (hostPort.isEmpty()) {
+                    continue;
+                }
+                int colon = hostPort.lastIndexOf(':');
+                if (colon < 0) {
+                    addresses.add(new InetSocketAddress(hostPort, getKdcPort()));
+                } else {
+                    addresses.add(new InetSocketAddress(hostPort.substring(0, colon),
+                            Integer.parseInt(hostPort.substring(colon + 1))));
+                }
+            }
+        }
+        if (addresses.isEmpty()) {
+            addresses.add(new InetSocketAddress(getKdcHost(), getKdcPort()));
+        }
+        return addresses;
+    }
+
+    /**
+     * Requests encoded larger than that are sent over TCP, 0 not to use UDP
+     */
+    public int getUdpPreferenceLimit() {
+        return conf.getInt(KrbConfigKey.UDP_PREFERENCE_LIMIT);
+    }
+
+    /**
+     * How long to wait for a KDC before trying the next one, in milliseconds
+     */
+    public long getKdcAttemptTimeout() {
+        return conf.getLong(KrbConfigKey.KDC_ATTEMPT_TIMEOUT);
+    }
+
+    /**
+     * How long to wait before connecting again to a KDC taken out, in
+     * milliseconds
+     */
+    public long getKdcReconnectInterval() {
+        return conf.getLong(KrbConfigKey.KDC_RECONNECT_INTERVAL);
+    }
+
     public String getKdcRealm() {
         return conf.getString(KrbConfigKey.KDC_REALM);
     }
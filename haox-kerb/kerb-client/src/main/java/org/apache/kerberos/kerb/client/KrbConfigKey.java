@@ -6,6 +6,10 @@ public enum KrbConfigKey implements ConfigKey {
     KRB_DEBUG(true),
     KDC_HOST("localhost"),
     KDC_PORT(8015),
+    KDC_ADDRESSES,
+    UDP_PREFERENCE_LIMIT(1465),
+    KDC_ATTEMPT_TIMEOUT(1000L),
+    KDC_RECONNECT_INTERVAL(1000L),
     KDC_DOMAIN("example.com"),
     KDC_REALM("EXAMPLE.COM"),
     TGS_PRINCIPAL("krbtgt@EXAMPLE.COM"),
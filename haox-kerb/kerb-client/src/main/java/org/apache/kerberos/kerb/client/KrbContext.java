@@ -3,14 +3,24 @@ package org.apache.kerberos.kerb.client;
 import org.apache.kerberos.kerb.client.preauth.PreauthHandler;
 import org.apache.kerberos.kerb.crypto.Nonce;
 
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class KrbContext {
 
     private String kdcRealm;
     private KrbConfig config;
     private String kdcHost;
     private short kdcPort;
+    private List<InetSocketAddress> kdcAddresses;
+    private int udpPreferenceLimit = -1;
     private long timeout = 10L;
+    private long ticketValidTime = 8 * 60 * 60 * 1000;
+    private long renewableTime;
     private PreauthHandler preauthHandler;
+    private final AtomicLong lastAuthenticatorTime = new AtomicLong();
 
     public void init(KrbConfig config) {
         this.config = config;
@@ -40,6 +50,39 @@ public class KrbContext {
         this.kdcPort = kdcPort;
     }
 
+    /**
+     * The KDCs to send requests to, the one of the host and port if either
+     * is set, else the ones configured
+     */
+    public List<InetSocketAddress> getKdcAddresses() {
+        if (kdcAddresses != null) {
+            return kdcAddresses;
+        }
+        if (kdcHost != null || kdcPort > 0) {
+            return Collections.singletonList(
+                    new InetSocketAddress(getKdcHost(), getKdcPort()));
+        }
+        return config.getKdcAddresses();
+    }
+
+    public void setKdcAddresses(List<InetSocketAddress> kdcAddresses) {
+        this.kdcAddresses = kdcAddresses;
+    }
+
+    /**
+     * Requests encoded larger than that are sent over TCP, 0 not to use UDP
+     */
+    public int getUdpPreferenceLimit() {
+        if (udpPreferenceLimit >= 0) {
+            return udpPreferenceLimit;
+        }
+        return config.getUdpPreferenceLimit();
+    }
+
+    public void setUdpPreferenceLimit(int udpPreferenceLimit) {
+        this.udpPreferenceLimit = udpPreferenceLimit;
+    }
+
     public void setTimeout(long timeout) {
         this.timeout = timeout;
     }
@@ -68,8 +111,43 @@ public class KrbContext {
         return Nonce.value();
     }
 
+    /**
+     * Microseconds since the epoch for a new authenticator, later than any
+     * given before, so that authenticators made in the same second with the
+     * same ticket aren't taken as replays by KDC.
+     */
+    public long nextAuthenticatorTime() {
+        long now = System.currentTimeMillis() * 1000;
+        while (true) {
+            long last = lastAuthenticatorTime.get();
+            long next = now > last ? now : last + 1;
+            if (lastAuthenticatorTime.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * How long the tickets requested are valid for, in milliseconds
+     */
     public long getTicketValidTime() {
-        return 8 * 60 * 60 * 1000;
+        return ticketValidTime;
+    }
+
+    public void setTicketValidTime(long ticketValidTime) {
+        this.ticketValidTime = ticketValidTime;
+    }
+
+    /**
+     * How long the TGTs requested are renewable for, in milliseconds, 0 not
+     * to request renewable ones
+     */
+    public long getRenewableTime() {
+        return renewableTime;
+    }
+
+    public void setRenewableTime(long renewableTime) {
+        this.renewableTime = renewableTime;
     }
 
     public PreauthHandler getPreauthHandler() {
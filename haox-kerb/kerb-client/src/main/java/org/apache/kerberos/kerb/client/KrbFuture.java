@@ -0,0 +1,132 @@
+package org.apache.kerberos.kerb.client;
+
+import org.apache.kerberos.kerb.KrbException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of a request to KDC to come, completed with the ticket or
+ * failed with the KrbException the blocking API would throw.
+ *
+ * Listeners are run by the thread completing it, or right away by the
+ * thread adding them when it's done, so they should be short.
+ */
+public class KrbFuture<T> implements Future<T> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private List<Runnable> listeners = new ArrayList<Runnable>(1);
+    private volatile T result;
+    private volatile KrbException failure;
+    private volatile boolean cancelled;
+
+    /**
+     * @return false if it's done already
+     */
+    public boolean complete(T result) {
+        return finish(result, null, false);
+    }
+
+    /**
+     * @return false if it's done already
+     */
+    public boolean fail(KrbException failure) {
+        return finish(null, failure, false);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(null, new KrbException("Request cancelled"), true);
+    }
+
+    private boolean finish(T result, KrbException failure, boolean cancelled) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (listeners == null) {
+                return false;
+            }
+            this.result = result;
+            this.failure = failure;
+            this.cancelled = cancelled;
+            toRun = listeners;
+            listeners = null;
+        }
+        done.countDown();
+
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+        return true;
+    }
+
+    /**
+     * Run the listener when it's done, whether completed, failed or cancelled
+     */
+    public void addListener(Runnable listener) {
+        synchronized (this) {
+            if (listeners != null) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (! done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+
+    /**
+     * Wait for the result as the blocking API does, throwing the failure
+     * as it is.
+     */
+    public T await() throws KrbException {
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while waiting for KDC", e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+}
@@ -3,33 +3,153 @@ package org.apache.kerberos.kerb.client;
 import org.apache.haox.event.AbstractEventHandler;
 import org.apache.haox.event.Event;
 import org.apache.haox.event.EventType;
-import org.apache.kerberos.kerb.client.event.KrbClientEvent;
+import org.apache.kerberos.kerb.KrbErrorCode;
+import org.apache.kerberos.kerb.KrbErrorException;
 import org.apache.kerberos.kerb.client.event.KrbClientEventType;
 import org.apache.kerberos.kerb.client.preauth.PreauthHandler;
 import org.apache.kerberos.kerb.client.request.AsRequest;
 import org.apache.kerberos.kerb.client.request.KdcRequest;
-import org.apache.kerberos.kerb.client.request.TgsRequest;
 import org.apache.kerberos.kerb.common.KrbUtil;
 import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.KrbError;
 import org.apache.kerberos.kerb.spec.common.KrbMessage;
 import org.apache.kerberos.kerb.spec.common.KrbMessageType;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.apache.kerberos.kerb.spec.kdc.EncKdcRepPart;
 import org.apache.kerberos.kerb.spec.kdc.KdcRep;
-import org.apache.kerberos.kerb.spec.kdc.KdcReq;
 import org.apache.haox.transport.Transport;
+import org.apache.haox.transport.buffer.BufferPool;
 import org.apache.haox.transport.event.MessageEvent;
 import org.apache.haox.transport.event.TransportEventType;
+import org.apache.haox.transport.tcp.TcpTransport;
+import org.apache.haox.transport.udp.UdpTransport;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Sends the requests and completes their futures with the replies, so that
+ * many requests can be in flight over the connections to the KDCs.
+ *
+ * Replies are matched to the requests by nonce. It's in the encrypted part,
+ * so a reply is decrypted with the key of each pending request of its type
+ * and of the client and server names in the clear in it, until the key fits,
+ * once per key: requests sharing a TGT share the key.
+ * Errors carry no nonce and go to the oldest pending request of the names
+ * in the error, those sent to the KDC replying first. An error of no such
+ * request is dropped, unless it only has a request sent again.
+ *
+ * A request not replied by a KDC in the attempt timeout is sent to another,
+ * processed again for a new nonce and authenticator, so that a KDC getting
+ * it twice won't reject it as a replay. It fails when the overall timeout
+ * is up.
+ */
 public class KrbHandler extends AbstractEventHandler {
 
+    // Checks the deadlines of the requests of all clients
+    private static final Timer timer = new Timer("KrbClient-timeouts", true);
+    private static final long TIMEOUT_CHECK_INTERVAL = 100; // ms
+
     private KrbContext context;
     private PreauthHandler preauthHandler;
+    private KdcPool kdcPool;
+    private long attemptTimeout;
+
+    private final ConcurrentMap<Integer, Pending> pendingRequests =
+            new ConcurrentHashMap<Integer, Pending>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong checkFailures = new AtomicLong();
+    private TimerTask timeoutTask;
+
+    /**
+     * An attempt of a request, the one of it matched to replies
+     */
+    private static class Pending {
+        final KdcRequest request;
+        final int nonce;
+        final long sequence;
+        final long deadline;
+        final Set<KdcPool.Kdc> tried;
+        final boolean tcpOnly;
+        final KdcPool.Kdc kdc; // null if no KDC could be reached
+        final boolean isUdp;
+        final long sentAt;
+        volatile long attemptDeadline;
+        boolean waitedLonger; // for a KDC busy replying others
+
+        Pending(KdcRequest request, long sequence, long deadline,
+                Set<KdcPool.Kdc> tried, boolean tcpOnly, KdcPool.Kdc kdc,
+                boolean isUdp, long sentAt, long attemptDeadline) {
+            this.request = request;
+            this.nonce = request.getChosenNonce();
+            this.sequence = sequence;
+            this.deadline = deadline;
+            this.tried = tried;
+            this.tcpOnly = tcpOnly;
+            this.kdc = kdc;
+            this.isUdp = isUdp;
+            this.sentAt = sentAt;
+            this.attemptDeadline = attemptDeadline;
+        }
+    }
 
-    public void init(KrbContext context) {
+    public void init(KrbContext context, KdcPool kdcPool) {
         this.context = context;
+        this.kdcPool = kdcPool;
+        this.attemptTimeout = context.getConfig().getKdcAttemptTimeout();
         preauthHandler = new PreauthHandler();
         preauthHandler.init(context);
+
+        timeoutTask = new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    checkTimeouts();
+                } catch (RuntimeException e) {
+                    // Not to end the timer thread shared by all clients,
+                    // though an Error still does
+                    checkFailures.incrementAndGet();
+                    e.printStackTrace();
+                }
+            }
+        };
+        timer.schedule(timeoutTask, TIMEOUT_CHECK_INTERVAL, TIMEOUT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Fail the requests in flight and stop checking their deadlines
+     */
+    public void stop() {
+        if (timeoutTask != null) {
+            timeoutTask.cancel();
+        }
+        for (Pending pending : pendingRequests.values()) {
+            fail(pending, new KrbException("Client stopped"));
+        }
+    }
+
+    /**
+     * The count of requests waiting for replies
+     */
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * The count of timeout checks and KDC reconnects that failed, each of
+     * them reported when it happened
+     */
+    public long getCheckFailureCount() {
+        return checkFailures.get();
     }
 
     @Override
@@ -50,31 +170,315 @@ public class KrbHandler extends AbstractEventHandler {
             KdcRequest kdcRequest = (KdcRequest) event.getEventData();
             handleKdcRequest(kdcRequest);
         } else if (event.getEventType() == TransportEventType.INBOUND_MESSAGE) {
-            handleMessage((MessageEvent) event);
+            MessageEvent msgEvent = (MessageEvent) event;
+            try {
+                handleMessage(msgEvent);
+            } finally {
+                BufferPool.release(msgEvent.getMessage());
+            }
         }
     }
 
-    protected void handleKdcRequest(KdcRequest kdcRequest) throws KrbException {
-        kdcRequest.process();
-        KdcReq kdcReq = kdcRequest.getKdcReq();
-        Transport transport = kdcRequest.getTransport();
-        transport.setAttachment(kdcRequest);
-        KrbUtil.sendMessage(kdcReq, transport);
+    protected void handleKdcRequest(final KdcRequest kdcRequest) {
+        // Not to be matched any more once done, by a reply or else
+        kdcRequest.getFuture().addListener(new Runnable() {
+            @Override
+            public void run() {
+                Pending pending = pendingRequests.get(kdcRequest.getChosenNonce());
+                if (pending != null && pending.request == kdcRequest) {
+                    take(pending);
+                }
+            }
+        });
+
+        attempt(kdcRequest, sequence.incrementAndGet(),
+                System.currentTimeMillis() + context.getTimeout() * 1000,
+                new HashSet<KdcPool.Kdc>(), false);
+    }
+
+    /**
+     * Process the request and send it to the KDC chosen, or leave it to be
+     * attempted again shortly if none can be reached now
+     */
+    private void attempt(KdcRequest kdcRequest, long seq, long deadline,
+                         Set<KdcPool.Kdc> tried, boolean tcpOnly) {
+        KrbFuture<KdcRequest> future = kdcRequest.getFuture();
+        if (future.isDone()) {
+            return;
+        }
+
+        Pending pending;
+        Transport transport;
+        try {
+            while (true) { // again with a new nonce if it's taken by one in flight
+                kdcRequest.process();
+                KdcPool.Kdc kdc = kdcPool.choose(tried, tcpOnly);
+                transport = kdc == null ? null : kdcPool.transportOf(kdc,
+                        kdcRequest.getKdcReq().encodingLength(), tcpOnly);
+                if (transport == null) {
+                    kdc = null;
+                }
+
+                long now = System.currentTimeMillis();
+                pending = new Pending(kdcRequest, seq, deadline, tried, tcpOnly, kdc,
+                        transport instanceof UdpTransport, now, now + attemptTimeout);
+                if (kdc != null) {
+                    kdc.inFlight.incrementAndGet();
+                }
+                if (pendingRequests.putIfAbsent(pending.nonce, pending) == null) {
+                    break;
+                }
+                if (kdc != null) {
+                    kdc.inFlight.decrementAndGet();
+                }
+            }
+        } catch (KrbException e) {
+            future.fail(e);
+            return;
+        } catch (RuntimeException e) {
+            future.fail(new KrbException("Failed to process request", e));
+            return;
+        }
+
+        if (future.isDone()) { // while processing, so the listener missed it
+            take(pending);
+            return;
+        }
+        if (transport != null) {
+            tried.add(pending.kdc);
+            kdcRequest.setTransport(transport);
+            try {
+                KrbUtil.sendMessage(kdcRequest.getKdcReq(), transport);
+            } catch (RuntimeException e) {
+                fail(pending, new KrbException("Failed to send request", e));
+            }
+        }
     }
 
     protected void handleMessage(MessageEvent event) throws Exception {
         ByteBuffer message = event.getMessage();
-        KrbMessage kdcRep = KrbUtil.decodeMessage(message);
-
-        KrbMessageType messageType = kdcRep.getMsgType();
-        if (messageType == KrbMessageType.AS_REP) {
-            KdcRequest kdcRequest = (KdcRequest) event.getTransport().getAttachment();
-            kdcRequest.processResponse((KdcRep) kdcRep);
-            dispatch(KrbClientEvent.createTgtResultEvent((AsRequest) kdcRequest));
-        } else if (messageType == KrbMessageType.TGS_REP) {
-            KdcRequest kdcRequest = (KdcRequest) event.getTransport().getAttachment();
-            kdcRequest.processResponse((KdcRep) kdcRep);
-            dispatch(KrbClientEvent.createTktResultEvent((TgsRequest) kdcRequest));
+        Transport transport = event.getTransport();
+        // Decoded from a copy, as replies are kept, as tickets, after the
+        // message buffer goes back to the pool
+        KrbMessage krbMessage = transport instanceof TcpTransport ?
+                KrbUtil.decodeMessage(message) : KrbUtil.decodeDatagram(message);
+
+        KdcPool.Kdc kdc = kdcPool.kdcOf(transport);
+        if (kdc != null) {
+            kdcPool.onReply(kdc);
+        }
+
+        KrbMessageType messageType = krbMessage.getMsgType();
+        if (messageType == KrbMessageType.AS_REP || messageType == KrbMessageType.TGS_REP) {
+            handleKdcRep((KdcRep) krbMessage, messageType == KrbMessageType.AS_REP);
+        } else if (messageType == KrbMessageType.KRB_ERROR) {
+            handleKrbError((KrbError) krbMessage, kdc);
+        }
+    }
+
+    private void handleKdcRep(KdcRep kdcRep, boolean isAsRep) {
+        PrincipalName cname = kdcRep.getCname();
+        String crealm = kdcRep.getCrealm();
+        PrincipalName sname = kdcRep.getTicket() == null ? null :
+                kdcRep.getTicket().getSname();
+
+        List<EncryptionKey> triedKeys = new ArrayList<EncryptionKey>(1);
+        for (Pending pending : pendingRequests.values()) {
+            KdcRequest kdcRequest = pending.request;
+            if ((kdcRequest instanceof AsRequest) != isAsRep ||
+                    ! isOfNames(kdcRequest, cname, crealm, sname)) {
+                continue;
+            }
+
+            EncryptionKey key;
+            EncKdcRepPart encKdcRepPart;
+            try {
+                key = kdcRequest.getClientKey();
+                if (key == null || triedKeys.contains(key)) {
+                    continue;
+                }
+                triedKeys.add(key);
+                encKdcRepPart = kdcRequest.decryptEncPart(kdcRep);
+            } catch (KrbException e) {
+                continue; // not encrypted with the key
+            }
+
+            Pending matched = pendingRequests.get(encKdcRepPart.getNonce());
+            if (matched == null || ! isOfKey(matched.request, isAsRep, key) ||
+                    ! take(matched)) {
+                return; // timed out, or not ours
+            }
+            kdcRep.setEncPart(encKdcRepPart);
+            KrbFuture<KdcRequest> future = matched.request.getFuture();
+            try {
+                matched.request.processResponse(kdcRep);
+            } catch (KrbException e) {
+                future.fail(e);
+                return;
+            }
+            future.complete(matched.request);
+            return;
+        }
+        // Nobody waits for it any more
+    }
+
+    private static boolean isOfKey(KdcRequest kdcRequest, boolean isAsRequest,
+                                   EncryptionKey key) {
+        try {
+            return (kdcRequest instanceof AsRequest) == isAsRequest &&
+                    key.equals(kdcRequest.getClientKey());
+        } catch (KrbException e) {
+            return false;
+        }
+    }
+
+    private void handleKrbError(KrbError krbError, KdcPool.Kdc kdc) {
+        KrbErrorCode errorCode = krbError.getErrorCode();
+        // Only requests over UDP can be replied too big
+        boolean udpOnly = errorCode == KrbErrorCode.RESPONSE_TOO_BIG;
+        // Errors for which the request is only sent again, so none fails
+        // when it's taken as of another
+        boolean retryable = udpOnly ||
+                errorCode == KrbErrorCode.KDC_ERR_SVC_UNAVAILABLE;
+        // The server name is always in an error, one without tells of none
+        boolean named = krbError.getSname() != null;
+
+        Pending oldest = null;
+        Pending oldestOfNames = null;
+        for (Pending pending : pendingRequests.values()) {
+            if ((kdc != null && pending.kdc != kdc) || (udpOnly && ! pending.isUdp)) {
+                continue;
+            }
+            if (oldest == null || pending.sequence < oldest.sequence) {
+                oldest = pending;
+            }
+            if (named && isOfNames(pending.request, krbError.getCname(),
+                    krbError.getCrealm(), krbError.getSname())) {
+                if (oldestOfNames == null || pending.sequence < oldestOfNames.sequence) {
+                    oldestOfNames = pending;
+                }
+            }
+        }
+        if (oldest == null && kdc != null && ! udpOnly) { // from a KDC not expected
+            handleKrbError(krbError, null);
+            return;
+        }
+
+        /*
+         * An error is only failed to a request of its names, else it's
+         * dropped and the request left to its timeout. A KDC too busy to
+         * decode the request can't name it, so those go to the oldest.
+         */
+        Pending matched = oldestOfNames != null ? oldestOfNames :
+                (retryable ? oldest : null);
+        if (matched == null) {
+            return;
+        }
+        if (errorCode == KrbErrorCode.RESPONSE_TOO_BIG) {
+            if (take(matched)) { // again over TCP
+                attempt(matched.request, matched.sequence, matched.deadline,
+                        matched.tried, true);
+            }
+        } else if (errorCode == KrbErrorCode.KDC_ERR_SVC_UNAVAILABLE &&
+                kdcPool.hasUntried(matched.tried, matched.tcpOnly)) {
+            if (take(matched)) { // busy, try another
+                attempt(matched.request, matched.sequence, matched.deadline,
+                        matched.tried, matched.tcpOnly);
+            }
+        } else {
+            fail(matched, new KrbErrorException(krbError));
+        }
+    }
+
+    /**
+     * Whether a reply or error of the names can be of the request, by names
+     * in the clear so no key needs to be tried for it
+     */
+    private static boolean isOfNames(KdcRequest kdcRequest, PrincipalName cname,
+                                     String crealm, PrincipalName sname) {
+        PrincipalName clientPrincipal = kdcRequest.getClientPrincipal();
+        return sameNames(cname, clientPrincipal) &&
+                sameNames(sname, kdcRequest.getServerPrincipal()) &&
+                (crealm == null || clientPrincipal == null ||
+                        clientPrincipal.getRealm() == null ||
+                        crealm.equals(clientPrincipal.getRealm()));
+    }
+
+    /**
+     * Whether the name in a message is of the principal, not comparing
+     * realms as the message may have none. A name not given matches any.
+     */
+    private static boolean sameNames(PrincipalName inMessage, PrincipalName principal) {
+        return inMessage == null || principal == null ||
+                inMessage.getNameStrings().equals(principal.getNameStrings());
+    }
+
+    /**
+     * Fail the requests of which the time is up, and send those not replied
+     * in the attempt timeout to another KDC
+     */
+    private void checkTimeouts() {
+        long now = System.currentTimeMillis();
+        for (Pending pending : pendingRequests.values()) {
+            try {
+                checkTimeout(pending, now);
+            } catch (RuntimeException e) {
+                take(pending); // if not by the attempt failed
+                pending.request.getFuture().fail(
+                        new KrbException("Failed to attempt request", e));
+            }
+        }
+        try {
+            kdcPool.maintain(now);
+        } catch (RuntimeException e) {
+            checkFailures.incrementAndGet();
+            e.printStackTrace(); // tried again next time
+        }
+    }
+
+    private void checkTimeout(Pending pending, long now) {
+        if (pending.deadline <= now) {
+            fail(pending, new KrbException("Network timeout"));
+        } else if (pending.request.getFuture().isDone()) {
+            take(pending); // done while it was being attempted again
+        } else if (pending.attemptDeadline <= now) {
+            KdcPool.Kdc kdc = pending.kdc;
+            boolean alive = kdc != null && now - kdc.lastReplyTime < attemptTimeout;
+            if (alive && ! pending.waitedLonger &&
+                    ! kdcPool.hasUntried(pending.tried, pending.tcpOnly)) {
+                // Sent again it'd only be queued behind the first one
+                pending.waitedLonger = true;
+                pending.attemptDeadline = now + attemptTimeout;
+                return;
+            }
+            if (! take(pending)) {
+                return;
+            }
+            if (kdc != null && ! alive) {
+                kdcPool.markDown(kdc, now);
+            }
+            attempt(pending.request, pending.sequence, pending.deadline,
+                    pending.tried, pending.tcpOnly);
+        }
+    }
+
+    private void fail(Pending pending, KrbException e) {
+        if (take(pending)) {
+            pending.request.getFuture().fail(e);
+        }
+    }
+
+    /**
+     * Stop matching replies to the attempt
+     * @return false if taken already, by a reply or else
+     */
+    private boolean take(Pending pending) {
+        if (pendingRequests.remove(pending.nonce, pending)) {
+            if (pending.kdc != null) {
+                pending.kdc.inFlight.decrementAndGet();
+            }
+            return true;
         }
+        return false;
     }
 }
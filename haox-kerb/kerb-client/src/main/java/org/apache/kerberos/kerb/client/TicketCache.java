@@ -0,0 +1,680 @@
+package org.apache.kerberos.kerb.client;
+
+import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.ccache.Credential;
+import org.apache.kerberos.kerb.ccache.CredentialCache;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.apache.kerberos.kerb.spec.kdc.EncAsRepPart;
+import org.apache.kerberos.kerb.spec.kdc.EncKdcRepPart;
+import org.apache.kerberos.kerb.spec.kdc.EncTgsRepPart;
+import org.apache.kerberos.kerb.spec.ticket.AbstractServiceTicket;
+import org.apache.kerberos.kerb.spec.ticket.ServiceTicket;
+import org.apache.kerberos.kerb.spec.ticket.TgtTicket;
+import org.apache.kerberos.kerb.spec.ticket.TicketFlag;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the tickets got by a client in memory, so that asking again for a
+ * service ticket of the same client and server doesn't go to KDC while the
+ * ticket is valid.
+ *
+ * Tickets are refreshed in the background a while before they end, at a
+ * random point of a window so that tickets got together aren't refreshed
+ * together. A service ticket is refreshed with the latest TGT of its client
+ * if it's been used since got, otherwise it's dropped when it ends. TGTs
+ * with the RENEWABLE flag are renewed the same way until their renew-till.
+ *
+ * The tickets may be stored to and loaded from a FILE credential cache.
+ *
+ * The cache lives as long as its client: once the client is stopped the
+ * lookups not answered from the cache fail, and the tickets are dropped
+ * instead of refreshed.
+ */
+public class TicketCache {
+
+    // Refreshes the tickets of all caches, only by dispatching requests.
+    // Ends with no task left once the clients of the caches are stopped.
+    private static final Timer timer = new Timer("KrbClient-ticket-refresh", true);
+    private static final Random random = new Random();
+    private static final long MIN_RETRY_INTERVAL = 1000; // ms
+
+    private final KrbClient client;
+    private long refreshWindow = 5 * 60 * 1000; // ms
+
+    private final ConcurrentMap<PrincipalKey, TgtEntry> tgts =
+            new ConcurrentHashMap<PrincipalKey, TgtEntry>();
+    private final ConcurrentMap<Key, TicketEntry> tickets =
+            new ConcurrentHashMap<Key, TicketEntry>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong renewCount = new AtomicLong();
+    private final AtomicLong refreshFailureCount = new AtomicLong();
+    private final AtomicLong expiryCount = new AtomicLong();
+
+    private static class Key {
+        final PrincipalKey client;
+        final PrincipalKey server;
+
+        Key(PrincipalKey client, PrincipalKey server) {
+            this.client = client;
+            this.server = server;
+        }
+
+        @Override
+        public int hashCode() {
+            return client.hashCode() * 31 + server.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (! (other instanceof Key)) {
+                return false;
+            }
+            Key otherKey = (Key) other;
+            return client.equals(otherKey.client) && server.equals(otherKey.server);
+        }
+    }
+
+    /**
+     * A cached ticket, got again from KDC when due
+     */
+    private abstract class Entry<T extends AbstractServiceTicket> {
+        volatile T ticket;
+        volatile boolean used;
+        volatile long refreshAt = Long.MAX_VALUE;
+        private KrbFuture<T> inFlight;
+        private TimerTask timerTask;
+
+        /**
+         * Go to KDC for the ticket
+         */
+        abstract KrbFuture<T> request();
+
+        abstract boolean isRefreshable(T ticket);
+
+        /**
+         * Whether to refresh it when due, or let it end
+         */
+        boolean isWanted() {
+            return used;
+        }
+
+        abstract void onRefreshed();
+
+        abstract void evict();
+
+        /**
+         * Get the ticket from KDC, sharing the request in flight if any.
+         * Done when the entry has the ticket.
+         */
+        synchronized KrbFuture<T> fetch(final boolean refresh) {
+            if (inFlight != null) {
+                return inFlight;
+            }
+            KrbFuture<T> requested;
+            try {
+                requested = request();
+            } catch (RuntimeException e) {
+                requested = new KrbFuture<T>();
+                requested.fail(new KrbException("Failed to request ticket", e));
+            }
+            final KrbFuture<T> reply = requested;
+            final KrbFuture<T> result = new KrbFuture<T>();
+            inFlight = result;
+            reply.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    onFetched(reply, result, refresh);
+                }
+            });
+            return result;
+        }
+
+        private void onFetched(KrbFuture<T> reply, KrbFuture<T> result, boolean refresh) {
+            T fetched;
+            try {
+                fetched = reply.await();
+            } catch (KrbException e) {
+                if (refresh) {
+                    refreshFailureCount.incrementAndGet();
+                }
+                synchronized (this) {
+                    inFlight = null;
+                    if (client.isStopped()) {
+                        cancel();
+                        evict(); // not to be refreshed any more
+                    } else {
+                        scheduleRetry();
+                    }
+                }
+                result.fail(e);
+                return;
+            }
+
+            synchronized (this) {
+                inFlight = null;
+                ticket = fetched;
+                schedule(fetched);
+            }
+            if (refresh) {
+                onRefreshed();
+            }
+            result.complete(fetched);
+        }
+
+        void schedule(T fetched) {
+            if (isRefreshable(fetched)) {
+                refreshAt = refreshTimeOf(fetched);
+                scheduleTimer(refreshAt);
+            } else {
+                refreshAt = Long.MAX_VALUE;
+                scheduleTimer(endTimeOf(fetched));
+            }
+        }
+
+        /**
+         * Try again when half the time left is gone, if not too soon
+         */
+        private void scheduleRetry() {
+            T current = ticket;
+            if (current == null) {
+                evict();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long retryAt = now + (endTimeOf(current) - now) / 2;
+            if (retryAt - now > MIN_RETRY_INTERVAL) {
+                refreshAt = retryAt;
+                scheduleTimer(retryAt);
+            } else {
+                refreshAt = Long.MAX_VALUE;
+                scheduleTimer(endTimeOf(current));
+            }
+        }
+
+        private void scheduleTimer(long time) {
+            if (timerTask != null) {
+                timerTask.cancel();
+            }
+            timerTask = new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        onTimer(this);
+                    } catch (Throwable e) {
+                        // Not to end the timer shared by all caches
+                        e.printStackTrace();
+                    }
+                }
+            };
+            timer.schedule(timerTask, Math.max(0, time - System.currentTimeMillis()));
+        }
+
+        private void onTimer(TimerTask task) {
+            synchronized (this) {
+                if (timerTask != task || inFlight != null) {
+                    return; // replaced meanwhile
+                }
+                timerTask = null;
+                if (client.isStopped()) {
+                    evict();
+                    return;
+                }
+
+                T current = ticket;
+                long now = System.currentTimeMillis();
+                if (endTimeOf(current) <= now) {
+                    expiryCount.incrementAndGet();
+                    evict();
+                    return;
+                }
+                if (! isRefreshable(current) || ! isWanted()) {
+                    // Refreshed if used before then
+                    scheduleTimer(endTimeOf(current));
+                    return;
+                }
+                used = false;
+            }
+            fetch(true);
+        }
+
+        /**
+         * Refresh it now if used after the time to, when it was let be
+         * for not used then
+         */
+        void onUsed(long now) {
+            used = true;
+            if (refreshAt > now) {
+                return;
+            }
+            synchronized (this) {
+                if (inFlight != null || refreshAt > now) {
+                    return;
+                }
+                if (timerTask != null) {
+                    timerTask.cancel();
+                    timerTask = null;
+                }
+                used = false;
+            }
+            fetch(true);
+        }
+
+        synchronized void cancel() {
+            if (timerTask != null) {
+                timerTask.cancel();
+                timerTask = null;
+            }
+        }
+    }
+
+    private class TgtEntry extends Entry<TgtTicket> {
+        final PrincipalKey clientKey;
+
+        TgtEntry(PrincipalKey clientKey, TgtTicket tgt) {
+            this.clientKey = clientKey;
+            this.ticket = tgt;
+        }
+
+        @Override
+        KrbFuture<TgtTicket> request() {
+            return client.renewTgtTicketAsync(ticket);
+        }
+
+        @Override
+        boolean isRefreshable(TgtTicket tgt) {
+            EncKdcRepPart encPart = tgt.getEncKdcRepPart();
+            return encPart.getFlags().isFlagSet(TicketFlag.RENEWABLE) &&
+                    encPart.getRenewTill() != null &&
+                    encPart.getRenewTill().getTime() > System.currentTimeMillis();
+        }
+
+        @Override
+        boolean isWanted() {
+            return true; // used by the service tickets
+        }
+
+        @Override
+        void onRefreshed() {
+            renewCount.incrementAndGet();
+        }
+
+        @Override
+        void evict() {
+            tgts.remove(clientKey, this);
+        }
+    }
+
+    private class TicketEntry extends Entry<ServiceTicket> {
+        final Key key;
+        final String serverPrincipal;
+        final TgtTicket tgt; // used if none newer for the client
+
+        TicketEntry(Key key, String serverPrincipal, TgtTicket tgt) {
+            this.key = key;
+            this.serverPrincipal = serverPrincipal;
+            this.tgt = tgt;
+        }
+
+        @Override
+        KrbFuture<ServiceTicket> request() {
+            TgtTicket latest = getTgt(key.client);
+            if (latest == null) {
+                latest = tgt;
+            }
+            if (latest == null || endTimeOf(latest) <= System.currentTimeMillis()) {
+                KrbFuture<ServiceTicket> failed = new KrbFuture<ServiceTicket>();
+                failed.fail(new KrbException("No valid TGT for " + key.client.getName()));
+                return failed;
+            }
+            return client.requestServiceTicketAsync(latest, serverPrincipal, null);
+        }
+
+        @Override
+        boolean isRefreshable(ServiceTicket tkt) {
+            return true;
+        }
+
+        @Override
+        void onRefreshed() {
+            refreshCount.incrementAndGet();
+        }
+
+        @Override
+        void evict() {
+            tickets.remove(key, this);
+        }
+    }
+
+    public TicketCache(KrbClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Set how long before they end the tickets are refreshed, at most a
+     * quarter of their lifetime. Each is refreshed at a random point between
+     * twice that and that before it ends.
+     * @param refreshWindow in seconds
+     */
+    public void setRefreshWindow(long refreshWindow) {
+        this.refreshWindow = refreshWindow * 1000;
+    }
+
+    /**
+     * Keep the TGT of its client, for getting the service tickets of the
+     * client and refreshing them. Kept unless a later one is kept already,
+     * and renewed before it ends if renewable.
+     */
+    public void addTgt(TgtTicket tgt) {
+        PrincipalKey clientKey = tgt.getClientPrincipal().getKey();
+        TgtEntry kept = tgts.get(clientKey);
+        if (kept != null && endTimeOf(kept.ticket) >= endTimeOf(tgt)) {
+            return; // mostly, when given with each lookup
+        }
+
+        TgtEntry entry = new TgtEntry(clientKey, tgt);
+        while (true) {
+            TgtEntry existing = tgts.putIfAbsent(clientKey, entry);
+            if (existing == null) {
+                break;
+            }
+            TgtTicket current = existing.ticket;
+            if (endTimeOf(current) >= endTimeOf(tgt)) {
+                return;
+            }
+            if (tgts.replace(clientKey, existing, entry)) {
+                existing.cancel();
+                break;
+            }
+        }
+
+        synchronized (entry) {
+            entry.schedule(tgt);
+        }
+    }
+
+    /**
+     * The valid TGT kept of the client, null if none
+     */
+    public TgtTicket getTgt(String clientPrincipal) {
+        return getTgt(new PrincipalName(clientPrincipal).getKey());
+    }
+
+    private TgtTicket getTgt(PrincipalKey clientKey) {
+        TgtEntry entry = tgts.get(clientKey);
+        if (entry == null) {
+            return null;
+        }
+        TgtTicket tgt = entry.ticket;
+        return endTimeOf(tgt) > System.currentTimeMillis() ? tgt : null;
+    }
+
+    /**
+     * Get a service ticket of the client of the TGT kept, from the cache
+     * if there's a valid one, or else from KDC
+     */
+    public ServiceTicket getServiceTicket(String clientPrincipal,
+                                          String serverPrincipal) throws KrbException {
+        TgtTicket tgt = getTgt(clientPrincipal);
+        if (tgt == null) {
+            throw new KrbException("No valid TGT for " + clientPrincipal);
+        }
+        return getServiceTicket(tgt, serverPrincipal);
+    }
+
+    /**
+     * Get a service ticket of the client of the TGT, from the cache if
+     * there's a valid one, or else from KDC with the TGT
+     */
+    public ServiceTicket getServiceTicket(TgtTicket tgt,
+                                          String serverPrincipal) throws KrbException {
+        return getServiceTicketAsync(tgt, serverPrincipal).await();
+    }
+
+    /**
+     * Get a service ticket of the client of the TGT, not waiting for KDC
+     * if it's not cached. Concurrent misses of a ticket share a request.
+     */
+    public KrbFuture<ServiceTicket> getServiceTicketAsync(TgtTicket tgt,
+                                                          String serverPrincipal) {
+        addTgt(tgt);
+
+        Key key = new Key(tgt.getClientPrincipal().getKey(),
+                new PrincipalName(serverPrincipal).getKey());
+        long now = System.currentTimeMillis();
+        TicketEntry entry = tickets.get(key);
+        if (entry != null) {
+            ServiceTicket tkt = entry.ticket;
+            if (tkt != null && endTimeOf(tkt) > now) {
+                hitCount.incrementAndGet();
+                entry.onUsed(now);
+                KrbFuture<ServiceTicket> result = new KrbFuture<ServiceTicket>();
+                result.complete(tkt);
+                return result;
+            }
+        }
+
+        missCount.incrementAndGet();
+        if (entry == null) {
+            entry = new TicketEntry(key, serverPrincipal, tgt);
+            TicketEntry existing = tickets.putIfAbsent(key, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        entry.used = true;
+        return entry.fetch(false);
+    }
+
+    /**
+     * Drop all the tickets and stop refreshing them
+     */
+    public void clear() {
+        for (TgtEntry entry : tgts.values()) {
+            entry.cancel();
+        }
+        tgts.clear();
+        for (TicketEntry entry : tickets.values()) {
+            entry.cancel();
+        }
+        tickets.clear();
+    }
+
+    /**
+     * Store the valid tickets to a FILE credential cache, the primary
+     * principal being the client of the first TGT.
+     */
+    public void store(File ccacheFile) throws IOException {
+        long now = System.currentTimeMillis();
+        List<Credential> credentials = new ArrayList<Credential>();
+        PrincipalName primaryPrincipal = null;
+        for (TgtEntry entry : tgts.values()) {
+            TgtTicket tgt = entry.ticket;
+            if (endTimeOf(tgt) > now) {
+                Credential credential = new Credential(tgt);
+                if (primaryPrincipal == null) {
+                    primaryPrincipal = credential.getClientName();
+                }
+                credentials.add(credential);
+            }
+        }
+        for (TicketEntry entry : tickets.values()) {
+            ServiceTicket tkt = entry.ticket;
+            if (tkt != null && endTimeOf(tkt) > now) {
+                PrincipalName clientPrincipal = new PrincipalName(entry.key.client.getName());
+                if (primaryPrincipal == null) {
+                    primaryPrincipal = clientPrincipal;
+                }
+                credentials.add(new Credential(tkt, clientPrincipal));
+            }
+        }
+        if (primaryPrincipal == null) {
+            throw new IOException("No valid ticket to store");
+        }
+
+        CredentialCache cc = new CredentialCache();
+        cc.setPrimaryPrincipal(primaryPrincipal);
+        cc.addCredentials(credentials);
+        cc.store(ccacheFile);
+    }
+
+    /**
+     * Load the valid tickets from a FILE credential cache, refreshed as
+     * the ones got from KDC
+     * @return the count of tickets loaded
+     */
+    public int load(File ccacheFile) throws IOException {
+        CredentialCache cc = new CredentialCache();
+        cc.load(ccacheFile);
+
+        long now = System.currentTimeMillis();
+        List<Credential> serviceCredentials = new ArrayList<Credential>();
+        int count = 0;
+        for (Credential credential : cc.getCredentials()) {
+            if (credential.getTicket() == null ||
+                    credential.getEndTime().getTime() <= now) {
+                continue; // conf entry, or expired
+            }
+            if (isTgs(credential.getServerName())) {
+                addTgt(new TgtTicket(credential.getTicket(),
+                        makeEncPart(credential, new EncAsRepPart()),
+                        credential.getClientName().getName()));
+                count++;
+            } else {
+                serviceCredentials.add(credential);
+            }
+        }
+
+        // After the TGTs, to be refreshed with them
+        for (Credential credential : serviceCredentials) {
+            ServiceTicket tkt = new ServiceTicket(credential.getTicket(),
+                    (EncTgsRepPart) makeEncPart(credential, new EncTgsRepPart()));
+            PrincipalName server = credential.getServerName();
+            Key key = new Key(credential.getClientName().getKey(), server.getKey());
+            TicketEntry entry = new TicketEntry(key, server.getName(), null);
+            entry.ticket = tkt;
+            TicketEntry existing = tickets.putIfAbsent(key, entry);
+            if (existing != null) {
+                continue;
+            }
+            synchronized (entry) {
+                entry.schedule(tkt);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean isTgs(PrincipalName principal) {
+        List<String> nameStrings = principal.getNameStrings();
+        return ! nameStrings.isEmpty() && nameStrings.get(0).equals("krbtgt");
+    }
+
+    private static EncKdcRepPart makeEncPart(Credential credential,
+                                             EncKdcRepPart encPart) {
+        encPart.setKey(credential.getKey());
+        encPart.setFlags(credential.getTicketFlags());
+        encPart.setAuthTime(credential.getAuthTime());
+        encPart.setStartTime(timeOrNull(credential.getStartTime()));
+        encPart.setEndTime(credential.getEndTime());
+        encPart.setRenewTill(timeOrNull(credential.getRenewTill()));
+        encPart.setSname(credential.getServerName());
+        encPart.setSrealm(credential.getServerName().getRealm());
+        encPart.setCaddr(credential.getClientAddresses());
+        return encPart;
+    }
+
+    // Times not given are stored as 0
+    private static KerberosTime timeOrNull(KerberosTime time) {
+        return time == null || time.getTime() == 0 ? null : time;
+    }
+
+    private static long endTimeOf(AbstractServiceTicket ticket) {
+        return ticket.getEncKdcRepPart().getEndTime().getTime();
+    }
+
+    private long refreshTimeOf(AbstractServiceTicket ticket) {
+        EncKdcRepPart encPart = ticket.getEncKdcRepPart();
+        KerberosTime startTime = encPart.getStartTime() != null ?
+                encPart.getStartTime() : encPart.getAuthTime();
+        long endTime = encPart.getEndTime().getTime();
+        long lifetime = startTime != null ? endTime - startTime.getTime() : 0;
+
+        long lead = Math.min(refreshWindow, lifetime / 4);
+        return endTime - lead - (long) (random.nextDouble() * lead);
+    }
+
+    /**
+     * Lookups answered from the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Lookups answered from KDC, some share a request
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Service tickets got again in the background
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    /**
+     * TGTs renewed in the background
+     */
+    public long getRenewCount() {
+        return renewCount.get();
+    }
+
+    public long getRefreshFailureCount() {
+        return refreshFailureCount.get();
+    }
+
+    /**
+     * Tickets dropped when ended
+     */
+    public long getExpiryCount() {
+        return expiryCount.get();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    public int size() {
+        return tickets.size();
+    }
+
+    @Override
+    public String toString() {
+        return "TicketCache{hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", refreshes=" + getRefreshCount() +
+                ", renewals=" + getRenewCount() +
+                ", refreshFailures=" + getRefreshFailureCount() +
+                ", expiries=" + getExpiryCount() +
+                ", hitRatio=" + getHitRatio() + "}";
+    }
+}
@@ -45,6 +45,14 @@ public class PreauthContext {
         return outputPaData;
     }
 
+    /**
+     * Start over the pdata to be out, as a request is processed again when
+     * it's sent again
+     */
+    public void resetOutputPaData() {
+        this.outputPaData = new PaData();
+    }
+
     public boolean hasInputPaData() {
         return  (inputPaData != null && ! inputPaData.isEmpty());
     }
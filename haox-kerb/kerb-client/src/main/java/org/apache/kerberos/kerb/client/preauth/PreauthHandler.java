@@ -64,6 +64,7 @@ public class PreauthHandler {
      */
     public void preauth(KdcRequest kdcRequest) throws KrbException {
         PreauthContext preauthContext = kdcRequest.getPreauthContext();
+        preauthContext.resetOutputPaData();
 
         if (!preauthContext.isPreauthRequired()) {
             return;
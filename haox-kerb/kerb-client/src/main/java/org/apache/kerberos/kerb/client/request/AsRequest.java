@@ -4,6 +4,7 @@ import org.apache.kerberos.kerb.KrbErrorCode;
 import org.apache.kerberos.kerb.client.KrbContext;
 import org.apache.kerberos.kerb.KrbConstant;
 import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.spec.KerberosTime;
 import org.apache.kerberos.kerb.spec.common.*;
 import org.apache.kerberos.kerb.spec.kdc.*;
 import org.apache.kerberos.kerb.spec.ticket.TgtTicket;
@@ -42,6 +43,12 @@ public class AsRequest extends KdcRequest {
     public void process() throws KrbException {
         super.process();
 
+        long renewableTime = getContext().getRenewableTime();
+        if (renewableTime > 0) {
+            getKdcOptions().setFlag(KdcOption.RENEWABLE);
+            setRenewTill(new KerberosTime(System.currentTimeMillis() + renewableTime));
+        }
+
         KdcReqBody body = makeReqBody();
 
         AsReq asReq = new AsReq();
@@ -62,15 +69,11 @@ public class AsRequest extends KdcRequest {
             throw new KrbException(KrbErrorCode.KDC_ERR_CLIENT_NAME_MISMATCH);
         }
 
-        byte[] decryptedData = decryptWithClientKey(getKdcRep().getEncryptedEncPart(),
-                KeyUsage.AS_REP_ENCPART);
-        EncKdcRepPart encKdcRepPart = new EncAsRepPart();
-        try {
-            encKdcRepPart.decode(decryptedData);
-        } catch (IOException e) {
-            throw new KrbException("Failed to decode EncAsRepPart", e);
+        EncKdcRepPart encKdcRepPart = getKdcRep().getEncPart();
+        if (encKdcRepPart == null) {
+            encKdcRepPart = decryptEncPart(getKdcRep());
+            getKdcRep().setEncPart(encKdcRepPart);
         }
-        getKdcRep().setEncPart(encKdcRepPart);
 
         if (getChosenNonce() != encKdcRepPart.getNonce()) {
             throw new KrbException("Nonce didn't match");
@@ -86,9 +89,11 @@ public class AsRequest extends KdcRequest {
         if (hostAddresses != null) {
             List<HostAddress> requestHosts = hostAddresses.getElements();
             if (!requestHosts.isEmpty()) {
-                List<HostAddress> responseHosts = encKdcRepPart.getCaddr().getElements();
+                // caddr is OPTIONAL, absent when decoded without one
+                HostAddresses responseAddresses = encKdcRepPart.getCaddr();
                 for (HostAddress h : requestHosts) {
-                    if (!responseHosts.contains(h)) {
+                    if (responseAddresses == null ||
+                            !responseAddresses.getElements().contains(h)) {
                         throw new KrbException("Unexpected client host");
                     }
                 }
@@ -96,6 +101,19 @@ public class AsRequest extends KdcRequest {
         }
     }
 
+    @Override
+    public EncKdcRepPart decryptEncPart(KdcRep kdcRep) throws KrbException {
+        byte[] decryptedData = decryptWithClientKey(kdcRep.getEncryptedEncPart(),
+                KeyUsage.AS_REP_ENCPART);
+        EncKdcRepPart encKdcRepPart = new EncAsRepPart();
+        try {
+            encKdcRepPart.decode(decryptedData);
+        } catch (IOException e) {
+            throw new KrbException("Failed to decode EncAsRepPart", e);
+        }
+        return encKdcRepPart;
+    }
+
     public TgtTicket getTicket() {
         TgtTicket TgtTicket = new TgtTicket(getKdcRep().getTicket(),
                 (EncAsRepPart) getKdcRep().getEncPart(), getKdcRep().getCname().getName());
@@ -1,6 +1,7 @@
 package org.apache.kerberos.kerb.client.request;
 
 import org.apache.kerberos.kerb.client.KrbContext;
+import org.apache.kerberos.kerb.client.KrbFuture;
 import org.apache.kerberos.kerb.client.KrbOptions;
 import org.apache.kerberos.kerb.client.preauth.FastContext;
 import org.apache.kerberos.kerb.client.preauth.PreauthContext;
@@ -9,6 +10,7 @@ import org.apache.kerberos.kerb.crypto.EncryptionHandler;
 import org.apache.kerberos.kerb.KrbException;
 import org.apache.kerberos.kerb.spec.KerberosTime;
 import org.apache.kerberos.kerb.spec.common.*;
+import org.apache.kerberos.kerb.spec.kdc.EncKdcRepPart;
 import org.apache.kerberos.kerb.spec.kdc.KdcOptions;
 import org.apache.kerberos.kerb.spec.kdc.KdcRep;
 import org.apache.kerberos.kerb.spec.kdc.KdcReq;
@@ -34,6 +36,7 @@ public abstract class KdcRequest {
     private PrincipalName serverPrincipal;
     private List<HostAddress> hostAddresses = new ArrayList<HostAddress>();
     private KdcOptions kdcOptions = new KdcOptions();
+    private KerberosTime renewTill;
     private List<EncryptionType> encryptionTypes;
     private EncryptionType chosenEncryptionType;
     private int chosenNonce;
@@ -46,6 +49,7 @@ public abstract class KdcRequest {
 
     private KrbError errorReply;
     private boolean isRetrying;
+    private KrbFuture<KdcRequest> future;
 
     public KdcRequest(KrbContext context) {
         this.context = context;
@@ -64,6 +68,17 @@ public abstract class KdcRequest {
         return this.transport;
     }
 
+    /**
+     * Completed with the request itself when the reply is processed
+     */
+    public KrbFuture<KdcRequest> getFuture() {
+        return future;
+    }
+
+    public void setFuture(KrbFuture<KdcRequest> future) {
+        this.future = future;
+    }
+
     public void setKrbOptions(KrbOptions options) {
         this.krbOptions = options;
     }
@@ -136,6 +151,9 @@ public abstract class KdcRequest {
         body.setSname(sName);
 
         body.setTill(new KerberosTime(startTime + getTicketValidTime()));
+        if (renewTill != null) {
+            body.setRtime(renewTill);
+        }
 
         int nonce = generateNonce();
         body.setNonce(nonce);
@@ -157,6 +175,18 @@ public abstract class KdcRequest {
         return kdcOptions;
     }
 
+    /**
+     * The renew-till time asked for a renewable ticket, null if not asking
+     * for one
+     */
+    public KerberosTime getRenewTill() {
+        return renewTill;
+    }
+
+    public void setRenewTill(KerberosTime renewTill) {
+        this.renewTill = renewTill;
+    }
+
     public HostAddresses getHostAddresses() {
         HostAddresses addresses = null;
         if (!hostAddresses.isEmpty()) {
@@ -251,6 +281,12 @@ public abstract class KdcRequest {
 
     public abstract void processResponse(KdcRep kdcRep) throws KrbException;
 
+    /**
+     * Decrypt the encrypted part of the reply, failing if it isn't
+     * encrypted with the key of this request.
+     */
+    public abstract EncKdcRepPart decryptEncPart(KdcRep kdcRep) throws KrbException;
+
     public KrbOptions getPreauthOptions() {
         return new KrbOptions();
     }
@@ -80,8 +80,9 @@ public class TgsRequest extends KdcRequest {
         authenticator.setCname(getClientPrincipal());
         authenticator.setCrealm(tgt.getRealm());
 
-        authenticator.setCtime(KerberosTime.now());
-        authenticator.setCusec(0);
+        long time = getContext().nextAuthenticatorTime();
+        authenticator.setCtime(new KerberosTime(time / 1000));
+        authenticator.setCusec((int) (time % 1000000));
 
         EncryptionKey sessionKey = tgt.getSessionKey();
         authenticator.setSubKey(sessionKey);
@@ -94,23 +95,37 @@ public class TgsRequest extends KdcRequest {
         setKdcRep(kdcRep);
 
         TgsRep tgsRep = (TgsRep) getKdcRep();
-        EncTgsRepPart encTgsRepPart = EncryptionUtil.unseal(tgsRep.getEncryptedEncPart(),
-                getSessionKey(),
-                KeyUsage.TGS_REP_ENCPART_SESSKEY, EncTgsRepPart.class);
-
-        tgsRep.setEncPart(encTgsRepPart);
+        EncKdcRepPart encTgsRepPart = tgsRep.getEncPart();
+        if (encTgsRepPart == null) {
+            encTgsRepPart = decryptEncPart(tgsRep);
+            tgsRep.setEncPart(encTgsRepPart);
+        }
 
         if (getChosenNonce() != encTgsRepPart.getNonce()) {
             throw new KrbException("Nonce didn't match");
         }
     }
 
+    @Override
+    public EncKdcRepPart decryptEncPart(KdcRep kdcRep) throws KrbException {
+        return EncryptionUtil.unseal(kdcRep.getEncryptedEncPart(), getSessionKey(),
+                KeyUsage.TGS_REP_ENCPART_SESSKEY, EncTgsRepPart.class);
+    }
+
     public ServiceTicket getServiceTicket() {
         ServiceTicket serviceTkt = new ServiceTicket(getKdcRep().getTicket(),
                 (EncTgsRepPart) getKdcRep().getEncPart());
         return serviceTkt;
     }
 
+    /**
+     * The TGT got by renewing or validating the one of the request
+     */
+    public TgtTicket getTgtTicket() {
+        return new TgtTicket(getKdcRep().getTicket(), getKdcRep().getEncPart(),
+                tgt.getClientPrincipal().getName());
+    }
+
     public ApReq getApReq() {
         return apReq;
     }
@@ -17,7 +17,7 @@ public class KrbStreamingDecoder implements StreamingDecoder {
                 callback.onMoreDataNeeded(len + 4);
             }
         } else {
-            callback.onMoreDataNeeded();
+            callback.onMoreDataNeeded(4); // the length first
         }
     }
 }
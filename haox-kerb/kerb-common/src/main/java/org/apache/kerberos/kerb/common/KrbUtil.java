@@ -3,28 +3,104 @@ package org.apache.kerberos.kerb.common;
 import org.apache.kerberos.kerb.codec.KrbCodec;
 import org.apache.kerberos.kerb.spec.common.KrbMessage;
 import org.apache.haox.transport.Transport;
+import org.apache.haox.transport.buffer.BufferPool;
+import org.apache.haox.transport.tcp.TcpTransport;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
 public class KrbUtil {
 
+    /**
+     * Send the message, length prefixed for TCP and as it is for UDP
+     */
     public static void sendMessage(KrbMessage message, Transport transport) {
-        int bodyLen = message.encodingLength();
-        ByteBuffer buffer = ByteBuffer.allocate(bodyLen + 4);
-        buffer.putInt(bodyLen);
-        message.encode(buffer);
-        buffer.flip();
-        transport.sendMessage(buffer);
+        sendMessage(message, message.encodingLength(), transport);
     }
 
+    /**
+     * Send the message of which encodingLength() was just called, giving
+     * the length, so the lengths aren't computed again for encoding. They
+     * are if any part of the message was set since.
+     */
+    public static void sendMessage(KrbMessage message, int bodyLen,
+                                   Transport transport) {
+        if (! message.isLengthComputed()) {
+            bodyLen = message.encodingLength();
+        }
+        boolean isTcp = transport instanceof TcpTransport;
+        ByteBuffer buffer = BufferPool.allocate(isTcp ? bodyLen + 4 : bodyLen);
+        if (isTcp) {
+            buffer.putInt(bodyLen);
+        }
+        try {
+            message.encodeComputed(buffer);
+            buffer.flip();
+            transport.sendMessage(buffer);
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Decode a length prefixed message received over TCP, from a private
+     * copy, so the message can be kept after the buffer is released.
+     */
     public static KrbMessage decodeMessage(ByteBuffer message) throws IOException {
+        return decodeMessage(message, false);
+    }
+
+    /**
+     * Decode a length prefixed message received over TCP.
+     * @param inPlace whether to decode over the message buffer itself, with
+     *                no copy. Decoding is lazy and keeps views into the
+     *                source, so it's only for a message that's done with
+     *                before the buffer is released, as a KDC request is
+     *                once it's replied.
+     */
+    public static KrbMessage decodeMessage(ByteBuffer message,
+                                           boolean inPlace) throws IOException {
         int bodyLen = message.getInt();
         assert (message.remaining() >= bodyLen);
 
-        KrbMessage krbMessage = KrbCodec.decodeMessage(message);
+        ByteBuffer body;
+        if (inPlace) {
+            body = message.slice();
+            body.limit(bodyLen);
+            message.position(message.position() + bodyLen);
+        } else {
+            byte[] bytes = new byte[bodyLen];
+            message.get(bytes);
+            body = ByteBuffer.wrap(bytes);
+        }
+        return KrbCodec.decodeMessage(body, true);
+    }
+
+    /**
+     * Decode a message received over UDP, which isn't length prefixed, from
+     * a private copy.
+     */
+    public static KrbMessage decodeDatagram(ByteBuffer datagram) throws IOException {
+        return decodeDatagram(datagram, false);
+    }
 
-        return krbMessage;
+    /**
+     * Decode a message received over UDP, which isn't length prefixed.
+     * @param inPlace whether to decode over the datagram buffer itself, see
+     *                decodeMessage
+     */
+    public static KrbMessage decodeDatagram(ByteBuffer datagram,
+                                            boolean inPlace) throws IOException {
+        ByteBuffer body;
+        if (inPlace) {
+            body = datagram.slice();
+            datagram.position(datagram.limit());
+        } else {
+            byte[] bytes = new byte[datagram.remaining()];
+            datagram.get(bytes);
+            body = ByteBuffer.wrap(bytes);
+        }
+        return KrbCodec.decodeMessage(body, true);
     }
 
 }
@@ -1,12 +1,22 @@
 package org.apache.kerberos.kerb.codec.test;
 
 import junit.framework.Assert;
+import org.apache.haox.asn1.Asn1Factory;
 import org.apache.kerberos.kerb.KrbException;
 import org.apache.kerberos.kerb.codec.KrbCodec;
 import org.apache.kerberos.kerb.spec.common.CheckSum;
+import org.apache.kerberos.kerb.spec.KerberosTime;
 import org.apache.kerberos.kerb.spec.common.CheckSumType;
+import org.apache.kerberos.kerb.spec.common.KrbMessage;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.apache.kerberos.kerb.spec.kdc.AsReq;
+import org.apache.kerberos.kerb.spec.kdc.KdcOption;
+import org.apache.kerberos.kerb.spec.kdc.KdcOptions;
+import org.apache.kerberos.kerb.spec.kdc.KdcReqBody;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class CodecTest {
@@ -24,4 +34,101 @@ public class CodecTest {
         Assert.assertEquals(mcs.getCksumtype(), restored.getCksumtype());
         Assert.assertTrue(Arrays.equals(mcs.getChecksum(), restored.getChecksum()));
     }
+
+    @Test
+    public void testCodecAbsentFields() throws KrbException {
+        KdcReqBody body = new KdcReqBody();
+        KdcOptions kdcOptions = new KdcOptions();
+        kdcOptions.setFlag(KdcOption.FORWARDABLE);
+        body.setKdcOptions(kdcOptions);
+        body.setCname(new PrincipalName("drankye"));
+        body.setRealm("SH.INTEL.COM");
+        body.setTill(new KerberosTime(System.currentTimeMillis() / 1000 * 1000));
+        body.setNonce(10);
+        byte[] bytes = KrbCodec.encode(body);
+
+        KdcReqBody restored = KrbCodec.decode(bytes, KdcReqBody.class);
+        Assert.assertEquals(body.getTill().getTime(), restored.getTill().getTime());
+        Assert.assertEquals("SH.INTEL.COM", restored.getRealm());
+        Assert.assertTrue(restored.getKdcOptions().isFlagSet(KdcOption.FORWARDABLE));
+        // OPTIONAL fields not in the encoding are left null
+        Assert.assertNull(restored.getFrom());
+        Assert.assertNull(restored.getSname());
+        Assert.assertNull(restored.getAddresses());
+        Assert.assertNull(restored.getAdditionalTickets());
+    }
+
+    @Test
+    public void testFactoryShared() {
+        // One factory per type, creating a new value each time
+        Assert.assertSame(Asn1Factory.factoryFor(AsReq.class),
+                Asn1Factory.factoryFor(AsReq.class));
+        AsReq one = Asn1Factory.create(AsReq.class);
+        Assert.assertNotNull(one);
+        Assert.assertNotSame(one, Asn1Factory.create(AsReq.class));
+    }
+
+    private static AsReq makeAsReq() {
+        KdcReqBody body = new KdcReqBody();
+        KdcOptions kdcOptions = new KdcOptions();
+        kdcOptions.setFlag(KdcOption.FORWARDABLE);
+        body.setKdcOptions(kdcOptions);
+        body.setCname(new PrincipalName("drankye"));
+        body.setSname(new PrincipalName("krbtgt/SH.INTEL.COM"));
+        body.setRealm("SH.INTEL.COM");
+        body.setNonce(10);
+
+        AsReq asReq = new AsReq();
+        asReq.setReqBody(body);
+        return asReq;
+    }
+
+    /**
+     * Overwrite the buffer a message was decoded from, as a pooled buffer
+     * is when it's reused for the next message.
+     */
+    private static void recycle(ByteBuffer buffer) {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0x5A);
+        }
+    }
+
+    private static void assertAsReq(byte[] expected, KrbMessage message)
+            throws KrbException {
+        AsReq restored = (AsReq) message;
+        Assert.assertEquals("SH.INTEL.COM", restored.getReqBody().getRealm());
+        Assert.assertEquals("drankye", restored.getReqBody().getCname().getName());
+        Assert.assertEquals("krbtgt/SH.INTEL.COM",
+                restored.getReqBody().getSname().getName());
+        Assert.assertEquals(10, restored.getReqBody().getNonce());
+        Assert.assertTrue(Arrays.equals(expected, KrbCodec.encode(restored)));
+    }
+
+    @Test
+    public void testDecodedMessageOutlivesBuffer() throws KrbException, IOException {
+        byte[] bytes = KrbCodec.encode(makeAsReq());
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+
+        // Copied out of the buffer in the default mode
+        KrbMessage message = KrbCodec.decodeMessage(buffer);
+        recycle(buffer);
+        assertAsReq(bytes, message);
+    }
+
+    @Test
+    public void testZeroCopyValuesReadOutliveBuffer() throws KrbException, IOException {
+        byte[] bytes = KrbCodec.encode(makeAsReq());
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+
+        // Views into the buffer until read, kept once read
+        KrbMessage message = KrbCodec.decodeMessage(buffer, true);
+        assertAsReq(bytes, message);
+        recycle(buffer);
+        assertAsReq(bytes, message);
+    }
 }
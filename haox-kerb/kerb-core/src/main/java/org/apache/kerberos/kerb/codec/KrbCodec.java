@@ -1,10 +1,12 @@
 package org.apache.kerberos.kerb.codec;
 
+import org.apache.haox.asn1.Asn1Factory;
 import org.apache.haox.asn1.LimitedByteBuffer;
 import org.apache.haox.asn1.type.AbstractAsn1Type;
 import org.apache.haox.asn1.type.Asn1Type;
 import org.apache.kerberos.kerb.KrbException;
 import org.apache.kerberos.kerb.spec.ap.ApReq;
+import org.apache.kerberos.kerb.spec.common.KrbError;
 import org.apache.kerberos.kerb.spec.common.KrbMessage;
 import org.apache.kerberos.kerb.spec.common.KrbMessageType;
 import org.apache.kerberos.kerb.spec.kdc.AsRep;
@@ -28,8 +30,8 @@ public class KrbCodec {
     public static <T extends Asn1Type> T decode(ByteBuffer content, Class<T> krbType) throws KrbException {
         Asn1Type implObj = null;
         try {
-            implObj = krbType.newInstance();
-        } catch (Exception e) {
+            implObj = Asn1Factory.create(krbType);
+        } catch (RuntimeException e) {
             throw new KrbException("Decoding failed", e);
         }
 
@@ -43,7 +45,17 @@ public class KrbCodec {
     }
 
     public static KrbMessage decodeMessage(ByteBuffer byteBuffer) throws IOException {
+        return decodeMessage(byteBuffer, false);
+    }
+
+    /**
+     * Decode in zero copy mode, only when the buffer isn't to be reused
+     * while the message is in use. See LimitedByteBuffer.
+     */
+    public static KrbMessage decodeMessage(ByteBuffer byteBuffer,
+                                           boolean zeroCopy) throws IOException {
         LimitedByteBuffer limitedBuffer = new LimitedByteBuffer(byteBuffer);
+        limitedBuffer.setZeroCopy(zeroCopy);
         int tag = AbstractAsn1Type.readTag(limitedBuffer);
         int tagNo = AbstractAsn1Type.readTagNo(limitedBuffer, tag);
         int length = AbstractAsn1Type.readLength(limitedBuffer);
@@ -63,6 +75,8 @@ public class KrbCodec {
             msg = new ApReq();
         } else if (msgType == KrbMessageType.AP_REP) {
             msg = new ApReq();
+        } else if (msgType == KrbMessageType.KRB_ERROR) {
+            msg = new KrbError();
         } else {
             throw new IOException("To be supported krb message type with tag: " + tag);
         }
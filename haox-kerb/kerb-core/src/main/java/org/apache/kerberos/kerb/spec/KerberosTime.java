@@ -2,7 +2,6 @@ package org.apache.kerberos.kerb.spec;
 
 import org.apache.haox.asn1.type.Asn1GeneralizedTime;
 
-import java.util.Date;
 import java.util.TimeZone;
 
 /**
@@ -30,37 +29,20 @@ public class KerberosTime extends Asn1GeneralizedTime {
         super(time);
     }
 
-    /**
-     * Return time in milliseconds
-     */
-    public long getTime() {
-        if (getValue() != null) {
-            return getValue().getTime();
-        }
-        return 0L;
-    }
-
-    /**
-     * time in milliseconds
-     */
-    public void setTime(long time) {
-        setValue(new Date(time));
-    }
-
     public long getTimeInSeconds() {
         return getTime() / 1000;
     }
 
     public boolean lessThan(KerberosTime ktime) {
-        return getValue().compareTo(ktime.getValue()) < 0;
+        return getTime() < ktime.getTime();
     }
 
     public boolean lessThan(long time) {
-        return getValue().getTime() <= time * 1000;
+        return getTime() <= time * 1000;
     }
 
     public boolean greaterThan(KerberosTime ktime) {
-        return getValue().compareTo(ktime.getValue()) > 0;
+        return getTime() > ktime.getTime();
     }
 
     /**
@@ -94,6 +76,6 @@ public class KerberosTime extends Asn1GeneralizedTime {
     }
 
     public static KerberosTime now() {
-        return new KerberosTime(new Date().getTime());
+        return new KerberosTime(System.currentTimeMillis());
     }
 }
@@ -32,9 +32,10 @@ public class KrbToken extends KrbSequenceType {
     }
 
     @Override
-    public void encode(ByteBuffer buffer) {
+    public int encodingLength() {
+        // Every encoding starts with computing the length
         setTokenValue(tokenEncoder.encode(this));
-        super.encode(buffer);
+        return super.encodingLength();
     }
 
     /*
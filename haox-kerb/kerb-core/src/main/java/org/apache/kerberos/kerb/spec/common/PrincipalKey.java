@@ -0,0 +1,169 @@
+package org.apache.kerberos.kerb.spec.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The canonical form of a principal, its name components and realm, to key
+ * lookups on instead of the principal string.
+ *
+ * Keys are immutable and interned, so the same principal is mostly the same
+ * instance and the hash is computed once. Equality compares the reference,
+ * then the hash, and only then the name. The intern table is bounded, as
+ * names also come from requests, and once full it's started over; keys made
+ * before still equal the new ones.
+ */
+public final class PrincipalKey {
+
+    private static final int MAX_INTERNED = 64 * 1024;
+
+    private static final ConcurrentMap<String, PrincipalKey> interned =
+            new ConcurrentHashMap<String, PrincipalKey>();
+
+    private final String name;
+    private final List<String> components;
+    private final String realm;
+    private final long longHash;
+
+    private PrincipalKey(String name, List<String> components, String realm) {
+        this.name = name;
+        this.components = components;
+        this.realm = realm;
+        this.longHash = hashChars(name);
+    }
+
+    /**
+     * The key of a principal string, like "host/example.com@EXAMPLE.COM"
+     */
+    public static PrincipalKey of(String principal) {
+        PrincipalKey key = interned.get(principal);
+        if (key != null) {
+            return key;
+        }
+
+        String realm = null;
+        String nameParts = principal;
+        int pos = principal.indexOf('@');
+        if (pos != -1) {
+            nameParts = principal.substring(0, pos);
+            realm = principal.substring(pos + 1);
+        }
+        List<String> components = Collections.unmodifiableList(
+                Arrays.asList(nameParts.split("\\/")));
+
+        return intern(makeName(components, realm), components, realm);
+    }
+
+    public static PrincipalKey of(List<String> components, String realm) {
+        String name = makeName(components, realm);
+        PrincipalKey key = interned.get(name);
+        if (key != null) {
+            return key;
+        }
+
+        return intern(name, Collections.unmodifiableList(
+                Arrays.asList(components.toArray(new String[components.size()]))), realm);
+    }
+
+    private static PrincipalKey intern(String name, List<String> components, String realm) {
+        if (realm != null && realm.isEmpty()) {
+            realm = null;
+        }
+        PrincipalKey key = new PrincipalKey(name, components, realm);
+
+        if (interned.size() >= MAX_INTERNED) {
+            interned.clear();
+        }
+        PrincipalKey existing = interned.putIfAbsent(name, key);
+        return existing != null ? existing : key;
+    }
+
+    private static String makeName(List<String> components, String realm) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < components.size(); i++) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            sb.append(components.get(i));
+        }
+
+        if (realm != null && !realm.isEmpty()) {
+            sb.append('@');
+            sb.append(realm);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * The same principal in the realm
+     */
+    public PrincipalKey withRealm(String realm) {
+        if (realm == null ? this.realm == null : realm.equals(this.realm)) {
+            return this;
+        }
+        return of(components, realm);
+    }
+
+    /**
+     * The principal string, components separated by '/' and the realm after '@'
+     */
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getComponents() {
+        return components;
+    }
+
+    public String getRealm() {
+        return realm;
+    }
+
+    /**
+     * A well mixed 64 bits hash of the principal string
+     */
+    public long longHash() {
+        return longHash;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (longHash ^ (longHash >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (! (other instanceof PrincipalKey)) {
+            return false;
+        }
+
+        PrincipalKey otherKey = (PrincipalKey) other;
+        return longHash == otherKey.longHash && name.equals(otherKey.name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static long hashChars(String value) {
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,11 +1,12 @@
 package org.apache.kerberos.kerb.spec.common;
 
+import org.apache.haox.asn1.LimitedByteBuffer;
 import org.apache.haox.asn1.type.Asn1FieldInfo;
 import org.apache.haox.asn1.type.Asn1Integer;
 import org.apache.kerberos.kerb.spec.KerberosStrings;
 import org.apache.kerberos.kerb.spec.KrbSequenceType;
 
-import java.util.Arrays;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 
@@ -17,6 +18,8 @@ import java.util.List;
  */
 public class PrincipalName extends KrbSequenceType {
     private String realm;
+    // Made on first use, dropped when the name or realm changes
+    private PrincipalKey key;
 
     private static int NAME_TYPE = 0;
     private static int NAME_STRING = 1;
@@ -31,9 +34,15 @@ public class PrincipalName extends KrbSequenceType {
     }
 
     public PrincipalName(String nameString) {
+        this(PrincipalKey.of(nameString));
+    }
+
+    public PrincipalName(PrincipalKey key) {
         this();
         setNameType(NameType.NT_PRINCIPAL);
-        fromNameString(nameString);
+        setNameStrings(key.getComponents());
+        setRealm(key.getRealm());
+        this.key = key;
     }
 
     public PrincipalName(List<String> nameStrings, NameType type) {
@@ -61,10 +70,12 @@ public class PrincipalName extends KrbSequenceType {
 
     public void setNameStrings(List<String> nameStrings) {
         setFieldAs(NAME_STRING, new KerberosStrings(nameStrings));
+        this.key = null;
     }
 
     public void setRealm(String realm) {
         this.realm = realm;
+        this.key = null;
     }
 
     public String getRealm() {
@@ -72,28 +83,23 @@ public class PrincipalName extends KrbSequenceType {
     }
 
     public String getName() {
-        return makeSingleName();
-    }
-
-    private String makeSingleName() {
-        List<String> names = getNameStrings();
-        StringBuilder sb = new StringBuilder();
-        boolean isFirst = true;
-        for (String name : names) {
-            sb.append(name);
-            if (isFirst && names.size() > 1) {
-                sb.append('/');
-            }
-            isFirst = false;
-        }
+        return getKey().getName();
+    }
 
-        String realm = getRealm();
-        if (realm != null && !realm.isEmpty()) {
-            sb.append('@');
-            sb.append(realm);
+    /**
+     * The canonical key of the name and realm, to look the principal up with
+     */
+    public PrincipalKey getKey() {
+        if (key == null) {
+            key = PrincipalKey.of(getNameStrings(), getRealm());
         }
+        return key;
+    }
 
-        return sb.toString();
+    @Override
+    protected void decodeBody(LimitedByteBuffer content) throws IOException {
+        this.key = null;
+        super.decodeBody(content);
     }
 
     @Override
@@ -103,7 +109,7 @@ public class PrincipalName extends KrbSequenceType {
 
     @Override
     public int hashCode() {
-        return getName().hashCode();
+        return getKey().hashCode();
     }
 
     @Override
@@ -125,23 +131,7 @@ public class PrincipalName extends KrbSequenceType {
             return false;
         }
 
-        return getName().equals(otherPrincipal.getName());
-    }
-
-    private void fromNameString(String nameString) {
-        String tmpRealm = null;
-        List<String> nameStrings;
-        int pos = nameString.indexOf('@');
-        String nameParts = nameString;
-        if (pos != -1) {
-            nameParts = nameString.substring(0, pos);
-            tmpRealm = nameString.substring(pos + 1);
-        }
-        String parts[] = nameParts.split("\\/");
-        nameStrings = Arrays.asList(parts);
-
-        setNameStrings(nameStrings);
-        setRealm(tmpRealm);
+        return getKey().equals(otherPrincipal.getKey());
     }
 
     public static String extractRealm(String principal) {
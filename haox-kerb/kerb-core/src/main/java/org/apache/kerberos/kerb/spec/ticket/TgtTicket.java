@@ -1,12 +1,12 @@
 package org.apache.kerberos.kerb.spec.ticket;
 
 import org.apache.kerberos.kerb.spec.common.PrincipalName;
-import org.apache.kerberos.kerb.spec.kdc.EncAsRepPart;
+import org.apache.kerberos.kerb.spec.kdc.EncKdcRepPart;
 
 public class TgtTicket extends AbstractServiceTicket {
     private PrincipalName clientPrincipal;
 
-    public TgtTicket(Ticket ticket, EncAsRepPart encKdcRepPart, String clientPrincipal) {
+    public TgtTicket(Ticket ticket, EncKdcRepPart encKdcRepPart, String clientPrincipal) {
         super(ticket, encKdcRepPart);
         this.clientPrincipal = new PrincipalName(clientPrincipal);
     }
@@ -0,0 +1,57 @@
+package org.apache.kerberos.kerb.spec.common;
+
+import org.apache.kerberos.kerb.codec.KrbCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class PrincipalKeyTest {
+
+    @Test
+    public void testParse() {
+        PrincipalKey key = PrincipalKey.of("host/www.example.com@EXAMPLE.COM");
+        Assert.assertEquals(Arrays.asList("host", "www.example.com"), key.getComponents());
+        Assert.assertEquals("EXAMPLE.COM", key.getRealm());
+        Assert.assertEquals("host/www.example.com@EXAMPLE.COM", key.getName());
+
+        key = PrincipalKey.of("alice");
+        Assert.assertEquals(Arrays.asList("alice"), key.getComponents());
+        Assert.assertNull(key.getRealm());
+    }
+
+    @Test
+    public void testInterned() {
+        PrincipalKey key = PrincipalKey.of("krbtgt/EXAMPLE.COM@EXAMPLE.COM");
+        Assert.assertSame(key, PrincipalKey.of("krbtgt/EXAMPLE.COM@EXAMPLE.COM"));
+        Assert.assertSame(key, PrincipalKey.of(
+                Arrays.asList("krbtgt", "EXAMPLE.COM"), "EXAMPLE.COM"));
+        Assert.assertSame(key, PrincipalKey.of("krbtgt/EXAMPLE.COM").withRealm("EXAMPLE.COM"));
+
+        Assert.assertFalse(key.equals(PrincipalKey.of("krbtgt/EXAMPLE.COM@OTHER.COM")));
+        Assert.assertFalse(key.equals(PrincipalKey.of("krbtgt/EXAMPLE.COM")));
+    }
+
+    @Test
+    public void testThreeComponents() {
+        PrincipalName principal = new PrincipalName("a/b/c@EXAMPLE.COM");
+        Assert.assertEquals(3, principal.getNameStrings().size());
+        Assert.assertEquals("a/b/c@EXAMPLE.COM", principal.getName());
+    }
+
+    @Test
+    public void testPrincipalName() throws Exception {
+        PrincipalName principal = new PrincipalName("alice@EXAMPLE.COM");
+        Assert.assertSame(PrincipalKey.of("alice@EXAMPLE.COM"), principal.getKey());
+
+        principal.setRealm("OTHER.COM");
+        Assert.assertEquals("alice@OTHER.COM", principal.getName());
+
+        // Decoded into a used one, the key follows the decoded name
+        PrincipalName decoded = new PrincipalName("bob");
+        decoded.getKey();
+        decoded.decode(KrbCodec.encode(new PrincipalName("carol")));
+        Assert.assertEquals(PrincipalKey.of("carol"), decoded.getKey());
+        Assert.assertEquals(new PrincipalName("carol"), decoded);
+    }
+}
@@ -7,8 +7,31 @@ import org.apache.kerberos.kerb.spec.common.CheckSum;
 import org.apache.kerberos.kerb.spec.common.CheckSumType;
 import org.apache.kerberos.kerb.spec.common.KeyUsage;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class CheckSumHandler {
 
+    // Handlers are stateless so shared, indexed by the ordinal of the type
+    private static final CheckSumTypeHandler[] cksumHandlers =
+            new CheckSumTypeHandler[CheckSumType.values().length];
+
+    static {
+        // Aliases of a type share the handler
+        Map<Class<?>, CheckSumTypeHandler> byClass = new HashMap<Class<?>, CheckSumTypeHandler>();
+        for (CheckSumType cksumType : CheckSumType.values()) {
+            CheckSumTypeHandler handler = createCheckSumHandler(cksumType);
+            if (handler != null) {
+                if (byClass.containsKey(handler.getClass())) {
+                    handler = byClass.get(handler.getClass());
+                } else {
+                    byClass.put(handler.getClass(), handler);
+                }
+            }
+            cksumHandlers[cksumType.ordinal()] = handler;
+        }
+    }
+
     public static CheckSumTypeHandler getCheckSumHandler(String cksumType) throws KrbException {
         CheckSumType eTypeEnum = CheckSumType.fromName(cksumType);
         return getCheckSumHandler(eTypeEnum);
@@ -28,6 +51,17 @@ public class CheckSumHandler {
     }
 
     private static CheckSumTypeHandler getCheckSumHandler(CheckSumType cksumType, boolean check) throws KrbException {
+        CheckSumTypeHandler cksumHandler = cksumHandlers[cksumType.ordinal()];
+
+        if (cksumHandler == null && ! check) {
+            String message = "Unsupported checksum type: " + cksumType.name();
+            throw new KrbException(KrbErrorCode.KDC_ERR_SUMTYPE_NOSUPP, message);
+        }
+
+        return cksumHandler;
+    }
+
+    private static CheckSumTypeHandler createCheckSumHandler(CheckSumType cksumType) {
         CheckSumTypeHandler cksumHandler = null;
         switch (cksumType) {
             case CRC32:
@@ -91,11 +125,6 @@ public class CheckSumHandler {
                 break;
         }
 
-        if (cksumHandler == null && ! check) {
-            String message = "Unsupported checksum type: " + cksumType.name();
-            throw new KrbException(KrbErrorCode.KDC_ERR_SUMTYPE_NOSUPP, message);
-        }
-
         return cksumHandler;
     }
 
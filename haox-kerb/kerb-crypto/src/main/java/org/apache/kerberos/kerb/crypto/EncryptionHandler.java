@@ -5,8 +5,31 @@ import org.apache.kerberos.kerb.crypto.enc.*;
 import org.apache.kerberos.kerb.KrbException;
 import org.apache.kerberos.kerb.spec.common.*;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class EncryptionHandler {
 
+    // Handlers are stateless so shared, indexed by the ordinal of the type
+    private static final EncTypeHandler[] encHandlers =
+            new EncTypeHandler[EncryptionType.values().length];
+
+    static {
+        // Aliases of a type share the handler
+        Map<Class<?>, EncTypeHandler> byClass = new HashMap<Class<?>, EncTypeHandler>();
+        for (EncryptionType eType : EncryptionType.values()) {
+            EncTypeHandler handler = createEncHandler(eType);
+            if (handler != null) {
+                if (byClass.containsKey(handler.getClass())) {
+                    handler = byClass.get(handler.getClass());
+                } else {
+                    byClass.put(handler.getClass(), handler);
+                }
+            }
+            encHandlers[eType.ordinal()] = handler;
+        }
+    }
+
     public static EncryptionType getEncryptionType(String eType) throws KrbException {
         EncryptionType result = EncryptionType.fromName(eType);
         return result;
@@ -27,6 +50,17 @@ public class EncryptionHandler {
     }
 
     private static EncTypeHandler getEncHandler(EncryptionType eType, boolean check) throws KrbException {
+        EncTypeHandler encHandler = encHandlers[eType.ordinal()];
+
+        if (encHandler == null && ! check) {
+            String message = "Unsupported encryption type: " + eType.name();
+            throw new KrbException(KrbErrorCode.KDC_ERR_ETYPE_NOSUPP, message);
+        }
+
+        return encHandler;
+    }
+
+    private static EncTypeHandler createEncHandler(EncryptionType eType) {
         EncTypeHandler encHandler = null;
         /**
          * As it's still incomplete yet for the DesKeyMaker, commented DES_* types for now.
@@ -88,11 +122,6 @@ public class EncryptionHandler {
                 break;
         }
 
-        if (encHandler == null && ! check) {
-            String message = "Unsupported encryption type: " + eType.name();
-            throw new KrbException(KrbErrorCode.KDC_ERR_ETYPE_NOSUPP, message);
-        }
-
         return encHandler;
     }
 
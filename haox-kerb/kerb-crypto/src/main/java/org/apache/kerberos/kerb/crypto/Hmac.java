@@ -1,12 +1,16 @@
 package org.apache.kerberos.kerb.crypto;
 
 import org.apache.kerberos.kerb.crypto.cksum.HashProvider;
+import org.apache.kerberos.kerb.crypto.cksum.provider.MessageDigestHashProvider;
 import org.apache.kerberos.kerb.KrbException;
 
+import javax.crypto.Mac;
+import java.security.GeneralSecurityException;
 import java.util.Arrays;
 
 /**
- * Based on MIT krb5 hmac.c
+ * Based on MIT krb5 hmac.c. With a JCE digest it's done by a JCE Mac
+ * instead, see JceCache, which also takes keys longer than the block.
  */
 public class Hmac {
 
@@ -32,6 +36,29 @@ public class Hmac {
     public static byte[] hmac(HashProvider hashProvider,
                               byte[] key, byte[] data, int start, int len) throws KrbException {
 
+        String hmacAlgorithm = hashProvider instanceof MessageDigestHashProvider ?
+                ((MessageDigestHashProvider) hashProvider).hmacAlgorithm() : null;
+        if (hmacAlgorithm != null && key.length > 0) {
+            Mac mac = null;
+            try {
+                mac = JceCache.getMac(hmacAlgorithm, key);
+                mac.update(data, start, len);
+                return mac.doFinal();
+            } catch (GeneralSecurityException e) {
+                throw new KrbException("Failed to hmac", e);
+            } finally {
+                if (mac != null) {
+                    JceCache.release(mac);
+                }
+            }
+        }
+
+        return hmacWith(hashProvider, key, data, start, len);
+    }
+
+    private static byte[] hmacWith(HashProvider hashProvider,
+                                   byte[] key, byte[] data, int start, int len) throws KrbException {
+
         int blockLen = hashProvider.blockSize();
         byte[] innerPaddedKey = new byte[blockLen];
         byte[] outerPaddedKey = new byte[blockLen];
@@ -0,0 +1,206 @@
+package org.apache.kerberos.kerb.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per thread JCE Cipher, Mac and MessageDigest instances, so the provider
+ * lookup is done once per thread and algorithm instead of per operation.
+ *
+ * A cached Cipher or Mac remembers the key and iv it's initialized with,
+ * and isn't initialized again when used with the same ones, as doFinal
+ * resets it to the initialized state. The remembered key copy is wiped
+ * when replaced or dropped, so only the latest key of each cached instance
+ * is held, as the instance holds it anyway.
+ *
+ * A Mac or MessageDigest is checked out by getMac or getMessageDigest and
+ * given back by release. When the cached one of the algorithm is checked
+ * out already, as by an outer computation of the same thread, a new one is
+ * made for the inner one instead, so nested uses never share an instance.
+ */
+public class JceCache {
+
+    private static class CachedCipher {
+        final Cipher cipher;
+        byte[] key;
+        byte[] iv;
+        int mode;
+
+        CachedCipher(Cipher cipher) {
+            this.cipher = cipher;
+        }
+    }
+
+    private static class CachedMac {
+        final Mac mac;
+        byte[] key;
+        boolean inUse;
+
+        CachedMac(Mac mac) {
+            this.mac = mac;
+        }
+    }
+
+    private static class CachedDigest {
+        final MessageDigest md;
+        boolean inUse;
+
+        CachedDigest(MessageDigest md) {
+            this.md = md;
+        }
+    }
+
+    private static final ThreadLocal<Map<String, CachedCipher>> ciphers =
+            new ThreadLocal<Map<String, CachedCipher>>() {
+        @Override
+        protected Map<String, CachedCipher> initialValue() {
+            return new HashMap<String, CachedCipher>();
+        }
+    };
+
+    private static final ThreadLocal<Map<String, CachedMac>> macs =
+            new ThreadLocal<Map<String, CachedMac>>() {
+        @Override
+        protected Map<String, CachedMac> initialValue() {
+            return new HashMap<String, CachedMac>();
+        }
+    };
+
+    private static final ThreadLocal<Map<String, CachedDigest>> digests =
+            new ThreadLocal<Map<String, CachedDigest>>() {
+        @Override
+        protected Map<String, CachedDigest> initialValue() {
+            return new HashMap<String, CachedDigest>();
+        }
+    };
+
+    /**
+     * En/decrypt len bytes of data from offset in place.
+     * @param iv null if the cipher takes no iv
+     */
+    public static void doCipher(String transformation, String keyAlgorithm,
+                                byte[] key, byte[] iv, boolean encrypt,
+                                byte[] data, int offset, int len)
+            throws GeneralSecurityException {
+        Map<String, CachedCipher> cached = ciphers.get();
+        CachedCipher cc = cached.get(transformation);
+        if (cc == null) {
+            cc = new CachedCipher(Cipher.getInstance(transformation));
+            cached.put(transformation, cc);
+        }
+
+        int mode = encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
+        if (cc.mode != mode || ! Arrays.equals(cc.key, key) || ! Arrays.equals(cc.iv, iv)) {
+            cc.key = wipe(cc.key); // in case init fails
+            SecretKeySpec secretKey = new SecretKeySpec(key, keyAlgorithm);
+            if (iv != null) {
+                cc.cipher.init(mode, secretKey, new IvParameterSpec(iv));
+            } else {
+                cc.cipher.init(mode, secretKey);
+            }
+            cc.key = key.clone();
+            cc.iv = iv != null ? iv.clone() : null;
+            cc.mode = mode;
+        }
+
+        try {
+            cc.cipher.doFinal(data, offset, len, data, offset);
+        } catch (GeneralSecurityException e) {
+            cc.key = wipe(cc.key); // leave it to be initialized again
+            throw e;
+        }
+    }
+
+    /**
+     * Check out a Mac initialized with the key, the per thread one unless
+     * it's checked out already. Give it back with release once done.
+     */
+    public static Mac getMac(String algorithm, byte[] key)
+            throws GeneralSecurityException {
+        Map<String, CachedMac> cached = macs.get();
+        CachedMac cm = cached.get(algorithm);
+        if (cm == null) {
+            cm = new CachedMac(Mac.getInstance(algorithm));
+            cached.put(algorithm, cm);
+        } else if (cm.inUse) {
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(new SecretKeySpec(key, algorithm));
+            return mac;
+        }
+
+        if (! Arrays.equals(cm.key, key)) {
+            cm.key = wipe(cm.key); // in case init fails
+            cm.mac.init(new SecretKeySpec(key, algorithm));
+            cm.key = key.clone();
+        } else {
+            cm.mac.reset(); // in case it's left over
+        }
+        cm.inUse = true;
+        return cm.mac;
+    }
+
+    /**
+     * Give back a Mac checked out by getMac
+     */
+    public static void release(Mac mac) {
+        CachedMac cm = macs.get().get(mac.getAlgorithm());
+        if (cm != null && cm.mac == mac) {
+            cm.inUse = false;
+        }
+    }
+
+    /**
+     * Check out a MessageDigest, the per thread one unless it's checked out
+     * already. Give it back with release once done.
+     */
+    public static MessageDigest getMessageDigest(String algorithm) {
+        Map<String, CachedDigest> cached = digests.get();
+        CachedDigest cd = cached.get(algorithm);
+        if (cd != null && ! cd.inUse) {
+            cd.md.reset(); // in case it's left over
+            cd.inUse = true;
+            return cd.md;
+        }
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to init JCE provider", e);
+        }
+        if (cd == null) {
+            cd = new CachedDigest(md);
+            cd.inUse = true;
+            cached.put(algorithm, cd);
+        }
+        return md;
+    }
+
+    /**
+     * Give back a MessageDigest checked out by getMessageDigest
+     */
+    public static void release(MessageDigest md) {
+        CachedDigest cd = digests.get().get(md.getAlgorithm());
+        if (cd != null && cd.md == md) {
+            cd.inUse = false;
+        }
+    }
+
+    /**
+     * Zeroize a remembered key copy, returning null to be remembered instead.
+     */
+    private static byte[] wipe(byte[] kept) {
+        if (kept != null) {
+            Arrays.fill(kept, (byte) 0);
+        }
+        return null;
+    }
+}
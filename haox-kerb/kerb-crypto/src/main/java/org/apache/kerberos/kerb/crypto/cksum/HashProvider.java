@@ -4,6 +4,9 @@ import org.apache.kerberos.kerb.KrbException;
 
 /**
  * krb5_hash_provider
+ *
+ * Providers are shared by threads, so state between hash() and output()
+ * is kept per thread.
  */
 public interface HashProvider {
 
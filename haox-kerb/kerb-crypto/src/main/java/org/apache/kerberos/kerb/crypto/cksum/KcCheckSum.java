@@ -1,6 +1,5 @@
 package org.apache.kerberos.kerb.crypto.cksum;
 
-import org.apache.kerberos.kerb.crypto.BytesUtil;
 import org.apache.kerberos.kerb.crypto.enc.EncryptProvider;
 import org.apache.kerberos.kerb.crypto.key.DkKeyMaker;
 import org.apache.kerberos.kerb.KrbException;
@@ -16,10 +15,7 @@ public abstract class KcCheckSum extends AbstractKeyedCheckSumTypeHandler {
     protected byte[] doChecksumWithKey(byte[] data, int start, int len,
                                        byte[] key, int usage) throws KrbException {
         byte[] Kc;
-        byte[] constant = new byte[5];
-        BytesUtil.int2bytes(usage, constant, 0, true);
-        constant[4] = (byte) 0x99;
-        Kc = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        Kc = ((DkKeyMaker) keyMaker()).dk(key, usage, (byte) 0x99);
 
         byte[] mac = mac(Kc, data, start, len);
         return mac;
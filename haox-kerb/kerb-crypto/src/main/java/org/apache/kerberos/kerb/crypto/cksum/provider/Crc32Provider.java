@@ -3,7 +3,8 @@ package org.apache.kerberos.kerb.crypto.cksum.provider;
 import org.apache.kerberos.kerb.crypto.Crc32;
 
 public class Crc32Provider extends AbstractHashProvider {
-    private byte[] output;
+    // Per thread as the provider is shared, see CheckSumHandler
+    private static final ThreadLocal<byte[]> output = new ThreadLocal<byte[]>();
 
     public Crc32Provider() {
         super(4, 1);
@@ -11,11 +12,13 @@ public class Crc32Provider extends AbstractHashProvider {
 
     @Override
     public void hash(byte[] data, int start, int size) {
-        output = Crc32.crc(data, start, size);
+        output.set(Crc32.crc(data, start, size));
     }
 
     @Override
     public byte[] output() {
-        return output;
+        byte[] result = output.get();
+        output.remove();
+        return result;
     }
 }
@@ -2,6 +2,8 @@ package org.apache.kerberos.kerb.crypto.cksum.provider;
 
 import org.apache.kerberos.kerb.crypto.Md4;
 
+import java.security.MessageDigest;
+
 public class Md4Provider extends MessageDigestHashProvider {
 
     public Md4Provider() {
@@ -10,6 +12,22 @@ public class Md4Provider extends MessageDigestHashProvider {
 
     @Override
     protected void init() {
-        messageDigest = new Md4();
+    }
+
+    /**
+     * Not from JCE, and cheap to make, so made for each hash
+     */
+    @Override
+    protected MessageDigest acquireMessageDigest() {
+        return new Md4();
+    }
+
+    @Override
+    protected void releaseMessageDigest(MessageDigest md) {
+    }
+
+    @Override
+    public String hmacAlgorithm() {
+        return null;
     }
 }
@@ -1,37 +1,69 @@
 package org.apache.kerberos.kerb.crypto.cksum.provider;
 
 import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.crypto.JceCache;
 
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 public class MessageDigestHashProvider extends AbstractHashProvider {
     private String algorithm;
-    protected MessageDigest messageDigest;
+    private String hmacAlgorithm;
+    // The digest in progress in each thread, from the first hash to output
+    private final ThreadLocal<MessageDigest> inProgress = new ThreadLocal<MessageDigest>();
 
     public MessageDigestHashProvider(int hashSize, int blockSize, String algorithm) {
         super(hashSize, blockSize);
         this.algorithm = algorithm;
+        this.hmacAlgorithm = "Hmac" + algorithm;
 
         init();
     }
 
     @Override
     protected void init() {
-        try {
-            messageDigest = MessageDigest.getInstance(algorithm);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Failed to init JCE provider", e);
+        releaseMessageDigest(acquireMessageDigest()); // fail early if not available
+    }
+
+    /**
+     * Check out a digest for a hash, see JceCache
+     */
+    protected MessageDigest acquireMessageDigest() {
+        return JceCache.getMessageDigest(algorithm);
+    }
+
+    protected void releaseMessageDigest(MessageDigest md) {
+        JceCache.release(md);
+    }
+
+    private MessageDigest messageDigest() {
+        MessageDigest md = inProgress.get();
+        if (md == null) {
+            md = acquireMessageDigest();
+            inProgress.set(md);
         }
+        return md;
+    }
+
+    /**
+     * JCE Mac algorithm of HMAC with this hash, null if not available
+     */
+    public String hmacAlgorithm() {
+        return hmacAlgorithm;
     }
 
     @Override
     public void hash(byte[] data, int start, int len) throws KrbException {
-        messageDigest.update(data, start, len);
+        messageDigest().update(data, start, len);
     }
 
     @Override
     public byte[] output() {
-        return messageDigest.digest();
+        MessageDigest md = messageDigest();
+        inProgress.remove();
+        try {
+            return md.digest();
+        } finally {
+            releaseMessageDigest(md);
+        }
     }
 }
@@ -1,7 +1,6 @@
 package org.apache.kerberos.kerb.crypto.enc;
 
 import org.apache.kerberos.kerb.KrbErrorCode;
-import org.apache.kerberos.kerb.crypto.BytesUtil;
 import org.apache.kerberos.kerb.crypto.Confounder;
 import org.apache.kerberos.kerb.crypto.cksum.HashProvider;
 import org.apache.kerberos.kerb.crypto.key.DkKeyMaker;
@@ -29,15 +28,8 @@ public abstract class KeKiEnc extends AbstractEncTypeHandler {
         int paddingLen = workLens[3];
 
         byte[] Ke, Ki;
-        byte[] constant = new byte[5];
-        constant[0] = (byte) ((usage>>24)&0xff);
-        constant[1] = (byte) ((usage>>16)&0xff);
-        constant[2] = (byte) ((usage>>8)&0xff);
-        constant[3] = (byte) (usage&0xff);
-        constant[4] = (byte) 0xaa;
-        Ke = ((DkKeyMaker) keyMaker()).dk(key, constant);
-        constant[4] = (byte) 0x55;
-        Ki = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        Ke = ((DkKeyMaker) keyMaker()).dk(key, usage, (byte) 0xaa);
+        Ki = ((DkKeyMaker) keyMaker()).dk(key, usage, (byte) 0x55);
 
         /**
          * Instead of E(Confounder | Checksum | Plaintext | Padding),
@@ -76,12 +68,8 @@ public abstract class KeKiEnc extends AbstractEncTypeHandler {
         int dataLen = workLens[2];
 
         byte[] Ke, Ki;
-        byte[] constant = new byte[5];
-        BytesUtil.int2bytes(usage, constant, 0, true);
-        constant[4] = (byte) 0xaa;
-        Ke = ((DkKeyMaker) keyMaker()).dk(key, constant);
-        constant[4] = (byte) 0x55;
-        Ki = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        Ke = ((DkKeyMaker) keyMaker()).dk(key, usage, (byte) 0xaa);
+        Ki = ((DkKeyMaker) keyMaker()).dk(key, usage, (byte) 0x55);
 
         // decrypt and verify checksum
 
@@ -1,11 +1,10 @@
 package org.apache.kerberos.kerb.crypto.enc.provider;
 
 import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.crypto.JceCache;
 
-import javax.crypto.Cipher;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
 
 public abstract class AesProvider extends AbstractEncryptProvider {
 
@@ -16,24 +15,14 @@ public abstract class AesProvider extends AbstractEncryptProvider {
     @Override
     protected void doEncrypt(byte[] data, byte[] key,
                                   byte[] cipherState, boolean encrypt) throws KrbException {
-        Cipher cipher = null;
         try {
-            cipher = Cipher.getInstance("AES/CTS/NoPadding");
-        } catch (GeneralSecurityException e) {
+            JceCache.doCipher("AES/CTS/NoPadding", "AES", key, cipherState,
+                    encrypt, data, 0, data.length);
+        } catch (NoSuchAlgorithmException e) {
             KrbException ke = new KrbException("JCE provider may not be installed. "
                     + e.getMessage());
             ke.initCause(e);
             throw ke;
-        }
-
-        try {
-            SecretKeySpec secretKey = new SecretKeySpec(key, "AES");
-            IvParameterSpec param = new IvParameterSpec(cipherState);
-
-            cipher.init(encrypt ?
-                    Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, secretKey, param);
-            byte[] output = cipher.doFinal(data);
-            System.arraycopy(output, 0, data, 0, output.length);
         } catch (GeneralSecurityException e) {
             KrbException ke = new KrbException(e.getMessage());
             ke.initCause(e);
@@ -0,0 +1,198 @@
+package org.apache.kerberos.kerb.crypto.key;
+
+import org.apache.kerberos.kerb.crypto.enc.EncryptProvider;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches keys derived for key usages, like Ke, Ki and Kc, as the same base
+ * key is used with a few usages again and again, e.g. the krbtgt key.
+ *
+ * Derived keys are keyed by the encrypt provider, a salted SHA-256 digest
+ * of the base key and the derivation constant. No copy of a base key is
+ * kept, and the salt is made per process, so a digest can't be matched
+ * with one made elsewhere. The cache is split into LRU stripes each guarded
+ * by its own lock.
+ *
+ * A derived key is dropped TTL_MILLIS after it's cached, so the keys of a
+ * principal that's deleted or had its keys changed don't stay in memory.
+ * Derived key bytes are zeroized when expired, evicted, replaced or
+ * cleared, so callers get copies of them.
+ */
+class DkKeyCache {
+
+    static final long TTL_MILLIS = 5 * 60 * 1000L;
+
+    private static final int STRIPES = 16;
+    private static final int MAX_ENTRIES_PER_STRIPE = 64;
+
+    private static final Stripe[] stripes = new Stripe[STRIPES];
+    private static final byte[] salt = new byte[16];
+
+    private static final ThreadLocal<MessageDigest> digests =
+            new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("Failed to init JCE provider", e);
+            }
+        }
+    };
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        new SecureRandom().nextBytes(salt);
+    }
+
+    private static class CacheKey {
+        final Class<?> provider;
+        final byte[] keyDigest;
+        final int usage;
+        final byte keyType;
+        final int hash;
+
+        CacheKey(Class<?> provider, byte[] key, int usage, byte keyType) {
+            this.provider = provider;
+            this.keyDigest = digest(key);
+            this.usage = usage;
+            this.keyType = keyType;
+
+            int h = provider.hashCode();
+            h = 31 * h + Arrays.hashCode(keyDigest);
+            h = 31 * h + usage;
+            this.hash = 31 * h + keyType;
+        }
+
+        private static byte[] digest(byte[] key) {
+            MessageDigest md = digests.get();
+            md.update(salt);
+            return md.digest(key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (! (o instanceof CacheKey)) return false;
+
+            CacheKey that = (CacheKey) o;
+            return hash == that.hash && usage == that.usage &&
+                    keyType == that.keyType && provider == that.provider &&
+                    Arrays.equals(keyDigest, that.keyDigest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Entry {
+        final byte[] derivedKey;
+        final long expiresAt;
+
+        Entry(byte[] derivedKey, long expiresAt) {
+            this.derivedKey = derivedKey;
+            this.expiresAt = expiresAt;
+        }
+
+        void zeroize() {
+            Arrays.fill(derivedKey, (byte) 0);
+        }
+    }
+
+    private static class Stripe extends LinkedHashMap<CacheKey, Entry> {
+        Stripe() {
+            super(MAX_ENTRIES_PER_STRIPE * 2, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+            if (size() > MAX_ENTRIES_PER_STRIPE) {
+                eldest.getValue().zeroize();
+                return true;
+            }
+            return false;
+        }
+
+        void removeExpired(long now) {
+            Iterator<Entry> iterator = values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.expiresAt <= now) {
+                    entry.zeroize();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    static byte[] get(EncryptProvider encProvider, byte[] key,
+                      int usage, byte keyType) {
+        return get(encProvider, key, usage, keyType, System.currentTimeMillis());
+    }
+
+    static byte[] get(EncryptProvider encProvider, byte[] key,
+                      int usage, byte keyType, long now) {
+        CacheKey cacheKey = new CacheKey(encProvider.getClass(), key, usage, keyType);
+        Stripe stripe = stripeFor(cacheKey);
+        synchronized (stripe) {
+            Entry entry = stripe.get(cacheKey);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= now) {
+                entry.zeroize();
+                stripe.remove(cacheKey);
+                return null;
+            }
+            return entry.derivedKey.clone();
+        }
+    }
+
+    static void put(EncryptProvider encProvider, byte[] key,
+                    int usage, byte keyType, byte[] derivedKey) {
+        put(encProvider, key, usage, keyType, derivedKey, System.currentTimeMillis());
+    }
+
+    static void put(EncryptProvider encProvider, byte[] key,
+                    int usage, byte keyType, byte[] derivedKey, long now) {
+        CacheKey cacheKey = new CacheKey(encProvider.getClass(), key, usage, keyType);
+        Stripe stripe = stripeFor(cacheKey);
+        synchronized (stripe) {
+            // Only on a miss, so the few entries are swept then
+            stripe.removeExpired(now);
+            Entry old = stripe.put(cacheKey,
+                    new Entry(derivedKey.clone(), now + TTL_MILLIS));
+            if (old != null) {
+                old.zeroize();
+            }
+        }
+    }
+
+    static void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Entry entry : stripe.values()) {
+                    entry.zeroize();
+                }
+                stripe.clear();
+            }
+        }
+    }
+
+    private static Stripe stripeFor(CacheKey cacheKey) {
+        int h = cacheKey.hash;
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPES - 1)];
+    }
+}
@@ -1,6 +1,7 @@
 package org.apache.kerberos.kerb.crypto.key;
 
 import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.crypto.BytesUtil;
 import org.apache.kerberos.kerb.crypto.Nfold;
 import org.apache.kerberos.kerb.crypto.enc.EncryptProvider;
 
@@ -15,6 +16,22 @@ public abstract class DkKeyMaker extends AbstractKeyMaker {
         return random2Key(dr(key, constant));
     }
 
+    /**
+     * Derive the key for the usage, with keyType 0xaa for Ke, 0x55 for Ki
+     * and 0x99 for Kc. Derived keys are cached, see DkKeyCache.
+     */
+    public byte[] dk(byte[] key, int usage, byte keyType) throws KrbException {
+        byte[] derivedKey = DkKeyCache.get(encProvider(), key, usage, keyType);
+        if (derivedKey == null) {
+            byte[] constant = new byte[5];
+            BytesUtil.int2bytes(usage, constant, 0, true);
+            constant[4] = keyType;
+            derivedKey = dk(key, constant);
+            DkKeyCache.put(encProvider(), key, usage, keyType, derivedKey);
+        }
+        return derivedKey;
+    }
+
     /*
      * K1 = E(Key, n-fold(Constant), initial-cipher-state)
      * K2 = E(Key, K1, initial-cipher-state)
@@ -0,0 +1,86 @@
+package org.apache.kerberos.kerb.crypto;
+
+import org.apache.kerberos.kerb.crypto.cksum.provider.Sha1Provider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.MessageDigest;
+
+/**
+ * Nested uses of an algorithm in a thread, each needs its own instance.
+ */
+public class JceCacheTest {
+
+    private static final byte[] DATA = "some data to hash".getBytes();
+
+    @Test
+    public void testNestedMessageDigest() throws Exception {
+        byte[] expected = MessageDigest.getInstance("SHA1").digest(DATA);
+
+        MessageDigest outer = JceCache.getMessageDigest("SHA1");
+        outer.update(DATA, 0, 5);
+        MessageDigest inner = JceCache.getMessageDigest("SHA1");
+        Assert.assertNotSame(outer, inner);
+        inner.update(new byte[] {1, 2, 3});
+        inner.digest();
+        JceCache.release(inner);
+        outer.update(DATA, 5, DATA.length - 5);
+        Assert.assertArrayEquals(expected, outer.digest());
+        JceCache.release(outer);
+
+        // Given back, so handed out again
+        MessageDigest again = JceCache.getMessageDigest("SHA1");
+        Assert.assertSame(outer, again);
+        JceCache.release(again);
+    }
+
+    @Test
+    public void testNestedMac() throws Exception {
+        byte[] key = new byte[] {1, 2, 3, 4, 5, 6, 7, 8};
+        Mac expectedMac = Mac.getInstance("HmacSHA1");
+        expectedMac.init(new SecretKeySpec(key, "HmacSHA1"));
+        byte[] expected = expectedMac.doFinal(DATA);
+
+        Mac outer = JceCache.getMac("HmacSHA1", key);
+        outer.update(DATA, 0, 5);
+        Mac inner = JceCache.getMac("HmacSHA1", new byte[] {8, 7, 6, 5});
+        Assert.assertNotSame(outer, inner);
+        inner.doFinal(DATA);
+        JceCache.release(inner);
+        outer.update(DATA, 5, DATA.length - 5);
+        Assert.assertArrayEquals(expected, outer.doFinal());
+        JceCache.release(outer);
+    }
+
+    @Test
+    public void testNestedHashProvider() throws Exception {
+        byte[] expected = MessageDigest.getInstance("SHA1").digest(DATA);
+
+        Sha1Provider provider = new Sha1Provider();
+        provider.hash(DATA, 0, 5);
+        // Another hash of the same algorithm meanwhile, as by a nested call
+        Hmac.hmac(provider, new byte[] {1, 2, 3}, DATA);
+        MessageDigest other = JceCache.getMessageDigest("SHA1");
+        other.update(DATA);
+        JceCache.release(other);
+        provider.hash(DATA, 5, DATA.length - 5);
+        Assert.assertArrayEquals(expected, provider.output());
+    }
+
+    @Test
+    public void testLongHmacKey() throws Exception {
+        // Longer than the block, hashed first by RFC 2104
+        byte[] key = new byte[100];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) i;
+        }
+        byte[] hashedKey = MessageDigest.getInstance("SHA1").digest(key);
+        Mac expectedMac = Mac.getInstance("HmacSHA1");
+        expectedMac.init(new SecretKeySpec(hashedKey, "HmacSHA1"));
+
+        Assert.assertArrayEquals(expectedMac.doFinal(DATA),
+                Hmac.hmac(new Sha1Provider(), key, DATA));
+    }
+}
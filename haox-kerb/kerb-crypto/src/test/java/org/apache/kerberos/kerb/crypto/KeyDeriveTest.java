@@ -205,4 +205,25 @@ public class KeyDeriveTest {
         }
         return true;
     }
+
+    @Test
+    public void testDeriveKeysForUsage() throws Exception {
+        for (TestCase tc : testCases) {
+            byte[] constant = TestUtil.hex2bytes(tc.constant);
+            if (constant.length != 5) {
+                continue;
+            }
+            int usage = BytesUtil.bytes2int(constant, 0, true);
+            byte[] answer = TestUtil.hex2bytes(tc.answer);
+            byte[] inkey = TestUtil.hex2bytes(tc.inkey);
+
+            DkKeyMaker km = getKeyMaker(tc.encType);
+            byte[] outkey = km.dk(inkey, usage, constant[4]);
+            Assert.assertArrayEquals(answer, outkey);
+
+            // Cached, and not affected by changes to the returned key
+            Arrays.fill(outkey, (byte) 0);
+            Assert.assertArrayEquals(answer, km.dk(inkey, usage, constant[4]));
+        }
+    }
 }
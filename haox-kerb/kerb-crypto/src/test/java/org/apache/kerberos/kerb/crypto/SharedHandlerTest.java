@@ -0,0 +1,93 @@
+package org.apache.kerberos.kerb.crypto;
+
+import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.spec.common.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handlers are shared, so they're used by threads at the same time here.
+ */
+public class SharedHandlerTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void testSameHandler() throws KrbException {
+        Assert.assertSame(EncryptionHandler.getEncHandler(EncryptionType.AES128_CTS),
+                EncryptionHandler.getEncHandler(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+        Assert.assertSame(CheckSumHandler.getCheckSumHandler(CheckSumType.RSA_MD4),
+                CheckSumHandler.getCheckSumHandler(CheckSumType.RSA_MD4.getValue()));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final List<EncryptionType> eTypes = new ArrayList<EncryptionType>();
+        for (EncryptionType eType : EncryptionType.values()) {
+            if (EncryptionHandler.isImplemented(eType)) {
+                eTypes.add(eType);
+            }
+        }
+        final List<CheckSumType> cksumTypes = Arrays.asList(CheckSumType.CRC32,
+                CheckSumType.RSA_MD4, CheckSumType.RSA_MD5, CheckSumType.NIST_SHA);
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int seed = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int round = 0; round < ROUNDS; round++) {
+                            byte[] data = makeData(seed, round);
+                            for (EncryptionType eType : eTypes) {
+                                EncryptionKey key = EncryptionHandler.random2Key(eType);
+                                EncryptedData encrypted = EncryptionHandler.encrypt(
+                                        data, key, KeyUsage.AS_REP_ENCPART);
+                                byte[] decrypted = EncryptionHandler.decrypt(
+                                        encrypted, key, KeyUsage.AS_REP_ENCPART);
+                                if (! Arrays.equals(data, decrypted)) {
+                                    throw new AssertionError("Mismatch with " + eType);
+                                }
+                            }
+                            for (CheckSumType cksumType : cksumTypes) {
+                                CheckSum checkSum = CheckSumHandler.checksum(cksumType, data);
+                                if (! CheckSumHandler.verify(checkSum, data)) {
+                                    throw new AssertionError("Mismatch with " + cksumType);
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    private static byte[] makeData(int seed, int round) {
+        // In blocks, as des3 doesn't pad yet
+        byte[] data = new byte[8 * (2 + (seed * 31 + round) % 13)];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (seed + round + i);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,64 @@
+package org.apache.kerberos.kerb.crypto.key;
+
+import org.apache.kerberos.kerb.crypto.enc.EncryptProvider;
+import org.apache.kerberos.kerb.crypto.enc.provider.Aes128Provider;
+import org.apache.kerberos.kerb.crypto.enc.provider.Aes256Provider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class DkKeyCacheTest {
+
+    private EncryptProvider provider = new Aes128Provider();
+    private byte[] key = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+    private byte[] derivedKey = new byte[] {16, 15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+
+    @After
+    public void tearDown() {
+        DkKeyCache.clear();
+    }
+
+    @Test
+    public void testCached() {
+        long now = System.currentTimeMillis();
+        DkKeyCache.put(provider, key, 2, (byte) 0xaa, derivedKey, now);
+
+        Assert.assertArrayEquals(derivedKey, DkKeyCache.get(provider, key, 2, (byte) 0xaa, now));
+        Assert.assertArrayEquals(derivedKey, DkKeyCache.get(provider, key.clone(), 2, (byte) 0xaa, now));
+
+        // Differs in any part is another key
+        byte[] otherKey = key.clone();
+        otherKey[0] = 0;
+        Assert.assertNull(DkKeyCache.get(provider, otherKey, 2, (byte) 0xaa, now));
+        Assert.assertNull(DkKeyCache.get(provider, key, 3, (byte) 0xaa, now));
+        Assert.assertNull(DkKeyCache.get(provider, key, 2, (byte) 0x55, now));
+        Assert.assertNull(DkKeyCache.get(new Aes256Provider(), key, 2, (byte) 0xaa, now));
+    }
+
+    @Test
+    public void testBaseKeyNotKept() {
+        long now = System.currentTimeMillis();
+        byte[] baseKey = key.clone();
+        DkKeyCache.put(provider, baseKey, 2, (byte) 0xaa, derivedKey, now);
+
+        // Found by the key value, not the array put with
+        Arrays.fill(baseKey, (byte) 0);
+        Assert.assertArrayEquals(derivedKey, DkKeyCache.get(provider, key, 2, (byte) 0xaa, now));
+        Assert.assertNull(DkKeyCache.get(provider, baseKey, 2, (byte) 0xaa, now));
+    }
+
+    @Test
+    public void testExpiry() {
+        long now = System.currentTimeMillis();
+        DkKeyCache.put(provider, key, 2, (byte) 0xaa, derivedKey, now);
+
+        Assert.assertNotNull(DkKeyCache.get(provider, key, 2, (byte) 0xaa,
+                now + DkKeyCache.TTL_MILLIS - 1));
+        Assert.assertNull(DkKeyCache.get(provider, key, 2, (byte) 0xaa,
+                now + DkKeyCache.TTL_MILLIS));
+        // Dropped, not found again even at an earlier time
+        Assert.assertNull(DkKeyCache.get(provider, key, 2, (byte) 0xaa, now));
+    }
+}
@@ -0,0 +1,324 @@
+package org.apache.kerberos.kerb.identity;
+
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read through cache in front of an identity service, for backends where
+ * each lookup is a round trip, like LDAP.
+ *
+ * Found identities are kept for the ttl and unknown principals for the
+ * shorter negative ttl, in LRU stripes each guarded by its own lock. Pinned
+ * principals, like the krbtgt, are kept once found and never expire. Changes
+ * made through this service invalidate the cached entry, changes made to the
+ * backend directly are seen after the ttl.
+ *
+ * Concurrent lookups of a principal that isn't cached share a single load.
+ * Entries are keyed on the interned principal key, not the name string.
+ */
+public class CachedIdentityService implements IdentityService {
+
+    private static final int STRIPES = 16;
+
+    private final IdentityService backend;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final int maxEntriesPerStripe;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final ConcurrentMap<PrincipalKey, FutureTask<KrbIdentity>> loading =
+            new ConcurrentHashMap<PrincipalKey, FutureTask<KrbIdentity>>();
+    private final Map<PrincipalKey, Boolean> pinned =
+            new ConcurrentHashMap<PrincipalKey, Boolean>();
+    private final Map<PrincipalKey, KrbIdentity> pinnedEntries =
+            new ConcurrentHashMap<PrincipalKey, KrbIdentity>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong negativeHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+    private final AtomicLong totalLoadNanos = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private static class CacheEntry {
+        final KrbIdentity identity; // null if unknown
+        final long expiresAt;
+
+        CacheEntry(KrbIdentity identity, long expiresAt) {
+            this.identity = identity;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private class Stripe extends LinkedHashMap<PrincipalKey, CacheEntry> {
+        Stripe() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PrincipalKey, CacheEntry> eldest) {
+            if (size() > maxEntriesPerStripe) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param maxEntries at most this many principals are cached, besides
+     *                   the pinned ones
+     * @param ttl how long found identities are cached, in seconds
+     * @param negativeTtl how long unknown principals are cached, in seconds,
+     *                    0 not to cache them
+     */
+    public CachedIdentityService(IdentityService backend, int maxEntries,
+                                 long ttl, long negativeTtl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Bad maxEntries: " + maxEntries);
+        }
+        this.backend = backend;
+        this.maxEntriesPerStripe = Math.max(1, maxEntries / STRIPES);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtl);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public IdentityService getBackend() {
+        return backend;
+    }
+
+    /**
+     * Keep the principal once found, without expiring or evicting it.
+     */
+    public void pin(String name) {
+        pin(PrincipalKey.of(name));
+    }
+
+    public void pin(PrincipalKey name) {
+        pinned.put(name, Boolean.TRUE);
+        invalidate(name);
+    }
+
+    /**
+     * Drop the cached entry of the principal, loaded again on next lookup.
+     */
+    public void invalidate(String name) {
+        invalidate(PrincipalKey.of(name));
+    }
+
+    public void invalidate(PrincipalKey name) {
+        Stripe stripe = stripeFor(name);
+        synchronized (stripe) {
+            // A load in flight isn't cached either, it may be of the old one
+            loading.remove(name);
+            stripe.remove(name);
+            pinnedEntries.remove(name);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        loading.clear();
+        pinnedEntries.clear();
+    }
+
+    @Override
+    public List<KrbIdentity> getIdentities() {
+        return backend.getIdentities();
+    }
+
+    @Override
+    public boolean checkIdentity(String name) {
+        return getIdentity(name) != null;
+    }
+
+    @Override
+    public KrbIdentity getIdentity(String name) {
+        return getIdentity(PrincipalKey.of(name));
+    }
+
+    @Override
+    public KrbIdentity getIdentity(PrincipalKey name) {
+        KrbIdentity identity = pinnedEntries.get(name);
+        if (identity != null) {
+            hitCount.incrementAndGet();
+            return identity;
+        }
+
+        Stripe stripe = stripeFor(name);
+        synchronized (stripe) {
+            CacheEntry entry = stripe.get(name);
+            if (entry != null) {
+                if (entry.expiresAt - System.nanoTime() > 0) {
+                    if (entry.identity != null) {
+                        hitCount.incrementAndGet();
+                    } else {
+                        negativeHitCount.incrementAndGet();
+                    }
+                    return entry.identity;
+                }
+                stripe.remove(name);
+            }
+        }
+
+        missCount.incrementAndGet();
+        return load(name, stripe);
+    }
+
+    private KrbIdentity load(final PrincipalKey name, Stripe stripe) {
+        FutureTask<KrbIdentity> task = new FutureTask<KrbIdentity>(
+                new Callable<KrbIdentity>() {
+            @Override
+            public KrbIdentity call() throws Exception {
+                return backend.getIdentity(name);
+            }
+        });
+
+        FutureTask<KrbIdentity> existing = loading.putIfAbsent(name, task);
+        if (existing != null) {
+            return waitFor(existing);
+        }
+
+        long start = System.nanoTime();
+        task.run();
+        long now = System.nanoTime();
+        totalLoadNanos.addAndGet(now - start);
+        loadCount.incrementAndGet();
+
+        KrbIdentity identity;
+        try {
+            identity = waitFor(task);
+        } catch (RuntimeException e) {
+            loadFailureCount.incrementAndGet();
+            loading.remove(name, task);
+            throw e;
+        }
+
+        synchronized (stripe) {
+            if (loading.remove(name, task)) {
+                if (identity != null && pinned.containsKey(name)) {
+                    pinnedEntries.put(name, identity);
+                } else if (identity != null) {
+                    stripe.put(name, new CacheEntry(identity, now + ttlNanos));
+                } else if (negativeTtlNanos > 0) {
+                    stripe.put(name, new CacheEntry(null, now + negativeTtlNanos));
+                }
+            }
+        }
+        return identity;
+    }
+
+    private static KrbIdentity waitFor(FutureTask<KrbIdentity> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading identity", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Failed to load identity", cause);
+        }
+    }
+
+    @Override
+    public void addIdentity(KrbIdentity identity) {
+        backend.addIdentity(identity);
+        invalidate(identity.getPrincipalKey());
+    }
+
+    @Override
+    public void updateIdentity(KrbIdentity identity) {
+        backend.updateIdentity(identity);
+        invalidate(identity.getPrincipalKey());
+    }
+
+    @Override
+    public void deleteIdentity(KrbIdentity identity) {
+        backend.deleteIdentity(identity);
+        invalidate(identity.getPrincipalKey());
+    }
+
+    /**
+     * Lookups answered from the cache with an identity
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Lookups answered from the cache with an unknown principal
+     */
+    public long getNegativeHitCount() {
+        return negativeHitCount.get();
+    }
+
+    /**
+     * Lookups not answered from the cache, some share a load
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.get() + negativeHitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    public long getAverageLoadNanos() {
+        long loads = loadCount.get();
+        return loads == 0 ? 0 : totalLoadNanos.get() / loads;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedIdentityService{hits=" + getHitCount() +
+                ", negativeHits=" + getNegativeHitCount() +
+                ", misses=" + getMissCount() +
+                ", loads=" + getLoadCount() +
+                ", loadFailures=" + getLoadFailureCount() +
+                ", evictions=" + getEvictionCount() +
+                ", hitRatio=" + getHitRatio() +
+                ", avgLoadNanos=" + getAverageLoadNanos() + "}";
+    }
+
+    private Stripe stripeFor(PrincipalKey name) {
+        return stripes[(int) (name.longHash() >>> 32) & (STRIPES - 1)];
+    }
+}
@@ -1,11 +1,14 @@
 package org.apache.kerberos.kerb.identity;
 
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
+
 import java.util.List;
 
 public interface IdentityService {
     public List<KrbIdentity> getIdentities();
     public boolean checkIdentity(String name);
     public KrbIdentity getIdentity(String name);
+    public KrbIdentity getIdentity(PrincipalKey principal);
     public void addIdentity(KrbIdentity identity);
     public void updateIdentity(KrbIdentity identity);
     public void deleteIdentity(KrbIdentity identity);
@@ -3,6 +3,7 @@ package org.apache.kerberos.kerb.identity;
 import org.apache.kerberos.kerb.spec.KerberosTime;
 import org.apache.kerberos.kerb.spec.common.EncryptionKey;
 import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
 import org.apache.kerberos.kerb.spec.common.PrincipalName;
 
 import java.util.HashMap;
@@ -11,6 +12,7 @@ import java.util.Map;
 
 public class KrbIdentity {
     private String principalName;
+    private PrincipalKey principalKey;
     private PrincipalName principal;
     private int keyVersion = 1;
     private int kdcFlags = 0;
@@ -24,13 +26,18 @@ public class KrbIdentity {
 
     public KrbIdentity(String principalName) {
         this.principalName = principalName;
-        this.principal = new PrincipalName(principalName);
+        this.principalKey = PrincipalKey.of(principalName);
+        this.principal = new PrincipalName(principalKey);
     }
 
     public String getPrincipalName() {
         return principalName;
     }
 
+    public PrincipalKey getPrincipalKey() {
+        return principalKey;
+    }
+
     public void setPrincipal(PrincipalName principal) {
         this.principal = principal;
     }
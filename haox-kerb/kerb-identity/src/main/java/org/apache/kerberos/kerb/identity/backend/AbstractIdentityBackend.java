@@ -1,7 +1,13 @@
 package org.apache.kerberos.kerb.identity.backend;
 
 import org.apache.kerberos.kerb.identity.IdentityService;
+import org.apache.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
 
 public abstract class AbstractIdentityBackend implements IdentityService {
 
+    @Override
+    public KrbIdentity getIdentity(PrincipalKey principal) {
+        return getIdentity(principal.getName());
+    }
 }
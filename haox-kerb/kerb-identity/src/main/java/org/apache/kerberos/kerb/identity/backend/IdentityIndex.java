@@ -0,0 +1,233 @@
+package org.apache.kerberos.kerb.identity.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An open addressing hash index, in a memory mapped file, from principal
+ * names to the offsets of their latest records in the identity log. Slots
+ * are an int name hash and an int record offset, 0 for an empty slot and
+ * -1 for a deleted one, probed linearly.
+ *
+ * The header keeps the generation of the log it indexes, the counts of
+ * live and used slots, the log length and dead bytes, and whether it was
+ * synced with the log, i.e. whether it can be trusted when opened again.
+ */
+final class IdentityIndex {
+
+    private static final int MAGIC = 0x48584958; // HXIX
+    private static final int VERSION = 1;
+
+    private static final int GENERATION = 8;
+    private static final int CAPACITY = 16;
+    private static final int SIZE = 20;
+    private static final int USED = 24;
+    private static final int DATA_END = 28;
+    private static final int DEAD_BYTES = 32;
+    private static final int CLEAN = 40;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int SLOT_SIZE = 8;
+    static final int EMPTY = 0;
+    static final int DELETED = -1;
+    static final int MIN_CAPACITY = 1024;
+    static final int MAX_CAPACITY = 1 << 27;
+
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer map;
+    private final int capacity;
+    private final int mask;
+    private int size;
+    private int used;
+
+    private IdentityIndex(RandomAccessFile raf, int capacity) throws IOException {
+        this.raf = raf;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) capacity * SLOT_SIZE);
+    }
+
+    /**
+     * Create an empty index, with a capacity of a power of 2, replacing any
+     * existing file.
+     */
+    static IdentityIndex create(File file, long generation, int capacity) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        IdentityIndex index = new IdentityIndex(raf, capacity);
+        index.map.putInt(0, MAGIC);
+        index.map.putInt(4, VERSION);
+        index.map.putLong(GENERATION, generation);
+        index.map.putInt(CAPACITY, capacity);
+        return index;
+    }
+
+    /**
+     * Open an existing index, null if there's none or it isn't one of ours.
+     */
+    static IdentityIndex open(File file) throws IOException {
+        if (! file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        int magic = raf.readInt();
+        int version = raf.readInt();
+        raf.seek(CAPACITY);
+        int capacity = raf.readInt();
+        if (magic != MAGIC || version != VERSION || capacity < MIN_CAPACITY ||
+                capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1 ||
+                file.length() != HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            raf.close();
+            return null;
+        }
+        IdentityIndex index = new IdentityIndex(raf, capacity);
+        index.size = index.map.getInt(SIZE);
+        index.used = index.map.getInt(USED);
+        return index;
+    }
+
+    long getGeneration() {
+        return map.getLong(GENERATION);
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getDataEnd() {
+        return map.getInt(DATA_END);
+    }
+
+    long getDeadBytes() {
+        return map.getLong(DEAD_BYTES);
+    }
+
+    boolean isClean() {
+        return map.getInt(CLEAN) != 0;
+    }
+
+    /**
+     * Mark the index as no longer synced with the log before changing it,
+     * so that it's rebuilt if it's left so.
+     */
+    void markDirty() {
+        if (isClean()) {
+            map.putInt(CLEAN, 0);
+            map.force();
+        }
+    }
+
+    /**
+     * Flush the index, as synced with the log up to dataEnd.
+     */
+    void sync(int dataEnd, long deadBytes) {
+        map.putInt(SIZE, size);
+        map.putInt(USED, used);
+        map.putInt(DATA_END, dataEnd);
+        map.putLong(DEAD_BYTES, deadBytes);
+        map.force();
+        map.putInt(CLEAN, 1);
+        map.force();
+    }
+
+    boolean needsGrowing() {
+        return used + 1 > capacity / 4 * 3;
+    }
+
+    int hashAt(int slot) {
+        return map.getInt(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    int offsetAt(int slot) {
+        return map.getInt(HEADER_SIZE + slot * SLOT_SIZE + 4);
+    }
+
+    /**
+     * The slot of the name, or -(slot + 1) for the slot to put it in.
+     */
+    int find(int hash, byte[] name, ByteBuffer data) {
+        int slot = hash & mask;
+        int firstDeleted = -1;
+        while (true) {
+            int offset = offsetAt(slot);
+            if (offset == EMPTY) {
+                return -((firstDeleted >= 0 ? firstDeleted : slot) + 1);
+            }
+            if (offset == DELETED) {
+                if (firstDeleted < 0) {
+                    firstDeleted = slot;
+                }
+            } else if (hashAt(slot) == hash &&
+                    IdentityRecords.nameEquals(data, offset, name)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Put the record offset in the slot got from find()
+     */
+    void put(int slot, int hash, int offset) {
+        int old = offsetAt(slot);
+        if (old == EMPTY) {
+            used++;
+        }
+        if (old == EMPTY || old == DELETED) {
+            size++;
+        }
+        int pos = HEADER_SIZE + slot * SLOT_SIZE;
+        map.putInt(pos, hash);
+        map.putInt(pos + 4, offset);
+    }
+
+    void remove(int slot) {
+        map.putInt(HEADER_SIZE + slot * SLOT_SIZE + 4, DELETED);
+        size--;
+    }
+
+    /**
+     * Put the offset of a record whose name isn't in the index yet, so no
+     * name is compared.
+     */
+    void insert(int hash, int offset) {
+        int slot = hash & mask;
+        while (offsetAt(slot) != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        put(slot, hash, offset);
+    }
+
+    /**
+     * Put all the live slots into the other, empty, index.
+     */
+    void copyTo(IdentityIndex other) {
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offsetAt(slot);
+            if (offset != EMPTY && offset != DELETED) {
+                other.insert(hashAt(slot), offset);
+            }
+        }
+    }
+
+    void close() throws IOException {
+        raf.close();
+    }
+
+    static int capacityFor(int entries) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && entries + 1 > capacity / 4 * 3) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,187 @@
+package org.apache.kerberos.kerb.identity.backend;
+
+import org.apache.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+/**
+ * Binary records of the identity log, big endian, each:
+ *   int length of op and body, int crc32 of op and body, byte op,
+ *   and the body, the name for DELETE, for PUT the name followed by
+ *   int keyVersion, int kdcFlags, byte flags (0x01 disabled, 0x02 locked),
+ *   long expireTime, long createdTime, byte count of keys, and for each
+ *   key int etype, int kvno, short length and the key bytes.
+ * A name is a short length followed by its UTF-8 bytes.
+ */
+final class IdentityRecords {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final int HEADER_SIZE = 8;
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+
+    private static final int NAME_OFFSET = HEADER_SIZE + 1;
+    private static final byte DISABLED = 0x01;
+    private static final byte LOCKED = 0x02;
+
+    private IdentityRecords() {}
+
+    static byte[] nameBytes(String name) {
+        byte[] bytes = name.getBytes(UTF8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Principal name too long: " + name);
+        }
+        return bytes;
+    }
+
+    static byte[] encodePut(KrbIdentity identity) {
+        byte[] name = nameBytes(identity.getPrincipalName());
+        Collection<EncryptionKey> keys = identity.getKeys().values();
+
+        int size = NAME_OFFSET + 2 + name.length + 4 + 4 + 1 + 8 + 8 + 1;
+        for (EncryptionKey key : keys) {
+            size += 4 + 4 + 2 + key.getKeyData().length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.position(HEADER_SIZE);
+        buffer.put(PUT);
+        buffer.putShort((short) name.length).put(name);
+        buffer.putInt(identity.getKeyVersion());
+        buffer.putInt(identity.getKdcFlags());
+        byte flags = 0;
+        if (identity.isDisabled()) {
+            flags |= DISABLED;
+        }
+        if (identity.isLocked()) {
+            flags |= LOCKED;
+        }
+        buffer.put(flags);
+        buffer.putLong(identity.getExpireTime().getTime());
+        buffer.putLong(identity.getCreatedTime().getTime());
+        buffer.put((byte) keys.size());
+        for (EncryptionKey key : keys) {
+            byte[] keyData = key.getKeyData();
+            buffer.putInt(key.getKeyType().getValue());
+            buffer.putInt(key.getKvno());
+            buffer.putShort((short) keyData.length).put(keyData);
+        }
+        return seal(buffer.array());
+    }
+
+    static byte[] encodeDelete(String principalName) {
+        byte[] name = nameBytes(principalName);
+        ByteBuffer buffer = ByteBuffer.allocate(NAME_OFFSET + 2 + name.length);
+        buffer.position(HEADER_SIZE);
+        buffer.put(DELETE);
+        buffer.putShort((short) name.length).put(name);
+        return seal(buffer.array());
+    }
+
+    private static byte[] seal(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER_SIZE, record.length - HEADER_SIZE);
+        ByteBuffer.wrap(record).putInt(record.length - HEADER_SIZE)
+                .putInt((int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * Size of the record at offset, 0 if there's no valid record up to end,
+     * as after the last record or a torn write.
+     */
+    static int validSize(ByteBuffer data, int offset, int end) {
+        if (offset + NAME_OFFSET + 2 > end) {
+            return 0;
+        }
+        int length = data.getInt(offset);
+        if (length < 3 || length > end - offset - HEADER_SIZE) {
+            return 0;
+        }
+        byte[] body = new byte[length];
+        ByteBuffer view = data.duplicate();
+        view.position(offset + HEADER_SIZE);
+        view.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, length);
+        if ((int) crc.getValue() != data.getInt(offset + 4)) {
+            return 0;
+        }
+        return HEADER_SIZE + length;
+    }
+
+    static int size(ByteBuffer data, int offset) {
+        return HEADER_SIZE + data.getInt(offset);
+    }
+
+    static byte op(ByteBuffer data, int offset) {
+        return data.get(offset + HEADER_SIZE);
+    }
+
+    static boolean nameEquals(ByteBuffer data, int offset, byte[] name) {
+        int length = data.getShort(offset + NAME_OFFSET);
+        if (length != name.length) {
+            return false;
+        }
+        int start = offset + NAME_OFFSET + 2;
+        for (int i = 0; i < length; i++) {
+            if (data.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static byte[] readName(ByteBuffer data, int offset) {
+        byte[] name = new byte[data.getShort(offset + NAME_OFFSET)];
+        ByteBuffer view = data.duplicate();
+        view.position(offset + NAME_OFFSET + 2);
+        view.get(name);
+        return name;
+    }
+
+    static KrbIdentity decode(ByteBuffer data, int offset) {
+        ByteBuffer view = data.duplicate();
+        view.position(offset + NAME_OFFSET);
+
+        byte[] name = new byte[view.getShort()];
+        view.get(name);
+        KrbIdentity identity = new KrbIdentity(new String(name, UTF8));
+        identity.setKeyVersion(view.getInt());
+        identity.setKdcFlags(view.getInt());
+        byte flags = view.get();
+        identity.setDisabled((flags & DISABLED) != 0);
+        identity.setLocked((flags & LOCKED) != 0);
+        identity.setExpireTime(new KerberosTime(view.getLong()));
+        identity.setCreatedTime(new KerberosTime(view.getLong()));
+
+        int keyCount = view.get() & 0xff;
+        for (int i = 0; i < keyCount; i++) {
+            EncryptionType keyType = EncryptionType.fromValue(view.getInt());
+            int kvno = view.getInt();
+            byte[] keyData = new byte[view.getShort()];
+            view.get(keyData);
+            identity.addKey(new EncryptionKey(keyType, keyData, kvno));
+        }
+        return identity;
+    }
+
+    /**
+     * The hash of a name in the index, as of String.hashCode but over the
+     * UTF-8 bytes, spread so that linear probing gets the high bits too.
+     */
+    static int hash(byte[] name) {
+        int h = 0;
+        for (byte b : name) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+}
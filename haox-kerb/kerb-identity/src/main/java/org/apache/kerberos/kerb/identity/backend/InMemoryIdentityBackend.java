@@ -1,6 +1,7 @@
 package org.apache.kerberos.kerb.identity.backend;
 
 import org.apache.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -9,15 +10,17 @@ import java.util.Map;
 
 public class InMemoryIdentityBackend extends AbstractIdentityBackend {
 
-    private Map<String, KrbIdentity> identities;
+    private Map<PrincipalKey, KrbIdentity> identities;
 
     public InMemoryIdentityBackend() {
-        this.identities = new HashMap<String, KrbIdentity>();
+        this.identities = new HashMap<PrincipalKey, KrbIdentity>();
     }
 
     public InMemoryIdentityBackend(Map<String, KrbIdentity> identities) {
         this();
-        this.identities.putAll(identities);
+        for (Map.Entry<String, KrbIdentity> entry : identities.entrySet()) {
+            this.identities.put(PrincipalKey.of(entry.getKey()), entry.getValue());
+        }
     }
 
     @Override
@@ -29,29 +32,26 @@ public class InMemoryIdentityBackend extends AbstractIdentityBackend {
 
     @Override
     public boolean checkIdentity(String name) {
-        return identities.containsKey(name);
+        return identities.containsKey(PrincipalKey.of(name));
     }
 
     @Override
     public KrbIdentity getIdentity(String name) {
-        if (identities.containsKey(name)) {
-            return identities.get(name);
-        }
-        return null;
+        return identities.get(PrincipalKey.of(name));
     }
 
     @Override
     public void addIdentity(KrbIdentity identity) {
-        identities.put(identity.getPrincipalName(), identity);
+        identities.put(identity.getPrincipalKey(), identity);
     }
 
     @Override
     public void updateIdentity(KrbIdentity identity) {
-        identities.put(identity.getPrincipalName(), identity);
+        identities.put(identity.getPrincipalKey(), identity);
     }
 
     @Override
     public void deleteIdentity(KrbIdentity identity) {
-        identities.remove(identity.getPrincipalName());
+        identities.remove(identity.getPrincipalKey());
     }
 }
@@ -1,27 +1,436 @@
 package org.apache.kerberos.kerb.identity.backend;
 
+import org.apache.kerberos.kerb.identity.KrbIdentity;
+
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A persistent identity backend: an append only log of identity records,
+ * see IdentityRecords, with a memory mapped hash index from each principal
+ * to its latest record, see IdentityIndex, kept in the identity file plus
+ * ".idx".
+ *
+ * Loading maps the log and the index without reading them through, so it
+ * takes about the same time for any count of principals, and a lookup is
+ * an index probe plus a read of the mapped record. The index is rebuilt
+ * from the log when it's missing or wasn't saved, as after a crash.
+ *
+ * Adding, updating and deleting append records, and the log is compacted
+ * once dead records make up half of it. save() makes the changes durable.
+ * The log is limited to 2GB, as it's mapped as a whole.
+ */
+public class SimpleIdentityBackend extends AbstractIdentityBackend {
 
-public class SimpleIdentityBackend extends InMemoryIdentityBackend {
+    private static final int DATA_MAGIC = 0x48584944; // HXID
+    private static final int DATA_VERSION = 1;
+    private static final int DATA_HEADER_SIZE = 16;
+    private static final int MIN_DATA_CAPACITY = 64 * 1024;
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
 
-    private File identityFile;
+    private final File identityFile;
+    private final File indexFile;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    private RandomAccessFile dataFile;
+    private MappedByteBuffer data;
+    private long generation;
+    private int dataEnd;
+    private long deadBytes;
+    private IdentityIndex index;
 
     public SimpleIdentityBackend(File identityFile) {
         super();
         this.identityFile = identityFile;
+        this.indexFile = new File(identityFile.getPath() + ".idx");
     }
 
     /**
-     * Load identities from file
+     * Load identities from file. Done on first use if not called.
      */
     public void load() {
-        // todo
+        lock.writeLock().lock();
+        try {
+            if (! loaded) {
+                open();
+                loaded = true;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load identities from " + identityFile, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
      * Persist the updated identities back
      */
     public void save() {
-        // todo
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                data.force();
+                index.sync(dataEnd, deadBytes);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Save and close the files, loaded again on next use.
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                save();
+                loaded = false;
+                closeFiles();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close " + identityFile, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the log with the live records only
+     */
+    public void compact() {
+        checkLoaded();
+        lock.writeLock().lock();
+        try {
+            doCompact();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compact " + identityFile, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<KrbIdentity> getIdentities() {
+        checkLoaded();
+        lock.readLock().lock();
+        try {
+            List<KrbIdentity> results = new ArrayList<KrbIdentity>(index.size());
+            for (int slot = 0; slot < index.getCapacity(); slot++) {
+                int offset = index.offsetAt(slot);
+                if (offset != IdentityIndex.EMPTY && offset != IdentityIndex.DELETED) {
+                    results.add(IdentityRecords.decode(data, offset));
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean checkIdentity(String name) {
+        byte[] nameBytes = IdentityRecords.nameBytes(name);
+        checkLoaded();
+        lock.readLock().lock();
+        try {
+            return index.find(IdentityRecords.hash(nameBytes), nameBytes, data) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public KrbIdentity getIdentity(String name) {
+        byte[] nameBytes = IdentityRecords.nameBytes(name);
+        checkLoaded();
+        lock.readLock().lock();
+        try {
+            int slot = index.find(IdentityRecords.hash(nameBytes), nameBytes, data);
+            if (slot < 0) {
+                return null;
+            }
+            return IdentityRecords.decode(data, index.offsetAt(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void addIdentity(KrbIdentity identity) {
+        putIdentity(identity);
+    }
+
+    @Override
+    public void updateIdentity(KrbIdentity identity) {
+        putIdentity(identity);
+    }
+
+    @Override
+    public void deleteIdentity(KrbIdentity identity) {
+        String name = identity.getPrincipalName();
+        byte[] nameBytes = IdentityRecords.nameBytes(name);
+        int hash = IdentityRecords.hash(nameBytes);
+        checkLoaded();
+        lock.writeLock().lock();
+        try {
+            int slot = index.find(hash, nameBytes, data);
+            if (slot < 0) {
+                return;
+            }
+            index.markDirty();
+            byte[] record = IdentityRecords.encodeDelete(name);
+            deadBytes += IdentityRecords.size(data, index.offsetAt(slot)) + record.length;
+            append(record);
+            index.remove(slot);
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to delete identity " + name, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putIdentity(KrbIdentity identity) {
+        byte[] record = IdentityRecords.encodePut(identity);
+        byte[] nameBytes = IdentityRecords.nameBytes(identity.getPrincipalName());
+        int hash = IdentityRecords.hash(nameBytes);
+        checkLoaded();
+        lock.writeLock().lock();
+        try {
+            index.markDirty();
+            int offset = append(record);
+            putIndex(hash, nameBytes, offset);
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write identity " +
+                    identity.getPrincipalName(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putIndex(int hash, byte[] nameBytes, int offset) throws IOException {
+        int slot = index.find(hash, nameBytes, data);
+        if (slot >= 0) {
+            deadBytes += IdentityRecords.size(data, index.offsetAt(slot));
+        } else if (index.needsGrowing()) {
+            growIndex();
+            slot = index.find(hash, nameBytes, data);
+        }
+        index.put(slot >= 0 ? slot : -slot - 1, hash, offset);
+    }
+
+    private void checkLoaded() {
+        if (! loaded) {
+            load();
+        }
+    }
+
+    private int append(byte[] record) throws IOException {
+        int offset = dataEnd;
+        ensureDataCapacity((long) offset + record.length);
+        ByteBuffer view = data.duplicate();
+        view.position(offset);
+        view.put(record);
+        dataEnd += record.length;
+        return offset;
+    }
+
+    private void ensureDataCapacity(long needed) throws IOException {
+        if (needed <= data.capacity()) {
+            return;
+        }
+        if (needed > Integer.MAX_VALUE) {
+            throw new IOException("Identity file is full: " + identityFile);
+        }
+        long capacity = Math.min(Math.max((long) data.capacity() * 2, needed),
+                Integer.MAX_VALUE);
+        data = dataFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void open() throws IOException {
+        boolean exists = identityFile.isFile();
+        dataFile = new RandomAccessFile(identityFile, "rw");
+        if (! exists || dataFile.length() == 0) {
+            generation = 1;
+            createData(dataFile, generation, MIN_DATA_CAPACITY);
+            dataEnd = DATA_HEADER_SIZE;
+            deadBytes = 0;
+            index = IdentityIndex.create(indexFile, generation, IdentityIndex.MIN_CAPACITY);
+            index.sync(dataEnd, deadBytes);
+            return;
+        }
+
+        if (dataFile.length() < DATA_HEADER_SIZE || dataFile.length() > Integer.MAX_VALUE) {
+            dataFile.close();
+            throw new IOException("Not an identity file: " + identityFile);
+        }
+        data = dataFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                dataFile.length());
+        if (data.getInt(0) != DATA_MAGIC || data.getInt(4) != DATA_VERSION) {
+            dataFile.close();
+            throw new IOException("Not an identity file: " + identityFile);
+        }
+        generation = data.getLong(8);
+
+        IdentityIndex existing = IdentityIndex.open(indexFile);
+        if (existing != null && existing.isClean() &&
+                existing.getGeneration() == generation &&
+                existing.getDataEnd() >= DATA_HEADER_SIZE &&
+                existing.getDataEnd() <= data.capacity()) {
+            index = existing;
+            dataEnd = index.getDataEnd();
+            deadBytes = index.getDeadBytes();
+        } else {
+            if (existing != null) {
+                existing.close();
+            }
+            rebuildIndex();
+        }
+    }
+
+    private void createData(RandomAccessFile file, long generation,
+                            int capacity) throws IOException {
+        file.setLength(0);
+        data = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        data.putInt(0, DATA_MAGIC);
+        data.putInt(4, DATA_VERSION);
+        data.putLong(8, generation);
+    }
+
+    /**
+     * Replay the log into a new index, up to the first record that isn't
+     * valid, where the log is cut.
+     */
+    private void rebuildIndex() throws IOException {
+        index = IdentityIndex.create(indexFile, generation, IdentityIndex.MIN_CAPACITY);
+        deadBytes = 0;
+        int offset = DATA_HEADER_SIZE;
+        int size;
+        while ((size = IdentityRecords.validSize(data, offset, data.capacity())) > 0) {
+            byte[] nameBytes = IdentityRecords.readName(data, offset);
+            int hash = IdentityRecords.hash(nameBytes);
+            if (IdentityRecords.op(data, offset) == IdentityRecords.PUT) {
+                putIndex(hash, nameBytes, offset);
+            } else {
+                deadBytes += size;
+                int slot = index.find(hash, nameBytes, data);
+                if (slot >= 0) {
+                    deadBytes += IdentityRecords.size(data, index.offsetAt(slot));
+                    index.remove(slot);
+                }
+            }
+            offset += size;
+        }
+        dataEnd = offset;
+        zeroTail();
+
+        data.force();
+        index.sync(dataEnd, deadBytes);
+    }
+
+    /**
+     * Clear what a torn write left after the end, not to be taken for
+     * records when appended to.
+     */
+    private void zeroTail() {
+        int start = dataEnd;
+        while (start < data.capacity() && data.get(start) == 0) {
+            start++;
+        }
+        if (start == data.capacity()) {
+            return;
+        }
+        byte[] zeros = new byte[8192];
+        ByteBuffer view = data.duplicate();
+        view.position(dataEnd);
+        while (view.hasRemaining()) {
+            view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+        }
+    }
+
+    private void growIndex() throws IOException {
+        if (index.getCapacity() >= IdentityIndex.MAX_CAPACITY) {
+            throw new IOException("Too many identities in " + identityFile);
+        }
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        IdentityIndex grown = IdentityIndex.create(tmpFile, generation,
+                index.getCapacity() * 2);
+        index.copyTo(grown);
+        index.close();
+        rename(tmpFile, indexFile);
+        index = grown;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (deadBytes >= MIN_COMPACT_BYTES && deadBytes * 2 > dataEnd - DATA_HEADER_SIZE) {
+            doCompact();
+        }
+    }
+
+    /**
+     * Write the live records to new files, which replace the old ones. The
+     * log is renamed first, so if the index isn't after a crash, it's of an
+     * older generation than the log and rebuilt.
+     */
+    private void doCompact() throws IOException {
+        File tmpDataFile = new File(identityFile.getPath() + ".compact");
+        File tmpIndexFile = new File(indexFile.getPath() + ".compact");
+        long newGeneration = generation + 1;
+        long liveBytes = dataEnd - DATA_HEADER_SIZE - deadBytes;
+
+        MappedByteBuffer oldData = data;
+        RandomAccessFile newDataFile = new RandomAccessFile(tmpDataFile, "rw");
+        createData(newDataFile, newGeneration, (int) Math.max(MIN_DATA_CAPACITY,
+                Math.min(DATA_HEADER_SIZE + liveBytes * 2, Integer.MAX_VALUE)));
+        IdentityIndex newIndex = IdentityIndex.create(tmpIndexFile, newGeneration,
+                IdentityIndex.capacityFor(index.size()));
+
+        int newEnd = DATA_HEADER_SIZE;
+        ByteBuffer out = data.duplicate();
+        out.position(newEnd);
+        for (int slot = 0; slot < index.getCapacity(); slot++) {
+            int offset = index.offsetAt(slot);
+            if (offset != IdentityIndex.EMPTY && offset != IdentityIndex.DELETED) {
+                ByteBuffer record = oldData.duplicate();
+                record.limit(offset + IdentityRecords.size(oldData, offset)).position(offset);
+                newIndex.insert(index.hashAt(slot), out.position());
+                out.put(record);
+            }
+        }
+        newEnd = out.position();
+        data.force();
+        newIndex.sync(newEnd, 0);
+
+        closeFiles();
+        rename(tmpDataFile, identityFile);
+        rename(tmpIndexFile, indexFile);
+
+        dataFile = newDataFile;
+        index = newIndex;
+        generation = newGeneration;
+        dataEnd = newEnd;
+        deadBytes = 0;
+    }
+
+    private void closeFiles() throws IOException {
+        index.close();
+        dataFile.close();
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (! from.renameTo(to)) {
+            throw new IOException("Failed to rename " + from + " to " + to);
+        }
     }
 }
@@ -0,0 +1,184 @@
+package org.apache.kerberos.kerb.identity;
+
+import org.apache.kerberos.kerb.identity.backend.InMemoryIdentityBackend;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachedIdentityServiceTest {
+
+    private static class CountingBackend extends InMemoryIdentityBackend {
+        final AtomicInteger lookups = new AtomicInteger();
+        final CountDownLatch lookedUp = new CountDownLatch(1);
+        volatile CountDownLatch blockLookups;
+
+        @Override
+        public KrbIdentity getIdentity(String name) {
+            lookups.incrementAndGet();
+            lookedUp.countDown();
+            CountDownLatch latch = blockLookups;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return super.getIdentity(name);
+        }
+    }
+
+    private CountingBackend backend;
+    private CachedIdentityService cache;
+
+    @Before
+    public void setUp() {
+        backend = new CountingBackend();
+        backend.addIdentity(new KrbIdentity("krbtgt@TEST.COM"));
+        backend.addIdentity(new KrbIdentity("alice@TEST.COM"));
+        cache = new CachedIdentityService(backend, 64, 60, 60);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        Assert.assertNotNull(cache.getIdentity("alice@TEST.COM"));
+        Assert.assertNotNull(cache.getIdentity("alice@TEST.COM"));
+        Assert.assertEquals(1, backend.lookups.get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0.5, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testNegativeEntry() {
+        Assert.assertNull(cache.getIdentity("scanner@TEST.COM"));
+        Assert.assertFalse(cache.checkIdentity("scanner@TEST.COM"));
+        Assert.assertEquals(1, backend.lookups.get());
+        Assert.assertEquals(1, cache.getNegativeHitCount());
+
+        // Added through the cache, the negative entry is dropped
+        cache.addIdentity(new KrbIdentity("scanner@TEST.COM"));
+        Assert.assertNotNull(cache.getIdentity("scanner@TEST.COM"));
+    }
+
+    @Test
+    public void testNoNegativeEntries() {
+        cache = new CachedIdentityService(backend, 64, 60, 0);
+        Assert.assertNull(cache.getIdentity("scanner@TEST.COM"));
+        Assert.assertNull(cache.getIdentity("scanner@TEST.COM"));
+        Assert.assertEquals(2, backend.lookups.get());
+    }
+
+    @Test
+    public void testExpiry() {
+        cache = new CachedIdentityService(backend, 64, 0, 0);
+        cache.getIdentity("alice@TEST.COM");
+        cache.getIdentity("alice@TEST.COM");
+        Assert.assertEquals(2, backend.lookups.get());
+    }
+
+    @Test
+    public void testInvalidation() {
+        KrbIdentity alice = cache.getIdentity("alice@TEST.COM");
+        KrbIdentity updated = new KrbIdentity("alice@TEST.COM");
+        updated.setKeyVersion(2);
+        cache.updateIdentity(updated);
+        Assert.assertEquals(2, cache.getIdentity("alice@TEST.COM").getKeyVersion());
+
+        cache.deleteIdentity(alice);
+        Assert.assertNull(cache.getIdentity("alice@TEST.COM"));
+        Assert.assertEquals(3, backend.lookups.get());
+    }
+
+    @Test
+    public void testEviction() {
+        for (int i = 0; i < 1000; i++) {
+            backend.addIdentity(new KrbIdentity("user" + i + "@TEST.COM"));
+        }
+        cache.pin("krbtgt@TEST.COM");
+        cache.getIdentity("krbtgt@TEST.COM");
+        for (int i = 0; i < 1000; i++) {
+            cache.getIdentity("user" + i + "@TEST.COM");
+        }
+        Assert.assertTrue(cache.getEvictionCount() >= 1000 - 64);
+
+        // Pinned, not evicted
+        int lookups = backend.lookups.get();
+        cache.getIdentity("krbtgt@TEST.COM");
+        Assert.assertEquals(lookups, backend.lookups.get());
+    }
+
+    @Test
+    public void testPinnedNeverExpires() {
+        cache = new CachedIdentityService(backend, 64, 0, 0);
+        cache.pin("krbtgt@TEST.COM");
+        cache.getIdentity("krbtgt@TEST.COM");
+        cache.getIdentity("krbtgt@TEST.COM");
+        Assert.assertEquals(1, backend.lookups.get());
+
+        KrbIdentity updated = new KrbIdentity("krbtgt@TEST.COM");
+        updated.setKeyVersion(3);
+        cache.updateIdentity(updated);
+        Assert.assertEquals(3, cache.getIdentity("krbtgt@TEST.COM").getKeyVersion());
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        backend.blockLookups = new CountDownLatch(1);
+        int threads = 8;
+        // The callers and this thread, to start them all at once
+        final CyclicBarrier start = new CyclicBarrier(threads + 1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger found = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        if (cache.getIdentity("alice@TEST.COM") != null) {
+                            found.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.await();
+        // The load is held in the backend until released, any caller coming
+        // after that finds the loaded identity
+        backend.lookedUp.await();
+        backend.blockLookups.countDown();
+        done.await();
+
+        Assert.assertEquals(threads, found.get());
+        Assert.assertEquals(1, backend.lookups.get());
+        Assert.assertEquals(1, cache.getLoadCount());
+    }
+
+    @Test
+    public void testLoadFailure() {
+        IdentityService failing = new InMemoryIdentityBackend() {
+            @Override
+            public KrbIdentity getIdentity(String name) {
+                throw new IllegalStateException("backend down");
+            }
+        };
+        cache = new CachedIdentityService(failing, 64, 60, 60);
+        try {
+            cache.getIdentity("alice@TEST.COM");
+            Assert.fail("Failure not thrown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(1, cache.getLoadFailureCount());
+    }
+}
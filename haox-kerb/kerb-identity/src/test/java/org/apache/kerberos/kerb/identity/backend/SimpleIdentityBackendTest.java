@@ -0,0 +1,180 @@
+package org.apache.kerberos.kerb.identity.backend;
+
+import org.apache.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+public class SimpleIdentityBackendTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private File identityFile;
+
+    @Before
+    public void setUp() {
+        identityFile = new File(tmpDir.getRoot(), "identities.dat");
+    }
+
+    private static KrbIdentity createIdentity(String name, int kvno) {
+        KrbIdentity identity = new KrbIdentity(name);
+        identity.setKeyVersion(kvno);
+        identity.setKdcFlags(0x40);
+        identity.setLocked(true);
+        identity.setCreatedTime(new KerberosTime(1400000000000L));
+        identity.addKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, (byte) kvno}, kvno));
+        return identity;
+    }
+
+    private static void checkIdentity(KrbIdentity expected, KrbIdentity actual) {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.getPrincipalName(), actual.getPrincipalName());
+        Assert.assertEquals(expected.getKeyVersion(), actual.getKeyVersion());
+        Assert.assertEquals(expected.getKdcFlags(), actual.getKdcFlags());
+        Assert.assertEquals(expected.isLocked(), actual.isLocked());
+        Assert.assertEquals(expected.isDisabled(), actual.isDisabled());
+        Assert.assertEquals(expected.getExpireTime().getTime(), actual.getExpireTime().getTime());
+        Assert.assertEquals(expected.getCreatedTime().getTime(), actual.getCreatedTime().getTime());
+        EncryptionKey expectedKey = expected.getKey(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        EncryptionKey actualKey = actual.getKey(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        Assert.assertArrayEquals(expectedKey.getKeyData(), actualKey.getKeyData());
+        Assert.assertEquals(expectedKey.getKvno(), actualKey.getKvno());
+    }
+
+    @Test
+    public void testAddUpdateDelete() {
+        SimpleIdentityBackend backend = new SimpleIdentityBackend(identityFile);
+        KrbIdentity alice = createIdentity("alice@TEST.COM", 1);
+        KrbIdentity bob = createIdentity("bob@TEST.COM", 1);
+        backend.addIdentity(alice);
+        backend.addIdentity(bob);
+
+        Assert.assertTrue(backend.checkIdentity("alice@TEST.COM"));
+        Assert.assertFalse(backend.checkIdentity("carol@TEST.COM"));
+        Assert.assertNull(backend.getIdentity("carol@TEST.COM"));
+        checkIdentity(alice, backend.getIdentity("alice@TEST.COM"));
+        Assert.assertEquals(2, backend.getIdentities().size());
+
+        KrbIdentity alice2 = createIdentity("alice@TEST.COM", 2);
+        backend.updateIdentity(alice2);
+        checkIdentity(alice2, backend.getIdentity("alice@TEST.COM"));
+
+        backend.deleteIdentity(bob);
+        Assert.assertFalse(backend.checkIdentity("bob@TEST.COM"));
+        Assert.assertEquals(1, backend.getIdentities().size());
+        backend.close();
+    }
+
+    @Test
+    public void testReopen() {
+        SimpleIdentityBackend backend = new SimpleIdentityBackend(identityFile);
+        for (int i = 0; i < 3000; i++) {
+            backend.addIdentity(createIdentity("user" + i + "@TEST.COM", 1));
+        }
+        backend.deleteIdentity(createIdentity("user7@TEST.COM", 1));
+        backend.close();
+
+        backend = new SimpleIdentityBackend(identityFile);
+        Assert.assertEquals(2999, backend.getIdentities().size());
+        Assert.assertFalse(backend.checkIdentity("user7@TEST.COM"));
+        checkIdentity(createIdentity("user2999@TEST.COM", 1),
+                backend.getIdentity("user2999@TEST.COM"));
+
+        backend.addIdentity(createIdentity("user7@TEST.COM", 3));
+        backend.close();
+
+        backend = new SimpleIdentityBackend(identityFile);
+        Assert.assertEquals(3, backend.getIdentity("user7@TEST.COM").getKeyVersion());
+        backend.close();
+    }
+
+    @Test
+    public void testRebuildIndex() throws Exception {
+        SimpleIdentityBackend backend = new SimpleIdentityBackend(identityFile);
+        for (int i = 0; i < 100; i++) {
+            backend.addIdentity(createIdentity("user" + i + "@TEST.COM", 1));
+        }
+        backend.updateIdentity(createIdentity("user1@TEST.COM", 2));
+        backend.deleteIdentity(createIdentity("user2@TEST.COM", 1));
+        backend.close();
+
+        File indexFile = new File(identityFile.getPath() + ".idx");
+        Assert.assertTrue(indexFile.delete());
+
+        // Left over of a torn write, past the end of the records
+        RandomAccessFile raf = new RandomAccessFile(identityFile, "rw");
+        raf.seek(raf.length() - 4);
+        raf.writeInt(-1);
+        raf.close();
+
+        backend = new SimpleIdentityBackend(identityFile);
+        Assert.assertEquals(99, backend.getIdentities().size());
+        Assert.assertEquals(2, backend.getIdentity("user1@TEST.COM").getKeyVersion());
+        Assert.assertFalse(backend.checkIdentity("user2@TEST.COM"));
+        backend.addIdentity(createIdentity("user2@TEST.COM", 3));
+        backend.close();
+        Assert.assertTrue(indexFile.isFile());
+
+        backend = new SimpleIdentityBackend(identityFile);
+        Assert.assertEquals(100, backend.getIdentities().size());
+        Assert.assertEquals(3, backend.getIdentity("user2@TEST.COM").getKeyVersion());
+        backend.close();
+    }
+
+    @Test
+    public void testUnsavedIndexIsRebuilt() throws Exception {
+        SimpleIdentityBackend backend = new SimpleIdentityBackend(identityFile);
+        backend.addIdentity(createIdentity("alice@TEST.COM", 1));
+        backend.save();
+        backend.addIdentity(createIdentity("bob@TEST.COM", 1));
+        backend.getIdentity("bob@TEST.COM");
+
+        // Not closed, as if the process died, the index is left dirty
+        SimpleIdentityBackend other = new SimpleIdentityBackend(identityFile);
+        Assert.assertTrue(other.checkIdentity("alice@TEST.COM"));
+        Assert.assertTrue(other.checkIdentity("bob@TEST.COM"));
+        other.close();
+    }
+
+    @Test
+    public void testCompact() {
+        SimpleIdentityBackend backend = new SimpleIdentityBackend(identityFile);
+        for (int i = 0; i < 100; i++) {
+            backend.addIdentity(createIdentity("user" + i + "@TEST.COM", 1));
+        }
+        for (int kvno = 2; kvno < 20; kvno++) {
+            for (int i = 0; i < 50; i++) {
+                backend.updateIdentity(createIdentity("user" + i + "@TEST.COM", kvno));
+            }
+        }
+        backend.deleteIdentity(createIdentity("user99@TEST.COM", 1));
+        backend.save();
+        long before = identityFile.length();
+
+        backend.compact();
+        Assert.assertEquals(99, backend.getIdentities().size());
+        Assert.assertEquals(19, backend.getIdentity("user0@TEST.COM").getKeyVersion());
+        Assert.assertEquals(1, backend.getIdentity("user98@TEST.COM").getKeyVersion());
+        Assert.assertFalse(backend.checkIdentity("user99@TEST.COM"));
+
+        backend.addIdentity(createIdentity("user99@TEST.COM", 5));
+        backend.close();
+
+        backend = new SimpleIdentityBackend(identityFile);
+        Assert.assertEquals(100, backend.getIdentities().size());
+        Assert.assertEquals(5, backend.getIdentity("user99@TEST.COM").getKeyVersion());
+        Assert.assertEquals(19, backend.getIdentity("user0@TEST.COM").getKeyVersion());
+        backend.close();
+        Assert.assertTrue(before >= identityFile.length());
+    }
+}
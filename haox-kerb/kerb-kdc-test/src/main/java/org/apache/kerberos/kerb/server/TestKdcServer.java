@@ -42,9 +42,28 @@ public class TestKdcServer extends SimpleKdcServer {
 
     public TestKdcServer(Properties conf) {
         super();
+        if (! conf.containsKey(WORK_DIR)) {
+            conf = (Properties) conf.clone();
+            conf.setProperty(WORK_DIR, createWorkDir().getPath());
+        }
         getConfig().getConf().addPropertiesConfig(conf);
     }
 
+    /**
+     * A fresh work dir, not to leave identities of tests around.
+     */
+    private static File createWorkDir() {
+        try {
+            File workDir = File.createTempFile("haox-kdc", "");
+            workDir.delete();
+            workDir.mkdirs();
+            workDir.deleteOnExit();
+            return workDir;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create work dir", e);
+        }
+    }
+
     @Override
     public void init() {
         super.init();
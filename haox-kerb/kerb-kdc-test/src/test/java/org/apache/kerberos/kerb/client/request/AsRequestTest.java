@@ -0,0 +1,65 @@
+package org.apache.kerberos.kerb.client.request;
+
+import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.client.KrbConfig;
+import org.apache.kerberos.kerb.client.KrbContext;
+import org.apache.kerberos.kerb.codec.KrbCodec;
+import org.apache.kerberos.kerb.spec.common.HostAddresses;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.apache.kerberos.kerb.spec.kdc.AsRep;
+import org.apache.kerberos.kerb.spec.kdc.EncAsRepPart;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsRequestTest {
+
+    private static final String REALM = "EXAMPLE.COM";
+
+    private AsRequest request;
+
+    @Before
+    public void setUp() throws Exception {
+        KrbContext context = new KrbContext();
+        context.init(new KrbConfig());
+        context.setKdcRealm(REALM);
+        request = new AsRequest(context);
+        request.setClientPrincipal(new PrincipalName("alice@" + REALM));
+        request.setChosenNonce(7);
+        request.addHost("127.0.0.1");
+    }
+
+    /**
+     * A reply as decoded from the KDC, with caddr given or left out.
+     */
+    private AsRep makeReply(HostAddresses caddr) throws KrbException {
+        EncAsRepPart encPart = new EncAsRepPart();
+        encPart.setNonce(7);
+        encPart.setSname(request.getServerPrincipal());
+        encPart.setSrealm(REALM);
+        encPart.setCaddr(caddr);
+
+        AsRep reply = new AsRep();
+        reply.setCname(new PrincipalName("alice"));
+        reply.setCrealm(REALM);
+        reply.setEncPart(KrbCodec.decode(KrbCodec.encode(encPart), EncAsRepPart.class));
+        return reply;
+    }
+
+    @Test
+    public void testClientAddresses() throws Exception {
+        request.processResponse(makeReply(request.getHostAddresses()));
+    }
+
+    @Test
+    public void testClientAddressesOmitted() throws Exception {
+        AsRep reply = makeReply(null);
+        Assert.assertNull(reply.getEncPart().getCaddr());
+        try {
+            request.processResponse(reply);
+            Assert.fail("Should have failed with the addresses omitted");
+        } catch (KrbException e) {
+            Assert.assertEquals("Unexpected client host", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.apache.kerberos.kerb.server;
+
+import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.client.KrbClient;
+import org.apache.kerberos.kerb.client.KrbConfig;
+import org.apache.kerberos.kerb.client.KrbConfigKey;
+import org.apache.kerberos.kerb.client.KrbFuture;
+import org.apache.kerberos.kerb.spec.ticket.ServiceTicket;
+import org.apache.kerberos.kerb.spec.ticket.TgtTicket;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Many requests in flight over the one connection of a client.
+ */
+public class AsyncKdcTest extends KdcTestBase {
+
+    private static final int SERVERS = 10;
+    private static final int REQUESTS = 200;
+
+    private String password = "123456";
+
+    @Override
+    protected void setUpKdcServer() throws Exception {
+        super.setUpKdcServer();
+        kdcServer.createPrincipal(clientPrincipal, password);
+        for (int i = 0; i < SERVERS; i++) {
+            kdcServer.createPrincipals(serverOf(i));
+        }
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        kdcServer.start();
+        krbClnt.init();
+
+        TgtTicket tgt = krbClnt.requestTgtTicketAsync(clientPrincipal, password, null).await();
+        Assert.assertNotNull(tgt);
+
+        List<KrbFuture<ServiceTicket>> futures = new ArrayList<KrbFuture<ServiceTicket>>();
+        for (int i = 0; i < REQUESTS; i++) {
+            futures.add(krbClnt.requestServiceTicketAsync(tgt, serverOf(i % SERVERS), null));
+        }
+
+        // Each gets the reply to its own request
+        for (int i = 0; i < REQUESTS; i++) {
+            ServiceTicket tkt = futures.get(i).await();
+            Assert.assertEquals(Arrays.asList("test-service" + i % SERVERS, "localhost"),
+                    tkt.getTicket().getSname().getNameStrings());
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        kdcServer.start();
+        krbClnt.setTimeout(1);
+        krbClnt.init();
+
+        TgtTicket tgt = krbClnt.requestTgtTicket(clientPrincipal, password, null);
+
+        // Not replied by KDC, for the server is unknown
+        KrbFuture<ServiceTicket> unknown = krbClnt.requestServiceTicketAsync(tgt,
+                "unknown/localhost@" + kdcRealm, null);
+        ServiceTicket tkt = krbClnt.requestServiceTicket(tgt, serverPrincipal, null);
+        Assert.assertNotNull(tkt);
+        try {
+            unknown.await();
+            Assert.fail("Should have timed out");
+        } catch (KrbException e) {
+            Assert.assertTrue(e.getMessage().contains("timeout"));
+        }
+    }
+
+    @Test
+    public void testProcessingFailed() throws Exception {
+        kdcServer.start();
+        krbClnt.init();
+
+        // Failed by what the request throws, not left to time out
+        long start = System.currentTimeMillis();
+        try {
+            krbClnt.requestTgtTicketAsync(clientPrincipal, null, null).await();
+            Assert.fail("Should have failed");
+        } catch (KrbException e) {
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        }
+        Assert.assertNotNull(krbClnt.requestTgtTicket(clientPrincipal, password, null));
+    }
+
+    @Test
+    public void testErrorOfItsRequest() throws Exception {
+        kdcServer.start();
+        krbClnt.init();
+        TgtTicket tgt = krbClnt.requestTgtTicket(clientPrincipal, password, null);
+
+        // Asking for preauth only when the KDC replies it's required
+        KrbConfig config = new KrbConfig();
+        config.getConf().addMapConfig(Collections.singletonMap(
+                KrbConfigKey.PREAUTH_REQUIRED.getPropertyKey(), "false"));
+        KrbClient client = new KrbClient(config);
+        client.setKdcHost(hostname);
+        client.setKdcPort(port);
+        client.setKdcRealm(kdcRealm);
+        client.setTimeout(1);
+        client.init();
+
+        // Left pending the oldest, for the KDC doesn't reply it
+        KrbFuture<ServiceTicket> unknown = client.requestServiceTicketAsync(tgt,
+                "unknown/localhost@" + kdcRealm, null);
+        // The preauth required error is taken by this one, not the oldest
+        try {
+            client.requestTgtTicket(clientPrincipal, password, null);
+        } catch (KrbException e) {
+            Assert.assertFalse(e.getMessage().contains("timeout"));
+        }
+        try {
+            unknown.await();
+            Assert.fail("Should have timed out");
+        } catch (KrbException e) {
+            Assert.assertTrue(e.getMessage().contains("timeout"));
+        }
+    }
+
+    private String serverOf(int i) {
+        return "test-service" + i + "/localhost@" + kdcRealm;
+    }
+}
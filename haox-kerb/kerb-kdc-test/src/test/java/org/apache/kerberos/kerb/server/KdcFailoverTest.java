@@ -0,0 +1,138 @@
+package org.apache.kerberos.kerb.server;
+
+import org.apache.kerberos.kerb.client.KdcPool;
+import org.apache.kerberos.kerb.client.KrbClient;
+import org.apache.kerberos.kerb.client.KrbFuture;
+import org.apache.kerberos.kerb.spec.ticket.ServiceTicket;
+import org.apache.kerberos.kerb.spec.ticket.TgtTicket;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A client of several KDCs sharing the principals, some of them stopped
+ * while it's running.
+ */
+public class KdcFailoverTest extends KdcTestBase {
+
+    private static final int KDCS = 3;
+    private static final int REQUESTS = 60;
+
+    private String password = "123456";
+    private TestKdcServer[] kdcs = new TestKdcServer[KDCS];
+    private List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+
+    @Override
+    protected void setUpKdcServer() throws Exception {
+        for (int i = 0; i < KDCS; i++) {
+            kdcs[i] = createKdc(i, TestKdcServer.createConf());
+            addresses.add(new InetSocketAddress(hostname, port + i));
+        }
+        kdcServer = kdcs[0];
+        kdcRealm = kdcServer.getKdcRealm();
+        clientPrincipal = "drankye@" + kdcRealm;
+        serverPrincipal = "test-service/localhost@" + kdcRealm;
+    }
+
+    /**
+     * A KDC with the same keys as the others, so that a TGT of one is taken
+     * by all
+     */
+    private TestKdcServer createKdc(int i, Properties conf) {
+        TestKdcServer kdc = new TestKdcServer(conf);
+        kdc.setKdcHost(hostname);
+        kdc.setKdcPort((short) (port + i));
+        kdc.init();
+
+        String realm = kdc.getKdcRealm();
+        kdc.createPrincipal("krbtgt@" + realm, "krbtgt-secret");
+        kdc.createPrincipal("test-service/localhost@" + realm, "service-secret");
+        kdc.createPrincipal("drankye@" + realm, password);
+        return kdc;
+    }
+
+    @Override
+    protected void setUpClient() throws Exception {
+        super.setUpClient();
+        krbClnt.setKdcAddresses(addresses);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        for (TestKdcServer kdc : kdcs) {
+            if (kdc != null && kdc.isStarted()) {
+                kdc.stop();
+            }
+        }
+        if (krbClnt.getKdcPool() != null) {
+            krbClnt.stop();
+        }
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        for (TestKdcServer kdc : kdcs) {
+            kdc.start();
+        }
+        krbClnt.init();
+        KdcPool pool = krbClnt.getKdcPool();
+
+        TgtTicket tgt = krbClnt.requestTgtTicket(clientPrincipal, password, null);
+        awaitAll(requestTickets(tgt));
+        for (InetSocketAddress address : addresses) {
+            Assert.assertTrue(pool.toString(), pool.getReplyCount(address) > 0);
+        }
+
+        // Two of them gone with requests in flight, sent to the last again
+        List<KrbFuture<ServiceTicket>> futures = requestTickets(tgt);
+        kdcs[0].stop();
+        kdcs[1].stop();
+        awaitAll(futures);
+        awaitAll(requestTickets(tgt));
+        Assert.assertEquals(pool.toString(), 1, pool.getHealthyCount());
+
+        // One back in place of the first, connected again in the background
+        kdcs[0] = createKdc(0, TestKdcServer.createConf());
+        kdcs[0].start();
+        kdcs[2].stop();
+        long replies = pool.getReplyCount(addresses.get(0));
+        awaitAll(requestTickets(tgt));
+        Assert.assertTrue(pool.toString(), pool.getReplyCount(addresses.get(0)) > replies);
+    }
+
+    @Test
+    public void testTcpFallback() throws Exception {
+        Properties conf = TestKdcServer.createConf();
+        conf.setProperty(KdcConfigKey.KDC_MAX_DGRAM_REPLY_SIZE.getPropertyKey(), "100");
+        for (int i = 0; i < KDCS; i++) {
+            kdcs[i] = createKdc(i, conf);
+            kdcs[i].start();
+        }
+        krbClnt.init();
+        KdcPool pool = krbClnt.getKdcPool();
+
+        // Replied too big over UDP, so sent again over TCP
+        TgtTicket tgt = krbClnt.requestTgtTicket(clientPrincipal, password, null);
+        Assert.assertNotNull(krbClnt.requestServiceTicket(tgt, serverPrincipal, null));
+        Assert.assertTrue(pool.toString(), pool.getUdpSentCount() > 0);
+        Assert.assertTrue(pool.toString(), pool.getTcpSentCount() >= pool.getUdpSentCount());
+    }
+
+    private List<KrbFuture<ServiceTicket>> requestTickets(TgtTicket tgt) {
+        List<KrbFuture<ServiceTicket>> futures = new ArrayList<KrbFuture<ServiceTicket>>();
+        for (int i = 0; i < REQUESTS; i++) {
+            futures.add(krbClnt.requestServiceTicketAsync(tgt, serverPrincipal, null));
+        }
+        return futures;
+    }
+
+    private static void awaitAll(List<KrbFuture<ServiceTicket>> futures) throws Exception {
+        for (KrbFuture<ServiceTicket> future : futures) {
+            Assert.assertNotNull(future.await());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.apache.kerberos.kerb.server;
+
+import org.apache.kerberos.kerb.KrbErrorCode;
+import org.apache.kerberos.kerb.codec.KrbCodec;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.kerberos.kerb.spec.common.KrbError;
+import org.apache.kerberos.kerb.spec.common.KrbMessage;
+import org.apache.kerberos.kerb.spec.common.KrbMessageType;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.apache.kerberos.kerb.spec.kdc.AsReq;
+import org.apache.kerberos.kerb.spec.kdc.KdcOptions;
+import org.apache.kerberos.kerb.spec.kdc.KdcReqBody;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Replays AS-REQs to the KDC over loopback UDP.
+ */
+public class KdcUdpTest extends KdcTestBase {
+
+    private static final int REQUESTS = 2000;
+
+    private String password = "123456";
+
+    @Override
+    protected void setUpKdcServer() throws Exception {
+        setUpKdcServer(TestKdcServer.createConf());
+    }
+
+    private void setUpKdcServer(Properties conf) throws Exception {
+        conf.setProperty(KdcConfigKey.PREAUTH_REQUIRED.getPropertyKey(), "false");
+        kdcServer = new TestKdcServer(conf);
+        kdcServer.setKdcHost(hostname);
+        kdcServer.setKdcPort(port);
+        kdcServer.init();
+
+        kdcRealm = kdcServer.getKdcRealm();
+        clientPrincipal = "drankye@" + kdcRealm;
+        kdcServer.createPrincipal(clientPrincipal, password);
+    }
+
+    @Test
+    public void testAsReqOverUdp() throws Exception {
+        kdcServer.start(); // serving once started
+
+        byte[] request = KrbCodec.encode(makeAsReq());
+        DatagramSocket socket = openSocket();
+
+        int replied = 0;
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                KrbMessage reply;
+                try {
+                    reply = sendAndReceive(socket, request);
+                } catch (SocketTimeoutException e) {
+                    continue; // lost, go on with the next
+                }
+                Assert.assertEquals(KrbMessageType.AS_REP, reply.getMsgType());
+                replied++;
+            }
+        } finally {
+            socket.close();
+        }
+        // Loopback datagrams may rarely be dropped, but most should be served
+        Assert.assertTrue("Replied " + replied + "/" + REQUESTS,
+                replied >= REQUESTS * 0.95);
+    }
+
+    @Test
+    public void testResponseTooBig() throws Exception {
+        Properties conf = TestKdcServer.createConf();
+        conf.setProperty(KdcConfigKey.KDC_MAX_DGRAM_REPLY_SIZE.getPropertyKey(), "100");
+        setUpKdcServer(conf);
+        kdcServer.start();
+
+        DatagramSocket socket = openSocket();
+        try {
+            KrbMessage reply = sendAndReceive(socket, KrbCodec.encode(makeAsReq()));
+            Assert.assertEquals(KrbMessageType.KRB_ERROR, reply.getMsgType());
+            Assert.assertEquals(KrbErrorCode.RESPONSE_TOO_BIG,
+                    ((KrbError) reply).getErrorCode());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testServiceUnavailable() throws Exception {
+        Properties conf = TestKdcServer.createConf();
+        conf.setProperty(KdcConfigKey.KDC_WORKERS.getPropertyKey(), "1");
+        conf.setProperty(KdcConfigKey.KDC_WORK_QUEUE_SIZE.getPropertyKey(), "0");
+        setUpKdcServer(conf);
+        kdcServer.start();
+
+        // A burst beyond the one request taken at a time, the rest are
+        // answered busy rather than dropped. Datagrams may still be lost,
+        // so it's read until none come, not counting on all the replies.
+        int burst = 50;
+        byte[] request = KrbCodec.encode(makeAsReq());
+        DatagramSocket socket = openSocket();
+        int unavailable = 0;
+        int replied = 0;
+        try {
+            for (int i = 0; i < burst; i++) {
+                socket.send(new DatagramPacket(request, request.length));
+            }
+            while (replied < burst) {
+                KrbMessage reply;
+                try {
+                    reply = receive(socket);
+                } catch (SocketTimeoutException e) {
+                    break; // the rest lost
+                }
+                replied++;
+                if (reply.getMsgType() == KrbMessageType.KRB_ERROR) {
+                    Assert.assertEquals(KrbErrorCode.KDC_ERR_SVC_UNAVAILABLE,
+                            ((KrbError) reply).getErrorCode());
+                    unavailable++;
+                } else {
+                    Assert.assertEquals(KrbMessageType.AS_REP, reply.getMsgType());
+                }
+                socket.setSoTimeout(1000); // the others come right after
+            }
+        } finally {
+            socket.close();
+        }
+        Assert.assertTrue("Unavailable " + unavailable + "/" + replied, unavailable > 0);
+    }
+
+    private DatagramSocket openSocket() throws IOException {
+        DatagramSocket socket = new DatagramSocket();
+        socket.setSoTimeout(5000);
+        socket.connect(new InetSocketAddress(hostname, port));
+        return socket;
+    }
+
+    private KrbMessage sendAndReceive(DatagramSocket socket,
+                                      byte[] request) throws IOException {
+        socket.send(new DatagramPacket(request, request.length));
+        return receive(socket);
+    }
+
+    private KrbMessage receive(DatagramSocket socket) throws IOException {
+        byte[] replyBytes = new byte[65536];
+        DatagramPacket replyPacket = new DatagramPacket(replyBytes, replyBytes.length);
+        socket.receive(replyPacket);
+
+        return KrbCodec.decodeMessage(
+                ByteBuffer.wrap(replyBytes, 0, replyPacket.getLength()));
+    }
+
+    private AsReq makeAsReq() {
+        KdcReqBody body = new KdcReqBody();
+        long now = System.currentTimeMillis();
+        body.setFrom(new KerberosTime(now));
+        body.setTill(new KerberosTime(now + 8 * 3600 * 1000L));
+
+        body.setCname(new PrincipalName(clientPrincipal));
+        body.setRealm(kdcRealm);
+        body.setSname(new PrincipalName("krbtgt@" + kdcRealm));
+
+        body.setNonce(12345);
+        body.setKdcOptions(new KdcOptions());
+        body.setEtypes(Arrays.asList(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+
+        AsReq asReq = new AsReq();
+        asReq.setReqBody(body);
+        return asReq;
+    }
+}
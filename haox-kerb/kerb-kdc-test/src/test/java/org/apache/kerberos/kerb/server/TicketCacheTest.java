@@ -0,0 +1,165 @@
+package org.apache.kerberos.kerb.server;
+
+import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.client.TicketCache;
+import org.apache.kerberos.kerb.spec.ticket.ServiceTicket;
+import org.apache.kerberos.kerb.spec.ticket.TgtTicket;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class TicketCacheTest extends KdcTestBase {
+
+    private String password = "123456";
+    private String otherServerPrincipal;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @Override
+    protected void setUpKdcServer() throws Exception {
+        super.setUpKdcServer();
+        kdcServer.createPrincipal(clientPrincipal, password);
+        otherServerPrincipal = "other-service/localhost@" + kdcRealm;
+        kdcServer.createPrincipals(otherServerPrincipal);
+    }
+
+    @Test
+    public void testHits() throws Exception {
+        kdcServer.start();
+        krbClnt.init();
+        TicketCache cache = new TicketCache(krbClnt);
+
+        TgtTicket tgt = krbClnt.requestTgtTicket(clientPrincipal, password, null);
+        ServiceTicket tkt = cache.getServiceTicket(tgt, serverPrincipal);
+        Assert.assertNotNull(tkt);
+        Assert.assertSame(tkt, cache.getServiceTicket(tgt, serverPrincipal));
+        Assert.assertSame(tkt, cache.getServiceTicket(clientPrincipal, serverPrincipal));
+
+        ServiceTicket other = cache.getServiceTicket(tgt, otherServerPrincipal);
+        Assert.assertEquals("other-service",
+                other.getTicket().getSname().getNameStrings().get(0));
+
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(0.5, cache.getHitRatio(), 0.001);
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        kdcServer.start();
+        krbClnt.setTicketValidTime(8);
+        krbClnt.init();
+        TicketCache cache = new TicketCache(krbClnt);
+
+        TgtTicket tgt = krbClnt.requestTgtTicket(clientPrincipal, password, null);
+        ServiceTicket tkt = cache.getServiceTicket(tgt, serverPrincipal);
+
+        // Refreshed 2 to 4 seconds before it ends, for it's been used
+        waitFor(cache, 1, 0);
+        ServiceTicket refreshed = cache.getServiceTicket(tgt, serverPrincipal);
+        Assert.assertNotSame(tkt, refreshed);
+        Assert.assertTrue(refreshed.getEncKdcRepPart().getEndTime().getTime() >
+                tkt.getEncKdcRepPart().getEndTime().getTime());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testRenew() throws Exception {
+        kdcServer.start();
+        krbClnt.setTicketValidTime(8);
+        krbClnt.setRenewableTime(3600);
+        krbClnt.init();
+        TicketCache cache = new TicketCache(krbClnt);
+
+        TgtTicket tgt = krbClnt.requestTgtTicket(clientPrincipal, password, null);
+        cache.addTgt(tgt);
+        Assert.assertSame(tgt, cache.getTgt(clientPrincipal));
+
+        waitFor(cache, 0, 1);
+        TgtTicket renewed = cache.getTgt(clientPrincipal);
+        Assert.assertNotSame(tgt, renewed);
+        Assert.assertTrue(renewed.getEncKdcRepPart().getEndTime().getTime() >
+                tgt.getEncKdcRepPart().getEndTime().getTime());
+        // Renewed by the KDC, not got again: authtime and renew-till are kept
+        Assert.assertEquals(tgt.getEncKdcRepPart().getAuthTime().getTime(),
+                renewed.getEncKdcRepPart().getAuthTime().getTime());
+        Assert.assertEquals(tgt.getEncKdcRepPart().getRenewTill().getTime(),
+                renewed.getEncKdcRepPart().getRenewTill().getTime());
+        Assert.assertTrue(renewed.getEncKdcRepPart().getAuthTime().getTime() <
+                renewed.getEncKdcRepPart().getStartTime().getTime());
+
+        // Service tickets are got with the renewed one
+        Assert.assertNotNull(cache.getServiceTicket(clientPrincipal, serverPrincipal));
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        kdcServer.start();
+        krbClnt.init();
+        TicketCache cache = new TicketCache(krbClnt);
+
+        TgtTicket tgt = krbClnt.requestTgtTicket(clientPrincipal, password, null);
+        ServiceTicket tkt = cache.getServiceTicket(tgt, serverPrincipal);
+        File file = tmpDir.newFile("tkt.cc");
+        cache.store(file);
+
+        TicketCache loaded = new TicketCache(krbClnt);
+        Assert.assertEquals(2, loaded.load(file));
+        Assert.assertArrayEquals(tgt.getTicket().encode(),
+                loaded.getTgt(clientPrincipal).getTicket().encode());
+
+        ServiceTicket loadedTkt = loaded.getServiceTicket(clientPrincipal, serverPrincipal);
+        Assert.assertArrayEquals(tkt.getTicket().encode(), loadedTkt.getTicket().encode());
+        Assert.assertEquals(tkt.getSessionKey(), loadedTkt.getSessionKey());
+        Assert.assertEquals(1, loaded.getHitCount());
+        Assert.assertEquals(0, loaded.getMissCount());
+    }
+
+    @Test
+    public void testClientStopped() throws Exception {
+        kdcServer.start();
+        krbClnt.setTicketValidTime(8);
+        krbClnt.init();
+        TicketCache cache = new TicketCache(krbClnt);
+
+        TgtTicket tgt = krbClnt.requestTgtTicket(clientPrincipal, password, null);
+        cache.getServiceTicket(tgt, serverPrincipal);
+        cache.getServiceTicket(tgt, serverPrincipal); // used, to be refreshed
+        krbClnt.stop();
+
+        // Failed at once, not left waiting for a client that's gone
+        try {
+            cache.getServiceTicketAsync(tgt, otherServerPrincipal).await();
+            Assert.fail("Should have failed");
+        } catch (KrbException e) {
+            Assert.assertTrue(e.getMessage().contains("stopped"));
+        }
+
+        // Dropped when due to refresh
+        long deadline = System.currentTimeMillis() + 15000;
+        while (cache.size() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Not dropped: " + cache);
+            }
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(0, cache.getRefreshCount());
+    }
+
+    private static void waitFor(TicketCache cache, long refreshes,
+                                long renewals) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15000;
+        while (cache.getRefreshCount() < refreshes || cache.getRenewCount() < renewals) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Not refreshed: " + cache);
+            }
+            Thread.sleep(100);
+        }
+    }
+}
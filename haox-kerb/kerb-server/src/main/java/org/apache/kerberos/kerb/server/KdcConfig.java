@@ -1,22 +1,63 @@
 package org.apache.kerberos.kerb.server;
 
 import org.apache.haox.config.Conf;
+import org.apache.haox.event.ExecutionConfig;
+import org.apache.haox.event.ExecutionMode;
+import org.apache.haox.event.RejectionPolicy;
 import org.apache.kerberos.kerb.common.KrbConfHelper;
 import org.apache.kerberos.kerb.spec.common.EncryptionType;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class KdcConfig {
-    protected Conf conf;
+    protected volatile Conf conf;
+    private final AtomicReference<KdcConfigSnapshot> snapshot =
+            new AtomicReference<KdcConfigSnapshot>();
 
     public KdcConfig() {
         this.conf = new Conf();
     }
 
+    private KdcConfig(Conf conf) {
+        this.conf = conf;
+    }
+
+    /**
+     * The conf the settings are of, replaced by a new one of the same
+     * resources on reload()
+     */
     public Conf getConf() {
         return this.conf;
     }
 
+    /**
+     * The settings for processing requests, compiled on first use. Later
+     * changes to the conf are only seen after reload().
+     */
+    public KdcConfigSnapshot getSnapshot() {
+        KdcConfigSnapshot current = snapshot.get();
+        if (current == null) {
+            snapshot.compareAndSet(null, new KdcConfigSnapshot(this));
+            current = snapshot.get();
+        }
+        return current;
+    }
+
+    /**
+     * Load the conf resources again into a new conf, and replace the conf
+     * and the snapshot as a whole once the snapshot is compiled of it. The
+     * old ones stay if loading or compiling fails, as when a resource is
+     * read while being written.
+     */
+    public synchronized void reload() {
+        Conf loaded = conf.copy();
+        loaded.reload();
+        KdcConfigSnapshot compiled = new KdcConfigSnapshot(new KdcConfig(loaded));
+        conf = loaded;
+        snapshot.set(compiled);
+    }
+
     public boolean enableDebug() {
         return conf.getBoolean(KdcConfigKey.KRB_DEBUG);
     }
@@ -38,6 +79,100 @@ public class KdcConfig {
         return kdcPort.shortValue();
     }
 
+    /**
+     * Count of worker selectors serving accepted TCP connections, one per
+     * core by default, or 0 to serve them all in the accepting selector
+     */
+    public int getKdcTcpWorkers() {
+        return conf.getInt(KdcConfigKey.KDC_TCP_WORKERS);
+    }
+
+    /**
+     * How KDC requests are processed: fixed_pool, work_stealing,
+     * virtual_threads or io_thread
+     */
+    public ExecutionMode getKdcExecutionMode() {
+        String mode = conf.getString(KdcConfigKey.KDC_EXECUTION_MODE);
+        return ExecutionMode.valueOf(mode.trim().toUpperCase());
+    }
+
+    /**
+     * Count of threads processing KDC requests, 0 for the count of
+     * available processors
+     */
+    public int getKdcWorkers() {
+        return conf.getInt(KdcConfigKey.KDC_WORKERS);
+    }
+
+    /**
+     * Count of KDC requests waiting for a worker, beyond which they're
+     * rejected, negative for no limit
+     */
+    public int getKdcWorkQueueSize() {
+        return conf.getInt(KdcConfigKey.KDC_WORK_QUEUE_SIZE);
+    }
+
+    /**
+     * What to do with a KDC request when the queue is full: reject, to
+     * reply KDC_ERR_SVC_UNAVAILABLE, or caller_runs, to process it in the
+     * I/O thread
+     */
+    public RejectionPolicy getKdcRejectionPolicy() {
+        String policy = conf.getString(KdcConfigKey.KDC_REJECTION_POLICY);
+        return RejectionPolicy.valueOf(policy.trim().toUpperCase());
+    }
+
+    public ExecutionConfig getKdcExecutionConfig() {
+        return new ExecutionConfig(getKdcExecutionMode(), getKdcWorkers(),
+                getKdcWorkQueueSize(), getKdcRejectionPolicy());
+    }
+
+    /**
+     * How many principals the KDC caches in front of the identity backend,
+     * 0 not to cache
+     */
+    public int getIdentityCacheSize() {
+        return conf.getInt(KdcConfigKey.IDENTITY_CACHE_SIZE);
+    }
+
+    /**
+     * In seconds
+     */
+    public long getIdentityCacheTtl() {
+        return conf.getLong(KdcConfigKey.IDENTITY_CACHE_TTL);
+    }
+
+    /**
+     * How long unknown principals are cached, in seconds
+     */
+    public long getIdentityNegativeCacheTtl() {
+        return conf.getLong(KdcConfigKey.IDENTITY_NEGATIVE_CACHE_TTL);
+    }
+
+    /**
+     * Whether the replay cache rejects the requests it can't check once
+     * it's full, rather than let them through
+     */
+    public boolean isReplayCacheFailClosed() {
+        return conf.getBoolean(KdcConfigKey.REPLAY_CACHE_FAIL_CLOSED);
+    }
+
+    public boolean allowTcp() {
+        return conf.getBoolean(KdcConfigKey.KDC_ALLOW_TCP);
+    }
+
+    public boolean allowUdp() {
+        return conf.getBoolean(KdcConfigKey.KDC_ALLOW_UDP);
+    }
+
+    /**
+     * Larger replies to UDP requests are replaced by KRB_ERR_RESPONSE_TOO_BIG
+     * so that the client retries with TCP
+     */
+    public int getKdcMaxDgramReplySize() {
+        return conf.getInt(KdcConfigKey.KDC_MAX_DGRAM_REPLY_SIZE);
+    }
+
     public String getKdcRealm() {
         return conf.getString(KdcConfigKey.KDC_REALM);
     }
@@ -1,6 +1,7 @@
 package org.apache.kerberos.kerb.server;
 
 import org.apache.haox.config.ConfigKey;
+import org.apache.haox.transport.WorkerSelectorPool;
 
 public enum KdcConfigKey implements ConfigKey {
     KRB_DEBUG(true),
@@ -8,6 +9,18 @@ public enum KdcConfigKey implements ConfigKey {
     KDC_SERVICE_NAME("Haox_KDC_Server"),
     KDC_HOST("127.0.0.1"),
     KDC_PORT(8015),
+    KDC_TCP_WORKERS(WorkerSelectorPool.DEFAULT_WORKERS),
+    KDC_EXECUTION_MODE("fixed_pool"),
+    KDC_WORKERS(0),
+    KDC_WORK_QUEUE_SIZE(1024),
+    KDC_REJECTION_POLICY("reject"),
+    KDC_ALLOW_TCP(true),
+    KDC_ALLOW_UDP(true),
+    KDC_MAX_DGRAM_REPLY_SIZE(65507),
+    IDENTITY_CACHE_SIZE(10000),
+    IDENTITY_CACHE_TTL(5 * 60L),
+    IDENTITY_NEGATIVE_CACHE_TTL(30L),
+    REPLAY_CACHE_FAIL_CLOSED(false),
     KDC_DOMAIN("example.com"),
     KDC_REALM("EXAMPLE.COM"),
     TGS_PRINCIPAL("krbtgt@EXAMPLE.COM"),
@@ -0,0 +1,125 @@
+package org.apache.kerberos.kerb.server;
+
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the KDC settings read while processing requests,
+ * compiled once from a KdcConfig into plain fields, so the request path
+ * neither looks them up nor parses them again.
+ *
+ * A request should read the snapshot once and use it till the end, so that
+ * it sees the settings before or after a reload, never a mix of them.
+ */
+public final class KdcConfigSnapshot {
+
+    private final String kdcRealm;
+    private final String tgsPrincipal;
+    private final int kdcMaxDgramReplySize;
+    private final boolean preauthRequired;
+    private final boolean paEncTimestampRequired;
+    private final boolean bodyChecksumVerified;
+    private final long allowableClockSkew;
+    private final boolean emptyAddressesAllowed;
+    private final boolean forwardableAllowed;
+    private final boolean postdatedAllowed;
+    private final boolean proxiableAllowed;
+    private final boolean renewableAllowed;
+    private final long maximumRenewableLifetime;
+    private final long maximumTicketLifetime;
+    private final long minimumTicketLifetime;
+    private final List<EncryptionType> encryptionTypes;
+
+    KdcConfigSnapshot(KdcConfig config) {
+        this.kdcRealm = config.getKdcRealm();
+        this.tgsPrincipal = config.getTgsPrincipal();
+        this.kdcMaxDgramReplySize = config.getKdcMaxDgramReplySize();
+        this.preauthRequired = config.isPreauthRequired();
+        this.paEncTimestampRequired = config.isPaEncTimestampRequired();
+        this.bodyChecksumVerified = config.isBodyChecksumVerified();
+        this.allowableClockSkew = config.getAllowableClockSkew();
+        this.emptyAddressesAllowed = config.isEmptyAddressesAllowed();
+        this.forwardableAllowed = config.isForwardableAllowed();
+        this.postdatedAllowed = config.isPostdatedAllowed();
+        this.proxiableAllowed = config.isProxiableAllowed();
+        this.renewableAllowed = config.isRenewableAllowed();
+        this.maximumRenewableLifetime = config.getMaximumRenewableLifetime();
+        this.maximumTicketLifetime = config.getMaximumTicketLifetime();
+        this.minimumTicketLifetime = config.getMinimumTicketLifetime();
+        this.encryptionTypes = Collections.unmodifiableList(
+                new ArrayList<EncryptionType>(config.getEncryptionTypes()));
+    }
+
+    public String getKdcRealm() {
+        return kdcRealm;
+    }
+
+    public String getTgsPrincipal() {
+        return tgsPrincipal;
+    }
+
+    public int getKdcMaxDgramReplySize() {
+        return kdcMaxDgramReplySize;
+    }
+
+    public boolean isPreauthRequired() {
+        return preauthRequired;
+    }
+
+    public boolean isPaEncTimestampRequired() {
+        return paEncTimestampRequired;
+    }
+
+    public boolean isBodyChecksumVerified() {
+        return bodyChecksumVerified;
+    }
+
+    /**
+     * In seconds
+     */
+    public long getAllowableClockSkew() {
+        return allowableClockSkew;
+    }
+
+    public boolean isEmptyAddressesAllowed() {
+        return emptyAddressesAllowed;
+    }
+
+    public boolean isForwardableAllowed() {
+        return forwardableAllowed;
+    }
+
+    public boolean isPostdatedAllowed() {
+        return postdatedAllowed;
+    }
+
+    public boolean isProxiableAllowed() {
+        return proxiableAllowed;
+    }
+
+    public boolean isRenewableAllowed() {
+        return renewableAllowed;
+    }
+
+    public long getMaximumRenewableLifetime() {
+        return maximumRenewableLifetime;
+    }
+
+    public long getMaximumTicketLifetime() {
+        return maximumTicketLifetime;
+    }
+
+    public long getMinimumTicketLifetime() {
+        return minimumTicketLifetime;
+    }
+
+    /**
+     * Unmodifiable, in the order of preference
+     */
+    public List<EncryptionType> getEncryptionTypes() {
+        return encryptionTypes;
+    }
+}
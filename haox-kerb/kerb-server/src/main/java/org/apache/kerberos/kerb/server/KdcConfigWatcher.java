@@ -0,0 +1,89 @@
+package org.apache.kerberos.kerb.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Reloads a KdcConfig when its config file is changed. The directory of the
+ * file is watched, so that the file being replaced, as editors save, is
+ * seen as well as it being written.
+ */
+public class KdcConfigWatcher implements Runnable {
+
+    private final KdcConfig kdcConfig;
+    private final File configFile;
+    private WatchService watchService;
+    private Thread thread;
+
+    public KdcConfigWatcher(KdcConfig kdcConfig, File configFile) {
+        this.kdcConfig = kdcConfig;
+        this.configFile = configFile.getAbsoluteFile();
+    }
+
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        configFile.getParentFile().toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        thread = new Thread(this, "kdc-config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watchService.close(); // wakes up the thread to exit
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        Path fileName = configFile.toPath().getFileName();
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (fileName.equals(event.context())) {
+                    changed = true;
+                }
+            }
+            if (changed) {
+                try {
+                    kdcConfig.reload();
+                } catch (Exception e) {
+                    // Keep serving with the last good snapshot
+                    e.printStackTrace();
+                }
+            }
+
+            if (! key.reset()) {
+                return;
+            }
+        }
+    }
+}
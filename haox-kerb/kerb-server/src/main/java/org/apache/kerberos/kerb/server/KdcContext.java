@@ -3,6 +3,7 @@ package org.apache.kerberos.kerb.server;
 import org.apache.kerberos.kerb.identity.IdentityService;
 import org.apache.kerberos.kerb.server.preauth.PreauthHandler;
 import org.apache.kerberos.kerb.server.replay.ReplayCheckService;
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
 
 import java.util.List;
 
@@ -13,6 +14,20 @@ public class KdcContext {
     private IdentityService identityService;
     private ReplayCheckService replayCache;
     private PreauthHandler preauthHandler;
+    // The TGS principal of the realm, made again when the name is reloaded
+    private volatile TgsPrincipal tgsPrincipal;
+
+    private static class TgsPrincipal {
+        final String configured;
+        final String realm;
+        final PrincipalKey key;
+
+        TgsPrincipal(String configured, String realm) {
+            this.configured = configured;
+            this.realm = realm;
+            this.key = PrincipalKey.of(configured).withRealm(realm);
+        }
+    }
 
     public void init(KdcConfig config) {
         this.config = config;
@@ -43,14 +58,29 @@ public class KdcContext {
     }
 
     public String getServerRealm() {
-        return config.getKdcRealm();
+        return config.getSnapshot().getKdcRealm();
     }
 
     public String getKdcRealm() {
         if (kdcRealm != null) {
             return kdcRealm;
         }
-        return config.getKdcRealm();
+        return config.getSnapshot().getKdcRealm();
+    }
+
+    /**
+     * The TGS principal in the realm of this context
+     */
+    public PrincipalKey getTgsPrincipal() {
+        String configured = config.getSnapshot().getTgsPrincipal();
+        String realm = getKdcRealm();
+        TgsPrincipal current = tgsPrincipal;
+        if (current == null || !current.configured.equals(configured)
+                || !current.realm.equals(realm)) {
+            current = new TgsPrincipal(configured, realm);
+            tgsPrincipal = current;
+        }
+        return current.key;
     }
 
     public void setReplayCache(ReplayCheckService replayCache) {
@@ -4,12 +4,19 @@ import org.apache.kerberos.kerb.common.KrbUtil;
 import org.apache.kerberos.kerb.identity.IdentityService;
 import org.apache.kerberos.kerb.server.preauth.PreauthHandler;
 import org.apache.kerberos.kerb.server.replay.ReplayCheckService;
+import org.apache.kerberos.kerb.server.replay.ReplayCheckServiceImpl;
+import org.apache.kerberos.kerb.server.replay.TimeWindowCacheService;
 import org.apache.kerberos.kerb.server.request.AsRequest;
 import org.apache.kerberos.kerb.server.request.KdcRequest;
 import org.apache.kerberos.kerb.server.request.TgsRequest;
+import org.apache.kerberos.kerb.KrbErrorCode;
+import org.apache.kerberos.kerb.KrbErrorException;
 import org.apache.kerberos.kerb.KrbException;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.KrbError;
 import org.apache.kerberos.kerb.spec.common.KrbMessage;
 import org.apache.kerberos.kerb.spec.common.KrbMessageType;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
 import org.apache.kerberos.kerb.spec.kdc.AsReq;
 import org.apache.kerberos.kerb.spec.kdc.KdcReq;
 import org.apache.kerberos.kerb.spec.kdc.TgsReq;
@@ -46,6 +53,9 @@ public class KdcHandler extends MessageHandler {
         preauthHandler = new PreauthHandler();
         preauthHandler.init(kdcConfig);
 
+        replayCheckService = new ReplayCheckServiceImpl(
+                new TimeWindowCacheService(kdcConfig));
+
         kdcContexts = new HashMap<String, KdcContext>(1);
         for (String realm : kdcRealms) {
             initRealmContext(realm);
@@ -79,8 +89,13 @@ public class KdcHandler extends MessageHandler {
     protected void handleMessage(MessageEvent event) throws Exception {
         ByteBuffer message = event.getMessage();
         Transport transport = event.getTransport();
+        boolean isTcp = (transport instanceof TcpTransport);
 
-        KrbMessage krbRequest = KrbUtil.decodeMessage(message);
+        // Decoded with no copy, as it's replied before the message buffer
+        // goes back to the pool
+        KrbMessage krbRequest = isTcp ? KrbUtil.decodeMessage(message, true) :
+                KrbUtil.decodeDatagram(message, true);
+        KdcContext kdcContext = null;
         KdcRequest kdcRequest = null;
 
         KrbMessageType messageType = krbRequest.getMsgType();
@@ -91,7 +106,7 @@ public class KdcHandler extends MessageHandler {
                 throw new KrbException("Invalid realm from kdc request: " + realm);
             }
 
-            KdcContext kdcContext = kdcContexts.get(realm);
+            kdcContext = kdcContexts.get(realm);
             if (messageType == KrbMessageType.TGS_REQ) {
                 kdcRequest = new TgsRequest((TgsReq) kdcReq, kdcContext);
             } else if (messageType == KrbMessageType.AS_REQ) {
@@ -101,13 +116,51 @@ public class KdcHandler extends MessageHandler {
 
         InetSocketAddress clientAddress = transport.getRemoteAddress();
         kdcRequest.setClientAddress(clientAddress.getAddress());
-        boolean isTcp = (transport instanceof TcpTransport);
         kdcRequest.isTcp(isTcp);
 
-        kdcRequest.process();
+        KrbMessage krbResponse;
+        try {
+            kdcRequest.process();
+            krbResponse = kdcRequest.getReply();
+        } catch (KrbErrorException e) { // made to be replied, as preauth required
+            krbResponse = e.getKrbError();
+        }
+        int responseLength = krbResponse.encodingLength();
+        if (! isTcp && responseLength >
+                kdcRequest.getConfig().getKdcMaxDgramReplySize()) {
+            krbResponse = makeResponseTooBigError(kdcRequest, kdcContext);
+            responseLength = krbResponse.encodingLength();
+        }
+        KrbUtil.sendMessage(krbResponse, responseLength, transport);
+    }
+
+    /**
+     * Reply KDC_ERR_SVC_UNAVAILABLE to a request that can't be taken for
+     * now, without decoding it, so the client can try again or elsewhere.
+     */
+    @Override
+    protected void rejectMessage(MessageEvent event) throws Exception {
+        String realm = kdcRealms.get(0);
+        PrincipalName sname = new PrincipalName(
+                kdcContexts.get(realm).getTgsPrincipal());
+
+        KrbError krbError = new KrbError();
+        krbError.setStime(KerberosTime.now());
+        krbError.setSusec(0);
+        krbError.setErrorCode(KrbErrorCode.KDC_ERR_SVC_UNAVAILABLE);
+        krbError.setRealm(realm);
+        krbError.setSname(sname);
+        KrbUtil.sendMessage(krbError, event.getTransport());
+    }
 
-        KrbMessage krbResponse = kdcRequest.getReply();
-        KrbUtil.sendMessage(krbResponse, transport);
+    private KrbError makeResponseTooBigError(KdcRequest kdcRequest, KdcContext kdcContext) {
+        KrbError krbError = new KrbError();
+        krbError.setStime(KerberosTime.now());
+        krbError.setSusec(0);
+        krbError.setErrorCode(KrbErrorCode.RESPONSE_TOO_BIG);
+        krbError.setRealm(kdcContext.getKdcRealm());
+        krbError.setSname(kdcRequest.getKdcReq().getReqBody().getSname());
+        return krbError;
     }
 
     private void loadKdcRealms() {
@@ -2,13 +2,21 @@ package org.apache.kerberos.kerb.server;
 
 import org.apache.haox.event.EventHub;
 import org.apache.kerberos.kerb.common.KrbStreamingDecoder;
+import org.apache.kerberos.kerb.identity.CachedIdentityService;
 import org.apache.kerberos.kerb.identity.IdentityService;
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
 import org.apache.haox.transport.Acceptor;
 import org.apache.haox.transport.tcp.TcpAcceptor;
+import org.apache.haox.transport.udp.UdpAcceptor;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class KdcServer {
+    private static final long BIND_TIMEOUT = 10000; // ms
+
     private String kdcHost;
     private short kdcPort;
     private String kdcRealm;
@@ -18,6 +26,7 @@ public class KdcServer {
 
     private KdcHandler kdcHandler;
     private EventHub eventHub;
+    private KdcConfigWatcher configWatcher;
 
     protected KdcConfig kdcConfig;
     protected IdentityService identityService;
@@ -91,6 +100,14 @@ public class KdcServer {
         this.kdcRealm = realm;
     }
 
+    /**
+     * Reload the config when the file, one of its resources, is changed.
+     * Only the settings for processing requests are applied when running.
+     */
+    public void watchConfigFile(File configFile) {
+        this.configWatcher = new KdcConfigWatcher(kdcConfig, configFile);
+    }
+
     public boolean enableDebug() {
         return kdcConfig.enableDebug();
     }
@@ -100,19 +117,49 @@ public class KdcServer {
 
         this.eventHub = new EventHub();
 
-        eventHub.register(kdcHandler);
+        eventHub.register(kdcHandler, kdcConfig.getKdcExecutionConfig());
+
+        List<Acceptor> acceptors = new ArrayList<Acceptor>(2);
+        if (kdcConfig.allowTcp()) {
+            acceptors.add(new TcpAcceptor(new KrbStreamingDecoder(),
+                    kdcConfig.getKdcTcpWorkers()));
+        }
+        if (kdcConfig.allowUdp()) {
+            acceptors.add(new UdpAcceptor());
+        }
+        if (acceptors.isEmpty()) {
+            throw new IllegalArgumentException("Neither TCP nor UDP is allowed");
+        }
 
-        Acceptor acceptor = new TcpAcceptor(new KrbStreamingDecoder());
-        eventHub.register(acceptor);
+        for (Acceptor acceptor : acceptors) {
+            eventHub.register(acceptor);
+        }
 
         eventHub.start();
-        acceptor.listen(getKdcHost(), getKdcPort());
+        for (Acceptor acceptor : acceptors) {
+            acceptor.listen(getKdcHost(), getKdcPort());
+        }
+        // Serving once started
+        for (Acceptor acceptor : acceptors) {
+            if (! acceptor.awaitBound(BIND_TIMEOUT)) {
+                throw new IOException("Not bound to " + getKdcHost() + ":" +
+                        getKdcPort() + " in time");
+            }
+        }
+
+        if (configWatcher != null) {
+            configWatcher.start();
+        }
     }
 
     private void prepareHandler() {
         this.kdcHandler = new KdcHandler();
         kdcHandler.setConfig(kdcConfig);
         kdcHandler.setIdentityService(identityService);
+        if (identityService instanceof CachedIdentityService) {
+            ((CachedIdentityService) identityService).pin(
+                    PrincipalKey.of(kdcConfig.getTgsPrincipal()).withRealm(getKdcRealm()));
+        }
         if (kdcRealm != null) {
             kdcHandler.setKdcRealm(kdcRealm);
         }
@@ -125,9 +172,14 @@ public class KdcServer {
         } catch (Exception e) {
             throw new RuntimeException("Failed to stop " + getServiceName());
         }
+
+        started = false;
     }
 
     protected void doStop() throws Exception {
+        if (configWatcher != null) {
+            configWatcher.stop();
+        }
         eventHub.stop();
     }
 
@@ -158,7 +210,17 @@ public class KdcServer {
         return identityService;
     }
 
+    /**
+     * Set the identity backend, cached in front unless the identity cache
+     * size is 0. Changes should be made through getIdentityService() to be
+     * seen by the KDC at once.
+     */
     protected void setIdentityService(IdentityService identityService) {
+        int cacheSize = kdcConfig.getIdentityCacheSize();
+        if (cacheSize > 0 && ! (identityService instanceof CachedIdentityService)) {
+            identityService = new CachedIdentityService(identityService, cacheSize,
+                    kdcConfig.getIdentityCacheTtl(), kdcConfig.getIdentityNegativeCacheTtl());
+        }
         this.identityService = identityService;
     }
 }
@@ -1,12 +1,13 @@
 package org.apache.kerberos.kerb.server;
 
-import org.apache.kerberos.kerb.identity.IdentityService;
 import org.apache.kerberos.kerb.identity.backend.SimpleIdentityBackend;
 
 import java.io.File;
 
 public class SimpleKdcServer extends KdcServer {
 
+    private SimpleIdentityBackend identityBackend;
+
     public SimpleKdcServer() {
         super();
     }
@@ -18,7 +19,13 @@ public class SimpleKdcServer extends KdcServer {
 
     protected void initIdentityService() {
         File identityFile = new File(workDir, "simplekdb.dat");
-        IdentityService identityService = new SimpleIdentityBackend(identityFile);
-        setIdentityService(identityService);
+        identityBackend = new SimpleIdentityBackend(identityFile);
+        setIdentityService(identityBackend);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        identityBackend.close();
     }
-}
\ No newline at end of file
+}
@@ -47,8 +47,7 @@ public class PreauthHandler {
     public PreauthContext preparePreauthContext(KdcRequest kdcRequest) {
         PreauthContext preauthContext = new PreauthContext();
 
-        KdcContext kdcContext = kdcRequest.getKdcContext();
-        preauthContext.setPreauthRequired(kdcContext.getConfig().isPreauthRequired());
+        preauthContext.setPreauthRequired(kdcRequest.getConfig().isPreauthRequired());
 
         for (KdcPreauth preauth : preauths) {
             PreauthHandle handle = new PreauthHandle(preauth);
@@ -5,7 +5,6 @@ import org.apache.kerberos.kerb.codec.KrbCodec;
 import org.apache.kerberos.kerb.common.EncryptionUtil;
 import org.apache.kerberos.kerb.preauth.PluginRequestContext;
 import org.apache.kerberos.kerb.preauth.builtin.EncTsPreauthMeta;
-import org.apache.kerberos.kerb.server.KdcContext;
 import org.apache.kerberos.kerb.server.preauth.AbstractPreauthPlugin;
 import org.apache.kerberos.kerb.server.request.KdcRequest;
 import org.apache.kerberos.kerb.KrbException;
@@ -29,8 +28,7 @@ public class EncTsPreauth extends AbstractPreauthPlugin {
         PaEncTsEnc timestamp = EncryptionUtil.unseal(encData, clientKey,
                 KeyUsage.AS_REQ_PA_ENC_TS, PaEncTsEnc.class);
 
-        KdcContext kdcContext = kdcRequest.getKdcContext();
-        long clockSkew = kdcContext.getConfig().getAllowableClockSkew() * 1000;
+        long clockSkew = kdcRequest.getConfig().getAllowableClockSkew() * 1000;
         if (!timestamp.getAllTime().isInClockSkew(clockSkew)) {
             throw new KrbException(KrbErrorCode.KDC_ERR_PREAUTH_FAILED);
         }
@@ -1,6 +1,9 @@
 package org.apache.kerberos.kerb.server.replay;
 
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
+
 public interface ReplayCheckService
 {
-    boolean checkReplay(String clientPrincipal, String serverPrincipal, long requestTime, int microseconds);
+    boolean checkReplay(PrincipalKey clientPrincipal, PrincipalKey serverPrincipal,
+                        long requestTime, int microseconds);
 }
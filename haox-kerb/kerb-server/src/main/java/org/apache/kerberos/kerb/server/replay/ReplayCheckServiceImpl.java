@@ -1,5 +1,7 @@
 package org.apache.kerberos.kerb.server.replay;
 
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
+
 public class ReplayCheckServiceImpl implements ReplayCheckService
 {
     private CacheService cacheService;
@@ -13,7 +15,7 @@ public class ReplayCheckServiceImpl implements ReplayCheckService
     }
 
     @Override
-    public boolean checkReplay(String clientPrincipal, String serverPrincipal,
+    public boolean checkReplay(PrincipalKey clientPrincipal, PrincipalKey serverPrincipal,
                                long requestTime, int microseconds) {
         RequestRecord record = new RequestRecord(clientPrincipal, serverPrincipal, requestTime, microseconds);
         return cacheService.checkAndCache(record);
@@ -1,18 +1,42 @@
 package org.apache.kerberos.kerb.server.replay;
 
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
+
 public class RequestRecord {
-    private String clientPrincipal;
-    private String serverPrincipal;
+    private PrincipalKey clientPrincipal;
+    private PrincipalKey serverPrincipal;
     private long requestTime;
     private int microseconds;
 
     public RequestRecord(String clientPrincipal, String serverPrincipal, long requestTime, int microseconds) {
+        this(PrincipalKey.of(clientPrincipal), PrincipalKey.of(serverPrincipal),
+                requestTime, microseconds);
+    }
+
+    public RequestRecord(PrincipalKey clientPrincipal, PrincipalKey serverPrincipal,
+                         long requestTime, int microseconds) {
         this.clientPrincipal = clientPrincipal;
         this.serverPrincipal = serverPrincipal;
         this.requestTime = requestTime;
         this.microseconds = microseconds;
     }
 
+    public PrincipalKey getClientPrincipal() {
+        return clientPrincipal;
+    }
+
+    public PrincipalKey getServerPrincipal() {
+        return serverPrincipal;
+    }
+
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    public int getMicroseconds() {
+        return microseconds;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -11,7 +11,7 @@ public class SimpleCacheService implements CacheService {
     }
 
     @Override
-    public boolean checkAndCache(RequestRecord request) {
+    public synchronized boolean checkAndCache(RequestRecord request) {
         if (requests.contains(request)) {
             return true;
         } else {
@@ -21,7 +21,7 @@ public class SimpleCacheService implements CacheService {
     }
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
         requests.clear();
     }
 }
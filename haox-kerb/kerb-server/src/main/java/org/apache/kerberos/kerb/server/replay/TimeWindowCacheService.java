@@ -0,0 +1,450 @@
+package org.apache.kerberos.kerb.server.replay;
+
+import org.apache.kerberos.kerb.server.KdcConfig;
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A replay cache that keeps requests only for the allowable clock skew, as
+ * older ones would be rejected by the skew check anyway.
+ *
+ * Requests are kept in buckets by request time, and a bucket is dropped as a
+ * whole once all of its requests are out of the skew. Each bucket is split
+ * into lock striped segments, each an open addressing table of two longs per
+ * request: a hash of the client and server principals, and the request time
+ * in microseconds.
+ *
+ * At most about maxEntries requests are kept. When that many are, the oldest
+ * bucket still in the skew is evicted, and requests of its time and before
+ * can't be told from replays any more. Neither can a request whose own
+ * bucket is the oldest left. By default such requests are let through
+ * unchecked and counted, see getUncheckedCount(), so that flooding the
+ * cache doesn't make the KDC refuse clients, e.g. ones whose clocks lag
+ * within the skew. Failing closed instead rejects them as replays, so
+ * that a replay of a dropped request is never accepted.
+ *
+ * When built for a KdcConfig, the skew follows the config as it's reloaded.
+ * The requests kept for the old skew are still checked until they're out of
+ * both.
+ */
+public class TimeWindowCacheService implements CacheService {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024 * 1024;
+
+    private static final int BUCKETS_PER_SKEW = 8;
+    private static final int SEGMENTS_PER_BUCKET = 16;
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+    private static final int ADDED = 0;
+    private static final int FOUND = 1;
+    private static final int CLOSED = 2;
+
+    private final KdcConfig kdcConfig;
+    private final int maxEntries;
+    private final boolean failClosed;
+    private final AtomicInteger entries = new AtomicInteger();
+    private final AtomicLong unchecked = new AtomicLong();
+    private volatile Window window;
+    // Windows of the skews before it's changed, checked until they're out
+    private volatile Window[] previous = new Window[0];
+
+    private static class Segment {
+        // Pairs of principals hash and time key, time key 0 for empty slot
+        private long[] table = new long[INITIAL_SEGMENT_CAPACITY * 2];
+        private int size;
+
+        /**
+         * The bucket is checked for being closed with the segment locked, so
+         * that the entries counted when closing it are all it ever has
+         */
+        synchronized int add(Bucket bucket, long principalsHash, long timeKey) {
+            if (bucket.closed) {
+                return CLOSED;
+            }
+            if ((size + 1) * 2 > table.length / 2) {
+                resize();
+            }
+            if (! insert(table, principalsHash, timeKey)) {
+                return FOUND;
+            }
+            size++;
+            return ADDED;
+        }
+
+        synchronized boolean contains(long principalsHash, long timeKey) {
+            int mask = (table.length >> 1) - 1;
+            int slot = (int) mix(principalsHash ^ timeKey) & mask;
+            while (true) {
+                int i = slot << 1;
+                if (table[i + 1] == 0) {
+                    return false;
+                }
+                if (table[i] == principalsHash && table[i + 1] == timeKey) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] newTable = new long[table.length * 2];
+            for (int i = 0; i < table.length; i += 2) {
+                if (table[i + 1] != 0) {
+                    insert(newTable, table[i], table[i + 1]);
+                }
+            }
+            table = newTable;
+        }
+
+        /**
+         * Return false if already there
+         */
+        private static boolean insert(long[] table, long principalsHash, long timeKey) {
+            int mask = (table.length >> 1) - 1;
+            int slot = (int) mix(principalsHash ^ timeKey) & mask;
+            while (true) {
+                int i = slot << 1;
+                if (table[i + 1] == 0) {
+                    table[i] = principalsHash;
+                    table[i + 1] = timeKey;
+                    return true;
+                }
+                if (table[i] == principalsHash && table[i + 1] == timeKey) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+    }
+
+    private static class Bucket {
+        final long id;
+        final Segment[] segments;
+        volatile boolean closed;
+
+        Bucket(long id) {
+            this.id = id;
+            this.segments = new Segment[SEGMENTS_PER_BUCKET];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = new Segment();
+            }
+        }
+    }
+
+    /**
+     * The buckets for a skew
+     */
+    private static class Window {
+        final long skewMillis;
+        final long bucketMillis;
+        final AtomicReferenceArray<Bucket> buckets;
+        // Buckets before it were evicted while in the skew
+        volatile long floorBucketId = Long.MIN_VALUE;
+        // Until when it's checked once the skew is changed
+        long retiredUntil;
+
+        Window(long skewMillis) {
+            this.skewMillis = skewMillis;
+            this.bucketMillis = Math.max(1, skewMillis / BUCKETS_PER_SKEW);
+            // Request times are within the skew before or after now, plus the
+            // partially covered buckets on both edges
+            int bucketCount = (int) (2 * skewMillis / bucketMillis) + 3;
+            this.buckets = new AtomicReferenceArray<Bucket>(bucketCount);
+        }
+
+        Segment segmentOf(Bucket bucket, long principalsHash, long timeKey) {
+            int segment = (int) (mix(principalsHash + timeKey) >>> 32) & (SEGMENTS_PER_BUCKET - 1);
+            return bucket.segments[segment];
+        }
+
+        boolean isEvicted(long requestTime) {
+            return requestTime / bucketMillis < floorBucketId;
+        }
+
+        boolean contains(long requestTime, long principalsHash, long timeKey) {
+            long id = requestTime / bucketMillis;
+            Bucket bucket = buckets.get((int) (id % buckets.length()));
+            return bucket != null && bucket.id == id &&
+                    segmentOf(bucket, principalsHash, timeKey).contains(principalsHash, timeKey);
+        }
+    }
+
+    public TimeWindowCacheService(long skewMillis) {
+        this(skewMillis, DEFAULT_MAX_ENTRIES);
+    }
+
+    public TimeWindowCacheService(long skewMillis, int maxEntries) {
+        this(skewMillis, maxEntries, false);
+    }
+
+    /**
+     * @param failClosed whether to reject the requests that can't be checked
+     *                   once it's full, rather than let them through
+     */
+    public TimeWindowCacheService(long skewMillis, int maxEntries, boolean failClosed) {
+        this(null, skewMillis, maxEntries, failClosed);
+    }
+
+    /**
+     * A cache for the allowable clock skew of the config, as it's reloaded
+     */
+    public TimeWindowCacheService(KdcConfig kdcConfig) {
+        this(kdcConfig, kdcConfig.getSnapshot().getAllowableClockSkew() * 1000,
+                DEFAULT_MAX_ENTRIES, kdcConfig.isReplayCacheFailClosed());
+    }
+
+    private TimeWindowCacheService(KdcConfig kdcConfig, long skewMillis, int maxEntries,
+                                   boolean failClosed) {
+        checkSkew(skewMillis);
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Invalid max entries: " + maxEntries);
+        }
+
+        this.kdcConfig = kdcConfig;
+        this.maxEntries = maxEntries;
+        this.failClosed = failClosed;
+        this.window = new Window(skewMillis);
+    }
+
+    private static void checkSkew(long skewMillis) {
+        if (skewMillis <= 0) {
+            throw new IllegalArgumentException("Invalid skew: " + skewMillis);
+        }
+    }
+
+    /**
+     * Change the skew requests are kept for. The requests kept for the old
+     * one are still checked until they're out of both.
+     */
+    public synchronized void setSkew(long skewMillis, long now) {
+        checkSkew(skewMillis);
+        Window current = window;
+        if (current.skewMillis == skewMillis) {
+            return;
+        }
+        // Its requests are out of the new skew once this is
+        current.retiredUntil = now + current.skewMillis + skewMillis;
+        Window[] retired = new Window[previous.length + 1];
+        System.arraycopy(previous, 0, retired, 0, previous.length);
+        retired[previous.length] = current;
+        previous = retired;
+        window = new Window(skewMillis);
+    }
+
+    @Override
+    public boolean checkAndCache(RequestRecord request) {
+        return checkAndCache(request, System.currentTimeMillis());
+    }
+
+    boolean checkAndCache(RequestRecord request, long now) {
+        if (kdcConfig != null) {
+            long skewMillis = kdcConfig.getSnapshot().getAllowableClockSkew() * 1000;
+            if (skewMillis != window.skewMillis) {
+                setSkew(skewMillis, now);
+            }
+        }
+        Window window = this.window;
+
+        long requestTime = request.getRequestTime();
+        if (requestTime < now - window.skewMillis || requestTime > now + window.skewMillis) {
+            return false; // out of the skew, not to be cached
+        }
+
+        long principalsHash = hashPrincipals(request.getClientPrincipal(),
+                request.getServerPrincipal());
+        // Never 0 so that it also marks a used slot
+        long timeKey = (requestTime * 1000000L + request.getMicroseconds()) | Long.MIN_VALUE;
+
+        for (Window retired : previous) {
+            if (now > retired.retiredUntil) {
+                dropRetired(now);
+            } else if (retired.isEvicted(requestTime)) {
+                if (failClosed) {
+                    return unchecked();
+                }
+            } else if (retired.contains(requestTime, principalsHash, timeKey)) {
+                return true;
+            }
+        }
+
+        long id = requestTime / window.bucketMillis;
+        if (id < window.floorBucketId) {
+            return unchecked(); // its bucket was evicted, can't tell
+        }
+        while (entries.get() >= maxEntries) {
+            if (! evictOldest(window, id, now)) {
+                // Full of requests as new as this one, which may be one
+                if (window.contains(requestTime, principalsHash, timeKey)) {
+                    return true;
+                }
+                return unchecked();
+            }
+        }
+
+        Bucket bucket = getBucket(window, id);
+        int result = window.segmentOf(bucket, principalsHash, timeKey)
+                .add(bucket, principalsHash, timeKey);
+        if (result == CLOSED) {
+            return unchecked(); // evicted meanwhile
+        }
+        if (result == ADDED) {
+            entries.incrementAndGet();
+        }
+        return result == FOUND;
+    }
+
+    /**
+     * Count a request that can't be checked, and tell if it's to be taken
+     * as a replay
+     */
+    private boolean unchecked() {
+        unchecked.incrementAndGet();
+        return failClosed;
+    }
+
+    private Bucket getBucket(Window window, long id) {
+        int index = (int) (id % window.buckets.length());
+        while (true) {
+            Bucket bucket = window.buckets.get(index);
+            if (bucket != null && bucket.id == id) {
+                return bucket;
+            }
+            // Any other bucket at the index is out of the window, drop it
+            Bucket newBucket = new Bucket(id);
+            if (window.buckets.compareAndSet(index, bucket, newBucket)) {
+                if (bucket != null) {
+                    close(bucket);
+                }
+                return newBucket;
+            }
+        }
+    }
+
+    /**
+     * Evict the oldest bucket, if it's older than the one of the request
+     * @return false if there's none to evict
+     */
+    private synchronized boolean evictOldest(Window window, long requestBucketId, long now) {
+        if (entries.get() < maxEntries) {
+            return true; // by another thread meanwhile
+        }
+
+        long expiredId = (now - window.skewMillis) / window.bucketMillis;
+        int oldestIndex = -1;
+        Bucket oldest = null;
+        for (int i = 0; i < window.buckets.length(); i++) {
+            Bucket bucket = window.buckets.get(i);
+            if (bucket == null) {
+                continue;
+            }
+            if (bucket.id < expiredId) { // out of the skew, free to drop
+                if (window.buckets.compareAndSet(i, bucket, null)) {
+                    close(bucket);
+                }
+            } else if (oldest == null || bucket.id < oldest.id) {
+                oldest = bucket;
+                oldestIndex = i;
+            }
+        }
+        if (entries.get() < maxEntries) {
+            return true;
+        }
+        if (oldest == null || oldest.id >= requestBucketId) {
+            return false;
+        }
+
+        window.floorBucketId = Math.max(window.floorBucketId, oldest.id + 1);
+        if (window.buckets.compareAndSet(oldestIndex, oldest, null)) {
+            close(oldest);
+        }
+        return true;
+    }
+
+    private synchronized void dropRetired(long now) {
+        int kept = 0;
+        for (Window retired : previous) {
+            if (now > retired.retiredUntil) {
+                closeAll(retired);
+            } else {
+                kept++;
+            }
+        }
+        Window[] retiredWindows = new Window[kept];
+        kept = 0;
+        for (Window retired : previous) {
+            if (now <= retired.retiredUntil) {
+                retiredWindows[kept++] = retired;
+            }
+        }
+        previous = retiredWindows;
+    }
+
+    private void closeAll(Window window) {
+        for (int i = 0; i < window.buckets.length(); i++) {
+            Bucket bucket = window.buckets.getAndSet(i, null);
+            if (bucket != null) {
+                close(bucket);
+            }
+        }
+    }
+
+    /**
+     * Stop adding to the bucket and uncount its entries
+     */
+    private void close(Bucket bucket) {
+        bucket.closed = true;
+        int size = 0;
+        for (Segment segment : bucket.segments) {
+            size += segment.size();
+        }
+        entries.addAndGet(-size);
+    }
+
+    /**
+     * The count of requests kept
+     */
+    public int size() {
+        return entries.get();
+    }
+
+    /**
+     * The count of requests that couldn't be checked as it was full, either
+     * let through or rejected as it fails closed or not
+     */
+    public long getUncheckedCount() {
+        return unchecked.get();
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Window retired : previous) {
+            closeAll(retired);
+        }
+        previous = new Window[0];
+        closeAll(window);
+        window = new Window(window.skewMillis);
+    }
+
+    private static long hashPrincipals(PrincipalKey clientPrincipal,
+                                       PrincipalKey serverPrincipal) {
+        // Keys carry their hashes, the rotation keeps the order significant
+        return mix(clientPrincipal.longHash() * 31 +
+                Long.rotateLeft(serverPrincipal.longHash(), 17));
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
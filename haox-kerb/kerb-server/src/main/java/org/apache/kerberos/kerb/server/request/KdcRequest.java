@@ -5,7 +5,7 @@ import org.apache.kerberos.kerb.codec.KrbCodec;
 import org.apache.kerberos.kerb.common.EncryptionUtil;
 import org.apache.kerberos.kerb.crypto.EncryptionHandler;
 import org.apache.kerberos.kerb.identity.KrbIdentity;
-import org.apache.kerberos.kerb.server.KdcConfig;
+import org.apache.kerberos.kerb.server.KdcConfigSnapshot;
 import org.apache.kerberos.kerb.server.KdcContext;
 import org.apache.kerberos.kerb.server.preauth.FastContext;
 import org.apache.kerberos.kerb.server.preauth.PreauthContext;
@@ -19,6 +19,7 @@ import org.apache.kerberos.kerb.spec.kdc.KdcOption;
 import org.apache.kerberos.kerb.spec.kdc.KdcOptions;
 import org.apache.kerberos.kerb.spec.kdc.KdcRep;
 import org.apache.kerberos.kerb.spec.kdc.KdcReq;
+import org.apache.kerberos.kerb.spec.kdc.KdcReqBody;
 import org.apache.kerberos.kerb.spec.pa.PaData;
 import org.apache.kerberos.kerb.spec.pa.PaDataEntry;
 import org.apache.kerberos.kerb.spec.pa.PaDataType;
@@ -35,6 +36,8 @@ import java.util.List;
 public abstract class KdcRequest {
 
     protected KdcContext kdcContext;
+    // Read once, so the request sees the same settings throughout
+    private final KdcConfigSnapshot config;
 
     private Ticket ticket;
     private boolean isPreAuthenticated;
@@ -55,6 +58,7 @@ public abstract class KdcRequest {
     public KdcRequest(KdcReq kdcReq, KdcContext kdcContext) {
         this.kdcReq = kdcReq;
         this.kdcContext = kdcContext;
+        this.config = kdcContext.getConfig().getSnapshot();
         this.preauthContext = kdcContext.getPreauthHandler()
                 .preparePreauthContext(this);
         this.fastContext = new FastContext();
@@ -64,6 +68,10 @@ public abstract class KdcRequest {
         return kdcContext;
     }
 
+    public KdcConfigSnapshot getConfig() {
+        return config;
+    }
+
     public PreauthContext getPreauthContext() {
         return preauthContext;
     }
@@ -175,9 +183,7 @@ public abstract class KdcRequest {
     }
 
     public PrincipalName getTgsPrincipal() {
-        PrincipalName result = new PrincipalName(kdcContext.getConfig().getTgsPrincipal());
-        result.setRealm(kdcContext.getKdcRealm());
-        return result;
+        return new PrincipalName(kdcContext.getTgsPrincipal());
     }
 
     protected abstract void makeReply() throws KrbException;
@@ -211,13 +217,16 @@ public abstract class KdcRequest {
         KdcReq request = getKdcReq();
 
         PrincipalName clientPrincipal = request.getReqBody().getCname();
+        if (clientPrincipal == null) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_C_PRINCIPAL_UNKNOWN);
+        }
         String clientRealm = request.getReqBody().getRealm();
         if (clientRealm == null || clientRealm.isEmpty()) {
             clientRealm = kdcContext.getServerRealm();
         }
         clientPrincipal.setRealm(clientRealm);
 
-        KrbIdentity clientEntry = getEntry(clientPrincipal.getName());
+        KrbIdentity clientEntry = getEntry(clientPrincipal.getKey());
         setClientEntry(clientEntry);
 
         EncryptionType encType = request.getReqBody().getEtypes().listIterator().next();
@@ -258,7 +267,7 @@ public abstract class KdcRequest {
         List<EncryptionType> requestedTypes = getKdcReq().getReqBody().getEtypes();
 
         EncryptionType bestType = EncryptionUtil.getBestEncryptionType(requestedTypes,
-                kdcContext.getConfig().getEncryptionTypes());
+                config.getEncryptionTypes());
 
         if (bestType == null) {
             throw new KrbException(KrbErrorCode.KDC_ERR_ETYPE_NOSUPP);
@@ -281,7 +290,6 @@ public abstract class KdcRequest {
         PrincipalName ticketPrincipal = request.getReqBody().getSname();
 
         EncTicketPart encTicketPart = new EncTicketPart();
-        KdcConfig config = kdcContext.getConfig();
 
         TicketFlags ticketFlags = new TicketFlags();
         encTicketPart.setFlags(ticketFlags);
@@ -377,8 +385,8 @@ public abstract class KdcRequest {
             if (krbRtime == null) {
                 krbRtime = KerberosTime.NEVER;
             }
-            KerberosTime allowedMaximumRenewableTime = krbStartTime;
-            allowedMaximumRenewableTime.extend(config.getMaximumRenewableLifetime() * 1000);
+            KerberosTime allowedMaximumRenewableTime =
+                    krbStartTime.extend(config.getMaximumRenewableLifetime() * 1000);
             if (krbRtime.greaterThan(allowedMaximumRenewableTime)) {
                 krbRtime = allowedMaximumRenewableTime;
             }
@@ -409,17 +417,20 @@ public abstract class KdcRequest {
     private void checkServer() throws KrbException {
         KdcReq request = getKdcReq();
 
-        KrbIdentity tgsEntry = getEntry(getTgsPrincipal().getName());
+        KrbIdentity tgsEntry = getEntry(kdcContext.getTgsPrincipal());
         setTgsEntry(tgsEntry);
 
         PrincipalName principal = request.getReqBody().getSname();
+        if (principal == null) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_S_PRINCIPAL_UNKNOWN);
+        }
         String serverRealm = request.getReqBody().getRealm();
         if (serverRealm == null || serverRealm.isEmpty()) {
             serverRealm = kdcContext.getServerRealm();
         }
         principal.setRealm(serverRealm);
 
-        KrbIdentity serverEntry = getEntry(principal.getName());
+        KrbIdentity serverEntry = getEntry(principal.getKey());
         setServerEntry(serverEntry);
 
         EncryptionType encType = request.getReqBody().getEtypes().listIterator().next();
@@ -429,7 +440,7 @@ public abstract class KdcRequest {
 
     protected KrbError makePreAuthenticationError(KdcContext kdcContext) throws KrbException {
         EncryptionType requestedType = getEncryptionType();
-        List<EncryptionType> encryptionTypes = kdcContext.getConfig().getEncryptionTypes();
+        List<EncryptionType> encryptionTypes = config.getEncryptionTypes();
         boolean isNewEtype = true;
 
         EtypeInfo2 eTypeInfo2 = new EtypeInfo2();
@@ -463,15 +474,21 @@ public abstract class KdcRequest {
         }
         methodData.add(new PaDataEntry(PaDataType.ETYPE_INFO2, encTypeInfo2));
 
+        KdcReqBody reqBody = getKdcReq().getReqBody();
         KrbError krbError = new KrbError();
         krbError.setErrorCode(KrbErrorCode.KDC_ERR_PREAUTH_REQUIRED);
+        // Named as the request, for the client to tell which it's of
+        krbError.setCrealm(reqBody.getRealm());
+        krbError.setCname(reqBody.getCname());
+        krbError.setRealm(kdcContext.getKdcRealm());
+        krbError.setSname(reqBody.getSname());
         byte[] encodedData = KrbCodec.encode(methodData);
         krbError.setEdata(encodedData);
 
         return krbError;
     }
 
-    protected KrbIdentity getEntry(String principal) throws KrbException {
+    protected KrbIdentity getEntry(PrincipalKey principal) throws KrbException {
         KrbIdentity entry = null;
         KrbErrorCode krbErrorCode = KrbErrorCode.KDC_ERR_C_PRINCIPAL_UNKNOWN;
 
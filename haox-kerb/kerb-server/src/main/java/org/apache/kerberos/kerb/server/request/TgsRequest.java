@@ -3,7 +3,9 @@ package org.apache.kerberos.kerb.server.request;
 import org.apache.kerberos.kerb.KrbErrorCode;
 import org.apache.kerberos.kerb.codec.KrbCodec;
 import org.apache.kerberos.kerb.common.EncryptionUtil;
+import org.apache.kerberos.kerb.crypto.EncryptionHandler;
 import org.apache.kerberos.kerb.server.KdcContext;
+import org.apache.kerberos.kerb.server.replay.ReplayCheckService;
 import org.apache.kerberos.kerb.KrbConstant;
 import org.apache.kerberos.kerb.KrbException;
 import org.apache.kerberos.kerb.spec.KerberosTime;
@@ -16,12 +18,14 @@ import org.apache.kerberos.kerb.spec.pa.PaDataEntry;
 import org.apache.kerberos.kerb.spec.ticket.EncTicketPart;
 import org.apache.kerberos.kerb.spec.ticket.Ticket;
 import org.apache.kerberos.kerb.spec.ticket.TicketFlag;
+import org.apache.kerberos.kerb.spec.ticket.TicketFlags;
 
 import java.nio.ByteBuffer;
 
 public class TgsRequest extends KdcRequest {
 
     private EncryptionKey tgtSessionKey;
+    private EncTicketPart tgtEncPart;
 
     public TgsRequest(TgsReq tgsReq, KdcContext kdcContext) {
         super(tgsReq, kdcContext);
@@ -37,6 +41,14 @@ public class TgsRequest extends KdcRequest {
         this.tgtSessionKey = tgtSessionKey;
     }
 
+    public EncTicketPart getTgtEncPart() {
+        return tgtEncPart;
+    }
+
+    public void setTgtEncPart(EncTicketPart tgtEncPart) {
+        this.tgtEncPart = tgtEncPart;
+    }
+
     public void verifyAuthenticator(PaDataEntry paDataEntry) throws KrbException {
         ApReq apReq = KrbCodec.decode(paDataEntry.getPaDataValue(), ApReq.class);
 
@@ -76,7 +88,7 @@ public class TgsRequest extends KdcRequest {
 
         HostAddresses hostAddresses = ticket.getEncPart().getClientAddresses();
         if (hostAddresses == null || hostAddresses.isEmpty()) {
-            if (!kdcContext.getConfig().isEmptyAddressesAllowed()) {
+            if (!getConfig().isEmptyAddressesAllowed()) {
                 throw new KrbException(KrbErrorCode.KRB_AP_ERR_BADADDR);
             }
         } else if (!hostAddresses.contains(getClientAddress())) {
@@ -89,10 +101,17 @@ public class TgsRequest extends KdcRequest {
         clientPrincipal.setRealm(authenticator.getCrealm());
 
         if (!authenticator.getCtime().isInClockSkew(
-                kdcContext.getConfig().getAllowableClockSkew() * 1000)) {
+                getConfig().getAllowableClockSkew() * 1000)) {
             throw new KrbException(KrbErrorCode.KRB_AP_ERR_SKEW);
         }
 
+        ReplayCheckService replayCache = kdcContext.getReplayCache();
+        if (replayCache != null && replayCache.checkReplay(clientPrincipal.getKey(),
+                serverPrincipal.getKey(), authenticator.getCtime().getTime(),
+                authenticator.getCusec())) {
+            throw new KrbException(KrbErrorCode.KRB_AP_ERR_REPEAT);
+        }
+
         KerberosTime now = KerberosTime.now();
         KerberosTime startTime = ticket.getEncPart().getStartTime();
         if (startTime == null) {
@@ -102,14 +121,84 @@ public class TgsRequest extends KdcRequest {
             throw new KrbException(KrbErrorCode.KRB_AP_ERR_TKT_NYV);
         }
 
+        // An expired TGT can still be renewed until its renew-till
         KerberosTime endTime = ticket.getEncPart().getEndTime();
-        if (! endTime.greaterThan(now)) {
+        if (! endTime.greaterThan(now) && ! getKdcReq().getReqBody()
+                .getKdcOptions().isFlagSet(KdcOption.RENEW)) {
             throw new KrbException(KrbErrorCode.KRB_AP_ERR_TKT_EXPIRED);
         }
 
         apReq.getApOptions().setFlag(ApOption.MUTUAL_REQUIRED);
 
         setTgtSessionKey(ticket.getEncPart().getKey());
+        setTgtEncPart(ticket.getEncPart());
+    }
+
+    @Override
+    protected void issueTicket() throws KrbException {
+        if (getKdcReq().getReqBody().getKdcOptions().isFlagSet(KdcOption.RENEW)) {
+            renewTicket();
+        } else {
+            super.issueTicket();
+        }
+    }
+
+    /**
+     * Issue a copy of the TGT presented with new start and end times and a
+     * new session key. The flags, authtime and renew-till are kept, the
+     * lifetime is the one of the TGT but the end time is capped at the
+     * renew-till.
+     */
+    private void renewTicket() throws KrbException {
+        KdcReq request = getKdcReq();
+        EncTicketPart tgtEncPart = getTgtEncPart();
+
+        if (! tgtEncPart.getFlags().isFlagSet(TicketFlag.RENEWABLE)) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_BADOPTION);
+        }
+
+        KerberosTime now = KerberosTime.now();
+        KerberosTime renewTill = tgtEncPart.getRenewtill();
+        if (renewTill == null || ! renewTill.greaterThan(now)) {
+            throw new KrbException(KrbErrorCode.KRB_AP_ERR_TKT_EXPIRED);
+        }
+
+        KerberosTime tgtStartTime = tgtEncPart.getStartTime();
+        if (tgtStartTime == null) {
+            tgtStartTime = tgtEncPart.getAuthTime();
+        }
+        long ticketLifeTime = Math.abs(tgtEncPart.getEndTime().diff(tgtStartTime));
+        KerberosTime endTime = now.extend(ticketLifeTime);
+        if (endTime.greaterThan(renewTill)) {
+            endTime = renewTill.copy();
+        }
+
+        EncTicketPart encTicketPart = new EncTicketPart();
+
+        encTicketPart.setFlags(new TicketFlags(tgtEncPart.getFlags().getFlags()));
+
+        encTicketPart.setKey(EncryptionHandler.random2Key(getEncryptionType()));
+        encTicketPart.setCname(tgtEncPart.getCname());
+        encTicketPart.setCrealm(tgtEncPart.getCrealm());
+        encTicketPart.setTransited(tgtEncPart.getTransited());
+        encTicketPart.setAuthTime(tgtEncPart.getAuthTime());
+        encTicketPart.setStartTime(now);
+        encTicketPart.setEndTime(endTime);
+        encTicketPart.setRenewtill(renewTill);
+        encTicketPart.setClientAddresses(tgtEncPart.getClientAddresses());
+        encTicketPart.setAuthorizationData(tgtEncPart.getAuthorizationData());
+
+        EncryptionKey serverKey = getServerEntry().getKeys().get(getEncryptionType());
+        EncryptedData encryptedData = EncryptionUtil.seal(encTicketPart,
+                serverKey, KeyUsage.KDC_REP_TICKET);
+
+        Ticket newTicket = new Ticket();
+        newTicket.setSname(request.getReqBody().getSname());
+        newTicket.setEncryptedEncPart(encryptedData);
+        newTicket.setRealm(request.getReqBody().getRealm());
+        newTicket.setEncPart(encTicketPart);
+
+        setTicket(newTicket);
     }
 
     @Override
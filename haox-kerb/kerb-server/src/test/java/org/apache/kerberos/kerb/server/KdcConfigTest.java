@@ -0,0 +1,133 @@
+package org.apache.kerberos.kerb.server;
+
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+public class KdcConfigTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private static final String LIFETIME =
+            KdcConfigKey.MAXIMUM_TICKET_LIFETIME.getPropertyKey();
+    private static final String FORWARDABLE =
+            KdcConfigKey.FORWARDABLE_ALLOWED.getPropertyKey();
+
+    @Test
+    public void testSnapshot() {
+        KdcConfig config = new KdcConfig();
+        KdcConfigSnapshot snapshot = config.getSnapshot();
+        Assert.assertSame(snapshot, config.getSnapshot());
+
+        Assert.assertEquals(config.getKdcRealm(), snapshot.getKdcRealm());
+        Assert.assertEquals(config.getMaximumTicketLifetime(),
+                snapshot.getMaximumTicketLifetime());
+        Assert.assertEquals(config.isPreauthRequired(), snapshot.isPreauthRequired());
+        Assert.assertEquals(Arrays.asList(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                EncryptionType.DES3_CBC_SHA1_KD), snapshot.getEncryptionTypes());
+
+        try {
+            snapshot.getEncryptionTypes().clear();
+            Assert.fail("Encryption types of a snapshot can't be changed");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        File configFile = tmpFolder.newFile("kdc.properties");
+        writeConfig(configFile, "3600", "true");
+
+        KdcConfig config = new KdcConfig();
+        config.getConf().addPropertiesConfig(configFile);
+        KdcConfigSnapshot before = config.getSnapshot();
+        Assert.assertEquals(3600, before.getMaximumTicketLifetime());
+
+        writeConfig(configFile, "7200", "false");
+        Assert.assertSame(before, config.getSnapshot()); // not till reloaded
+        config.reload();
+
+        KdcConfigSnapshot after = config.getSnapshot();
+        Assert.assertEquals(7200, after.getMaximumTicketLifetime());
+        Assert.assertFalse(after.isForwardableAllowed());
+        // Requests holding the old snapshot see it all as it was
+        Assert.assertEquals(3600, before.getMaximumTicketLifetime());
+        Assert.assertTrue(before.isForwardableAllowed());
+    }
+
+    @Test
+    public void testReloadFailed() throws IOException {
+        File configFile = tmpFolder.newFile("kdc.properties");
+        writeConfig(configFile, "3600", "true");
+
+        KdcConfig config = new KdcConfig();
+        config.getConf().addPropertiesConfig(configFile);
+        KdcConfigSnapshot before = config.getSnapshot();
+
+        writeConfig(configFile, "36OO", "false");
+        try {
+            config.reload();
+            Assert.fail("Should have failed to compile");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        // Still all as it was, not reset nor half loaded
+        Assert.assertSame(before, config.getSnapshot());
+        Assert.assertEquals(3600, config.getMaximumTicketLifetime());
+        Assert.assertTrue(config.isForwardableAllowed());
+
+        writeConfig(configFile, "7200", "false");
+        config.reload();
+        Assert.assertEquals(7200, config.getSnapshot().getMaximumTicketLifetime());
+        Assert.assertEquals(7200, config.getMaximumTicketLifetime());
+    }
+
+    @Test
+    public void testWatchConfigFile() throws Exception {
+        File configFile = tmpFolder.newFile("kdc.properties");
+        writeConfig(configFile, "3600", "true");
+
+        KdcConfig config = new KdcConfig();
+        config.getConf().addPropertiesConfig(configFile);
+        KdcConfigSnapshot before = config.getSnapshot();
+
+        KdcConfigWatcher watcher = new KdcConfigWatcher(config, configFile);
+        watcher.start();
+        try {
+            writeConfig(configFile, "7200", "true");
+            long deadline = System.currentTimeMillis() + 20000;
+            while (config.getSnapshot() == before &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } finally {
+            watcher.stop();
+        }
+        Assert.assertEquals(7200, config.getSnapshot().getMaximumTicketLifetime());
+    }
+
+    private void writeConfig(File configFile, String lifetime,
+                             String forwardable) throws IOException {
+        Properties props = new Properties();
+        props.setProperty(LIFETIME, lifetime);
+        props.setProperty(FORWARDABLE, forwardable);
+        OutputStream os = new FileOutputStream(configFile);
+        try {
+            props.store(os, null);
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.apache.kerberos.kerb.server.replay;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimeWindowCacheServiceTest {
+
+    private static final long SKEW = 5 * 60 * 1000;
+
+    private String client = "drankye@SH.INTEL.COM";
+    private String server = "krbtgt/SH.INTEL.COM@SH.INTEL.COM";
+
+    @Test
+    public void testReplay() {
+        TimeWindowCacheService cache = new TimeWindowCacheService(SKEW);
+        long now = System.currentTimeMillis();
+
+        Assert.assertFalse(cache.checkAndCache(new RequestRecord(client, server, now, 10)));
+        Assert.assertTrue(cache.checkAndCache(new RequestRecord(client, server, now, 10)));
+
+        // Differs in any part is not a replay
+        Assert.assertFalse(cache.checkAndCache(new RequestRecord(client, server, now, 11)));
+        Assert.assertFalse(cache.checkAndCache(new RequestRecord(client, server, now + 1, 10)));
+        Assert.assertFalse(cache.checkAndCache(new RequestRecord(server, client, now, 10)));
+        Assert.assertFalse(cache.checkAndCache(new RequestRecord(client + "x", server, now, 10)));
+
+        cache.clear();
+        Assert.assertFalse(cache.checkAndCache(new RequestRecord(client, server, now, 10)));
+    }
+
+    @Test
+    public void testExpiry() {
+        TimeWindowCacheService cache = new TimeWindowCacheService(SKEW);
+        long now = System.currentTimeMillis();
+        RequestRecord request = new RequestRecord(client, server, now, 0);
+
+        Assert.assertFalse(cache.checkAndCache(request, now));
+        Assert.assertTrue(cache.checkAndCache(request, now + SKEW));
+
+        // Out of the skew, left to the clock skew check
+        Assert.assertFalse(cache.checkAndCache(request, now + SKEW + 1));
+
+        // The expired bucket is dropped when its slot is reused, by the ring
+        // of 2 * 8 + 3 buckets each taking an eighth of the skew
+        long later = now + 19 * SKEW / 8;
+        Assert.assertFalse(cache.checkAndCache(new RequestRecord(client, server, later, 0), later));
+        Assert.assertFalse(cache.checkAndCache(request, now));
+    }
+
+    @Test
+    public void testBounded() {
+        int maxEntries = 10000;
+        TimeWindowCacheService cache = new TimeWindowCacheService(SKEW, maxEntries, true);
+        long now = System.currentTimeMillis();
+        RequestRecord captured = new RequestRecord(client, server, now, 0);
+        Assert.assertFalse(cache.checkAndCache(captured, now));
+
+        // Flooded within the same time, new ones are rejected once full
+        int accepted = 0;
+        for (int i = 1; i < maxEntries * 10; i++) {
+            if (! cache.checkAndCache(new RequestRecord(client, server, now, i), now)) {
+                accepted++;
+            }
+        }
+        Assert.assertTrue(accepted < maxEntries);
+        Assert.assertTrue(cache.size() <= maxEntries);
+        // Yet the first one is still known
+        Assert.assertTrue(cache.checkAndCache(captured, now));
+    }
+
+    @Test
+    public void testOldestEvicted() {
+        int maxEntries = 10000;
+        TimeWindowCacheService cache = new TimeWindowCacheService(SKEW, maxEntries, true);
+        long now = System.currentTimeMillis();
+        long old = now - SKEW + 1000;
+        RequestRecord captured = new RequestRecord(client, server, old, 0);
+        Assert.assertFalse(cache.checkAndCache(captured, now));
+
+        // Newer ones take the place of the oldest bucket
+        for (int i = 0; i < maxEntries; i++) {
+            Assert.assertFalse(cache.checkAndCache(
+                    new RequestRecord(client, server, now, i), now));
+        }
+        Assert.assertTrue(cache.size() <= maxEntries);
+
+        // Evicted, but not accepted again, nor anything as old
+        Assert.assertTrue(cache.checkAndCache(captured, now));
+        Assert.assertTrue(cache.checkAndCache(new RequestRecord(client, server, old, 1), now));
+        Assert.assertTrue(cache.checkAndCache(
+                new RequestRecord(client, server, now, maxEntries - 1), now));
+    }
+
+    @Test
+    public void testFailOpen() {
+        int maxEntries = 10000;
+        TimeWindowCacheService cache = new TimeWindowCacheService(SKEW, maxEntries);
+        long now = System.currentTimeMillis();
+        long old = now - SKEW + 1000;
+        Assert.assertFalse(cache.checkAndCache(new RequestRecord(client, server, old, 0), now));
+
+        // Flooded until the oldest bucket is evicted and it's full
+        for (int i = 0; i < maxEntries * 2; i++) {
+            cache.checkAndCache(new RequestRecord(client, server, now, i), now);
+        }
+        Assert.assertTrue(cache.size() <= maxEntries);
+        long unchecked = cache.getUncheckedCount();
+        Assert.assertTrue(unchecked > 0);
+
+        // Fresh requests in the skew are still accepted, from a lagging
+        // clock as well, and counted as unchecked
+        Assert.assertFalse(cache.checkAndCache(
+                new RequestRecord("other@SH.INTEL.COM", server, old, 0), now));
+        Assert.assertFalse(cache.checkAndCache(
+                new RequestRecord("other@SH.INTEL.COM", server, now, 0), now));
+        Assert.assertEquals(unchecked + 2, cache.getUncheckedCount());
+        // While the ones kept are still known
+        Assert.assertTrue(cache.checkAndCache(
+                new RequestRecord(client, server, now, maxEntries - 1), now));
+    }
+
+    @Test
+    public void testSkewChanged() {
+        TimeWindowCacheService cache = new TimeWindowCacheService(SKEW);
+        long now = System.currentTimeMillis();
+        RequestRecord request = new RequestRecord(client, server, now, 0);
+        Assert.assertFalse(cache.checkAndCache(request, now));
+
+        // Still known after the skew is changed, either way
+        cache.setSkew(2 * SKEW, now);
+        Assert.assertTrue(cache.checkAndCache(request, now + SKEW / 2));
+        cache.setSkew(SKEW / 2, now + SKEW / 2);
+        Assert.assertTrue(cache.checkAndCache(request, now + SKEW / 4));
+        Assert.assertFalse(cache.checkAndCache(
+                new RequestRecord(client, server, now, 1), now + SKEW / 4));
+    }
+}
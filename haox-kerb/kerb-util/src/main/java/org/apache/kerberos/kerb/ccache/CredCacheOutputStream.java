@@ -58,7 +58,7 @@ public class CredCacheOutputStream extends KrbOutputStream
     		writeInt(0);
     	} else {
             List<HostAddress> addresses = addrs.getElements();
-    		write(addresses.size());
+    		writeInt(addresses.size());
     		for (HostAddress addr : addresses) {
                 writeAddress(addr);
     		}
@@ -66,20 +66,19 @@ public class CredCacheOutputStream extends KrbOutputStream
     }
 
     public void writeAddress(HostAddress address) throws IOException {
-        write(address.getAddrType().getValue());
-        write(address.getAddress().length);
-        write(address.getAddress(), 0,
-                address.getAddress().length);
+        writeShort(address.getAddrType().getValue());
+        writeCountedOctets(address.getAddress());
     }
 
     public void writeAuthzData(AuthorizationData authData) throws IOException  {
     	if (authData == null) {
     		writeInt(0);
     	} else {
-    		for (AuthorizationDataEntry entry : authData.getElements()) {
-    			write(entry.getAuthzType().getValue());
-    			write(entry.getAuthzData().length);
-    			write(entry.getAuthzData());
+            List<AuthorizationDataEntry> entries = authData.getElements();
+            writeInt(entries.size());
+    		for (AuthorizationDataEntry entry : entries) {
+                writeShort(entry.getAuthzType().getValue());
+                writeCountedOctets(entry.getAuthzData());
     		}
     	}
     }
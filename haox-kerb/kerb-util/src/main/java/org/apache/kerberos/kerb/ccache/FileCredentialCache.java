@@ -0,0 +1,537 @@
+package org.apache.kerberos.kerb.ccache;
+
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A FILE credential cache shared by processes, updated in place instead of
+ * rewritten as a whole.
+ *
+ * New credentials are appended under an exclusive lock and the file is read
+ * under a shared one, both advisory locks of the whole file, the fcntl locks
+ * MIT takes too, so neither sees a credential half written by the other.
+ *
+ * Reads go through a mapped view of the file indexed by server principal,
+ * so only the credentials looked up are decoded. When the file grew since
+ * it was indexed, only the new credentials are indexed; when it was changed
+ * otherwise, like reinitialized by kinit, it's indexed again as a whole,
+ * which is also how a file truncated since mapped is found, by its length.
+ * Lookups take no lock while the file is unchanged.
+ */
+public class FileCredentialCache {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // By canonical path, dropped once no cache of the file is left
+    private static final Map<String, ProcessLockRef> processLocks =
+            new HashMap<String, ProcessLockRef>();
+    private static final ReferenceQueue<ProcessLock> staleLocks =
+            new ReferenceQueue<ProcessLock>();
+
+    private final File ccacheFile;
+    private final ProcessLock processLock;
+    private volatile Index index;
+
+    /**
+     * The locks of a file in this process. File locks are per process and
+     * all dropped when any channel of the file is closed, so writers hold
+     * the write lock while they take the exclusive file lock on their own
+     * channel. Readers hold the read lock and share one channel holding the
+     * shared file lock, opened by the first of them and closed by the last.
+     */
+    private static class ProcessLock {
+        final File file;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private RandomAccessFile sharedFile;
+        private FileLock sharedLock;
+        private int sharedHolders;
+
+        ProcessLock(File file) {
+            this.file = file;
+        }
+
+        FileChannel lockShared() throws IOException {
+            lock.readLock().lock();
+            boolean locked = false;
+            try {
+                synchronized (this) {
+                    if (sharedHolders == 0) {
+                        RandomAccessFile raf = new RandomAccessFile(file, "r");
+                        try {
+                            sharedLock = raf.getChannel().lock(0, Long.MAX_VALUE, true);
+                            sharedFile = raf;
+                        } finally {
+                            if (sharedFile == null) {
+                                raf.close();
+                            }
+                        }
+                    }
+                    sharedHolders++;
+                    locked = true;
+                    return sharedFile.getChannel();
+                }
+            } finally {
+                if (! locked) {
+                    lock.readLock().unlock();
+                }
+            }
+        }
+
+        void unlockShared() throws IOException {
+            try {
+                synchronized (this) {
+                    if (--sharedHolders == 0) {
+                        RandomAccessFile raf = sharedFile;
+                        sharedFile = null;
+                        try {
+                            sharedLock.release();
+                        } finally {
+                            sharedLock = null;
+                            raf.close();
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private static class ProcessLockRef extends WeakReference<ProcessLock> {
+        final String path;
+
+        ProcessLockRef(String path, ProcessLock processLock) {
+            super(processLock, staleLocks);
+            this.path = path;
+        }
+    }
+
+    private static class Entry {
+        final int offset;
+        final int length;
+        final long hash;
+        volatile Credential credential; // decoded on first lookup
+
+        Entry(int offset, int length, long hash) {
+            this.offset = offset;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    private static class Index {
+        final long lastModified;
+        final long length;
+        final ByteBuffer buffer;
+        final int version;
+        final PrincipalName primaryPrincipal;
+        final int headerLength;
+        final long headerHash;
+        final List<Entry> entries;
+        // The latest credential of each server
+        final Map<PrincipalKey, Entry> servers;
+
+        Index(long lastModified, long length, ByteBuffer buffer,
+              int version, PrincipalName primaryPrincipal,
+              int headerLength, long headerHash, List<Entry> entries,
+              Map<PrincipalKey, Entry> servers) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.buffer = buffer;
+            this.version = version;
+            this.primaryPrincipal = primaryPrincipal;
+            this.headerLength = headerLength;
+            this.headerHash = headerHash;
+            this.entries = entries;
+            this.servers = servers;
+        }
+
+        int indexedEnd() {
+            if (entries.isEmpty()) {
+                return headerLength;
+            }
+            Entry last = entries.get(entries.size() - 1);
+            return last.offset + last.length;
+        }
+    }
+
+    public FileCredentialCache(File ccacheFile) throws IOException {
+        this.ccacheFile = ccacheFile;
+        this.processLock = processLockOf(ccacheFile.getCanonicalFile());
+    }
+
+    private static ProcessLock processLockOf(File file) {
+        String path = file.getPath();
+        synchronized (processLocks) {
+            ProcessLockRef stale;
+            while ((stale = (ProcessLockRef) staleLocks.poll()) != null) {
+                if (processLocks.get(stale.path) == stale) {
+                    processLocks.remove(stale.path);
+                }
+            }
+
+            ProcessLockRef ref = processLocks.get(path);
+            ProcessLock processLock = ref == null ? null : ref.get();
+            if (processLock == null) {
+                processLock = new ProcessLock(file);
+                processLocks.put(path, new ProcessLockRef(path, processLock));
+            }
+            return processLock;
+        }
+    }
+
+    public File getCcacheFile() {
+        return ccacheFile;
+    }
+
+    /**
+     * Make the cache empty for the principal, as kinit does.
+     */
+    public void initialize(PrincipalName primaryPrincipal) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        CredCacheOutputStream ccos = new CredCacheOutputStream(baos);
+        ccos.writeShort(CredentialCache.FCC_FVNO_4);
+        ccos.writeShort(0); // no header tags
+        ccos.writePrincipal(primaryPrincipal, CredentialCache.FCC_FVNO_4);
+        ccos.flush();
+        byte[] header = baos.toByteArray();
+
+        processLock.lock.writeLock().lock();
+        try {
+            RandomAccessFile raf = new RandomAccessFile(ccacheFile, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    channel.truncate(0);
+                    writeFully(channel, ByteBuffer.wrap(header), 0);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                raf.close();
+            }
+        } finally {
+            processLock.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append the credential, in the version of the file.
+     */
+    public void addCredential(Credential credential) throws IOException {
+        processLock.lock.writeLock().lock();
+        try {
+            RandomAccessFile raf = new RandomAccessFile(ccacheFile, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    ByteBuffer versionBytes = ByteBuffer.allocate(2);
+                    if (channel.read(versionBytes, 0) != 2) {
+                        throw new IOException("Credential cache not initialized: " + ccacheFile);
+                    }
+                    int version = versionBytes.getShort(0) & 0xFFFF;
+                    checkVersion(version);
+
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+                    CredCacheOutputStream ccos = new CredCacheOutputStream(baos);
+                    credential.store(ccos, version);
+                    ccos.flush();
+
+                    // One write, so that it's found whole or not at all
+                    writeFully(channel, ByteBuffer.wrap(baos.toByteArray()), channel.size());
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                raf.close();
+            }
+        } finally {
+            processLock.lock.writeLock().unlock();
+        }
+    }
+
+    public PrincipalName getPrimaryPrincipal() throws IOException {
+        return refresh().primaryPrincipal;
+    }
+
+    /**
+     * The latest credential for the server, null if none.
+     */
+    public Credential getCredential(PrincipalName serverPrincipal) throws IOException {
+        return getCredential(refresh(), serverPrincipal);
+    }
+
+    public List<Credential> getCredentials() throws IOException {
+        return getCredentials(refresh());
+    }
+
+    /**
+     * The number of credentials in the cache
+     */
+    public int size() throws IOException {
+        return refresh().entries.size();
+    }
+
+    private Index refresh() throws IOException {
+        Index current = index;
+        if (current != null && current.lastModified == ccacheFile.lastModified()
+                && current.length == ccacheFile.length()) {
+            return current;
+        }
+
+        FileChannel channel = processLock.lockShared();
+        try {
+            current = index(channel, index);
+            index = current;
+        } finally {
+            processLock.unlockShared();
+        }
+        return current;
+    }
+
+    private Index index(FileChannel channel, Index previous) throws IOException {
+        long lastModified = ccacheFile.lastModified();
+        long length = channel.size();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Credential cache too large: " + ccacheFile);
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        Reader reader = new Reader(buffer, 0, (int) length);
+
+        int version = reader.readShort();
+        checkVersion(version);
+        if (version == CredentialCache.FCC_FVNO_4) {
+            reader.skip(reader.readShort()); // header tags
+        }
+        int principalOffset = reader.pos;
+        reader.readPrincipalKey(version);
+        int headerLength = reader.pos;
+        long headerHash = hash(buffer, 0, headerLength);
+        PrincipalName primaryPrincipal = copyOf(buffer, principalOffset,
+                headerLength - principalOffset).readPrincipal(version);
+
+        List<Entry> entries;
+        Map<PrincipalKey, Entry> servers;
+        if (previous != null && previous.version == version &&
+                previous.headerHash == headerHash && previous.length < length &&
+                sameEntries(buffer, previous)) {
+            // Only appended since
+            entries = new ArrayList<Entry>(previous.entries);
+            servers = new HashMap<PrincipalKey, Entry>(previous.servers);
+            reader.pos = previous.indexedEnd();
+        } else {
+            entries = new ArrayList<Entry>();
+            servers = new HashMap<PrincipalKey, Entry>();
+        }
+
+        while (reader.pos < reader.end) {
+            int offset = reader.pos;
+            PrincipalKey server;
+            try {
+                server = reader.skipCredential(version);
+            } catch (IOException e) {
+                break; // not complete, by a writer not locking
+            }
+            int entryLength = reader.pos - offset;
+            Entry entry = new Entry(offset, entryLength, hash(buffer, offset, entryLength));
+            entries.add(entry);
+            servers.put(server, entry);
+        }
+
+        return new Index(lastModified, length, buffer, version, primaryPrincipal, headerLength,
+                headerHash, Collections.unmodifiableList(entries), servers);
+    }
+
+    /**
+     * Whether the last indexed credential is still there, so the file wasn't
+     * rewritten since
+     */
+    private static boolean sameEntries(ByteBuffer buffer, Index previous) {
+        if (previous.entries.isEmpty()) {
+            return true;
+        }
+        Entry last = previous.entries.get(previous.entries.size() - 1);
+        return last.offset + last.length <= buffer.limit() &&
+                hash(buffer, last.offset, last.length) == last.hash;
+    }
+
+    private static Credential getCredential(Index current, PrincipalName serverPrincipal)
+            throws IOException {
+        Entry entry = current.servers.get(serverPrincipal.getKey());
+        return entry == null ? null : getCredential(current, entry);
+    }
+
+    private static List<Credential> getCredentials(Index current) throws IOException {
+        List<Credential> results = new ArrayList<Credential>(current.entries.size());
+        for (Entry entry : current.entries) {
+            results.add(getCredential(current, entry));
+        }
+        return results;
+    }
+
+    private static Credential getCredential(Index current, Entry entry) throws IOException {
+        Credential credential = entry.credential;
+        if (credential == null) {
+            credential = decode(current, entry);
+            entry.credential = credential;
+        }
+        return credential;
+    }
+
+    private static Credential decode(Index current, Entry entry) throws IOException {
+        Credential credential = new Credential();
+        credential.load(copyOf(current.buffer, entry.offset, entry.length), current.version);
+        return credential;
+    }
+
+    private static CredCacheInputStream copyOf(ByteBuffer buffer, int offset, int len) {
+        byte[] bytes = new byte[len];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new CredCacheInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static void checkVersion(int version) throws IOException {
+        if (version < CredentialCache.FCC_FVNO_1 || version > CredentialCache.FCC_FVNO_4) {
+            throw new IOException("Unsupported credential cache version: 0x" +
+                    Integer.toHexString(version));
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer,
+                                   long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static long hash(ByteBuffer buffer, int offset, int len) {
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = offset; i < offset + len; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Walks the records of the mapped file, without decoding them.
+     */
+    private static class Reader {
+        final ByteBuffer buffer;
+        final int end;
+        int pos;
+
+        Reader(ByteBuffer buffer, int pos, int end) {
+            this.buffer = buffer;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        void check(int len) throws IOException {
+            if (len < 0 || len > end - pos) {
+                throw new IOException("Bad credential cache, out of bound");
+            }
+        }
+
+        void skip(int len) throws IOException {
+            check(len);
+            pos += len;
+        }
+
+        int readShort() throws IOException {
+            check(2);
+            int value = buffer.getShort(pos) & 0xFFFF;
+            pos += 2;
+            return value;
+        }
+
+        int readInt() throws IOException {
+            check(4);
+            int value = buffer.getInt(pos);
+            pos += 4;
+            return value;
+        }
+
+        void skipCounted() throws IOException {
+            skip(readInt());
+        }
+
+        String readCounted() throws IOException {
+            int len = readInt();
+            check(len);
+            byte[] bytes = new byte[len];
+            ByteBuffer view = buffer.duplicate();
+            view.position(pos);
+            view.get(bytes);
+            pos += len;
+            return new String(bytes, UTF8);
+        }
+
+        PrincipalKey readPrincipalKey(int version) throws IOException {
+            if (version != CredentialCache.FCC_FVNO_1) {
+                skip(4); // name type
+            }
+            int count = readInt();
+            if (version == CredentialCache.FCC_FVNO_1) {
+                count -= 1;
+            }
+            String realm = readCounted();
+            List<String> components = new ArrayList<String>(Math.max(0, count));
+            for (int i = 0; i < count; i++) {
+                components.add(readCounted());
+            }
+            return PrincipalKey.of(components, realm);
+        }
+
+        /**
+         * Skip a credential, returning its server principal
+         */
+        PrincipalKey skipCredential(int version) throws IOException {
+            readPrincipalKey(version); // client
+            PrincipalKey server = readPrincipalKey(version);
+
+            skip(2); // key type
+            if (version == CredentialCache.FCC_FVNO_3) {
+                skip(2);
+            }
+            skipCounted(); // key
+            skip(4 * 4 + 1 + 4); // times, is skey, flags
+
+            int addresses = readInt();
+            for (int i = 0; i < addresses; i++) {
+                skip(2);
+                skipCounted();
+            }
+            int authzData = readInt();
+            for (int i = 0; i < authzData; i++) {
+                skip(2);
+                skipCounted();
+            }
+
+            skipCounted(); // ticket, or config data
+            skipCounted(); // second ticket
+            return server;
+        }
+    }
+}
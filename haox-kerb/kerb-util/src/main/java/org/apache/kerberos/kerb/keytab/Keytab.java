@@ -5,7 +5,6 @@ import org.apache.kerberos.kerb.spec.common.EncryptionType;
 import org.apache.kerberos.kerb.spec.common.PrincipalName;
 
 import java.io.*;
-import java.nio.ByteBuffer;
 import java.util.*;
 
 public class Keytab implements KrbKeytab {
@@ -60,16 +59,26 @@ public class Keytab implements KrbKeytab {
         return principalEntries.get(principal);
     }
 
+    /**
+     * The key of the latest kvno of the type, for keytabs having old keys
+     * kept after a key rotation
+     */
     @Override
     public EncryptionKey getKey(PrincipalName principal, EncryptionType keyType) {
         List<KeytabEntry> entries = getKeytabEntries(principal);
+        if (entries == null) {
+            return null;
+        }
+
+        KeytabEntry latest = null;
         for (KeytabEntry ke : entries) {
-            if (ke.getKey().getKeyType() == keyType) {
-                return ke.getKey();
+            if (ke.getKey().getKeyType() == keyType &&
+                    (latest == null || ke.getKvno() > latest.getKvno())) {
+                latest = ke;
             }
         }
 
-        return null;
+        return latest == null ? null : latest.getKey();
     }
 
     @Override
@@ -78,9 +87,12 @@ public class Keytab implements KrbKeytab {
             throw new IllegalArgumentException("Invalid keytab file: " + keytabFile.getAbsolutePath());
         }
 
-        InputStream is = new FileInputStream(keytabFile);
-
-        load(is);
+        InputStream is = new BufferedInputStream(new FileInputStream(keytabFile));
+        try {
+            load(is);
+        } finally {
+            is.close();
+        }
     }
 
     @Override
@@ -120,31 +132,48 @@ public class Keytab implements KrbKeytab {
         List<KeytabEntry> entries = new ArrayList<KeytabEntry>();
 
         int entrySize;
-        ByteBuffer entryData;
         KeytabEntry entry;
         while (kis.available() > 0) {
             entrySize = kis.readInt();
-            if (kis.available() < entrySize) {
+            if (entrySize == 0) {
+                break; // no more entries
+            }
+            if (kis.available() < Math.abs(entrySize)) {
                 throw new IOException("Bad input stream with less data than expected: " + entrySize);
             }
-            entry = readEntry(kis);
+            if (entrySize < 0) {
+                kis.skipBytes(-entrySize); // deleted entry
+                continue;
+            }
+            entry = readEntry(kis, entrySize);
             entries.add(entry);
         }
 
         return entries;
     }
 
-    private KeytabEntry readEntry(KeytabInputStream kis) throws IOException {
+    /**
+     * Read the entry within its size, as MIT may add a 32 bits kvno after
+     */
+    private KeytabEntry readEntry(KeytabInputStream kis, int entrySize) throws IOException {
+        byte[] entryData = new byte[entrySize];
+        kis.readFully(entryData);
+
+        KeytabInputStream entryKis = new KeytabInputStream(
+                new ByteArrayInputStream(entryData));
         KeytabEntry entry = new KeytabEntry();
-        entry.load(kis, version);
+        entry.load(entryKis, version);
         return entry;
     }
 
     @Override
     public void store(File keytabFile) throws IOException {
-        OutputStream outputStream = new FileOutputStream(keytabFile);
-
-        store(outputStream);
+        OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(keytabFile));
+        try {
+            store(outputStream);
+        } finally {
+            outputStream.close();
+        }
     }
 
     @Override
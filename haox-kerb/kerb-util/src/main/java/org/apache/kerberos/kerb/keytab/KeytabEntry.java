@@ -31,9 +31,18 @@ public class KeytabEntry
 
         this.timestamp = kis.readTime();
 
-        this.kvno = kis.readByte();
+        this.kvno = kis.readUnsignedByte();
 
         this.key = kis.readKey();
+
+        // The 32 bits kvno, if there and set, for kvno over 255
+        if (kis.available() >= 4) {
+            int kvno32 = kis.readInt();
+            if (kvno32 != 0) {
+                this.kvno = kvno32;
+            }
+        }
+        key.setKvno(kvno);
     }
 
     public void store(KeytabOutputStream kos) throws IOException {
@@ -0,0 +1,429 @@
+package org.apache.kerberos.kerb.keytab;
+
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.kerberos.kerb.spec.common.NameType;
+import org.apache.kerberos.kerb.spec.common.PrincipalKey;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read only keytab that maps the file and indexes its entries by
+ * principal, key type and kvno, for hosts with large keytabs.
+ *
+ * Indexing reads only the principal, kvno and key type of each entry, keys
+ * are decoded from the mapped file when first looked up. refresh() checks
+ * the modification time and size of the file. When it grew and the last
+ * indexed entry is unchanged, only the entries after it are indexed, as for
+ * keys of a new kvno added at the end. On other changes, like entries
+ * deleted in place as the MIT tools do, it's indexed again as a whole,
+ * reusing the entries whose bytes are unchanged at the same offset.
+ *
+ * Replace the file by renaming rather than rewriting it in place, as a
+ * mapping of a truncated file can't be read; when the file is found shorter
+ * than mapped, the lookup maps it again.
+ */
+public class MappedKeytab {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File keytabFile;
+    private volatile State state;
+
+    private static class SlotKey {
+        final PrincipalKey principal;
+        final int keyType;
+        final int kvno;
+
+        SlotKey(PrincipalKey principal, int keyType, int kvno) {
+            this.principal = principal;
+            this.keyType = keyType;
+            this.kvno = kvno;
+        }
+
+        @Override
+        public int hashCode() {
+            return (principal.hashCode() * 31 + keyType) * 31 + kvno;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (! (o instanceof SlotKey)) return false;
+
+            SlotKey that = (SlotKey) o;
+            return keyType == that.keyType && kvno == that.kvno &&
+                    principal.equals(that.principal);
+        }
+    }
+
+    private static class Slot {
+        final int offset; // of the entry, at its size
+        final int size;
+        final long hash; // of the entry bytes
+        final PrincipalKey principal;
+        final int nameType;
+        final int kvno;
+        final int keyType;
+        final int keyOffset; // of the keyblock
+        volatile EncryptionKey key; // decoded on first lookup
+
+        Slot(int offset, int size, long hash, PrincipalKey principal,
+             int nameType, int kvno, int keyType, int keyOffset) {
+            this.offset = offset;
+            this.size = size;
+            this.hash = hash;
+            this.principal = principal;
+            this.nameType = nameType;
+            this.kvno = kvno;
+            this.keyType = keyType;
+            this.keyOffset = keyOffset;
+        }
+    }
+
+    private static class State {
+        final ByteBuffer buffer;
+        final long lastModified;
+        final long length;
+        final int version;
+        int end; // where indexing stopped
+        // The last entry indexed, deleted or not
+        int tailOffset;
+        int tailLength;
+        long tailHash;
+        // By (principal, key type, kvno), and kvno -1 for the latest one
+        final Map<SlotKey, Slot> slots = new HashMap<SlotKey, Slot>();
+        final Map<PrincipalKey, List<Slot>> principals =
+                new LinkedHashMap<PrincipalKey, List<Slot>>();
+        final Map<Integer, Slot> offsets = new HashMap<Integer, Slot>();
+        int readCount;
+
+        State(ByteBuffer buffer, long lastModified, long length, int version) {
+            this.buffer = buffer;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.version = version;
+        }
+
+        void add(Slot slot) {
+            slots.put(new SlotKey(slot.principal, slot.keyType, slot.kvno), slot);
+            SlotKey latestKey = new SlotKey(slot.principal, slot.keyType, -1);
+            Slot latest = slots.get(latestKey);
+            if (latest == null || slot.kvno >= latest.kvno) {
+                slots.put(latestKey, slot);
+            }
+
+            List<Slot> entries = principals.get(slot.principal);
+            if (entries == null) {
+                entries = new ArrayList<Slot>(4);
+                principals.put(slot.principal, entries);
+            }
+            entries.add(slot);
+            offsets.put(slot.offset, slot);
+        }
+
+        void addAll(State previous) {
+            slots.putAll(previous.slots);
+            for (Map.Entry<PrincipalKey, List<Slot>> entry : previous.principals.entrySet()) {
+                principals.put(entry.getKey(), new ArrayList<Slot>(entry.getValue()));
+            }
+            offsets.putAll(previous.offsets);
+        }
+    }
+
+    public MappedKeytab(File keytabFile) throws IOException {
+        this.keytabFile = keytabFile;
+        refresh();
+    }
+
+    public File getKeytabFile() {
+        return keytabFile;
+    }
+
+    /**
+     * Index the file again if it was changed since, by its modification time
+     * and size.
+     * @return true if indexed again
+     */
+    public synchronized boolean refresh() throws IOException {
+        State current = state;
+        if (current != null && current.lastModified == keytabFile.lastModified()
+                && current.length == keytabFile.length()) {
+            return false;
+        }
+
+        state = index(current);
+        return true;
+    }
+
+    public List<PrincipalName> getPrincipals() {
+        List<PrincipalName> results = new ArrayList<PrincipalName>();
+        for (PrincipalKey principal : state.principals.keySet()) {
+            results.add(new PrincipalName(principal));
+        }
+        return results;
+    }
+
+    /**
+     * The number of entries, deleted ones not counted
+     */
+    public int getEntryCount() {
+        return state.offsets.size();
+    }
+
+    /**
+     * The number of entries read on the last indexing, the others reused
+     */
+    public int getLastReadCount() {
+        return state.readCount;
+    }
+
+    public List<KeytabEntry> getKeytabEntries(PrincipalName principal) {
+        State current = state;
+        List<Slot> slots = current.principals.get(principal.getKey());
+        if (slots == null) {
+            return null;
+        }
+
+        List<KeytabEntry> results = new ArrayList<KeytabEntry>(slots.size());
+        for (Slot slot : slots) {
+            PrincipalName name = new PrincipalName(slot.principal);
+            name.setNameType(NameType.fromValue(slot.nameType));
+            KerberosTime timestamp = new KerberosTime(
+                    (current.buffer.getInt(slot.keyOffset - 5) & 0xFFFFFFFFL) * 1000);
+            results.add(new KeytabEntry(name, timestamp, slot.kvno, getKey(current, slot)));
+        }
+        return results;
+    }
+
+    /**
+     * The key of the latest kvno of the type
+     */
+    public EncryptionKey getKey(PrincipalName principal, EncryptionType keyType) {
+        return getKey(principal, keyType, -1);
+    }
+
+    public EncryptionKey getKey(PrincipalName principal, EncryptionType keyType, int kvno) {
+        SlotKey slotKey = new SlotKey(principal.getKey(), keyType.getValue(), kvno);
+        State current = state;
+        Slot slot = current.slots.get(slotKey);
+        return slot == null ? null : getKey(current, slot);
+    }
+
+    private EncryptionKey getKey(State current, Slot slot) {
+        EncryptionKey key = slot.key;
+        if (key == null) {
+            if (keytabFile.length() < current.length) {
+                // Truncated since mapped, not to be read any more
+                key = decodeKeyAgain(slot);
+            } else {
+                key = decodeKey(current.buffer, slot);
+            }
+            slot.key = key;
+        }
+        return key;
+    }
+
+    private EncryptionKey decodeKeyAgain(Slot slot) {
+        try {
+            synchronized (this) {
+                state = index(null);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to index keytab " + keytabFile, e);
+        }
+
+        Slot again = state.offsets.get(slot.offset);
+        if (again == null || again.hash != slot.hash) {
+            throw new RuntimeException("Keytab changed while read: " + keytabFile);
+        }
+        return decodeKey(state.buffer, again);
+    }
+
+    private static EncryptionKey decodeKey(ByteBuffer buffer, Slot slot) {
+        int length = buffer.getShort(slot.keyOffset + 2) & 0xFFFF;
+        byte[] keyData = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(slot.keyOffset + 4);
+        view.get(keyData);
+        return new EncryptionKey(EncryptionType.fromValue(slot.keyType), keyData, slot.kvno);
+    }
+
+    private State index(State previous) throws IOException {
+        long lastModified = keytabFile.lastModified();
+        RandomAccessFile raf = new RandomAccessFile(keytabFile, "r");
+        ByteBuffer buffer;
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Keytab too large: " + keytabFile);
+            }
+            // Stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer = mapped;
+        } finally {
+            raf.close();
+        }
+
+        if (buffer.limit() < 2) {
+            throw new IOException("Bad keytab, too short: " + keytabFile);
+        }
+        int version = buffer.getShort(0) & 0xFFFF;
+        if (version != Keytab.V501 && version != Keytab.V502) {
+            throw new IOException("Unsupported keytab version: 0x" + Integer.toHexString(version));
+        }
+        if (previous != null && previous.version != version) {
+            previous = null;
+        }
+
+        State result = new State(buffer, lastModified, buffer.limit(), version);
+        int offset = 2;
+        if (previous != null && previous.length < buffer.limit() && sameTail(buffer, previous)) {
+            // Only appended since
+            result.addAll(previous);
+            result.tailOffset = previous.tailOffset;
+            result.tailLength = previous.tailLength;
+            result.tailHash = previous.tailHash;
+            offset = previous.end;
+        }
+        while (offset + 4 <= buffer.limit()) {
+            int size = buffer.getInt(offset);
+            if (size == 0) {
+                break; // no more entries
+            }
+            int bodySize = Math.abs(size);
+            if (size == Integer.MIN_VALUE || bodySize > buffer.limit() - offset - 4) {
+                throw new IOException("Bad keytab entry at " + offset + ": " + keytabFile);
+            }
+            if (size > 0) {
+                long hash = hash(buffer, offset, size + 4);
+                Slot slot = previous == null ? null : previous.offsets.get(offset);
+                if (slot == null || slot.size != size || slot.hash != hash) {
+                    slot = readSlot(buffer, offset, size, version, hash);
+                    result.readCount++;
+                }
+                result.add(slot);
+            }
+            result.tailOffset = offset;
+            result.tailLength = 4 + bodySize;
+            offset += 4 + bodySize;
+        }
+        result.end = offset;
+        if (result.tailLength > 0) {
+            result.tailHash = hash(buffer, result.tailOffset, result.tailLength);
+        }
+
+        return result;
+    }
+
+    /**
+     * Whether the last indexed entry is still there, so the file wasn't
+     * rewritten since
+     */
+    private static boolean sameTail(ByteBuffer buffer, State previous) {
+        if (previous.tailLength == 0) {
+            return true;
+        }
+        return previous.tailOffset + previous.tailLength <= buffer.limit() &&
+                hash(buffer, previous.tailOffset, previous.tailLength) == previous.tailHash;
+    }
+
+    private static Slot readSlot(ByteBuffer buffer, int offset, int size,
+                                 int version, long hash) throws IOException {
+        int end = offset + 4 + size;
+        int pos = offset + 4;
+
+        int count = readShort(buffer, pos, end);
+        pos += 2;
+        if (version == Keytab.V501) {
+            count -= 1; // the realm counted
+        }
+
+        String realm = readString(buffer, pos, end);
+        pos += 2 + readShort(buffer, pos, end);
+        List<String> components = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            components.add(readString(buffer, pos, end));
+            pos += 2 + readShort(buffer, pos, end);
+        }
+
+        int nameType = NameType.NT_PRINCIPAL.getValue();
+        if (version != Keytab.V501) {
+            checkLeft(pos, 4, end);
+            nameType = buffer.getInt(pos);
+            pos += 4;
+        }
+
+        checkLeft(pos, 5, end);
+        pos += 4; // timestamp
+        int kvno = buffer.get(pos) & 0xFF;
+        pos += 1;
+
+        int keyOffset = pos;
+        int keyType = readShort(buffer, pos, end);
+        int keyLength = readShort(buffer, pos + 2, end);
+        pos += 4;
+        checkLeft(pos, keyLength, end);
+        pos += keyLength;
+
+        // The 32 bits kvno, if there and set, for kvno over 255
+        if (end - pos >= 4) {
+            int kvno32 = buffer.getInt(pos);
+            if (kvno32 != 0) {
+                kvno = kvno32;
+            }
+        }
+
+        return new Slot(offset, size, hash, PrincipalKey.of(components, realm),
+                nameType, kvno, keyType, keyOffset);
+    }
+
+    private static int readShort(ByteBuffer buffer, int pos, int end) throws IOException {
+        checkLeft(pos, 2, end);
+        return buffer.getShort(pos) & 0xFFFF;
+    }
+
+    private static String readString(ByteBuffer buffer, int pos, int end) throws IOException {
+        int length = readShort(buffer, pos, end);
+        checkLeft(pos + 2, length, end);
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(pos + 2);
+        view.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void checkLeft(int pos, int len, int end) throws IOException {
+        if (len < 0 || pos + len > end) {
+            throw new IOException("Bad keytab entry, out of entry bound");
+        }
+    }
+
+    private static long hash(ByteBuffer buffer, int offset, int len) {
+        long hash = 0xcbf29ce484222325L; // FNV-1a, by 8 bytes then the left ones
+        int end = offset + len;
+        int i = offset;
+        for (; i + 8 <= end; i += 8) {
+            hash = (hash ^ buffer.getLong(i)) * 0x100000001b3L;
+            hash ^= hash >>> 29;
+        }
+        for (; i < end; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,140 @@
+package org.apache.kerberos.kerb.util;
+
+import org.apache.kerberos.kerb.ccache.Credential;
+import org.apache.kerberos.kerb.ccache.CredentialCache;
+import org.apache.kerberos.kerb.ccache.FileCredentialCache;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class FileCcacheTest {
+
+    private static final PrincipalName TGS =
+            new PrincipalName("krbtgt/SH.INTEL.COM@SH.INTEL.COM");
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = tmpDir.newFile("test.cc");
+        InputStream is = FileCcacheTest.class.getResourceAsStream("/test.cc");
+        OutputStream os = new FileOutputStream(file);
+        byte[] buffer = new byte[4096];
+        int len;
+        while ((len = is.read(buffer)) > 0) {
+            os.write(buffer, 0, len);
+        }
+        os.close();
+        is.close();
+    }
+
+    @Test
+    public void testSameAsCredentialCache() throws IOException {
+        CredentialCache cc = new CredentialCache();
+        cc.load(file);
+        FileCredentialCache fcc = new FileCredentialCache(file);
+
+        Assert.assertEquals(cc.getPrimaryPrincipal(), fcc.getPrimaryPrincipal());
+        Assert.assertEquals(cc.getCredentials().size(), fcc.size());
+
+        Credential tgt = fcc.getCredential(TGS);
+        Assert.assertNotNull(tgt);
+        Assert.assertEquals("drankye@SH.INTEL.COM", tgt.getClientName().getName());
+        Assert.assertNull(fcc.getCredential(new PrincipalName("host/none@SH.INTEL.COM")));
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        FileCredentialCache reader = new FileCredentialCache(file);
+        int count = reader.size();
+        Credential tgt = reader.getCredential(TGS);
+
+        FileCredentialCache writer = new FileCredentialCache(file);
+        writer.addCredential(tgt);
+        writer.addCredential(tgt);
+
+        // Seen by the other one, appended to what was indexed
+        Assert.assertEquals(count + 2, reader.size());
+        Credential added = reader.getCredential(TGS);
+        Assert.assertNotSame(tgt, added);
+        Assert.assertArrayEquals(tgt.getTicket().encode(), added.getTicket().encode());
+        Assert.assertEquals(tgt.getEndTime().getTime(), added.getEndTime().getTime());
+
+        CredentialCache cc = new CredentialCache();
+        cc.load(file);
+        Assert.assertEquals(count + 2, cc.getCredentials().size());
+    }
+
+    @Test
+    public void testInitialize() throws IOException {
+        FileCredentialCache fcc = new FileCredentialCache(file);
+        Credential tgt = fcc.getCredential(TGS);
+
+        PrincipalName principal = new PrincipalName("alice@SH.INTEL.COM");
+        fcc.initialize(principal);
+        Assert.assertEquals(principal, fcc.getPrimaryPrincipal());
+        Assert.assertEquals(0, fcc.size());
+        Assert.assertNull(fcc.getCredential(TGS));
+
+        fcc.addCredential(tgt);
+        Assert.assertEquals(TGS.getName(),
+                fcc.getCredentials().get(0).getServerName().getName());
+
+        CredentialCache cc = new CredentialCache();
+        cc.load(file);
+        Assert.assertEquals(principal, cc.getPrimaryPrincipal());
+        Assert.assertEquals(1, cc.getCredentials().size());
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        final Credential tgt = new FileCredentialCache(file).getCredential(TGS);
+        final int count = new FileCredentialCache(file).size();
+        final int appended = 20;
+
+        // Lookups refreshing at the same time, while the file is appended to
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        FileCredentialCache fcc = new FileCredentialCache(file);
+                        while (fcc.size() < count + appended) {
+                            Assert.assertNotNull(fcc.getCredential(TGS));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        FileCredentialCache writer = new FileCredentialCache(file);
+        for (int i = 0; i < appended && failure.get() == null; i++) {
+            writer.addCredential(tgt);
+        }
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        Assert.assertEquals(count + appended, writer.size());
+    }
+}
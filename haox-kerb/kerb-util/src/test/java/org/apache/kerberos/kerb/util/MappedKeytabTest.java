@@ -0,0 +1,214 @@
+package org.apache.kerberos.kerb.util;
+
+import org.apache.kerberos.kerb.keytab.Keytab;
+import org.apache.kerberos.kerb.keytab.KeytabEntry;
+import org.apache.kerberos.kerb.keytab.KeytabOutputStream;
+import org.apache.kerberos.kerb.keytab.MappedKeytab;
+import org.apache.kerberos.kerb.spec.KerberosTime;
+import org.apache.kerberos.kerb.spec.common.EncryptionKey;
+import org.apache.kerberos.kerb.spec.common.EncryptionType;
+import org.apache.kerberos.kerb.spec.common.PrincipalName;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.List;
+
+public class MappedKeytabTest {
+
+    private static final EncryptionType[] KEY_TYPES = new EncryptionType[] {
+            EncryptionType.AES128_CTS_HMAC_SHA1_96,
+            EncryptionType.AES256_CTS_HMAC_SHA1_96
+    };
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @Test
+    public void testSameAsKeytab() throws IOException {
+        File file = tmpDir.newFile("test.keytab");
+        InputStream is = MappedKeytabTest.class.getResourceAsStream("/test.keytab");
+        OutputStream os = new FileOutputStream(file);
+        byte[] buffer = new byte[4096];
+        int len;
+        while ((len = is.read(buffer)) > 0) {
+            os.write(buffer, 0, len);
+        }
+        os.close();
+        is.close();
+
+        Keytab keytab = new Keytab();
+        keytab.load(file);
+        MappedKeytab mapped = new MappedKeytab(file);
+
+        Assert.assertEquals(new HashSet<PrincipalName>(keytab.getPrincipals()),
+                new HashSet<PrincipalName>(mapped.getPrincipals()));
+        for (PrincipalName principal : keytab.getPrincipals()) {
+            List<KeytabEntry> entries = keytab.getKeytabEntries(principal);
+            List<KeytabEntry> mappedEntries = mapped.getKeytabEntries(principal);
+            Assert.assertEquals(entries.size(), mappedEntries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                KeytabEntry entry = entries.get(i);
+                KeytabEntry mappedEntry = mappedEntries.get(i);
+                Assert.assertEquals(entry.getPrincipal(), mappedEntry.getPrincipal());
+                Assert.assertEquals(entry.getKvno(), mappedEntry.getKvno());
+                Assert.assertEquals(entry.getKey(), mappedEntry.getKey());
+                Assert.assertEquals(entry.getTimestamp().getTime(),
+                        mappedEntry.getTimestamp().getTime());
+            }
+            for (KeytabEntry entry : entries) {
+                EncryptionType keyType = entry.getKey().getKeyType();
+                Assert.assertEquals(keytab.getKey(principal, keyType),
+                        mapped.getKey(principal, keyType));
+            }
+        }
+    }
+
+    @Test
+    public void testKeyRotation() throws IOException {
+        File file = tmpDir.newFile("rotated.keytab");
+        Keytab keytab = new Keytab();
+        for (int i = 0; i < 100; i++) {
+            keytab.addKeytabEntries(makeEntries("host/h" + i + "@EXAMPLE.COM", 1));
+        }
+        keytab.store(file);
+
+        MappedKeytab mapped = new MappedKeytab(file);
+        Assert.assertEquals(200, mapped.getEntryCount());
+        Assert.assertFalse(mapped.refresh());
+
+        PrincipalName principal = new PrincipalName("host/h7@EXAMPLE.COM");
+        EncryptionKey key = mapped.getKey(principal, EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        Assert.assertEquals(1, key.getKvno());
+        Assert.assertNull(mapped.getKey(new PrincipalName("host/h7@OTHER.COM"),
+                EncryptionType.AES128_CTS_HMAC_SHA1_96));
+
+        // New kvno added at the end, only the new entries are read
+        append(file, makeEntries("host/h7@EXAMPLE.COM", 2));
+        Assert.assertTrue(mapped.refresh());
+        Assert.assertEquals(202, mapped.getEntryCount());
+        Assert.assertEquals(2, mapped.getLastReadCount());
+        Assert.assertEquals(2, mapped.getKey(principal,
+                EncryptionType.AES128_CTS_HMAC_SHA1_96).getKvno());
+        Assert.assertEquals(key, mapped.getKey(principal,
+                EncryptionType.AES128_CTS_HMAC_SHA1_96, 1));
+        Assert.assertEquals(4, mapped.getKeytabEntries(principal).size());
+
+        Keytab loaded = new Keytab();
+        loaded.load(file);
+        Assert.assertEquals(2, loaded.getKey(principal,
+                EncryptionType.AES128_CTS_HMAC_SHA1_96).getKvno());
+    }
+
+    @Test
+    public void testDeletedEntry() throws IOException {
+        File file = tmpDir.newFile("deleted.keytab");
+        Keytab keytab = new Keytab();
+        keytab.addKeytabEntries(makeEntries("alice@EXAMPLE.COM", 1));
+        keytab.store(file);
+        MappedKeytab mapped = new MappedKeytab(file);
+
+        // Delete the first entry in place, as MIT does, by negating its size
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(2);
+        int size = raf.readInt();
+        raf.seek(2);
+        raf.writeInt(-size);
+        raf.close();
+        file.setLastModified(file.lastModified() + 2000);
+
+        Assert.assertTrue(mapped.refresh());
+        Assert.assertEquals(1, mapped.getEntryCount());
+        Assert.assertEquals(0, mapped.getLastReadCount());
+
+        Keytab loaded = new Keytab();
+        loaded.load(file);
+        Assert.assertEquals(1, loaded.getKeytabEntries(
+                new PrincipalName("alice@EXAMPLE.COM")).size());
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        File file = tmpDir.newFile("truncated.keytab");
+        Keytab keytab = new Keytab();
+        for (int i = 0; i < 100; i++) {
+            keytab.addKeytabEntries(makeEntries("host/h" + i + "@EXAMPLE.COM", 1));
+        }
+        keytab.store(file);
+        MappedKeytab mapped = new MappedKeytab(file);
+
+        // Truncated in place to the entries of the first principal
+        PrincipalName principal = mapped.getPrincipals().get(0);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        int end = 2;
+        for (int i = 0; i < KEY_TYPES.length; i++) {
+            raf.seek(end);
+            end += 4 + raf.readInt();
+        }
+        raf.setLength(end);
+        raf.close();
+
+        Assert.assertEquals(keytab.getKey(principal, EncryptionType.AES128_CTS_HMAC_SHA1_96),
+                mapped.getKey(principal, EncryptionType.AES128_CTS_HMAC_SHA1_96));
+        Assert.assertEquals(2, mapped.getEntryCount());
+    }
+
+    @Test
+    public void testUtf8Principal() throws IOException {
+        String component = "h\u00e9te";
+        byte[] componentBytes = component.getBytes("UTF-8");
+        byte[] realmBytes = "EXAMPLE.COM".getBytes("UTF-8");
+
+        File file = tmpDir.newFile("utf8.keytab");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeShort(Keytab.V502);
+        raf.writeInt(2 + 2 + realmBytes.length + 2 + componentBytes.length + 4 + 4 + 1 + 4 + 16);
+        raf.writeShort(1);
+        raf.writeShort(realmBytes.length);
+        raf.write(realmBytes);
+        raf.writeShort(componentBytes.length);
+        raf.write(componentBytes);
+        raf.writeInt(1); // name type
+        raf.writeInt(1400000000); // timestamp
+        raf.writeByte(1); // kvno
+        raf.writeShort(EncryptionType.AES128_CTS_HMAC_SHA1_96.getValue());
+        raf.writeShort(16);
+        raf.write(new byte[16]);
+        raf.close();
+
+        MappedKeytab mapped = new MappedKeytab(file);
+        Assert.assertEquals(1, mapped.getEntryCount());
+        Assert.assertNotNull(mapped.getKey(new PrincipalName(component + "@EXAMPLE.COM"),
+                EncryptionType.AES128_CTS_HMAC_SHA1_96));
+    }
+
+    private static List<KeytabEntry> makeEntries(String principal, int kvno) {
+        Keytab keytab = new Keytab();
+        for (EncryptionType keyType : KEY_TYPES) {
+            byte[] keyData = new byte[keyType == EncryptionType.AES128_CTS_HMAC_SHA1_96 ? 16 : 32];
+            keyData[0] = (byte) kvno;
+            keyData[1] = (byte) principal.hashCode();
+            keytab.addEntry(new KeytabEntry(new PrincipalName(principal),
+                    new KerberosTime(1400000000000L), kvno,
+                    new EncryptionKey(keyType, keyData, kvno)));
+        }
+        return keytab.getKeytabEntries(new PrincipalName(principal));
+    }
+
+    private static void append(File file, List<KeytabEntry> entries) throws IOException {
+        KeytabOutputStream kos = new KeytabOutputStream(new FileOutputStream(file, true));
+        for (KeytabEntry entry : entries) {
+            entry.store(kos);
+        }
+        kos.close();
+        file.setLastModified(file.lastModified() + 2000);
+    }
+}